@@ -0,0 +1,10 @@
+# Builds the fast-startup version of the app and records an AppCDS archive of the classes it loads while starting.
+# Needs JDK 13 or newer. Run the app with the archive using the command printed at the end.
+# Class data sharing only works with plain jars on the classpath, so the jar is not repackaged into a fat jar.
+set -e
+mvn -B -q -Pfast-startup -DskipTests -Dspring-boot.repackage.skip=true package \
+    dependency:build-classpath -Dmdep.outputFile=target/classpath.txt -Dmdep.includeScope=runtime
+CLASSPATH="target/Challenges-1.1.jar:$(cat target/classpath.txt)"
+java -XX:ArchiveClassesAtExit=target/app-cds.jsa -Xlog:cds=off -Dspring.profiles.active=fast-startup \
+    -Dapp.startup.exit-on-ready=true -cp "$CLASSPATH" com.example.SocialMediaApp
+echo "java -XX:SharedArchiveFile=target/app-cds.jsa -Dspring.profiles.active=fast-startup -cp \"$CLASSPATH\" com.example.SocialMediaApp"
@@ -0,0 +1,203 @@
+package com.example.config;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Puts an adjustable limit on how many connections can be borrowed from the pool at the same time.
+ *
+ * The pool itself is sized for the upper bound and this limit is what AdaptivePoolController moves up and down. While
+ *      doing that it records what the controller needs for each window: how many connections were handed out, how
+ *      long callers waited for one, how long they were held (which is the latency of the work done with them) and
+ *      the most that were in use at once.
+ */
+public class AdaptiveConcurrencyDataSource extends DelegatingDataSource {
+    private final AdjustableSemaphore permits;
+    private final long timeoutMillis;
+    private volatile int limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final LongAdder borrowed = new LongAdder();
+    private final LongAdder waited = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder holdNanos = new LongAdder();
+
+    /**
+     * @param target The pool.
+     * @param initialLimit How many connections can be borrowed at once to begin with.
+     * @param timeoutMillis How long to wait for a connection before giving up, like the pool's connectionTimeout.
+     */
+    public AdaptiveConcurrencyDataSource(DataSource target, int initialLimit, long timeoutMillis) {
+        super(target);
+        this.permits = new AdjustableSemaphore(initialLimit);
+        this.limit = initialLimit;
+        this.timeoutMillis = timeoutMillis;
+    } // end constructor
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        acquire();
+        Connection connection;
+
+        try {
+            connection = obtainTargetDataSource().getConnection();
+        } // end try block
+        catch (SQLException | RuntimeException e) {
+            permits.release(); // the pool could not hand one out (timed out, database down), so give the turn back
+            throw e;
+        } // end catch block
+
+        return borrow(start, connection);
+    } // end getConnection()
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        acquire();
+        Connection connection;
+
+        try {
+            connection = obtainTargetDataSource().getConnection(username, password);
+        } // end try block
+        catch (SQLException | RuntimeException e) {
+            permits.release(); // the pool could not hand one out (timed out, database down), so give the turn back
+            throw e;
+        } // end catch block
+
+        return borrow(start, connection);
+    } // end getConnection()
+
+    private void acquire() throws SQLException {
+        if (permits.tryAcquire()) {
+            return;
+        } // end if statement
+
+        waited.increment(); // every permit is taken, so this caller has to wait its turn
+
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException("No connection available within " + timeoutMillis
+                        + " ms (concurrency limit " + limit + ")");
+            } // end if statement
+        } // end try block
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a connection", e);
+        } // end catch block
+    } // end acquire()
+
+    /**
+     * Wraps the connection so that closing it gives the permit back and records how long it was held.
+     */
+    private Connection borrow(long requested, Connection connection) {
+        long borrowedAt = System.nanoTime();
+        waitNanos.add(borrowedAt - requested);
+        borrowed.increment();
+        peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        AtomicBoolean closed = new AtomicBoolean();
+
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    if ("equals".equals(method.getName())) { // Spring matches connections to transactions this way
+                        return proxy == args[0];
+                    } // end if statement
+                    if ("hashCode".equals(method.getName())) {
+                        return System.identityHashCode(proxy);
+                    } // end if statement
+                    if ("close".equals(method.getName()) && closed.compareAndSet(false, true)) {
+                        holdNanos.add(System.nanoTime() - borrowedAt);
+                        inFlight.decrementAndGet();
+                        permits.release();
+                    } // end if statement
+
+                    try {
+                        return method.invoke(connection, args);
+                    } // end try block
+                    catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    } // end catch block
+                });
+    } // end borrow()
+
+    /**
+     * Changes how many connections can be borrowed at once. Lowering the limit does not take connections away from
+     *      anyone, it just means fewer callers get one after they are given back.
+     */
+    public synchronized void setLimit(int newLimit) {
+        if (newLimit > limit) {
+            permits.release(newLimit - limit);
+        } // end if statement
+        else if (newLimit < limit) {
+            permits.reducePermits(limit - newLimit);
+        } // end else if statement
+
+        limit = newLimit;
+    } // end setLimit()
+
+    public int getLimit() {
+        return limit;
+    } // end getLimit()
+
+    public int getInFlight() {
+        return inFlight.get();
+    } // end getInFlight()
+
+    /**
+     * Takes what was recorded since the last call and starts a new window.
+     *
+     * @return The connections borrowed, how many of those had to wait, the total nanoseconds spent waiting, the
+     *      total nanoseconds the connections were held and the most in use at once.
+     */
+    public Window drainWindow() {
+        return new Window(borrowed.sumThenReset(), waited.sumThenReset(), waitNanos.sumThenReset(),
+                holdNanos.sumThenReset(), peakInFlight.getAndSet(inFlight.get()));
+    } // end drainWindow()
+
+    /**
+     * The numbers that were recorded during one window.
+     */
+    public static final class Window {
+        final long borrowed;
+        final long waited;
+        final long waitNanos;
+        final long holdNanos;
+        final int peakInFlight;
+
+        Window(long borrowed, long waited, long waitNanos, long holdNanos, int peakInFlight) {
+            this.borrowed = borrowed;
+            this.waited = waited;
+            this.waitNanos = waitNanos;
+            this.holdNanos = holdNanos;
+            this.peakInFlight = peakInFlight;
+        } // end constructor
+    } // end Window Class
+
+    /**
+     * A Semaphore whose number of permits can also be lowered.
+     */
+    private static final class AdjustableSemaphore extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        private AdjustableSemaphore(int permits) {
+            super(permits);
+        } // end constructor
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        } // end reducePermits()
+    } // end AdjustableSemaphore Class
+} // end AdaptiveConcurrencyDataSource Class
@@ -0,0 +1,55 @@
+package com.example.config;
+
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Puts the main connection pool behind an AdaptiveConcurrencyDataSource when `app.pool.adaptive.enabled=true`, so
+ *      that AdaptivePoolController can change how many connections are in use at once.
+ *
+ * The pool is sized for `app.pool.adaptive.max` and the limit starts at `app.pool.adaptive.initial`.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.pool.adaptive.enabled", havingValue = "true")
+public class AdaptivePoolConfig {
+    @Bean
+    static BeanPostProcessor adaptivePoolDataSourceWrapper(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!"dataSource".equals(beanName) || !(bean instanceof DataSource)) {
+                    return bean;
+                } // end if statement
+
+                HikariDataSource pool; // the pool may already be wrapped, eg. by StatementCountingConfig
+
+                try {
+                    if (!((DataSource) bean).isWrapperFor(HikariDataSource.class)) {
+                        return bean;
+                    } // end if statement
+                    pool = ((DataSource) bean).unwrap(HikariDataSource.class);
+                } // end try block
+                catch (SQLException e) {
+                    throw new BeanCreationException(beanName, "Could not find the connection pool", e);
+                } // end catch block
+
+                int max = environment.getProperty("app.pool.adaptive.max", Integer.class, 20);
+                int configured = pool.getMaximumPoolSize() > 0 ? pool.getMaximumPoolSize() : 10; // Hikari's default
+                int initial = environment.getProperty("app.pool.adaptive.initial", Integer.class,
+                        Math.min(configured, max));
+                pool.setMaximumPoolSize(max); // the pool has not started yet, so this can still be changed
+                return new AdaptiveConcurrencyDataSource((DataSource) bean, initial, pool.getConnectionTimeout());
+            } // end postProcessAfterInitialization()
+        };
+    } // end adaptivePoolDataSourceWrapper()
+} // end AdaptivePoolConfig Class
@@ -0,0 +1,159 @@
+package com.example.config;
+
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Moves the number of connections that can be in use at once up and down based on how the database is responding,
+ *      in the same way as the gradient concurrency-limit algorithms.
+ *
+ * Every `app.pool.adaptive.interval-ms` it looks at the connections borrowed since the last time:
+ *  - The average time a connection was held is the short term latency, a slow moving average of it is the long term
+ *      latency. When the short term latency climbs above `app.pool.adaptive.tolerance` times the long term one, the
+ *      extra connections are only adding contention inside H2, so the limit is scaled down by the ratio (the
+ *      gradient, never by more than half at a time).
+ *  - The limit only grows (by about the square root of the limit) when callers actually had to wait for a connection
+ *      and the latency is not getting worse, otherwise more connections would not be used anyway.
+ *  - Windows with fewer than `app.pool.adaptive.min-samples` connections are skipped, there is too little to go on.
+ * The new limit is blended into the old one (`app.pool.adaptive.smoothing`) and kept between
+ *      `app.pool.adaptive.min` and `app.pool.adaptive.max`.
+ *
+ * What it saw and what it decided are published as `app.pool.*` metrics (see /actuator/metrics).
+ */
+@Component
+@ConditionalOnProperty(name = "app.pool.adaptive.enabled", havingValue = "true")
+public class AdaptivePoolController {
+    private static final Log log = LogFactory.getLog(AdaptivePoolController.class);
+    private static final double LONG_WINDOW = 30; // how many windows the long term latency is averaged over
+
+    private final AdaptiveConcurrencyDataSource dataSource;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long intervalMillis;
+    private final double tolerance;
+    private final double smoothing;
+    private final int minSamples;
+    private final Counter grown;
+    private final Counter shrunk;
+    private final Counter held;
+    private double estimatedLimit;
+    private volatile double shortLatencyMillis;
+    private volatile double longLatencyMillis;
+    private volatile double averageWaitMillis;
+    private volatile double throughput;
+    private volatile double gradient = 1.0;
+
+    @Autowired
+    public AdaptivePoolController(DataSource dataSource, MeterRegistry meterRegistry,
+            @Value("${app.pool.adaptive.min:2}") int minLimit,
+            @Value("${app.pool.adaptive.max:20}") int maxLimit,
+            @Value("${app.pool.adaptive.interval-ms:1000}") long intervalMillis,
+            @Value("${app.pool.adaptive.tolerance:1.5}") double tolerance,
+            @Value("${app.pool.adaptive.smoothing:0.2}") double smoothing,
+            @Value("${app.pool.adaptive.min-samples:10}") int minSamples) {
+        this.dataSource = adaptive(dataSource);
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.intervalMillis = intervalMillis;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.minSamples = minSamples;
+        this.estimatedLimit = this.dataSource.getLimit();
+
+        Gauge.builder("app.pool.limit", this.dataSource, AdaptiveConcurrencyDataSource::getLimit)
+                .description("Connections that can be in use at once").register(meterRegistry);
+        Gauge.builder("app.pool.in-flight", this.dataSource, AdaptiveConcurrencyDataSource::getInFlight)
+                .description("Connections in use right now").register(meterRegistry);
+        Gauge.builder("app.pool.latency.short", this, controller -> controller.shortLatencyMillis).baseUnit("ms")
+                .description("Average time a connection was held in the last window").register(meterRegistry);
+        Gauge.builder("app.pool.latency.long", this, controller -> controller.longLatencyMillis).baseUnit("ms")
+                .description("Long term average time a connection is held").register(meterRegistry);
+        Gauge.builder("app.pool.wait", this, controller -> controller.averageWaitMillis).baseUnit("ms")
+                .description("Average wait for a connection in the last window").register(meterRegistry);
+        Gauge.builder("app.pool.throughput", this, controller -> controller.throughput)
+                .description("Connections borrowed per second in the last window").register(meterRegistry);
+        Gauge.builder("app.pool.gradient", this, controller -> controller.gradient)
+                .description("Long term over short term latency, below 1 means the database is slowing down")
+                .register(meterRegistry);
+        this.grown = Counter.builder("app.pool.adjustments").tag("decision", "grow").register(meterRegistry);
+        this.shrunk = Counter.builder("app.pool.adjustments").tag("decision", "shrink").register(meterRegistry);
+        this.held = Counter.builder("app.pool.adjustments").tag("decision", "hold").register(meterRegistry);
+    } // end constructor
+
+    @Scheduled(fixedDelayString = "${app.pool.adaptive.interval-ms:1000}",
+            initialDelayString = "${app.pool.adaptive.interval-ms:1000}")
+    public void adjust() {
+        AdaptiveConcurrencyDataSource.Window window = dataSource.drainWindow();
+        throughput = window.borrowed * 1000.0 / intervalMillis;
+
+        if (window.borrowed < minSamples) { // too quiet to learn anything
+            held.increment();
+            return;
+        } // end if statement
+
+        shortLatencyMillis = window.holdNanos / 1e6 / window.borrowed;
+        averageWaitMillis = window.waitNanos / 1e6 / window.borrowed;
+        longLatencyMillis = longLatencyMillis == 0 ? shortLatencyMillis
+                : longLatencyMillis + (shortLatencyMillis - longLatencyMillis) / LONG_WINDOW;
+
+        if (longLatencyMillis > 2 * shortLatencyMillis) { // latency dropped for good, let the long average catch up
+            longLatencyMillis *= 0.95;
+        } // end if statement
+
+        gradient = Math.max(0.5, Math.min(1.0, tolerance * longLatencyMillis / shortLatencyMillis));
+        double limit = estimatedLimit;
+        double newLimit = limit * gradient;
+
+        if (window.waited > 0 && gradient == 1.0) { // callers were queueing and latency is fine, so try more
+            newLimit += Math.sqrt(limit);
+        } // end if statement
+
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - smoothing) + newLimit * smoothing));
+        int previous = dataSource.getLimit();
+        int next = (int) Math.round(estimatedLimit);
+
+        if (next > previous) {
+            grown.increment();
+        } // end if statement
+        else if (next < previous) {
+            shrunk.increment();
+        } // end else if statement
+        else {
+            held.increment();
+            return;
+        } // end else statement
+
+        dataSource.setLimit(next);
+        log.debug(String.format("Connection limit %d -> %d (latency %.2f ms, long term %.2f ms, wait %.2f ms, "
+                + "%d borrowed, %d waited, peak %d in use)", previous, next, shortLatencyMillis, longLatencyMillis,
+                averageWaitMillis, window.borrowed, window.waited, window.peakInFlight));
+    } // end adjust()
+
+    /**
+     * Finds the AdaptiveConcurrencyDataSource that AdaptivePoolConfig put around the pool, whatever else (eg. the
+     *      statement counting) may have been wrapped around it since.
+     */
+    private static AdaptiveConcurrencyDataSource adaptive(DataSource dataSource) {
+        try {
+            return dataSource.unwrap(AdaptiveConcurrencyDataSource.class);
+        } // end try block
+        catch (SQLException e) {
+            throw new BeanCreationException("adaptivePoolController", "The data source is not wrapped in an "
+                    + "AdaptiveConcurrencyDataSource, the pool cannot be adjusted", e);
+        } // end catch block
+    } // end adaptive()
+} // end AdaptivePoolController Class
@@ -0,0 +1,37 @@
+package com.example.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Sheds load with an AdmissionFilter, unless `app.admission.enabled=false`.
+ *
+ * `app.admission.limit` requests run at once and up to `app.admission.queue-size` more wait, for at most
+ *      `app.admission.max-wait-ms`. Every waiting request holds a Tomcat thread, so the limit and the queue together
+ *      should stay below `server.tomcat.threads.max` (200 by default), otherwise requests pile up in Tomcat's accept
+ *      queue where they can neither be shed nor put in order.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.admission.enabled", havingValue = "true", matchIfMissing = true)
+public class AdmissionConfig {
+    @Bean
+    AdmissionGate admissionGate(@Value("${app.admission.limit:64}") int limit,
+            @Value("${app.admission.queue-size:128}") int queueSize,
+            @Value("${app.admission.max-wait-ms:500}") long maxWaitMillis) {
+        return new AdmissionGate(limit, queueSize, maxWaitMillis);
+    } // end admissionGate()
+
+    @Bean
+    FilterRegistrationBean<AdmissionFilter> admissionFilter(AdmissionGate admissionGate, MeterRegistry meterRegistry) {
+        FilterRegistrationBean<AdmissionFilter> registration = new FilterRegistrationBean<>(
+                new AdmissionFilter(admissionGate, meterRegistry));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1); // inside tracing, so shed requests still show up there
+        return registration;
+    } // end admissionFilter()
+} // end AdmissionConfig Class
@@ -0,0 +1,109 @@
+package com.example.config;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Puts every HTTP request through an AdmissionGate, and answers the ones it sheds with a 503 and `Retry-After: 1`.
+ *
+ * Writes to messages (POST, PATCH and DELETE under /messages) have the highest priority, the bulk reads (GET /messages
+ *      and GET /accounts/{accountId}/messages) the lowest and everything else is in between. The actuator endpoints
+ *      are let through, so health checks still answer under overload.
+ *
+ * Metrics: `app.admission.in-flight` and `app.admission.queue-depth` (gauges), `app.admission.queue-wait` (a timer of
+ *      how long admitted requests waited, by priority) and `app.admission.shed` (by priority and reason).
+ */
+public class AdmissionFilter extends OncePerRequestFilter {
+    private final AdmissionGate gate;
+    private final Map<AdmissionGate.Priority, Timer> queueWait = new EnumMap<>(AdmissionGate.Priority.class);
+    private final Map<AdmissionGate.Priority, Map<AdmissionGate.Outcome, Counter>> shed =
+            new EnumMap<>(AdmissionGate.Priority.class);
+
+    public AdmissionFilter(AdmissionGate gate, MeterRegistry meterRegistry) {
+        this.gate = gate;
+
+        Gauge.builder("app.admission.in-flight", gate, AdmissionGate::getInFlight)
+                .description("Requests running right now").register(meterRegistry);
+        Gauge.builder("app.admission.queue-depth", gate, AdmissionGate::getQueued)
+                .description("Requests waiting for a turn to run").register(meterRegistry);
+
+        for (AdmissionGate.Priority priority : AdmissionGate.Priority.values()) {
+            String tag = priority.name().toLowerCase();
+            queueWait.put(priority, Timer.builder("app.admission.queue-wait").tag("priority", tag)
+                    .description("How long admitted requests waited for a turn").register(meterRegistry));
+            Map<AdmissionGate.Outcome, Counter> reasons = new EnumMap<>(AdmissionGate.Outcome.class);
+
+            for (AdmissionGate.Outcome outcome : AdmissionGate.Outcome.values()) {
+                if (outcome != AdmissionGate.Outcome.ADMITTED) {
+                    reasons.put(outcome, Counter.builder("app.admission.shed").tag("priority", tag)
+                            .tag("reason", outcome.name().toLowerCase().replace('_', '-'))
+                            .description("Requests turned away with a 503").register(meterRegistry));
+                } // end if statement
+            } // end for loop
+
+            shed.put(priority, reasons);
+        } // end for loop
+    } // end constructor
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return path(request).startsWith("/actuator");
+    } // end shouldNotFilter()
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        AdmissionGate.Priority priority = priorityOf(request.getMethod(), path(request));
+        long start = System.nanoTime();
+        AdmissionGate.Outcome outcome = gate.acquire(priority);
+
+        if (outcome != AdmissionGate.Outcome.ADMITTED) {
+            shed.get(priority).get(outcome).increment();
+            response.setHeader("Retry-After", "1");
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        } // end if statement
+
+        queueWait.get(priority).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        try {
+            chain.doFilter(request, response);
+        } // end try block
+        finally {
+            gate.release();
+        } // end finally block
+    } // end doFilterInternal()
+
+    static AdmissionGate.Priority priorityOf(String method, String path) {
+        boolean messages = path.equals("/messages") || path.startsWith("/messages/");
+
+        if (messages && !"GET".equals(method)) {
+            return AdmissionGate.Priority.WRITE;
+        } // end if statement
+        else if ("GET".equals(method) && (path.equals("/messages")
+                || (path.startsWith("/accounts/") && path.endsWith("/messages")))) {
+            return AdmissionGate.Priority.BULK;
+        } // end else if statement
+
+        return AdmissionGate.Priority.READ;
+    } // end priorityOf()
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    } // end path()
+} // end AdmissionFilter Class
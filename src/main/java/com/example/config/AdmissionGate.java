@@ -0,0 +1,182 @@
+package com.example.config;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lets at most `limit` requests run at once, and keeps up to `maxQueued` more waiting for a turn.
+ *
+ * When a request finishes, the turn goes to the request that has waited longest among the highest priority ones that
+ *      are waiting, so writes get ahead of reads and reads get ahead of bulk reads. A request is turned away (shed)
+ *      straight away when the queue is full, unless there is a lower priority request in the queue, in which case the
+ *      newest of those is shed to make room. A request that is still waiting after `maxWaitMillis` is shed too.
+ */
+public final class AdmissionGate {
+    public enum Priority { WRITE, READ, BULK }
+
+    public enum Outcome { ADMITTED, QUEUE_FULL, DISPLACED, TIMED_OUT }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Waiter>[] queues;
+    private final int limit;
+    private final int maxQueued;
+    private final long maxWaitNanos;
+    private int inFlight;
+    private int queued;
+
+    @SuppressWarnings("unchecked")
+    public AdmissionGate(int limit, int maxQueued, long maxWaitMillis) {
+        if (limit < 1 || maxQueued < 0) {
+            throw new IllegalArgumentException("limit must be at least 1 and maxQueued at least 0, they were "
+                    + limit + " and " + maxQueued);
+        } // end if statement
+
+        this.limit = limit;
+        this.maxQueued = maxQueued;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.queues = new ArrayDeque[Priority.values().length];
+
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ArrayDeque<>();
+        } // end for loop
+    } // end constructor
+
+    /**
+     * Waits for a turn to run. Every ADMITTED has to be followed by a `release()` once the request is done.
+     *
+     * @return ADMITTED, or why the request was shed.
+     */
+    public Outcome acquire(Priority priority) {
+        Waiter waiter = null;
+        lock.lock();
+
+        try {
+            if (inFlight < limit && queued == 0) {
+                inFlight++;
+                return Outcome.ADMITTED;
+            } // end if statement
+
+            if (queued >= maxQueued && !displaceBelow(priority)) {
+                return Outcome.QUEUE_FULL;
+            } // end if statement
+
+            waiter = new Waiter(lock.newCondition());
+            queues[priority.ordinal()].addLast(waiter);
+            queued++;
+            long remaining = maxWaitNanos;
+
+            while (waiter.outcome == null) {
+                if (remaining <= 0) {
+                    queues[priority.ordinal()].remove(waiter);
+                    queued--;
+                    return Outcome.TIMED_OUT;
+                } // end if statement
+
+                remaining = waiter.turn.awaitNanos(remaining);
+            } // end while loop
+
+            return waiter.outcome;
+        } // end try block
+        catch (InterruptedException e) { // the turn may have come in the meantime, then it has to be given back
+            Thread.currentThread().interrupt();
+
+            if (waiter != null && waiter.outcome == Outcome.ADMITTED) {
+                release();
+            } // end if statement
+            else if (waiter != null && waiter.outcome == null) {
+                queues[priority.ordinal()].remove(waiter);
+                queued--;
+            } // end else if statement
+
+            return Outcome.TIMED_OUT;
+        } // end catch block
+        finally {
+            lock.unlock();
+        } // end finally block
+    } // end acquire()
+
+    /**
+     * Gives the turn of a finished request to the next one waiting.
+     */
+    public void release() {
+        lock.lock();
+
+        try {
+            for (ArrayDeque<Waiter> queue : queues) {
+                Waiter next = queue.pollFirst();
+
+                if (next != null) { // the turn is handed over, so inFlight stays the same
+                    queued--;
+                    next.outcome = Outcome.ADMITTED;
+                    next.turn.signal();
+                    return;
+                } // end if statement
+            } // end for loop
+
+            inFlight--;
+        } // end try block
+        finally {
+            lock.unlock();
+        } // end finally block
+    } // end release()
+
+    /**
+     * Sheds the newest request waiting with a lower priority than `priority`, to make room for one with `priority`.
+     *
+     * @return False if there is none.
+     */
+    private boolean displaceBelow(Priority priority) {
+        for (int i = queues.length - 1; i > priority.ordinal(); i--) {
+            Waiter victim = queues[i].pollLast();
+
+            if (victim != null) {
+                queued--;
+                victim.outcome = Outcome.DISPLACED;
+                victim.turn.signal();
+                return true;
+            } // end if statement
+        } // end for loop
+
+        return false;
+    } // end displaceBelow()
+
+    public int getLimit() {
+        return limit;
+    } // end getLimit()
+
+    public int getInFlight() {
+        lock.lock();
+
+        try {
+            return inFlight;
+        } // end try block
+        finally {
+            lock.unlock();
+        } // end finally block
+    } // end getInFlight()
+
+    public int getQueued() {
+        lock.lock();
+
+        try {
+            return queued;
+        } // end try block
+        finally {
+            lock.unlock();
+        } // end finally block
+    } // end getQueued()
+
+    /**
+     * A request in the queue. Its outcome is set, under the lock, by whoever decides it.
+     */
+    private static final class Waiter {
+        private final Condition turn;
+        private Outcome outcome;
+
+        private Waiter(Condition turn) {
+            this.turn = turn;
+        } // end constructor
+    } // end Waiter Class
+} // end AdmissionGate Class
@@ -0,0 +1,24 @@
+package com.example.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatConnectorCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Tomcat settings for holding a lot of open /messages/events streams.
+ *
+ * Every open stream keeps its connection along with that connection's buffers, and the socket read and write buffers
+ *      are 8 KB each by default. The requests and events of this application are all small, so shrinking them to
+ *      `app.events.socket-buffer-size` cuts down what each idle stream costs without making normal requests slower.
+ */
+@Configuration
+public class EventStreamConnectorConfig {
+    @Bean
+    TomcatConnectorCustomizer socketBufferCustomizer(@Value("${app.events.socket-buffer-size:2048}") int bufferSize) {
+        return connector -> {
+            connector.setProperty("socket.appReadBufSize", Integer.toString(bufferSize));
+            connector.setProperty("socket.appWriteBufSize", Integer.toString(bufferSize));
+        };
+    } // end socketBufferCustomizer()
+} // end EventStreamConnectorConfig Class
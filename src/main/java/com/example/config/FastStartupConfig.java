@@ -0,0 +1,27 @@
+package com.example.config;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.sql.init.AbstractScriptDatabaseInitializer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.example.repository.MessageStore;
+
+/**
+ * Settings for when the application is started with lazy initialization (the fast-startup profile).
+ */
+@Configuration
+public class FastStartupConfig {
+    /**
+     * Beans that are not safe to create lazily, because nothing would ask for them before the first request.
+     *
+     * The script initializer has to run `data.sql` while starting, and the message stores are still created up front
+     *      so that the first request does not have to wait on them opening their databases.
+     *
+     * @return A filter that keeps these beans eager even when `spring.main.lazy-initialization` is on.
+     */
+    @Bean
+    static LazyInitializationExcludeFilter eagerStartupBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(AbstractScriptDatabaseInitializer.class, MessageStore.class);
+    } // end eagerStartupBeans()
+} // end FastStartupConfig Class
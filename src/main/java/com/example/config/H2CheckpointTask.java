@@ -0,0 +1,29 @@
+package com.example.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Forces a checkpoint of the H2 database every `app.h2.checkpoint-interval-ms` milliseconds.
+ *
+ * A checkpoint writes every change to the database file, so after a crash H2 has less to recover. This is only
+ *      used by the durable profile, an in memory database has nothing to write.
+ */
+@Component
+@ConditionalOnExpression("'${app.h2.checkpoint-interval-ms:}' != ''")
+public class H2CheckpointTask {
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public H2CheckpointTask(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    } // end constructor
+
+    @Scheduled(fixedDelayString = "${app.h2.checkpoint-interval-ms}", initialDelayString = "${app.h2.checkpoint-interval-ms}")
+    public void checkpoint() {
+        jdbcTemplate.execute("checkpoint");
+    } // end checkpoint()
+} // end H2CheckpointTask Class
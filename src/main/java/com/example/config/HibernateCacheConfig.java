@@ -0,0 +1,79 @@
+package com.example.config;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.example.entity.Account;
+import com.example.entity.Message;
+
+/**
+ * Turns on the Hibernate second-level cache and query cache, with Ehcache behind JCache as the in-process provider.
+ *
+ * Accounts almost never change so they use nonstrict-read-write, messages are patched and deleted so they use
+ *      read-write. The cache usage is set here with `hibernate.classcache.*` so that the entity classes do not need
+ *      any annotations. The queries that are cached are marked with the `org.hibernate.cacheable` hint on the
+ *      repository methods.
+ *
+ * Every region is created up front with a limit on the number of entries, set with `app.cache.*.max-entries`. The
+ *      whole cache can be turned off with `app.cache.enabled=false` (for example to compare the two).
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.cache.enabled", havingValue = "true", matchIfMissing = true)
+public class HibernateCacheConfig {
+    static final String QUERY_RESULTS_REGION = "default-query-results-region";
+    static final String UPDATE_TIMESTAMPS_REGION = "default-update-timestamps-region";
+
+    @Bean(destroyMethod = "close")
+    CacheManager hibernateCacheManager(@Value("${app.cache.accounts.max-entries:10000}") long maxAccounts,
+            @Value("${app.cache.messages.max-entries:100000}") long maxMessages,
+            @Value("${app.cache.queries.max-entries:1000}") long maxQueries) {
+        EhcacheCachingProvider provider = (EhcacheCachingProvider) Caching.getCachingProvider(
+                EhcacheCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(provider.getDefaultURI(), getClass().getClassLoader());
+
+        createRegion(cacheManager, Account.class.getName(), maxAccounts);
+        createRegion(cacheManager, Message.class.getName(), maxMessages);
+        createRegion(cacheManager, QUERY_RESULTS_REGION, maxQueries);
+        createRegion(cacheManager, UPDATE_TIMESTAMPS_REGION, 1000); // one entry per table
+        return cacheManager;
+    } // end hibernateCacheManager()
+
+    /**
+     * Creates a region with a limit on the number of entries, replacing one that was left over from an earlier
+     *      application context in the same JVM (the tests start the application many times).
+     */
+    private static void createRegion(CacheManager cacheManager, String name, long maxEntries) {
+        if (cacheManager.getCache(name) != null) {
+            cacheManager.destroyCache(name);
+        } // end if statement
+
+        cacheManager.createCache(name, Eh107Configuration.fromEhcacheCacheConfiguration(
+                CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, Object.class,
+                        ResourcePoolsBuilder.heap(maxEntries))));
+    } // end createRegion()
+
+    @Bean
+    HibernatePropertiesCustomizer hibernateCacheProperties(CacheManager hibernateCacheManager) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, "true");
+            properties.put(AvailableSettings.USE_QUERY_CACHE, "true");
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+            properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail"); // every region is created above
+            properties.put(AvailableSettings.CLASS_CACHE_PREFIX + "." + Account.class.getName(), "nonstrict-read-write");
+            properties.put(AvailableSettings.CLASS_CACHE_PREFIX + "." + Message.class.getName(), "read-write");
+        };
+    } // end hibernateCacheProperties()
+} // end HibernateCacheConfig Class
@@ -0,0 +1,12 @@
+package com.example.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Turns on @Scheduled methods for the background jobs in the application.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+} // end SchedulingConfig Class
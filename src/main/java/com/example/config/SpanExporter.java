@@ -0,0 +1,168 @@
+package com.example.config;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Takes the ended spans out of a SpanRing every `intervalMillis` and appends them to a file in the OTLP JSON format,
+ *      one ExportTraceServiceRequest per line (what the OpenTelemetry collector's file exporter writes and its
+ *      otlpjsonfile receiver reads).
+ *
+ * The writing happens on a single daemon thread of its own, the request threads never touch the file.
+ */
+final class SpanExporter implements AutoCloseable {
+    private static final Log log = LogFactory.getLog(SpanExporter.class);
+    private static final int BATCH_SIZE = 4096;
+
+    private final SpanRing ring;
+    private final Path file;
+    private final String serviceName;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final ScheduledExecutorService executor;
+    private final List<TraceSpan> batch = new ArrayList<>(BATCH_SIZE);
+    private long exported;
+
+    SpanExporter(SpanRing ring, Path file, String serviceName, long intervalMillis) {
+        this.ring = ring;
+        this.file = file;
+        this.serviceName = serviceName;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "span-exporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::export, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    } // end constructor
+
+    /**
+     * Writes every span that is in the ring, in batches of up to BATCH_SIZE per line.
+     */
+    synchronized void export() {
+        try {
+            while (ring.drain(batch, BATCH_SIZE) > 0) {
+                write(batch);
+                exported += batch.size();
+                batch.clear();
+            } // end while loop
+        } // end try block
+        catch (IOException | RuntimeException e) { // keep the thread alive, the next run tries again
+            log.warn("Could not export " + batch.size() + " spans to " + file, e);
+            batch.clear();
+        } // end catch block
+    } // end export()
+
+    long exported() {
+        return exported;
+    } // end exported()
+
+    private void write(List<TraceSpan> spans) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        } // end if statement
+
+        try (Writer writer = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+                JsonGenerator json = jsonFactory.createGenerator(writer)) {
+            json.writeStartObject();
+            json.writeArrayFieldStart("resourceSpans");
+            json.writeStartObject();
+            json.writeObjectFieldStart("resource");
+            json.writeArrayFieldStart("attributes");
+            writeAttribute(json, "service.name", serviceName);
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeArrayFieldStart("scopeSpans");
+            json.writeStartObject();
+            json.writeObjectFieldStart("scope");
+            json.writeStringField("name", "com.example");
+            json.writeEndObject();
+            json.writeArrayFieldStart("spans");
+
+            for (TraceSpan span : spans) {
+                writeSpan(json, span);
+            } // end for loop
+
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeEndObject();
+            json.flush();
+            writer.write('\n');
+        } // end try block
+    } // end write()
+
+    private static void writeSpan(JsonGenerator json, TraceSpan span) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("traceId", span.getTraceId());
+        json.writeStringField("spanId", span.getSpanId());
+
+        if (span.getParentSpanId() != null) {
+            json.writeStringField("parentSpanId", span.getParentSpanId());
+        } // end if statement
+
+        json.writeStringField("name", span.getName());
+        json.writeNumberField("kind", span.getKind());
+        json.writeStringField("startTimeUnixNano", Long.toString(span.getStartEpochNanos())); // 64-bit ints are strings
+        json.writeStringField("endTimeUnixNano", Long.toString(span.getEndEpochNanos()));
+        json.writeArrayFieldStart("attributes");
+        List<String> attributes = span.getAttributes();
+
+        for (int i = 0; i + 1 < attributes.size(); i += 2) {
+            writeAttribute(json, attributes.get(i), attributes.get(i + 1));
+        } // end for loop
+
+        json.writeEndArray();
+        json.writeObjectFieldStart("status");
+        json.writeNumberField("code", span.isError() ? 2 : 0); // STATUS_CODE_ERROR or STATUS_CODE_UNSET
+        json.writeEndObject();
+        json.writeEndObject();
+    } // end writeSpan()
+
+    private static void writeAttribute(JsonGenerator json, String key, String value) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("key", key);
+        json.writeObjectFieldStart("value");
+        json.writeStringField("stringValue", value);
+        json.writeEndObject();
+        json.writeEndObject();
+    } // end writeAttribute()
+
+    /**
+     * Stops the thread and writes whatever is left in the ring.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } // end try block
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } // end catch block
+
+        export();
+
+        if (ring.dropped() > 0) {
+            log.warn("Dropped " + ring.dropped() + " spans because the exporter fell behind");
+        } // end if statement
+    } // end close()
+} // end SpanExporter Class
@@ -0,0 +1,71 @@
+package com.example.config;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed size ring of ended spans, written by any number of request threads and read by the one exporter thread.
+ *
+ * Writers claim a sequence number with a single getAndIncrement and put the span in its slot, there are no locks and
+ *      nobody waits. If the exporter falls behind by more than the size of the ring the writers go around and replace
+ *      spans that were not exported yet. The exporter notices from the sequence numbers and counts them as dropped,
+ *      so a slow disk costs spans instead of request latency.
+ */
+final class SpanRing {
+    private final AtomicReferenceArray<TraceSpan> slots;
+    private final int mask;
+    private final AtomicLong written = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private long read; // only the exporter thread touches this
+
+    /**
+     * @param size How many spans it holds, rounded up to a power of two.
+     */
+    SpanRing(int size) {
+        int capacity = Integer.highestOneBit(Math.max(2, size - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    } // end constructor
+
+    void publish(TraceSpan span) {
+        long sequence = written.getAndIncrement();
+        span.sequence = sequence;
+        slots.lazySet((int) (sequence & mask), span);
+    } // end publish()
+
+    /**
+     * Moves the spans that are ready into `into`, oldest first. Only the exporter thread may call this.
+     *
+     * @return How many spans were moved.
+     */
+    int drain(List<TraceSpan> into, int max) {
+        int moved = 0;
+
+        while (moved < max && read < written.get()) {
+            TraceSpan span = slots.get((int) (read & mask));
+
+            if (span == null || span.sequence < read) {
+                break; // claimed but not put in its slot yet, try again on the next drain
+            } // end if statement
+
+            if (span.sequence > read) { // the writers went around, everything in between was replaced
+                dropped.add(span.sequence - read);
+                read = span.sequence;
+                continue;
+            } // end if statement
+
+            slots.compareAndSet((int) (read & mask), span, null); // let it be collected once it is exported
+            into.add(span);
+            read++;
+            moved++;
+        } // end while loop
+
+        return moved;
+    } // end drain()
+
+    long dropped() {
+        return dropped.sum();
+    } // end dropped()
+} // end SpanRing Class
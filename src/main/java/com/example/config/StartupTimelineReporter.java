@@ -0,0 +1,164 @@
+package com.example.config;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.boot.ConfigurableBootstrapContext;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.SpringApplicationRunListener;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.web.context.support.ServletRequestHandledEvent;
+
+/**
+ * Keeps track of how long each phase of starting the application takes and logs a report once it is running.
+ *
+ * The report is turned on with `app.startup.report=true` (the fast-startup profile does this). It lists the time
+ *      spent in every phase of SpringApplication.run(), the slowest beans to create, and once the first request
+ *      has been handled, the time from the start of run() to the end of that first request.
+ *
+ * Setting `app.startup.exit-on-ready=true` stops the application as soon as it is running, which is used by
+ *      `appcds.sh` to record which classes are loaded during startup.
+ *
+ * This is registered in META-INF/spring.factories so that it also works for the tests, which start the application
+ *      with SpringApplication.run() directly.
+ */
+public class StartupTimelineReporter implements SpringApplicationRunListener {
+    private static final Log log = LogFactory.getLog(StartupTimelineReporter.class);
+    private static final int SLOWEST_BEANS = 10;
+
+    private final SpringApplication application;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private long lastPhaseNanos = startNanos;
+    private BufferingApplicationStartup applicationStartup;
+    private boolean enabled;
+    private boolean exitOnReady;
+
+    public StartupTimelineReporter(SpringApplication application, String[] args) {
+        this.application = application;
+    } // end constructor
+
+    @Override
+    public void environmentPrepared(ConfigurableBootstrapContext bootstrapContext,
+            ConfigurableEnvironment environment) {
+        enabled = environment.getProperty("app.startup.report", Boolean.class, false);
+        exitOnReady = environment.getProperty("app.startup.exit-on-ready", Boolean.class, false);
+
+        if (enabled) { // record the bean creation steps, this has to happen before the context is created
+            applicationStartup = new BufferingApplicationStartup(10000);
+            application.setApplicationStartup(applicationStartup);
+        } // end if statement
+
+        mark("environment prepared");
+    } // end environmentPrepared()
+
+    @Override
+    public void contextPrepared(ConfigurableApplicationContext context) {
+        mark("context prepared");
+
+        if (enabled) {
+            context.addApplicationListener(new FirstRequestListener());
+        } // end if statement
+    } // end contextPrepared()
+
+    @Override
+    public void contextLoaded(ConfigurableApplicationContext context) {
+        mark("bean definitions loaded");
+    } // end contextLoaded()
+
+    @Override
+    public void started(ConfigurableApplicationContext context) {
+        mark("context refreshed");
+    } // end started()
+
+    @Override
+    public void running(ConfigurableApplicationContext context) {
+        mark("runners and ready listeners");
+
+        if (enabled) {
+            log.info(report());
+        } // end if statement
+
+        if (exitOnReady) {
+            System.exit(SpringApplication.exit(context));
+        } // end if statement
+    } // end running()
+
+    private void mark(String phase) {
+        long now = System.nanoTime();
+        phases.put(phase, now - lastPhaseNanos);
+        lastPhaseNanos = now;
+    } // end mark()
+
+    /**
+     * Builds the startup report out of the recorded phases and the slowest bean creation steps.
+     *
+     * @return The report as a multi line String.
+     */
+    private String report() {
+        StringBuilder report = new StringBuilder("Startup timeline (")
+                .append(millis(lastPhaseNanos - startNanos)).append(" ms in SpringApplication.run)");
+
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            report.append(String.format("%n  %-30s %8d ms", phase.getKey(), millis(phase.getValue())));
+        } // end for loop
+
+        List<StartupTimeline.TimelineEvent> beans = new ArrayList<>();
+
+        for (StartupTimeline.TimelineEvent event : applicationStartup.drainBufferedTimeline().getEvents()) {
+            if ("spring.beans.instantiate".equals(event.getStartupStep().getName())) {
+                beans.add(event);
+            } // end if statement
+        } // end for loop
+
+        beans.sort(Comparator.comparing(StartupTimeline.TimelineEvent::getDuration).reversed());
+        report.append(String.format("%n  Slowest beans (including their dependencies):"));
+
+        for (StartupTimeline.TimelineEvent bean : beans.subList(0, Math.min(SLOWEST_BEANS, beans.size()))) {
+            report.append(String.format("%n    %-50s %6d ms", beanName(bean.getStartupStep()),
+                    bean.getDuration().toMillis()));
+        } // end for loop
+
+        return report.toString();
+    } // end report()
+
+    private static String beanName(StartupStep step) {
+        for (StartupStep.Tag tag : step.getTags()) {
+            if ("beanName".equals(tag.getKey())) {
+                return tag.getValue();
+            } // end if statement
+        } // end for loop
+
+        return "?";
+    } // end beanName()
+
+    private static long millis(long nanos) {
+        return nanos / 1_000_000;
+    } // end millis()
+
+    /**
+     * Logs the time to the end of the first request that the application handles.
+     */
+    private class FirstRequestListener implements ApplicationListener<ServletRequestHandledEvent> {
+        private final AtomicBoolean seen = new AtomicBoolean();
+
+        @Override
+        public void onApplicationEvent(ServletRequestHandledEvent event) {
+            if (seen.compareAndSet(false, true)) {
+                log.info("Time to first request: " + millis(System.nanoTime() - startNanos) + " ms (" + event.getMethod()
+                        + " " + event.getRequestUrl() + " took " + event.getProcessingTimeMillis() + " ms)");
+            } // end if statement
+        } // end onApplicationEvent()
+    } // end FirstRequestListener Class
+} // end StartupTimelineReporter Class
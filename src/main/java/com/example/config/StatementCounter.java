@@ -0,0 +1,68 @@
+package com.example.config;
+
+/**
+ * Counts the SQL statements run on the current thread, and how long the database took to run them.
+ *
+ * StatementCountingDataSource adds every statement it runs to the counter that is open on the thread, and to the ones
+ *      that were open before it, so counters can be nested. StatementCountingFilter opens one for every HTTP request,
+ *      and a test can open its own around a single call:
+ *
+ *      try (StatementCounter counter = StatementCounter.start()) {
+ *          messageService.deleteMessageById(id);
+ *          Assertions.assertEquals(3, counter.getStatements());
+ *      }
+ *
+ * Only statements run on the thread that opened the counter are counted, so a request that waited for another
+ *      request's lookup (see SingleFlight) runs none of its own.
+ */
+public final class StatementCounter implements AutoCloseable {
+    private static final ThreadLocal<StatementCounter> CURRENT = new ThreadLocal<>();
+
+    private final StatementCounter outer;
+    private long statements;
+    private long nanos;
+
+    private StatementCounter(StatementCounter outer) {
+        this.outer = outer;
+    } // end constructor
+
+    /**
+     * Opens a counter on the current thread, it has to be closed on the same thread.
+     */
+    public static StatementCounter start() {
+        StatementCounter counter = new StatementCounter(CURRENT.get());
+        CURRENT.set(counter);
+        return counter;
+    } // end start()
+
+    /**
+     * Counts a statement on the counters open on the current thread, if there are any.
+     */
+    static void record(long elapsedNanos) {
+        for (StatementCounter counter = CURRENT.get(); counter != null; counter = counter.outer) {
+            counter.statements++;
+            counter.nanos += elapsedNanos;
+        } // end for loop
+    } // end record()
+
+    public long getStatements() {
+        return statements;
+    } // end getStatements()
+
+    public long getNanos() {
+        return nanos;
+    } // end getNanos()
+
+    /**
+     * Stops counting, the counter that was open before this one goes back to being the current one.
+     */
+    @Override
+    public void close() {
+        if (outer == null) {
+            CURRENT.remove();
+        } // end if statement
+        else {
+            CURRENT.set(outer);
+        } // end else statement
+    } // end close()
+} // end StatementCounter Class
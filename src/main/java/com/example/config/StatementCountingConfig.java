@@ -0,0 +1,69 @@
+package com.example.config;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Puts the main data source behind a StatementCountingDataSource and counts the statements of every HTTP request with
+ *      a StatementCountingFilter, when `app.sql.instrumentation.enabled=true`. It is off by default since it adds a
+ *      proxy to every connection and statement, the test and bench runs turn it on (see the pom).
+ *
+ * Statements slower than `app.sql.slow-query-ms` are logged, and `app.sql.debug-header=true` adds the count and the
+ *      database time of every request to its response headers. The data source is wrapped before anything else wraps
+ *      it (eg. AdaptivePoolConfig), so what is counted is what actually runs on the pool's connections. The shards of
+ *      the sharded message store have their own pools and are not counted.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.sql.instrumentation.enabled", havingValue = "true")
+public class StatementCountingConfig {
+    @Bean
+    static DataSourceWrapper statementCountingDataSourceWrapper(Environment environment) {
+        return new DataSourceWrapper(environment.getProperty("app.sql.slow-query-ms", Long.class, 200L));
+    } // end statementCountingDataSourceWrapper()
+
+    @Bean
+    FilterRegistrationBean<StatementCountingFilter> statementCountingFilter(MeterRegistry meterRegistry,
+            @Value("${app.sql.debug-header:false}") boolean debugHeader) {
+        FilterRegistrationBean<StatementCountingFilter> registration = new FilterRegistrationBean<>(
+                new StatementCountingFilter(debugHeader, meterRegistry));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE); // around everything else, so nothing is missed
+        return registration;
+    } // end statementCountingFilter()
+
+    /**
+     * Wraps the data source. It is Ordered, which makes it run before the post processors that are not (and the
+     *      @Bean method has to return this type rather than BeanPostProcessor, or Spring cannot see that).
+     */
+    static final class DataSourceWrapper implements BeanPostProcessor, Ordered {
+        private final long slowQueryMillis;
+
+        private DataSourceWrapper(long slowQueryMillis) {
+            this.slowQueryMillis = slowQueryMillis;
+        } // end constructor
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!"dataSource".equals(beanName) || !(bean instanceof DataSource)
+                    || bean instanceof StatementCountingDataSource) {
+                return bean;
+            } // end if statement
+
+            return new StatementCountingDataSource((DataSource) bean, slowQueryMillis);
+        } // end postProcessAfterInitialization()
+
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        } // end getOrder()
+    } // end DataSourceWrapper Class
+} // end StatementCountingConfig Class
@@ -0,0 +1,170 @@
+package com.example.config;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Counts and times every SQL statement that runs on a connection from this data source.
+ *
+ * The connections and the statements they create are wrapped, and every `execute...()` call (a batch counts once) is
+ *      timed and added to the StatementCounter open on the thread. A statement that takes longer than the slow query
+ *      threshold is logged at WARN with its SQL, the parameters that were bound to it and the first method of the
+ *      application that was on the stack when it ran, which is where the query came from. When the request is being
+ *      traced (see Tracer) every statement also gets a span of its own.
+ */
+public class StatementCountingDataSource extends DelegatingDataSource {
+    private static final Log log = LogFactory.getLog(StatementCountingDataSource.class);
+
+    private final long slowQueryNanos;
+
+    /**
+     * @param target The data source to wrap.
+     * @param slowQueryMillis Statements that take longer than this are logged, a negative number logs none.
+     */
+    public StatementCountingDataSource(DataSource target, long slowQueryMillis) {
+        super(target);
+        this.slowQueryNanos = slowQueryMillis < 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(slowQueryMillis);
+    } // end constructor
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrapConnection(obtainTargetDataSource().getConnection());
+    } // end getConnection()
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrapConnection(obtainTargetDataSource().getConnection(username, password));
+    } // end getConnection()
+
+    private Connection wrapConnection(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    if ("equals".equals(method.getName())) { // Spring matches connections to transactions this way
+                        return proxy == args[0];
+                    } // end if statement
+                    if ("hashCode".equals(method.getName())) {
+                        return System.identityHashCode(proxy);
+                    } // end if statement
+
+                    Object result = invoke(connection, method, args);
+
+                    if (result instanceof Statement && (method.getName().startsWith("prepare")
+                            || method.getName().equals("createStatement"))) {
+                        return wrapStatement((Statement) result, method.getName().startsWith("prepare")
+                                ? (String) args[0] : null);
+                    } // end if statement
+
+                    return result;
+                });
+    } // end wrapConnection()
+
+    /**
+     * @param sql The SQL it was prepared with, or null for a plain Statement that is given its SQL when it runs.
+     */
+    private Statement wrapStatement(Statement statement, String sql) {
+        Class<?> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        Map<Integer, Object> parameters = new TreeMap<>();
+
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] {type},
+                (proxy, method, args) -> {
+                    String name = method.getName();
+
+                    if (name.equals("equals")) { // Hibernate keeps track of its statements in a map
+                        return proxy == args[0];
+                    } // end if statement
+                    if (name.equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    } // end if statement
+
+                    if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer
+                            && sql != null) { // a bind parameter, eg. setInt(1, 9999)
+                        parameters.put((Integer) args[0], args[1]);
+                    } // end if statement
+                    else if (name.equals("clearParameters")) {
+                        parameters.clear();
+                    } // end else if statement
+                    else if (name.startsWith("execute")) {
+                        String executed = sql != null ? sql
+                                : args != null && args.length > 0 ? String.valueOf(args[0]) : "batch";
+                        TraceSpan span = Tracer.isTracing() ? Tracer.startChild("SQL " + verb(executed),
+                                TraceSpan.KIND_CLIENT).setAttribute("db.statement", executed) : null;
+                        long started = System.nanoTime();
+
+                        try {
+                            return invoke(statement, method, args);
+                        } // end try block
+                        catch (Throwable e) {
+                            if (span != null) {
+                                span.setError(e);
+                            } // end if statement
+                            throw e;
+                        } // end catch block
+                        finally {
+                            long elapsed = System.nanoTime() - started;
+                            StatementCounter.record(elapsed);
+                            Tracer.end(span);
+
+                            if (elapsed > slowQueryNanos) {
+                                logSlowQuery(elapsed, executed, parameters);
+                            } // end if statement
+                        } // end finally block
+                    } // end else if statement
+
+                    return invoke(statement, method, args);
+                });
+    } // end wrapStatement()
+
+    /**
+     * @return The first word of the SQL, eg. select.
+     */
+    private static String verb(String sql) {
+        String trimmed = sql.trim();
+        int space = trimmed.indexOf(' ');
+        return (space < 0 ? trimmed : trimmed.substring(0, space)).toLowerCase();
+    } // end verb()
+
+    private void logSlowQuery(long elapsedNanos, String sql, Map<Integer, Object> parameters) {
+        log.warn(String.format("Slow SQL (%.1f ms) at %s: %s%s", elapsedNanos / 1e6, callSite(), sql,
+                parameters.isEmpty() ? "" : " " + parameters.values()));
+    } // end logSlowQuery()
+
+    /**
+     * @return The first method on the stack that is part of the application and not this class or a Spring proxy.
+     */
+    private static String callSite() {
+        for (StackTraceElement frame : new Throwable().getStackTrace()) {
+            if (frame.getClassName().startsWith("com.example.")
+                    && !frame.getClassName().startsWith(StatementCountingDataSource.class.getName())
+                    && !frame.getClassName().contains("$$")) {
+                return frame.toString();
+            } // end if statement
+        } // end for loop
+
+        return "unknown";
+    } // end callSite()
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } // end try block
+        catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        } // end catch block
+    } // end invoke()
+} // end StatementCountingDataSource Class
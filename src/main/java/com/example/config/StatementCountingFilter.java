@@ -0,0 +1,111 @@
+package com.example.config;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Counts the SQL statements every HTTP request runs (see StatementCounter).
+ *
+ * The count goes into the `app.sql.statements-per-request` summary and the DEBUG log. With `debugHeader` on, the
+ *      response also gets an `X-SQL-Statements` header with the count and an `X-SQL-Time-Ms` header with how long the
+ *      database took. The headers are added just before the body starts being written, so statements run after that
+ *      (eg. while streaming events) are not in them.
+ */
+public class StatementCountingFilter extends OncePerRequestFilter {
+    public static final String STATEMENTS_HEADER = "X-SQL-Statements";
+    public static final String TIME_HEADER = "X-SQL-Time-Ms";
+    private static final Log log = LogFactory.getLog(StatementCountingFilter.class);
+
+    private final boolean debugHeader;
+    private final DistributionSummary statementsPerRequest;
+
+    public StatementCountingFilter(boolean debugHeader, MeterRegistry meterRegistry) {
+        this.debugHeader = debugHeader;
+        this.statementsPerRequest = DistributionSummary.builder("app.sql.statements-per-request")
+                .description("SQL statements run by one HTTP request").register(meterRegistry);
+    } // end constructor
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        try (StatementCounter counter = StatementCounter.start()) {
+            CountingResponse counting = new CountingResponse(response, counter);
+            chain.doFilter(request, debugHeader ? counting : response);
+            counting.addHeaders(); // nothing was written, eg. an empty 200
+
+            statementsPerRequest.record(counter.getStatements());
+
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("%s %s ran %d SQL statements in %.3f ms", request.getMethod(),
+                        request.getRequestURI(), counter.getStatements(), counter.getNanos() / 1e6));
+            } // end if statement
+        } // end try block
+    } // end doFilterInternal()
+
+    /**
+     * Adds the headers the first time anything is about to be written to the response.
+     */
+    private final class CountingResponse extends HttpServletResponseWrapper {
+        private final StatementCounter counter;
+        private boolean added;
+
+        private CountingResponse(HttpServletResponse response, StatementCounter counter) {
+            super(response);
+            this.counter = counter;
+        } // end constructor
+
+        private void addHeaders() {
+            if (added || !debugHeader || isCommitted()) {
+                return;
+            } // end if statement
+
+            added = true;
+            setHeader(STATEMENTS_HEADER, Long.toString(counter.getStatements()));
+            setHeader(TIME_HEADER, String.format("%.3f", counter.getNanos() / 1e6));
+        } // end addHeaders()
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            addHeaders();
+            return super.getOutputStream();
+        } // end getOutputStream()
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            addHeaders();
+            return super.getWriter();
+        } // end getWriter()
+
+        @Override
+        public void flushBuffer() throws IOException {
+            addHeaders();
+            super.flushBuffer();
+        } // end flushBuffer()
+
+        @Override
+        public void sendError(int status) throws IOException {
+            addHeaders();
+            super.sendError(status);
+        } // end sendError()
+
+        @Override
+        public void sendError(int status, String message) throws IOException {
+            addHeaders();
+            super.sendError(status, message);
+        } // end sendError()
+    } // end CountingResponse Class
+} // end StatementCountingFilter Class
@@ -0,0 +1,137 @@
+package com.example.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One timed piece of work in a trace: the whole HTTP request, a handler, a service or store method, or a statement.
+ *
+ * A span is only touched by the thread that started it until it ends, after that it is handed to the SpanRing and
+ *      only read by the exporter.
+ */
+public final class TraceSpan {
+    public static final int KIND_INTERNAL = 1;
+    public static final int KIND_SERVER = 2;
+    public static final int KIND_CLIENT = 3;
+
+    final Tracer tracer;
+    final TraceSpan parent; // the span that was current when this one started, null for the request itself
+    private final long traceIdHigh;
+    private final long traceIdLow;
+    private final long spanId;
+    private final long parentSpanId; // 0 if there is no parent
+    private final int kind;
+    private final long startEpochNanos;
+    private final long startNanos;
+    private String name;
+    private long endEpochNanos;
+    private boolean error;
+    private List<String> attributes; // key, value, key, value...
+    long sequence; // set when it goes into the ring
+
+    TraceSpan(Tracer tracer, TraceSpan parent, long traceIdHigh, long traceIdLow, long spanId, long parentSpanId,
+            String name, int kind, long startEpochNanos, long startNanos) {
+        this.tracer = tracer;
+        this.parent = parent;
+        this.traceIdHigh = traceIdHigh;
+        this.traceIdLow = traceIdLow;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.kind = kind;
+        this.startEpochNanos = startEpochNanos;
+        this.startNanos = startNanos;
+    } // end constructor
+
+    public TraceSpan setAttribute(String key, Object value) {
+        if (attributes == null) {
+            attributes = new ArrayList<>(8);
+        } // end if statement
+
+        attributes.add(key);
+        attributes.add(String.valueOf(value));
+        return this;
+    } // end setAttribute()
+
+    public void setName(String name) {
+        this.name = name;
+    } // end setName()
+
+    /**
+     * Marks the span as failed, with the type of the exception that was thrown.
+     */
+    public void setError(Throwable e) {
+        markError();
+        setAttribute("exception.type", e.getClass().getName());
+    } // end setError()
+
+    public void markError() {
+        error = true;
+    } // end markError()
+
+    void end(long nanos) {
+        endEpochNanos = startEpochNanos + (nanos - startNanos);
+    } // end end()
+
+    /**
+     * @return The trace id as 32 hex digits, the way it is written in a traceparent header.
+     */
+    public String getTraceId() {
+        return hex(traceIdHigh) + hex(traceIdLow);
+    } // end getTraceId()
+
+    public String getSpanId() {
+        return hex(spanId);
+    } // end getSpanId()
+
+    /**
+     * @return The id of the parent span as 16 hex digits, or null for the first span of the trace.
+     */
+    public String getParentSpanId() {
+        return parentSpanId == 0 ? null : hex(parentSpanId);
+    } // end getParentSpanId()
+
+    long traceIdHigh() {
+        return traceIdHigh;
+    } // end traceIdHigh()
+
+    long traceIdLow() {
+        return traceIdLow;
+    } // end traceIdLow()
+
+    long spanId() {
+        return spanId;
+    } // end spanId()
+
+    public String getName() {
+        return name;
+    } // end getName()
+
+    public int getKind() {
+        return kind;
+    } // end getKind()
+
+    public long getStartEpochNanos() {
+        return startEpochNanos;
+    } // end getStartEpochNanos()
+
+    public long getEndEpochNanos() {
+        return endEpochNanos;
+    } // end getEndEpochNanos()
+
+    public boolean isError() {
+        return error;
+    } // end isError()
+
+    /**
+     * @return The attributes as key, value, key, value...
+     */
+    public List<String> getAttributes() {
+        return attributes == null ? List.of() : attributes;
+    } // end getAttributes()
+
+    static String hex(long value) {
+        String digits = Long.toHexString(value);
+        return "0000000000000000".substring(digits.length()) + digits;
+    } // end hex()
+} // end TraceSpan Class
@@ -0,0 +1,143 @@
+package com.example.config;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Starts and ends the spans of sampled requests, and keeps track of the span that is current on each thread.
+ *
+ * TracingFilter starts a span for every request that is sampled: requests with a W3C `traceparent` header follow the
+ *      caller's sampling decision and keep its trace id, the rest are sampled at `sampleRate`. Everything below the
+ *      request (handlers, services, stores and statements) only starts a span if there is one current on the
+ *      thread, so a request that is not sampled costs one ThreadLocal read at each of those places.
+ * Spans that end go into a SpanRing and are written out by a SpanExporter on its own thread.
+ */
+public final class Tracer {
+    private static final ThreadLocal<TraceSpan> CURRENT = new ThreadLocal<>();
+
+    private final SpanRing ring;
+    private final double sampleRate;
+    private final long epochNanosAtStart = System.currentTimeMillis() * 1_000_000L;
+    private final long nanosAtStart = System.nanoTime();
+
+    Tracer(SpanRing ring, double sampleRate) {
+        this.ring = ring;
+        this.sampleRate = sampleRate;
+    } // end constructor
+
+    /**
+     * Starts the span of an incoming request, if it is sampled, and makes it current.
+     *
+     * @param traceparent The request's traceparent header, or null.
+     * @return The span, or null if the request is not sampled.
+     */
+    TraceSpan startRequest(String traceparent, String name) {
+        long traceIdHigh;
+        long traceIdLow;
+        long parentSpanId = 0;
+        long[] parsed = parseTraceparent(traceparent);
+
+        if (parsed != null) { // carry on the caller's trace, if the caller sampled it
+            if (parsed[3] == 0) {
+                return null;
+            } // end if statement
+
+            traceIdHigh = parsed[0];
+            traceIdLow = parsed[1];
+            parentSpanId = parsed[2];
+        } // end if statement
+        else {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+
+            if (random.nextDouble() >= sampleRate) {
+                return null;
+            } // end if statement
+
+            traceIdHigh = random.nextLong();
+            traceIdLow = nonZero(random.nextLong());
+        } // end else statement
+
+        return start(null, traceIdHigh, traceIdLow, parentSpanId, name, TraceSpan.KIND_SERVER);
+    } // end startRequest()
+
+    /**
+     * Starts a span under the one that is current on this thread and makes it current.
+     *
+     * @return The span, or null if no sampled request is being handled on this thread.
+     */
+    public static TraceSpan startChild(String name, int kind) {
+        TraceSpan parent = CURRENT.get();
+
+        if (parent == null) {
+            return null;
+        } // end if statement
+
+        return parent.tracer.start(parent, parent.traceIdHigh(), parent.traceIdLow(), parent.spanId(), name, kind);
+    } // end startChild()
+
+    /**
+     * @return True if a sampled request is being handled on this thread.
+     */
+    public static boolean isTracing() {
+        return CURRENT.get() != null;
+    } // end isTracing()
+
+    /**
+     * Ends a span and makes its parent current again.
+     *
+     * @param span The span, null is ignored so the result of `startChild()` can be passed straight in.
+     */
+    public static void end(TraceSpan span) {
+        if (span == null) {
+            return;
+        } // end if statement
+
+        span.end(System.nanoTime());
+
+        if (span.parent == null) {
+            CURRENT.remove();
+        } // end if statement
+        else {
+            CURRENT.set(span.parent);
+        } // end else statement
+
+        span.tracer.ring.publish(span);
+    } // end end()
+
+    private TraceSpan start(TraceSpan parent, long traceIdHigh, long traceIdLow, long parentSpanId, String name,
+            int kind) {
+        long now = System.nanoTime();
+        TraceSpan span = new TraceSpan(this, parent, traceIdHigh, traceIdLow,
+                nonZero(ThreadLocalRandom.current().nextLong()), parentSpanId, name, kind,
+                epochNanosAtStart + (now - nanosAtStart), now);
+        CURRENT.set(span);
+        return span;
+    } // end start()
+
+    /**
+     * Parses `00-{32 hex trace id}-{16 hex parent span id}-{2 hex flags}`.
+     *
+     * @return The trace id (two longs), the parent span id and the sampled flag, or null if it is missing or invalid.
+     */
+    static long[] parseTraceparent(String traceparent) {
+        if (traceparent == null || traceparent.length() < 55 || traceparent.charAt(2) != '-'
+                || traceparent.charAt(35) != '-' || traceparent.charAt(52) != '-'
+                || traceparent.startsWith("ff")) {
+            return null;
+        } // end if statement
+
+        try {
+            long[] parsed = new long[] {Long.parseUnsignedLong(traceparent.substring(3, 19), 16),
+                    Long.parseUnsignedLong(traceparent.substring(19, 35), 16),
+                    Long.parseUnsignedLong(traceparent.substring(36, 52), 16),
+                    Integer.parseInt(traceparent.substring(53, 55), 16) & 1};
+            return (parsed[0] == 0 && parsed[1] == 0) || parsed[2] == 0 ? null : parsed; // all zeros is invalid
+        } // end try block
+        catch (NumberFormatException e) {
+            return null;
+        } // end catch block
+    } // end parseTraceparent()
+
+    private static long nonZero(long value) {
+        return value == 0 ? 1 : value;
+    } // end nonZero()
+} // end Tracer Class
@@ -0,0 +1,101 @@
+package com.example.config;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Paths;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.repository.AccountStore;
+import com.example.repository.MessageStore;
+import com.example.service.AccountService;
+import com.example.service.MessageService;
+
+/**
+ * Traces sampled requests when `app.tracing.enabled=true` (see Tracer).
+ *
+ * A request gets a span from TracingFilter, then one for the controller handler, one for each AccountService and
+ *      MessageService method, one for each call into the account and message stores, and one for every SQL statement
+ *      (from StatementCountingDataSource, so only while `app.sql.instrumentation.enabled` is on). The handler, service
+ *      and store spans come from an advisor that Spring's auto proxying puts in front of those beans.
+ *
+ * `app.tracing.sample-rate` is the share of requests without a traceparent header that are traced. The spans are kept
+ *      in a ring of `app.tracing.buffer-size` and appended to `app.tracing.file` every `app.tracing.export-interval-ms`.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.tracing.enabled", havingValue = "true")
+public class TracingConfig {
+    @Bean
+    SpanRing spanRing(@Value("${app.tracing.buffer-size:65536}") int bufferSize) {
+        return new SpanRing(bufferSize);
+    } // end spanRing()
+
+    @Bean
+    Tracer tracer(SpanRing spanRing, @Value("${app.tracing.sample-rate:0.01}") double sampleRate) {
+        return new Tracer(spanRing, sampleRate);
+    } // end tracer()
+
+    @Bean(destroyMethod = "close")
+    SpanExporter spanExporter(SpanRing spanRing,
+            @Value("${app.tracing.file:./data/traces/spans.jsonl}") String file,
+            @Value("${app.tracing.service-name:social-media}") String serviceName,
+            @Value("${app.tracing.export-interval-ms:1000}") long intervalMillis) {
+        return new SpanExporter(spanRing, Paths.get(file), serviceName, intervalMillis);
+    } // end spanExporter()
+
+    @Bean
+    FilterRegistrationBean<TracingFilter> tracingFilter(Tracer tracer) {
+        FilterRegistrationBean<TracingFilter> registration = new FilterRegistrationBean<>(new TracingFilter(tracer));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE); // the request span covers every other filter
+        return registration;
+    } // end tracingFilter()
+
+    @Bean
+    static Advisor tracingAdvisor() {
+        MethodInterceptor interceptor = invocation -> {
+            if (!Tracer.isTracing()) { // this request is not being traced
+                return invocation.proceed();
+            } // end if statement
+
+            TraceSpan span = Tracer.startChild(ClassUtils.getUserClass(invocation.getThis()).getSimpleName() + "."
+                    + invocation.getMethod().getName(), TraceSpan.KIND_INTERNAL);
+
+            try {
+                return invocation.proceed();
+            } // end try block
+            catch (Throwable e) {
+                span.setError(e);
+                throw e;
+            } // end catch block
+            finally {
+                Tracer.end(span);
+            } // end finally block
+        };
+
+        return new DefaultPointcutAdvisor(new StaticMethodMatcherPointcut() {
+            @Override
+            public boolean matches(Method method, Class<?> targetClass) {
+                return Modifier.isPublic(method.getModifiers()) && method.getDeclaringClass() != Object.class
+                        && isTraced(targetClass);
+            } // end matches()
+        }, interceptor);
+    } // end tracingAdvisor()
+
+    private static boolean isTraced(Class<?> type) {
+        return type == AccountService.class || type == MessageService.class
+                || MessageStore.class.isAssignableFrom(type) || AccountStore.class.isAssignableFrom(type)
+                || AnnotatedElementUtils.hasAnnotation(type, RestController.class);
+    } // end isTraced()
+} // end TracingConfig Class
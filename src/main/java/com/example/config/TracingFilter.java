@@ -0,0 +1,63 @@
+package com.example.config;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Starts a span for every sampled HTTP request (see Tracer) and gives the response an `X-Trace-Id` header, so a slow
+ *      response can be looked up in the exported spans.
+ *
+ * The span is named after the route that handled the request (eg. `GET /messages/{messageId}`) rather than the path,
+ *      so requests for different ids end up under the same name.
+ */
+public class TracingFilter extends OncePerRequestFilter {
+    public static final String TRACEPARENT_HEADER = "traceparent";
+    public static final String TRACE_ID_HEADER = "X-Trace-Id";
+
+    private final Tracer tracer;
+
+    public TracingFilter(Tracer tracer) {
+        this.tracer = tracer;
+    } // end constructor
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        TraceSpan span = tracer.startRequest(request.getHeader(TRACEPARENT_HEADER), request.getMethod());
+
+        if (span == null) { // not sampled
+            chain.doFilter(request, response);
+            return;
+        } // end if statement
+
+        response.setHeader(TRACE_ID_HEADER, span.getTraceId());
+
+        try {
+            chain.doFilter(request, response);
+        } // end try block
+        catch (IOException | ServletException | RuntimeException e) {
+            span.setError(e);
+            throw e;
+        } // end catch block
+        finally {
+            Object route = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            span.setName(request.getMethod() + " " + (route != null ? route : request.getRequestURI()));
+            span.setAttribute("http.method", request.getMethod());
+            span.setAttribute("http.target", request.getRequestURI());
+            span.setAttribute("http.status_code", response.getStatus());
+
+            if (response.getStatus() >= 500) {
+                span.markError();
+            } // end if statement
+
+            Tracer.end(span);
+        } // end finally block
+    } // end doFilterInternal()
+} // end TracingFilter Class
@@ -0,0 +1,209 @@
+package com.example.controller;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+/**
+ * Remembers the responses of POST requests that were sent with an `Idempotency-Key` header, so that a client that
+ *      retries after a timeout gets the original response back instead of adding a second message or getting a 409.
+ *
+ * The first request with a key runs the handler, any other request with the same key that shows up while it is still
+ *      running waits for it (up to `app.idempotency.wait-ms`) and then gets the same response.
+ * A key belongs to the account the request is for, so two clients that happen to pick the same key do not get each
+ *      other's responses.
+ * Keys are kept for `app.idempotency.ttl-ms` and at most `app.idempotency.max-keys` are kept, the oldest finished keys
+ *      are forgotten first. A key whose request is still running is never forgotten, since its retries would run the
+ *      request a second time, so when every kept key is still running new keys get a 503 instead. The keys only live
+ *      in memory so they are lost on a restart.
+ */
+@Component
+public class IdempotencyKeyStore {
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final Map<List<String>, Entry> entries = new LinkedHashMap<>(); // oldest first, guarded by this
+    private final long ttlNanos;
+    private final int maxKeys;
+    private final long waitMillis;
+
+    @Autowired
+    public IdempotencyKeyStore(@Value("${app.idempotency.ttl-ms:86400000}") long ttlMillis,
+            @Value("${app.idempotency.max-keys:10000}") int maxKeys,
+            @Value("${app.idempotency.wait-ms:30000}") long waitMillis) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxKeys = maxKeys;
+        this.waitMillis = waitMillis;
+    } // end constructor
+
+    /**
+     * Runs a handler once per key.
+     *
+     * @param scope The endpoint, so the same key can be used on different endpoints.
+     * @param owner The account the request is for (eg. the postedBy of a message, or the username that is registered).
+     * @param key The value of the Idempotency-Key header, or null to always run the handler.
+     * @param fingerprint The fingerprint of the request body (see fingerprint()), a key that is sent again with a
+     *      different body gets a 422.
+     * @param handler Handles the request the first time the key is seen.
+     * @return The response of the handler, a copy of the original response if the key was seen before, or a 503 if
+     *      every kept key is still running.
+     */
+    public ResponseEntity execute(String scope, Object owner, String key, byte[] fingerprint,
+            Supplier<ResponseEntity> handler) {
+        if (key == null) {
+            return handler.get();
+        } // end if statement
+
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.status(400).body("Client Error");
+        } // end if statement
+
+        List<String> id = List.of(scope, String.valueOf(owner), key);
+        Entry entry = new Entry(fingerprint, System.nanoTime());
+        Entry existing;
+
+        synchronized (this) {
+            boolean room = evict(entry.createdNanos);
+            existing = entries.get(id);
+
+            if (existing == null && !room) { // a retry of a running request still gets to wait for it
+                return ResponseEntity.status(503).header("Retry-After", "1").body("Service Unavailable");
+            } // end if statement
+
+            if (existing == null) {
+                entries.put(id, entry);
+            } // end if statement
+        } // end synchronized block
+
+        if (existing != null) {
+            return replay(existing, fingerprint);
+        } // end if statement
+
+        try {
+            ResponseEntity response = handler.get();
+            entry.response.complete(response);
+            return response;
+        } // end try block
+        catch (RuntimeException e) { // forget the key so that the client can try again
+            synchronized (this) {
+                entries.remove(id, entry);
+            } // end synchronized block
+            entry.response.completeExceptionally(e);
+            throw e;
+        } // end catch block
+    } // end execute()
+
+    /**
+     * Waits for the first request with the key to finish and copies its response.
+     */
+    private ResponseEntity replay(Entry existing, byte[] fingerprint) {
+        if (!MessageDigest.isEqual(existing.fingerprint, fingerprint)) { // the key was used for a different request
+            return ResponseEntity.status(422).body("Unprocessable Entity");
+        } // end if statement
+
+        try {
+            ResponseEntity original = existing.response.get(waitMillis, TimeUnit.MILLISECONDS);
+            return ResponseEntity.status(original.getStatusCode()).headers(original.getHeaders())
+                    .header(REPLAYED_HEADER, "true").body(original.getBody());
+        } // end try block
+        catch (TimeoutException e) { // the first request is still going
+            return ResponseEntity.status(409).body("Conflict");
+        } // end catch block
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(409).body("Conflict");
+        } // end catch block
+        catch (ExecutionException e) { // the first request failed, so this one is not a duplicate of anything
+            return ResponseEntity.status(409).body("Conflict");
+        } // end catch block
+    } // end replay()
+
+    /**
+     * Drops finished keys that are older than the TTL and then the oldest finished keys until there is room for one
+     *      more. Keys are kept in the order they were added, so the expired ones are always at the front, behind at
+     *      most the few requests that are still running.
+     *
+     * @return False if there is no room, because every key that is left is still running.
+     */
+    private boolean evict(long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+
+        while (iterator.hasNext()) {
+            Entry oldest = iterator.next();
+
+            if (now - oldest.createdNanos < ttlNanos && entries.size() < maxKeys) {
+                return true;
+            } // end if statement
+
+            if (oldest.response.isDone()) { // a running request keeps its key until it is done
+                iterator.remove();
+            } // end if statement
+        } // end while loop
+
+        return entries.size() < maxKeys;
+    } // end evict()
+
+    /**
+     * The SHA-256 of the fields of a request body. Every field is written with its length first (null has its own
+     *      mark), so fields that only differ in where one ends and the next starts still get different fingerprints,
+     *      and the body itself (eg. a password) is not kept.
+     *
+     * @param fields The fields that make up the body, in a fixed order.
+     * @return The fingerprint to pass to execute().
+     */
+    public static byte[] fingerprint(Object... fields) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            for (Object field : fields) {
+                if (field == null) {
+                    digest.update(ByteBuffer.allocate(4).putInt(-1).array());
+                    continue;
+                } // end if statement
+
+                byte[] bytes = String.valueOf(field).getBytes(StandardCharsets.UTF_8);
+                digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+                digest.update(bytes);
+            } // end for loop
+
+            return digest.digest();
+        } // end try block
+        catch (NoSuchAlgorithmException e) { // every Java runtime has SHA-256
+            throw new IllegalStateException(e);
+        } // end catch block
+    } // end fingerprint()
+
+    /**
+     * @return How many keys are remembered right now.
+     */
+    public synchronized int size() {
+        return entries.size();
+    } // end size()
+
+    private static final class Entry {
+        private final byte[] fingerprint;
+        private final long createdNanos;
+        private final CompletableFuture<ResponseEntity> response = new CompletableFuture<>();
+
+        private Entry(byte[] fingerprint, long createdNanos) {
+            this.fingerprint = fingerprint;
+            this.createdNanos = createdNanos;
+        } // end constructor
+    } // end Entry Class
+} // end IdempotencyKeyStore Class
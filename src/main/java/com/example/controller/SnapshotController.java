@@ -0,0 +1,75 @@
+package com.example.controller;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.service.SnapshotService;
+
+/**
+ * The admin handlers for taking and restoring snapshots. A restore replaces every account and message and there is
+ *      no login on these handlers, so they are only there when `app.snapshot.admin-enabled=true`.
+ */
+@RestController
+@ConditionalOnProperty(name = "app.snapshot.admin-enabled", havingValue = "true")
+public class SnapshotController {
+    private final SnapshotService snapshotService;
+
+    @Autowired
+    public SnapshotController(SnapshotService snapshotService) {
+        this.snapshotService = snapshotService;
+    } // end constructor
+
+    /**
+     * A handler for a POST request made to '/admin/snapshots'.
+     *
+     * Writes every account and message to a snapshot file in `app.snapshot.dir`.
+     *
+     * @param name The name of the file, by default `snapshot-{current time in milliseconds}.bin`.
+     * @return A ResponseEntity with status code 200 along with what was written, status code 400 if the name is not a
+     *      plain file name, or 500 if the file could not be written.
+     */
+    @PostMapping("/admin/snapshots")
+    public ResponseEntity writeSnapshot(@RequestParam(value = "name", required = false) String name) {
+        try {
+            String file = name != null ? name : "snapshot-" + System.currentTimeMillis() + ".bin";
+            return ResponseEntity.status(200).body(snapshotService.write(file));
+        } // end try block
+        catch (IllegalArgumentException e) {
+            return ResponseEntity.status(400).body("Client Error " + e.getMessage());
+        } // end catch block
+        catch (IOException e) {
+            return ResponseEntity.status(500).body("Server Error " + e.getMessage());
+        } // end catch block
+    } // end writeSnapshot handler
+
+    /**
+     * A handler for a POST request made to '/admin/snapshots/{name}/restore'.
+     *
+     * Replaces every account and message with the ones in the snapshot. If the file is not a valid snapshot nothing
+     *      is changed.
+     *
+     * @param name The name of the snapshot file in `app.snapshot.dir`.
+     * @return A ResponseEntity with status code 200 along with what was restored, status code 404 if there is no such
+     *      snapshot, or 400 if the name or the file is not valid.
+     */
+    @PostMapping("/admin/snapshots/{name}/restore")
+    public ResponseEntity restoreSnapshot(@PathVariable("name") String name) {
+        try {
+            return ResponseEntity.status(200).body(snapshotService.restore(name));
+        } // end try block
+        catch (NoSuchFileException e) {
+            return ResponseEntity.status(404).body("Not Found");
+        } // end catch block
+        catch (IllegalArgumentException | IOException e) {
+            return ResponseEntity.status(400).body("Client Error " + e.getMessage());
+        } // end catch block
+    } // end restoreSnapshot handler
+} // end SnapshotController Class
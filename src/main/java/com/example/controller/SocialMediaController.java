@@ -1,5 +1,7 @@
 package com.example.controller;
 
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -8,23 +10,41 @@ import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.example.entity.Account;
 import com.example.entity.Message;
 import com.example.service.AccountService;
+import com.example.service.AccountStatsService;
+import com.example.service.BulkDeleteJob;
+import com.example.service.BulkDeleteService;
+import com.example.service.MessageEventService;
 import com.example.service.MessageService;
+import com.example.service.UsernameMatch;
 
 @RestController
 public class SocialMediaController {
 
     private final AccountService accountService;
     private final MessageService messageService;
+    private final BulkDeleteService bulkDeleteService;
+    private final AccountStatsService accountStatsService;
+    private final MessageEventService messageEventService;
+    private final IdempotencyKeyStore idempotencyKeyStore;
 
     @Autowired
-    public SocialMediaController(AccountService accountService, MessageService messageService) {
+    public SocialMediaController(AccountService accountService, MessageService messageService,
+            BulkDeleteService bulkDeleteService, AccountStatsService accountStatsService,
+            MessageEventService messageEventService, IdempotencyKeyStore idempotencyKeyStore) {
         this.accountService = accountService;
         this.messageService = messageService;
+        this.bulkDeleteService = bulkDeleteService;
+        this.accountStatsService = accountStatsService;
+        this.messageEventService = messageEventService;
+        this.idempotencyKeyStore = idempotencyKeyStore;
     } // end constructor
 
     /**
@@ -38,11 +58,20 @@ public class SocialMediaController {
      * The function returns a ResponseEntity so anything that is returned above is done through the ResponseEntity. 
      * 
      * @param account The Account that needs to be added to the database. 
+     * @param idempotencyKey An optional key picked by the client, sending the same key again returns the first response.
      * @return A ResponseEntity that contains a status code and information about the results of attempting to add the account
      *         to the database. 
      */
      @PostMapping("/register")
-     public ResponseEntity register(@RequestBody Account account) {
+     public ResponseEntity register(@RequestBody Account account,
+            @RequestHeader(value = IdempotencyKeyStore.HEADER, required = false) String idempotencyKey) {
+        // a retry with the same Idempotency-Key gets the original response instead of a 409
+        return idempotencyKeyStore.execute("register", account.getUsername(), idempotencyKey,
+                IdempotencyKeyStore.fingerprint(account.getUsername(), account.getPassword()),
+                () -> registerAccount(account));
+    } // end register handler
+
+    private ResponseEntity registerAccount(Account account) {
         try {
             Account added = accountService.register(account); // Try to add the account to the database.
 
@@ -56,7 +85,7 @@ public class SocialMediaController {
             return ResponseEntity.status(400).body("Client Error" + e.getMessage()); 
         } // end catch block
         return ResponseEntity.status(200).body(account); 
-    } // end register handler
+    } // end registerAccount()
 
     /**
      * A handler for a POST request made to '/login'
@@ -88,10 +117,20 @@ public class SocialMediaController {
      * This handler recives a Message that needs to be added to the message database. 
      * 
      * @param message Message that needs to be added to database.
+     * @param idempotencyKey An optional key picked by the client, sending the same key again returns the first response.
      * @return The message that was added to the database along with 200 status code, or status code 400 if message wasn't added. 
      */
     @PostMapping("/messages")
-    public ResponseEntity addMessage(@RequestBody Message message) {
+    public ResponseEntity addMessage(@RequestBody Message message,
+            @RequestHeader(value = IdempotencyKeyStore.HEADER, required = false) String idempotencyKey) {
+        // a retry with the same Idempotency-Key gets the original message back instead of adding it twice
+        return idempotencyKeyStore.execute("messages", message.getPostedBy(), idempotencyKey,
+                IdempotencyKeyStore.fingerprint(message.getPostedBy(), message.getMessageText(),
+                        message.getTimePostedEpoch()),
+                () -> saveMessage(message));
+    } // end addMessage() handler
+
+    private ResponseEntity saveMessage(Message message) {
         try {
             Message addedMessage = messageService.addMessage(message); // try adding the message to the database. 
 
@@ -105,17 +144,39 @@ public class SocialMediaController {
             // If an exception is thrown then return 400 along with the exception message. 
             return ResponseEntity.status(400).body("Client Error" + e.getMessage());
         } // end catch block
-    } // end addMessage() handler
+    } // end saveMessage()
 
     /**
      * A handler for a GET request made to '/messages'.
      * 
      * This handler will return a List of Messages that includes all the messages that are in the database. 
+     * If `since` or `until` is given then only one page of the messages posted in that time range is returned 
+     *      instead, oldest first. 
+     * If `ids` is given (`?ids=1,2,3`) then only those messages are returned instead, in the same order, with null 
+     *      for an id that has no message. 
      * 
-     * @return A List of Messages from the database along with a status code of 200.
+     * @param ids The ids of the messages to return, at most `app.messages.max-ids` of them.
+     * @param since The earliest timePostedEpoch to include.
+     * @param until The timePostedEpoch to stop before.
+     * @param page The number of the page, starting from 0.
+     * @param size How many messages are on a page.
+     * @return A List of Messages from the database along with a status code of 200, or status code 400 if the page 
+     *      is invalid or there are too many ids.
      */
     @GetMapping("/messages")
-    public ResponseEntity getAllMessages() {
+    public ResponseEntity getAllMessages(@RequestParam(value = "ids", required = false) List<Integer> ids,
+            @RequestParam(value = "since", required = false) Long since,
+            @RequestParam(value = "until", required = false) Long until,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "size", defaultValue = "100") int size) {
+        if (ids != null) { // only look up these messages
+            return listResponse(messageService.getMessagesByIds(ids));
+        } // end if statement
+
+        if (since != null || until != null) { // only look at the time range
+            return listResponse(messageService.getByTimeRange(null, since, until, page, size));
+        } // end if statement
+
         return ResponseEntity.status(200).body(messageService.getAllMessages());
         // if the database is empty then `messageService.getAllMessages()` will return an empty List (not null).
         // Thus it is safe to feed the result of `messageService.getAllMessages()` into the body of the ResponseEntity
@@ -182,12 +243,182 @@ public class SocialMediaController {
      * A handler for a GET request made to '/accounts/{accountId}/messages'.
      * 
      * Finds all the messages made by a user and returns them as a List of Messages.
+     * `since`, `until`, `page` and `size` work the same way as they do for GET '/messages'.
      * 
      * @param id The id of the account whose messages need to be retived. 
      * @return A List of Messages that were made by the user along with a status code of 200.
      */
     @GetMapping("/accounts/{accountId}/messages")
-    public ResponseEntity getByAccountId(@PathVariable("accountId") Integer id) {
+    public ResponseEntity getByAccountId(@PathVariable("accountId") Integer id,
+            @RequestParam(value = "since", required = false) Long since,
+            @RequestParam(value = "until", required = false) Long until,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "size", defaultValue = "100") int size) {
+        if (since != null || until != null) { // only look at the time range, the same way as GET /messages
+            return listResponse(messageService.getByTimeRange(id, since, until, page, size));
+        } // end if statement
+
         return ResponseEntity.status(200).body(messageService.getByAccountId(id));
     } // end getByAccountId handler
+
+    /**
+     * A handler for a GET request made to '/accounts/search'.
+     * 
+     * Finds the accounts whose username starts with `prefix`, in username order, for autocompleting mentions. Only the
+     *      accountId and username of each account are returned.
+     * 
+     * @param prefix The start of the username.
+     * @param limit The most accounts to return.
+     * @return A List of the accounts that were found along with a status code of 200, or status code 400 if the 
+     *      prefix is empty or the limit is invalid.
+     */
+    @GetMapping("/accounts/search")
+    public ResponseEntity searchAccounts(@RequestParam(value = "prefix", defaultValue = "") String prefix,
+            @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        List<UsernameMatch> matches = accountService.searchByUsernamePrefix(prefix, limit);
+
+        if (matches == null) { // if the prefix or limit was invalid return 400
+            return ResponseEntity.status(400).body("Client Error");
+        } // end if statement
+
+        return ResponseEntity.status(200).body(matches);
+    } // end searchAccounts handler
+
+    /**
+     * A handler for a GET request made to '/accounts/{accountId}/stats'.
+     * 
+     * Returns how many messages the account has posted and the timePostedEpoch of its latest message. These are kept 
+     *      up to date in memory so nothing has to be counted when they are asked for.
+     * 
+     * @param id The id of the account.
+     * @return The stats of the account along with a status code of 200.
+     */
+    @GetMapping("/accounts/{accountId}/stats")
+    public ResponseEntity getAccountStats(@PathVariable("accountId") Integer id) {
+        return ResponseEntity.status(200).body(accountStatsService.getStats(id));
+    } // end getAccountStats handler
+
+    /**
+     * A handler for a GET request made to '/messages/events'.
+     * 
+     * Opens a Server-Sent Events stream that gets a `created`, `patched` or `deleted` event every time a message 
+     *      changes, with the message as JSON. A deleted message only has its messageId and postedBy filled in.
+     * A client that reconnects with a Last-Event-ID header gets the events it missed, as long as they are still in the 
+     *      buffer. If they are not it gets a `lagged` event with the number of events that were lost.
+     * 
+     * @param accountId Only send events for messages posted by this account, leave it out to get every event.
+     * @param lastEventId The id of the last event the client got before it reconnected.
+     * @return A ResponseEntity with the event stream, or status code 503 if there are too many open streams.
+     */
+    @GetMapping("/messages/events")
+    public ResponseEntity<SseEmitter> streamMessageEvents(
+            @RequestParam(value = "accountId", required = false) Integer accountId,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        SseEmitter emitter = messageEventService.subscribe(accountId, lastEventId);
+
+        if (emitter == null) { // too many streams are open already
+            return ResponseEntity.status(503).build();
+        } // end if statement
+
+        return ResponseEntity.status(200).body(emitter);
+    } // end streamMessageEvents handler
+
+    private ResponseEntity listResponse(List<Message> messages) {
+        if (messages == null) { // if the page, size or ids were invalid return 400
+            return ResponseEntity.status(400).body("Client Error");
+        } // end if statement
+
+        return ResponseEntity.status(200).body(messages);
+    } // end listResponse()
+
+    /**
+     * A handler for a DELETE request made to '/accounts/{accountId}/messages'.
+     * 
+     * Starts deleting every message that was posted by the account. The messages are deleted in the background in 
+     *      small chunks, so the handler returns right away with the job that can be used to follow the progress.
+     * 
+     * @param id The id of the account whose messages need to be deleted.
+     * @return A ResponseEntity with status code 202 along with the bulk delete job.
+     */
+    @DeleteMapping("/accounts/{accountId}/messages")
+    public ResponseEntity deleteByAccountId(@PathVariable("accountId") Integer id) {
+        return ResponseEntity.status(202).body(bulkDeleteService.deleteByAccount(id));
+    } // end deleteByAccountId handler
+
+    /**
+     * A handler for a DELETE request made to '/messages?since={since}&until={until}'.
+     * 
+     * Starts deleting every message with a timePostedEpoch from `since` up to (but not including) `until`. Either one 
+     *      can be left out but not both, so that a missing parameter can not delete every message.
+     * 
+     * @param since The earliest timePostedEpoch to delete.
+     * @param until The timePostedEpoch to stop before.
+     * @return A ResponseEntity with status code 202 along with the bulk delete job, or status code 400 if neither 
+     *      parameter was given.
+     */
+    @DeleteMapping("/messages")
+    public ResponseEntity deleteByTimeRange(@RequestParam(value = "since", required = false) Long since,
+            @RequestParam(value = "until", required = false) Long until) {
+        if (since == null && until == null) { // refuse to delete every message
+            return ResponseEntity.status(400).body("Client Error");
+        } // end if statement
+
+        return ResponseEntity.status(202).body(bulkDeleteService.deleteByTimeRange(since, until));
+    } // end deleteByTimeRange handler
+
+    /**
+     * A handler for a GET request made to '/messages/bulk-deletes/{jobId}'.
+     * 
+     * @param jobId The id of the bulk delete job.
+     * @return A ResponseEntity with status code 200 along with the progress of the job, or 404 if there is no such job.
+     */
+    @GetMapping("/messages/bulk-deletes/{jobId}")
+    public ResponseEntity getBulkDelete(@PathVariable("jobId") Long jobId) {
+        return bulkDeleteResponse(bulkDeleteService.getJob(jobId));
+    } // end getBulkDelete handler
+
+    /**
+     * A handler for a POST request made to '/messages/bulk-deletes/{jobId}/cancel'.
+     * 
+     * The job stops after the chunk that it is working on and can be resumed later. 
+     * 
+     * @param jobId The id of the bulk delete job.
+     * @return A ResponseEntity with status code 200 along with the job, or 404 if there is no such job.
+     */
+    @PostMapping("/messages/bulk-deletes/{jobId}/cancel")
+    public ResponseEntity cancelBulkDelete(@PathVariable("jobId") Long jobId) {
+        return bulkDeleteResponse(bulkDeleteService.cancel(jobId));
+    } // end cancelBulkDelete handler
+
+    /**
+     * A handler for a POST request made to '/messages/bulk-deletes/{jobId}/resume'.
+     * 
+     * A cancelled or failed job carries on from the last message that it deleted. A job that is still running with a
+     *      cancel pending carries on as if it was never cancelled.
+     * 
+     * @param jobId The id of the bulk delete job.
+     * @return A ResponseEntity with status code 202 along with the job, 404 if there is no such job, or 409 if the job
+     *      is still running (or already stopping for a cancel) or is done.
+     */
+    @PostMapping("/messages/bulk-deletes/{jobId}/resume")
+    public ResponseEntity resumeBulkDelete(@PathVariable("jobId") Long jobId) {
+        BulkDeleteJob job = bulkDeleteService.getJob(jobId);
+
+        if (job == null) { // if there is no job with the id return 404
+            return ResponseEntity.status(404).body("Not Found");
+        } // end if statement
+        if (!bulkDeleteService.resume(jobId)) {
+            return ResponseEntity.status(409).body("Conflict");
+        } // end if statement
+
+        return ResponseEntity.status(202).body(job);
+    } // end resumeBulkDelete handler
+
+    private ResponseEntity bulkDeleteResponse(BulkDeleteJob job) {
+        if (job == null) { // if there is no job with the id return 404
+            return ResponseEntity.status(404).body("Not Found");
+        } // end if statement
+
+        return ResponseEntity.status(200).body(job);
+    } // end bulkDeleteResponse()
 } // end SocialMediaController Class
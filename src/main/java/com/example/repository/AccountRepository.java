@@ -1,6 +1,9 @@
 package com.example.repository;
 
+import javax.persistence.QueryHint;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Repository;
 
@@ -8,5 +11,7 @@ import com.example.entity.Account;
 
 @Repository
 public interface AccountRepository extends JpaRepository<Account, Integer> {
-    Account findAccountByUsername(String username); // A function that is able to find an account based on its username.
+    // A function that is able to find an account based on its username, the result goes through the query cache.
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+    Account findAccountByUsername(String username);
 }
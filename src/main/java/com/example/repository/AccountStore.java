@@ -0,0 +1,42 @@
+package com.example.repository;
+
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import com.example.entity.Account;
+
+/**
+ * The operations that the services need from whatever is storing the accounts.
+ *
+ * The default implementation hands everything to the AccountRepository. With `app.messages.store=memory` the
+ *      accounts are kept by MemoryStore along with the messages, since its messages point at their accounts.
+ * The names do not clash with MessageStore's so that one class can be both.
+ */
+public interface AccountStore {
+    Account saveAccount(Account account); // Add a new account or replace an existing one.
+
+    Optional<Account> findAccountById(Integer id); // Find a single account based on its account_id.
+
+    Account findAccountByUsername(String username); // Find the account with a username, or null if there is none.
+
+    /**
+     * Hands every account to `action`, one at a time and in account_id order.
+     *
+     * @param action Called once for every account.
+     */
+    void forEachAccount(Consumer<Account> action);
+
+    /**
+     * Removes every account, used before a snapshot is restored. The messages have to be removed first.
+     */
+    void deleteAllAccounts();
+
+    /**
+     * Adds a large number of accounts that already have their account_id, used to restore a snapshot.
+     *
+     * @param accounts The accounts to add, each with its account_id filled in.
+     * @return How many accounts were added.
+     */
+    long loadAllAccounts(Iterator<Account> accounts);
+} // end AccountStore interface
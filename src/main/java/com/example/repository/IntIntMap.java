@@ -0,0 +1,164 @@
+package com.example.repository;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from int to int that keeps its keys and values in two plain arrays, so looking something up never boxes
+ *      the key or allocates anything.
+ *
+ * It uses open addressing with linear probing and is kept at most half full. Removing a key shifts the entries after
+ *      it back into place instead of leaving a tombstone, so lookups never slow down after a lot of removes.
+ * The values have to be 0 or more (they are array indexes), -1 marks an empty bucket and is what `get()` returns for
+ *      a missing key. Not thread safe, MemoryStore guards it with its lock.
+ */
+final class IntIntMap {
+    static final int MISSING = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    /**
+     * @param expected How many entries to make room for before the arrays have to grow.
+     */
+    IntIntMap(int expected) {
+        allocate(Math.max(16, Integer.highestOneBit(Math.max(1, expected) * 2 - 1) << 1));
+    } // end constructor
+
+    int size() {
+        return size;
+    } // end size()
+
+    /**
+     * @return The value for `key`, or MISSING if there is none.
+     */
+    int get(int key) {
+        for (int i = bucket(key); values[i] != MISSING; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            } // end if statement
+        } // end for loop
+
+        return MISSING;
+    } // end get()
+
+    /**
+     * Adds or replaces the value for `key`.
+     *
+     * @param value The value, 0 or more.
+     */
+    void put(int key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Only values of 0 or more can be stored, not " + value);
+        } // end if statement
+
+        int i = bucket(key);
+
+        for (; values[i] != MISSING; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            } // end if statement
+        } // end for loop
+
+        keys[i] = key;
+        values[i] = value;
+
+        if (++size * 2 > keys.length) {
+            grow();
+        } // end if statement
+    } // end put()
+
+    /**
+     * @return The value that was removed, or MISSING if there was none.
+     */
+    int remove(int key) {
+        int i = bucket(key);
+
+        while (values[i] != MISSING && keys[i] != key) {
+            i = (i + 1) & mask;
+        } // end while loop
+
+        int removed = values[i];
+
+        if (removed == MISSING) {
+            return MISSING;
+        } // end if statement
+
+        values[i] = MISSING;
+        size--;
+
+        for (int j = (i + 1) & mask; values[j] != MISSING; j = (j + 1) & mask) {
+            int home = bucket(keys[j]);
+
+            // move the entry back into the hole unless its home bucket is between the hole and where it is now
+            if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                values[j] = MISSING;
+                i = j;
+            } // end if statement
+        } // end for loop
+
+        return removed;
+    } // end remove()
+
+    void clear() {
+        Arrays.fill(values, MISSING);
+        size = 0;
+    } // end clear()
+
+    /**
+     * Hands every entry to `action`, in no particular order. The map must not be changed while this runs.
+     */
+    void forEach(EntryConsumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != MISSING) {
+                action.accept(keys[i], values[i]);
+            } // end if statement
+        } // end for loop
+    } // end forEach()
+
+    /**
+     * @return Roughly how many bytes the arrays take up.
+     */
+    long bytes() {
+        return 8L * keys.length;
+    } // end bytes()
+
+    private int bucket(int key) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    } // end bucket()
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(keys.length * 2);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != MISSING) {
+                int j = bucket(oldKeys[i]);
+
+                while (values[j] != MISSING) {
+                    j = (j + 1) & mask;
+                } // end while loop
+
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            } // end if statement
+        } // end for loop
+    } // end grow()
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, MISSING);
+        mask = capacity - 1;
+    } // end allocate()
+
+    interface EntryConsumer {
+        void accept(int key, int value);
+    } // end EntryConsumer interface
+} // end IntIntMap Class
@@ -0,0 +1,83 @@
+package com.example.repository;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.example.entity.Account;
+
+/**
+ * The default AccountStore, used with every MessageStore except the memory one. Single accounts go through the
+ *      AccountRepository, snapshots go straight to the account table with JDBC like JpaMessageStore's do.
+ */
+@Component
+@ConditionalOnExpression("'${app.messages.store:jpa}' != 'memory'")
+public class JpaAccountStore implements AccountStore {
+    private static final int BATCH_SIZE = 1000;
+    private static final int FETCH_SIZE = 1000;
+
+    private final AccountRepository accountRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public JpaAccountStore(AccountRepository accountRepository, JdbcTemplate jdbcTemplate) {
+        this.accountRepository = accountRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    } // end constructor
+
+    @Override
+    public Account saveAccount(Account account) {
+        return accountRepository.save(account);
+    } // end saveAccount()
+
+    @Override
+    public Optional<Account> findAccountById(Integer id) {
+        return accountRepository.findById(id);
+    } // end findAccountById()
+
+    @Override
+    public Account findAccountByUsername(String username) {
+        return accountRepository.findAccountByUsername(username);
+    } // end findAccountByUsername()
+
+    @Override
+    public void forEachAccount(Consumer<Account> action) {
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(FETCH_SIZE); // do not pull the whole table into the result set at once
+        streaming.query("select accountId, username, password from account order by accountId", rs -> {
+            action.accept(new Account(rs.getInt(1), rs.getString(2), rs.getString(3)));
+        });
+    } // end forEachAccount()
+
+    @Override
+    public void deleteAllAccounts() {
+        jdbcTemplate.update("delete from account");
+    } // end deleteAllAccounts()
+
+    @Override
+    public long loadAllAccounts(Iterator<Account> accounts) {
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        long loaded = 0;
+
+        while (accounts.hasNext()) {
+            Account account = accounts.next();
+            batch.add(new Object[] {account.getAccountId(), account.getUsername(), account.getPassword()});
+
+            if (batch.size() == BATCH_SIZE || !accounts.hasNext()) { // one round trip for the whole batch
+                jdbcTemplate.batchUpdate("insert into account (accountId, username, password) values (?, ?, ?)",
+                        batch);
+                loaded += batch.size();
+                batch.clear();
+            } // end if statement
+        } // end while loop
+
+        return loaded;
+    } // end loadAllAccounts()
+} // end JpaAccountStore Class
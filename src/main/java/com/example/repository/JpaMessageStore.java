@@ -0,0 +1,177 @@
+package com.example.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.entity.Message;
+
+/**
+ * The default MessageStore, every call is handed straight to the MessageRepository.
+ *
+ * The lists that come back are plain Message objects rather than managed entities, only `findById()` returns a
+ *      message that can be changed and saved.
+ * Looking up a group of ids takes the ones that are in the second-level cache from there, and the rest with one
+ *      `in` query.
+ * Snapshots skip Hibernate and go straight to the message table with JDBC, streaming rows out and batching inserts
+ *      in, whoever calls them has to clear the second-level cache afterwards.
+ */
+@Component
+@ConditionalOnProperty(name = "app.messages.store", havingValue = "jpa", matchIfMissing = true)
+public class JpaMessageStore implements MessageStore {
+    private static final int BATCH_SIZE = 1000;
+    private static final int FETCH_SIZE = 1000;
+
+    private final MessageRepository messageRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final Cache cache;
+
+    @Autowired
+    public JpaMessageStore(MessageRepository messageRepository, JdbcTemplate jdbcTemplate,
+            EntityManagerFactory entityManagerFactory) {
+        this.messageRepository = messageRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+    } // end constructor
+
+    @Override
+    public Message save(Message message) {
+        return messageRepository.save(message);
+    } // end save()
+
+    @Override
+    public List<Message> findAll() {
+        return messageRepository.findAllDetached();
+    } // end findAll()
+
+    @Override
+    public Optional<Message> findById(Integer id) {
+        return messageRepository.findById(id);
+    } // end findById()
+
+    @Override
+    public List<Message> findAllById(Collection<Integer> ids) {
+        List<Message> found = new ArrayList<>(ids.size());
+        List<Integer> missed = new ArrayList<>();
+
+        for (Integer id : ids) {
+            if (cache.containsEntity(Message.class, id)) { // findById answers from the cache, without a statement
+                messageRepository.findById(id).ifPresent(found::add);
+            } // end if statement
+            else {
+                missed.add(id);
+            } // end else statement
+        } // end for loop
+
+        if (!missed.isEmpty()) {
+            found.addAll(messageRepository.findByMessageIdIn(missed));
+        } // end if statement
+
+        return found;
+    } // end findAllById()
+
+    @Override
+    public boolean existsById(Integer id) {
+        return messageRepository.existsById(id);
+    } // end existsById()
+
+    @Override
+    public void deleteById(Integer id) {
+        messageRepository.deleteById(id);
+    } // end deleteById()
+
+    @Override
+    public List<Message> findByPostedBy(Integer postedBy) {
+        return messageRepository.findMessagesByPostedBy(postedBy);
+    } // end findByPostedBy()
+
+    @Override
+    public List<Message> findByTimeRange(Integer postedBy, long since, long until, int page, int size) {
+        if (postedBy == null) {
+            return messageRepository.findByTimeRange(since, until, PageRequest.of(page, size));
+        } // end if statement
+
+        return messageRepository.findByPostedByAndTimeRange(postedBy, since, until, PageRequest.of(page, size));
+    } // end findByTimeRange()
+
+    @Override
+    public List<Integer> findIdsByPostedBy(Integer postedBy, int afterId, int limit) {
+        return messageRepository.findIdsByPostedBy(postedBy, afterId, PageRequest.of(0, limit));
+    } // end findIdsByPostedBy()
+
+    @Override
+    public List<Integer> findIdsByTimeRange(long since, long until, int afterId, int limit) {
+        return messageRepository.findIdsByTimeRange(since, until, afterId, PageRequest.of(0, limit));
+    } // end findIdsByTimeRange()
+
+    @Override
+    public Map<Integer, long[]> countByPostedBy() {
+        Map<Integer, long[]> stats = new HashMap<>();
+
+        for (Object[] row : messageRepository.countByPostedBy()) {
+            stats.put((Integer) row[0], new long[] {(Long) row[1], row[2] == null ? Long.MIN_VALUE : (Long) row[2]});
+        } // end for loop
+
+        return stats;
+    } // end countByPostedBy()
+
+    @Override
+    @Transactional
+    public int deleteAllById(List<Integer> ids) {
+        return ids.isEmpty() ? 0 : messageRepository.deleteByMessageIdIn(ids);
+    } // end deleteAllById()
+
+    @Override
+    public void forEachMessage(Consumer<Message> action) {
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(FETCH_SIZE); // do not pull the whole table into the result set at once
+        streaming.query("select messageId, postedBy, messageText, timePostedEpoch from message order by messageId",
+                rs -> {
+                    action.accept(new Message(rs.getInt(1), rs.getObject(2, Integer.class), rs.getString(3),
+                            rs.getObject(4, Long.class)));
+                });
+    } // end forEachMessage()
+
+    @Override
+    public void deleteAll() {
+        jdbcTemplate.update("delete from message");
+    } // end deleteAll()
+
+    @Override
+    public long loadAll(Iterator<Message> messages) {
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        long loaded = 0;
+
+        while (messages.hasNext()) {
+            Message message = messages.next();
+            batch.add(new Object[] {message.getMessageId(), message.getPostedBy(), message.getMessageText(),
+                    message.getTimePostedEpoch()});
+
+            if (batch.size() == BATCH_SIZE || !messages.hasNext()) { // one round trip for the whole batch
+                jdbcTemplate.batchUpdate("insert into message (messageId, postedBy, messageText, timePostedEpoch) "
+                        + "values (?, ?, ?, ?)", batch);
+                loaded += batch.size();
+                batch.clear();
+            } // end if statement
+        } // end while loop
+
+        return loaded;
+    } // end loadAll()
+} // end JpaMessageStore Class
@@ -0,0 +1,985 @@
+package com.example.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.example.entity.Message;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * A MessageStore that appends every change to a log of memory-mapped segment files, turned on with
+ *      `app.messages.store=log`. Posting is by far the most common write, and here it is a single append with no
+ *      B-tree pages to update.
+ *
+ * Every record is its length, a CRC32C of its body and the body: the record type, messageId, postedBy,
+ *      timePostedEpoch and the text. Saving a message appends a put record, deleting one appends a tombstone. Only the
+ *      newest segment is written to, once a record no longer fits it is forced to disk and a new one is started.
+ *      What is in memory is an index from every messageId to where its latest put record is (plus its postedBy and
+ *      time, and the ids of every account's messages), so a read is one map lookup and one record decoded out of the
+ *      mapped file.
+ *
+ * Durability: the newest segment is forced to disk every `app.messages.log.fsync-interval-ms` by a background thread,
+ *      so many writes share one fsync. A crash of the process loses nothing (the mapped pages are the operating
+ *      system's), a power failure can lose that many milliseconds of writes. With 0 every write forces the segment
+ *      before it returns.
+ * Recovery: at startup every segment is replayed in order into the index. A record whose length runs off the end of
+ *      the segment or whose CRC does not match (a write torn by a power failure) ends its segment, and it is cleared
+ *      so the next record is appended in its place.
+ * Compaction: every `app.messages.log.compaction-interval-ms`, a segment that is not the newest and whose live put
+ *      records take up less than `app.messages.log.compaction-threshold` of it has those records appended again to the
+ *      newest segment and is then deleted. Its tombstones are carried over too while an older segment could still
+ *      have a put record they hide.
+ *
+ * New ids come from the primary database's hibernate_sequence like the other stores. The sequence is moved past the
+ *      highest id in the log at startup, in case the primary database is the in-memory one and started over.
+ */
+@Component
+@ConditionalOnProperty(name = "app.messages.store", havingValue = "log")
+public class LogMessageStore implements MessageStore {
+    private static final Log log = LogFactory.getLog(LogMessageStore.class);
+    private static final byte PUT = 1;
+    private static final byte TOMBSTONE = 2;
+    private static final int HEADER_BYTES = 4 + 4; // length and CRC
+    private static final int FIXED_BODY_BYTES = 1 + 4 + 4 + 8 + 2; // type, messageId, postedBy, time, text length
+    private static final int NO_ACCOUNT = Integer.MIN_VALUE; // the postedBy of a message without one
+    private static final long NO_TIME = Long.MIN_VALUE; // the time of a message without a timePostedEpoch
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final JdbcTemplate primary;
+    private final Path directory;
+    private final int segmentBytes;
+    private final long fsyncIntervalMillis;
+    private final double compactionThreshold;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final Map<Integer, Entry> index = new HashMap<>();
+    private final Map<Integer, NavigableSet<Integer>> byPostedBy = new HashMap<>();
+    private final CRC32C crc = new CRC32C(); // only used under the write lock, or before the store is shared
+    private final ScheduledExecutorService background;
+    private final Counter fsyncs;
+    private final Counter compactions;
+    private Segment active;
+    private volatile boolean dirty; // the active segment has writes that were not forced yet
+    private int maxId;
+
+    @Autowired
+    public LogMessageStore(JdbcTemplate primary, MeterRegistry meterRegistry,
+            @Value("${app.messages.log.dir:./data/message-log}") String directory,
+            @Value("${app.messages.log.segment-bytes:67108864}") int segmentBytes,
+            @Value("${app.messages.log.fsync-interval-ms:50}") long fsyncIntervalMillis,
+            @Value("${app.messages.log.compaction-threshold:0.5}") double compactionThreshold,
+            @Value("${app.messages.log.compaction-interval-ms:10000}") long compactionIntervalMillis)
+            throws IOException {
+        if (segmentBytes < 4096) {
+            throw new IllegalArgumentException("app.messages.log.segment-bytes must be at least 4096 but was "
+                    + segmentBytes);
+        } // end if statement
+
+        this.primary = primary;
+        this.directory = Paths.get(directory);
+        this.segmentBytes = segmentBytes;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.compactionThreshold = compactionThreshold;
+
+        Files.createDirectories(this.directory);
+        recover();
+
+        this.fsyncs = Counter.builder("app.store.log.fsyncs").description("Times the newest segment was forced to disk")
+                .register(meterRegistry);
+        this.compactions = Counter.builder("app.store.log.compactions").description("Segments compacted away")
+                .register(meterRegistry);
+        Gauge.builder("app.store.log.segments", this, LogMessageStore::getSegmentCount)
+                .description("Segment files in the message log").register(meterRegistry);
+        Gauge.builder("app.store.log.bytes", this, store -> store.getBytes(false)).baseUnit("bytes")
+                .description("Bytes of records in the message log").register(meterRegistry);
+        Gauge.builder("app.store.log.live-bytes", this, store -> store.getBytes(true)).baseUnit("bytes")
+                .description("Bytes of records in the message log that are still the latest version")
+                .register(meterRegistry);
+
+        this.background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (fsyncIntervalMillis > 0) {
+            background.scheduleWithFixedDelay(this::fsync, fsyncIntervalMillis, fsyncIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } // end if statement
+
+        background.scheduleWithFixedDelay(this::compact, compactionIntervalMillis, compactionIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    } // end constructor
+
+    /**
+     * Copies the messages out of the primary message table the first time the log is used, and moves the id sequence
+     *      past every id in the log.
+     *
+     * This runs once the application is ready so that `data.sql` has already been loaded, and it is skipped if the
+     *      log already has messages in it (from an earlier run, a snapshot restore or synthetic data, which run
+     *      before this). It runs before the listeners that read every message, like the message id filter.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE + 3)
+    public void importPrimaryMessages() {
+        if (getMessageCount() == 0 && getBytes(false) == 0) {
+            loadAll(primary.query("select messageId, postedBy, messageText, timePostedEpoch from message",
+                    (rs, rowNum) -> new Message(rs.getInt(1), rs.getObject(2, Integer.class), rs.getString(3),
+                            rs.getObject(4, Long.class))).iterator());
+            return; // the ids came from the primary database, so its sequence is already past them
+        } // end if statement
+
+        int highest = getMaxId();
+        Long next = primary.queryForObject("select base_value from information_schema.sequences "
+                + "where sequence_name = 'HIBERNATE_SEQUENCE'", Long.class); // the value it hands out next
+
+        if (next != null && next <= highest) { // the log outlived the primary database
+            primary.execute("alter sequence hibernate_sequence restart with " + (highest + 1L));
+        } // end if statement
+    } // end importPrimaryMessages()
+
+    // ---------------------------------------------------------------------------------------------------------------
+    // MessageStore
+
+    @Override
+    public Message save(Message message) {
+        if (message.getMessageId() == null) { // new messages get their id from the primary sequence
+            message.setMessageId(nextId());
+        } // end if statement
+
+        lock.writeLock().lock();
+
+        try {
+            put(message);
+            written();
+            return message;
+        } // end try block
+        finally {
+            lock.writeLock().unlock();
+        } // end finally block
+    } // end save()
+
+    @Override
+    public List<Message> findAll() {
+        lock.readLock().lock();
+
+        try {
+            List<Message> messages = new ArrayList<>(index.size());
+
+            for (Integer id : new TreeSet<>(index.keySet())) {
+                messages.add(read(index.get(id)));
+            } // end for loop
+
+            return messages;
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end findAll()
+
+    @Override
+    public Optional<Message> findById(Integer id) {
+        lock.readLock().lock();
+
+        try {
+            Entry entry = id == null ? null : index.get(id);
+            return entry == null ? Optional.empty() : Optional.of(read(entry));
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end findById()
+
+    @Override
+    public List<Message> findAllById(Collection<Integer> ids) {
+        lock.readLock().lock();
+
+        try {
+            List<Message> found = new ArrayList<>(ids.size());
+
+            for (Integer id : ids) {
+                Entry entry = id == null ? null : index.get(id);
+
+                if (entry != null) {
+                    found.add(read(entry));
+                } // end if statement
+            } // end for loop
+
+            return found;
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end findAllById()
+
+    @Override
+    public boolean existsById(Integer id) {
+        lock.readLock().lock();
+
+        try {
+            return id != null && index.containsKey(id);
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end existsById()
+
+    @Override
+    public void deleteById(Integer id) {
+        lock.writeLock().lock();
+
+        try {
+            if (delete(id)) {
+                written();
+            } // end if statement
+        } // end try block
+        finally {
+            lock.writeLock().unlock();
+        } // end finally block
+    } // end deleteById()
+
+    @Override
+    public List<Message> findByPostedBy(Integer postedBy) {
+        lock.readLock().lock();
+
+        try {
+            NavigableSet<Integer> ids = postedBy == null ? null : byPostedBy.get(postedBy);
+            List<Message> messages = new ArrayList<>(ids == null ? 0 : ids.size());
+
+            if (ids != null) {
+                for (Integer id : ids) {
+                    messages.add(read(index.get(id)));
+                } // end for loop
+            } // end if statement
+
+            return messages;
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end findByPostedBy()
+
+    /**
+     * Finds the page from the index, so only the messages on it are read from the log.
+     */
+    @Override
+    public List<Message> findByTimeRange(Integer postedBy, long since, long until, int page, int size) {
+        lock.readLock().lock();
+
+        try {
+            List<Entry> matching = new ArrayList<>();
+
+            for (Entry entry : entries(postedBy)) {
+                if (entry.time != NO_TIME && entry.time >= since && entry.time < until) {
+                    matching.add(entry);
+                } // end if statement
+            } // end for loop
+
+            matching.sort(Comparator.comparingLong((Entry entry) -> entry.time).thenComparingInt(entry -> entry.id));
+            List<Message> messages = new ArrayList<>();
+
+            for (long i = (long) page * size; i < matching.size() && messages.size() < size; i++) {
+                messages.add(read(matching.get((int) i)));
+            } // end for loop
+
+            return messages;
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end findByTimeRange()
+
+    @Override
+    public List<Integer> findIdsByPostedBy(Integer postedBy, int afterId, int limit) {
+        lock.readLock().lock();
+
+        try {
+            NavigableSet<Integer> ids = postedBy == null ? null : byPostedBy.get(postedBy);
+            List<Integer> found = new ArrayList<>();
+
+            if (ids != null) {
+                for (Iterator<Integer> it = ids.tailSet(afterId, false).iterator(); it.hasNext()
+                        && found.size() < limit;) {
+                    found.add(it.next());
+                } // end for loop
+            } // end if statement
+
+            return found;
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end findIdsByPostedBy()
+
+    @Override
+    public List<Integer> findIdsByTimeRange(long since, long until, int afterId, int limit) {
+        lock.readLock().lock();
+
+        try {
+            TreeSet<Integer> found = new TreeSet<>();
+
+            for (Entry entry : index.values()) {
+                if (entry.id > afterId && entry.time != NO_TIME && entry.time >= since && entry.time < until) {
+                    found.add(entry.id);
+
+                    if (found.size() > limit) {
+                        found.pollLast();
+                    } // end if statement
+                } // end if statement
+            } // end for loop
+
+            return new ArrayList<>(found);
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end findIdsByTimeRange()
+
+    @Override
+    public Map<Integer, long[]> countByPostedBy() {
+        lock.readLock().lock();
+
+        try {
+            Map<Integer, long[]> stats = new HashMap<>();
+
+            for (Entry entry : index.values()) {
+                long[] account = stats.computeIfAbsent(entry.postedBy == NO_ACCOUNT ? null : entry.postedBy,
+                        postedBy -> new long[] {0, Long.MIN_VALUE});
+                account[0]++;
+                account[1] = Math.max(account[1], entry.time); // NO_TIME is Long.MIN_VALUE, which is what is wanted
+            } // end for loop
+
+            return stats;
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end countByPostedBy()
+
+    @Override
+    public int deleteAllById(List<Integer> ids) {
+        lock.writeLock().lock();
+
+        try {
+            int deleted = 0;
+
+            for (Integer id : ids) {
+                if (delete(id)) {
+                    deleted++;
+                } // end if statement
+            } // end for loop
+
+            if (deleted > 0) {
+                written();
+            } // end if statement
+
+            return deleted;
+        } // end try block
+        finally {
+            lock.writeLock().unlock();
+        } // end finally block
+    } // end deleteAllById()
+
+    @Override
+    public void forEachMessage(Consumer<Message> action) {
+        lock.readLock().lock();
+
+        try {
+            for (Integer id : new TreeSet<>(index.keySet())) {
+                action.accept(read(index.get(id)));
+            } // end for loop
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end forEachMessage()
+
+    /**
+     * Deletes every segment and starts an empty one, rather than writing a tombstone for every message.
+     */
+    @Override
+    public void deleteAll() {
+        lock.writeLock().lock();
+
+        try {
+            int next = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+
+            for (Segment segment : new ArrayList<>(segments.values())) {
+                remove(segment);
+            } // end for loop
+
+            index.clear();
+            byPostedBy.clear();
+            active = openSegment(next, true);
+        } // end try block
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } // end catch block
+        finally {
+            lock.writeLock().unlock();
+        } // end finally block
+    } // end deleteAll()
+
+    /**
+     * Appends every message under one lock and forces the segment once at the end.
+     */
+    @Override
+    public long loadAll(Iterator<Message> messages) {
+        long loaded = 0;
+        lock.writeLock().lock();
+
+        try {
+            while (messages.hasNext()) {
+                put(messages.next());
+                loaded++;
+            } // end while loop
+
+            written();
+            return loaded;
+        } // end try block
+        finally {
+            lock.writeLock().unlock();
+        } // end finally block
+    } // end loadAll()
+
+    // ---------------------------------------------------------------------------------------------------------------
+    // the log
+
+    /**
+     * Appends a put record for the message and points the index at it. Needs the write lock.
+     */
+    private void put(Message message) {
+        int postedBy = message.getPostedBy() == null ? NO_ACCOUNT : message.getPostedBy();
+        long time = message.getTimePostedEpoch() == null ? NO_TIME : message.getTimePostedEpoch();
+        byte[] text = message.getMessageText() == null ? null
+                : message.getMessageText().getBytes(StandardCharsets.UTF_8);
+        Entry entry = append(PUT, message.getMessageId(), postedBy, time, text);
+        index(entry);
+    } // end put()
+
+    /**
+     * Appends a tombstone for the message if it is there. Needs the write lock.
+     *
+     * @return False if there was no such message.
+     */
+    private boolean delete(Integer id) {
+        Entry entry = id == null ? null : index.get(id);
+
+        if (entry == null) {
+            return false;
+        } // end if statement
+
+        append(TOMBSTONE, id, entry.postedBy, NO_TIME, null);
+        unindex(entry);
+        return true;
+    } // end delete()
+
+    /**
+     * Writes a record at the end of the active segment, starting a new segment if it does not fit. The body is written
+     *      before the length, so a record whose length is there has its body there too (unless the power failed, which
+     *      the CRC catches).
+     *
+     * @return Where the record is.
+     */
+    private Entry append(byte type, int id, int postedBy, long time, byte[] text) {
+        int bodyBytes = FIXED_BODY_BYTES + (text == null ? 0 : text.length);
+        int recordBytes = HEADER_BYTES + bodyBytes;
+
+        if (active.end + recordBytes > active.buffer.capacity()) {
+            roll();
+        } // end if statement
+
+        int offset = active.end;
+        ByteBuffer body = active.buffer.duplicate();
+        body.position(offset + HEADER_BYTES);
+        body.put(type).putInt(id).putInt(postedBy).putLong(time).putShort((short) (text == null ? -1 : text.length));
+
+        if (text != null) {
+            body.put(text);
+        } // end if statement
+
+        body.flip().position(offset + HEADER_BYTES);
+        crc.reset();
+        crc.update(body);
+        active.buffer.putInt(offset + 4, (int) crc.getValue());
+        active.buffer.putInt(offset, bodyBytes);
+        active.end += recordBytes;
+        dirty = true;
+        return new Entry(active.number, offset, recordBytes, id, postedBy, time);
+    } // end append()
+
+    /**
+     * Forces the active segment to disk and starts the next one.
+     */
+    private void roll() {
+        try {
+            active.buffer.force();
+            active = openSegment(active.number + 1, true);
+        } // end try block
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } // end catch block
+    } // end roll()
+
+    /**
+     * Forces the active segment right away if every write has to be durable before it returns. Needs the write lock.
+     */
+    private void written() {
+        if (fsyncIntervalMillis <= 0) {
+            active.buffer.force();
+            dirty = false;
+            fsyncs.increment();
+        } // end if statement
+    } // end written()
+
+    /**
+     * Forces the active segment to disk if anything was written to it since the last time. Runs on the background
+     *      thread every `fsyncIntervalMillis`.
+     */
+    void fsync() {
+        Segment segment;
+        lock.readLock().lock();
+
+        try {
+            if (!dirty) {
+                return;
+            } // end if statement
+
+            dirty = false; // cleared first, so a write that lands during force() is forced next time
+            segment = active;
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+
+        segment.buffer.force();
+        fsyncs.increment();
+    } // end fsync()
+
+    private void index(Entry entry) {
+        Entry previous = index.put(entry.id, entry);
+
+        if (previous != null) {
+            segments.get(previous.segment).liveBytes -= previous.length;
+
+            if (previous.postedBy != entry.postedBy) {
+                unindexPostedBy(previous);
+            } // end if statement
+        } // end if statement
+
+        segments.get(entry.segment).liveBytes += entry.length;
+        byPostedBy.computeIfAbsent(entry.postedBy, postedBy -> new TreeSet<>()).add(entry.id);
+        maxId = Math.max(maxId, entry.id);
+    } // end index()
+
+    private void unindex(Entry entry) {
+        index.remove(entry.id);
+        segments.get(entry.segment).liveBytes -= entry.length;
+        unindexPostedBy(entry);
+    } // end unindex()
+
+    private void unindexPostedBy(Entry entry) {
+        NavigableSet<Integer> ids = byPostedBy.get(entry.postedBy);
+
+        if (ids != null && ids.remove(entry.id) && ids.isEmpty()) {
+            byPostedBy.remove(entry.postedBy);
+        } // end if statement
+    } // end unindexPostedBy()
+
+    private Iterable<Entry> entries(Integer postedBy) {
+        if (postedBy == null) {
+            return index.values();
+        } // end if statement
+
+        List<Entry> entries = new ArrayList<>();
+
+        for (Integer id : byPostedBy.getOrDefault(postedBy, new TreeSet<>())) {
+            entries.add(index.get(id));
+        } // end for loop
+
+        return entries;
+    } // end entries()
+
+    /**
+     * Decodes the message out of its put record. Needs the read lock (so the segment is not compacted away).
+     */
+    private Message read(Entry entry) {
+        ByteBuffer record = segments.get(entry.segment).buffer.duplicate();
+        record.position(entry.offset + HEADER_BYTES + 1); // skip the type
+        int id = record.getInt();
+        int postedBy = record.getInt();
+        long time = record.getLong();
+        short textBytes = record.getShort();
+        String text = null;
+
+        if (textBytes >= 0) {
+            byte[] bytes = new byte[textBytes];
+            record.get(bytes);
+            text = new String(bytes, StandardCharsets.UTF_8);
+        } // end if statement
+
+        return new Message(id, postedBy == NO_ACCOUNT ? null : postedBy, text, time == NO_TIME ? null : time);
+    } // end read()
+
+    // ---------------------------------------------------------------------------------------------------------------
+    // recovery and compaction
+
+    /**
+     * Replays every segment in the directory into the index, oldest first, and opens the newest one for appending
+     *      (or a first one if there are none).
+     */
+    private void recover() throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                numbers.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length())));
+            } // end for loop
+        } // end try block
+
+        numbers.sort(Comparator.naturalOrder());
+        long records = 0;
+
+        for (int number : numbers) {
+            active = openSegment(number, false);
+            records += replay(active);
+        } // end for loop
+
+        if (active == null) {
+            active = openSegment(0, true);
+        } // end if statement
+
+        if (!numbers.isEmpty()) {
+            log.info("Recovered " + index.size() + " messages from " + records + " records in " + numbers.size()
+                    + " segments of " + directory);
+        } // end if statement
+    } // end recover()
+
+    /**
+     * Applies the segment's records to the index up to the first one that is missing or torn.
+     *
+     * @return How many records were applied.
+     */
+    private long replay(Segment segment) {
+        ByteBuffer records = segment.buffer.duplicate();
+        long applied = 0;
+        int offset = 0;
+
+        while (offset + HEADER_BYTES + FIXED_BODY_BYTES <= records.capacity()) {
+            int bodyBytes = records.getInt(offset);
+
+            if (bodyBytes == 0) { // the end of what was written
+                break;
+            } // end if statement
+
+            if (bodyBytes < FIXED_BODY_BYTES || offset + HEADER_BYTES + bodyBytes > records.capacity()
+                    || !crcMatches(records, offset, bodyBytes)) {
+                log.warn("Dropping a torn record at " + offset + " of " + segment.path + ", replay of it stops there");
+                clear(segment, offset);
+                break;
+            } // end if statement
+
+            records.position(offset + HEADER_BYTES);
+            byte type = records.get();
+            int id = records.getInt();
+            int postedBy = records.getInt();
+            long time = records.getLong();
+            Entry entry = new Entry(segment.number, offset, HEADER_BYTES + bodyBytes, id, postedBy, time);
+
+            if (type == PUT) {
+                index(entry);
+            } // end if statement
+            else if (index.containsKey(id)) {
+                unindex(index.get(id));
+            } // end else if statement
+
+            offset += HEADER_BYTES + bodyBytes;
+            applied++;
+        } // end while loop
+
+        segment.end = offset;
+        return applied;
+    } // end replay()
+
+    private boolean crcMatches(ByteBuffer records, int offset, int bodyBytes) {
+        ByteBuffer body = records.duplicate();
+        body.limit(offset + HEADER_BYTES + bodyBytes).position(offset + HEADER_BYTES);
+        crc.reset();
+        crc.update(body);
+        return (int) crc.getValue() == records.getInt(offset + 4);
+    } // end crcMatches()
+
+    /**
+     * Zeroes the segment from `offset` on, up to the first run of zeros as long as a record header.
+     */
+    private static void clear(Segment segment, int offset) {
+        for (int i = offset, zeros = 0; i < segment.buffer.capacity() && zeros < HEADER_BYTES + FIXED_BODY_BYTES;
+                i++) {
+            zeros = segment.buffer.get(i) == 0 ? zeros + 1 : 0;
+            segment.buffer.put(i, (byte) 0);
+        } // end for loop
+
+        segment.buffer.force();
+    } // end clear()
+
+    /**
+     * Compacts every segment (but the active one) that is mostly records that are no longer the latest version. Runs
+     *      on the background thread every `app.messages.log.compaction-interval-ms`, one segment at a time so writes
+     *      are only held up for one segment's worth of copying.
+     *
+     * @return How many segments were compacted.
+     */
+    public int compact() {
+        int compacted = 0;
+
+        for (Integer number = firstCandidate(null); number != null; number = firstCandidate(number)) {
+            lock.writeLock().lock();
+
+            try {
+                Segment segment = segments.get(number);
+
+                if (segment != null && segment != active) {
+                    compact(segment);
+                    compacted++;
+                } // end if statement
+            } // end try block
+            catch (RuntimeException e) { // try again next time, the segment is still there
+                log.warn("Could not compact " + number, e);
+                return compacted;
+            } // end catch block
+            finally {
+                lock.writeLock().unlock();
+            } // end finally block
+        } // end for loop
+
+        return compacted;
+    } // end compact()
+
+    private Integer firstCandidate(Integer after) {
+        lock.readLock().lock();
+
+        try {
+            for (Segment segment : (after == null ? segments : segments.tailMap(after, false)).values()) {
+                if (segment != active && segment.liveBytes < compactionThreshold * segment.end) {
+                    return segment.number;
+                } // end if statement
+            } // end for loop
+
+            return null;
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end firstCandidate()
+
+    /**
+     * Appends the segment's live put records, and the tombstones that may still hide something in an older segment,
+     *      to the active segment, forces that and deletes the segment. Needs the write lock.
+     */
+    private void compact(Segment segment) {
+        boolean olderSegments = segments.firstKey() < segment.number;
+        ByteBuffer records = segment.buffer.duplicate();
+
+        for (int offset = 0; offset < segment.end;) {
+            int bodyBytes = records.getInt(offset);
+            records.position(offset + HEADER_BYTES);
+            byte type = records.get();
+            int id = records.getInt();
+            Entry entry = index.get(id);
+
+            if (type == PUT && entry != null && entry.segment == segment.number && entry.offset == offset) {
+                Message message = read(entry);
+                put(message);
+            } // end if statement
+            else if (type == TOMBSTONE && entry == null && olderSegments) {
+                append(TOMBSTONE, id, records.getInt(), NO_TIME, null);
+            } // end else if statement
+
+            offset += HEADER_BYTES + bodyBytes;
+        } // end for loop
+
+        active.buffer.force(); // the copies have to be on disk before the originals are gone
+        remove(segment);
+        compactions.increment();
+    } // end compact()
+
+    private Segment openSegment(int number, boolean create) throws IOException {
+        Path path = directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long size = create ? segmentBytes : Math.max(channel.size(), segmentBytes);
+            Segment segment = new Segment(number, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            segments.put(number, segment);
+            return segment; // the mapping stays valid after the channel is closed
+        } // end try block
+    } // end openSegment()
+
+    private void remove(Segment segment) {
+        segments.remove(segment.number);
+
+        try {
+            Files.deleteIfExists(segment.path); // the mapping goes away once the buffer is collected
+        } // end try block
+        catch (IOException e) {
+            log.warn("Could not delete " + segment.path + ", it is replayed again on the next start", e);
+        } // end catch block
+    } // end remove()
+
+    /**
+     * Forces what is left to disk and stops the background thread.
+     */
+    @PreDestroy
+    public void close() {
+        background.shutdownNow();
+        lock.writeLock().lock();
+
+        try {
+            active.buffer.force();
+        } // end try block
+        finally {
+            lock.writeLock().unlock();
+        } // end finally block
+    } // end close()
+
+    private int nextId() {
+        return primary.queryForObject("select next value for hibernate_sequence", Integer.class);
+    } // end nextId()
+
+    public int getMessageCount() {
+        lock.readLock().lock();
+
+        try {
+            return index.size();
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end getMessageCount()
+
+    public int getSegmentCount() {
+        lock.readLock().lock();
+
+        try {
+            return segments.size();
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end getSegmentCount()
+
+    private int getMaxId() {
+        lock.readLock().lock();
+
+        try {
+            return maxId;
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end getMaxId()
+
+    /**
+     * @param live Only count the put records that are still the latest version of their message.
+     */
+    public long getBytes(boolean live) {
+        lock.readLock().lock();
+
+        try {
+            long bytes = 0;
+
+            for (Segment segment : segments.values()) {
+                bytes += live ? segment.liveBytes : segment.end;
+            } // end for loop
+
+            return bytes;
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end getBytes()
+
+    /**
+     * One segment file, mapped into memory. `end` is where the next record goes (only the active segment grows).
+     */
+    private static final class Segment {
+        private final int number;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private int end;
+        private long liveBytes;
+
+        private Segment(int number, Path path, MappedByteBuffer buffer) {
+            this.number = number;
+            this.path = path;
+            this.buffer = buffer;
+        } // end constructor
+    } // end Segment Class
+
+    /**
+     * Where the latest put record of a message is, with the fields the lists and counts need.
+     */
+    private static final class Entry {
+        private final int segment;
+        private final int offset;
+        private final int length;
+        private final int id;
+        private final int postedBy;
+        private final long time;
+
+        private Entry(int segment, int offset, int length, int id, int postedBy, long time) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.id = id;
+            this.postedBy = postedBy;
+            this.time = time;
+        } // end constructor
+    } // end Entry Class
+} // end LogMessageStore Class
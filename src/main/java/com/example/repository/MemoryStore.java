@@ -0,0 +1,1272 @@
+package com.example.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.example.entity.Account;
+import com.example.entity.Message;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * A MessageStore and AccountStore that keeps every account and message in memory, for read heavy nodes. Turned on
+ *      with `app.messages.store=memory` (or the memory profile).
+ *
+ * Nothing is kept as an entity or a boxed Integer. Every message has a slot in a set of parallel primitive arrays
+ *      (messageId, the slot of the account that posted it, timePostedEpoch and a reference to its text), and the
+ *      texts, usernames and passwords are UTF-8 bytes in a TextArena outside of the heap. On top of that there is
+ *      - an IntIntMap from messageId to slot and one from accountId to account slot,
+ *      - a posting list for every account with the slots of its messages in messageId order,
+ *      - every message slot in timePostedEpoch and then messageId order, for the time range pages,
+ *      - an open addressing table of account slots by the hash of their username.
+ * Message and Account objects are only made for what a call returns. Deleted messages leave a hole in the arrays, the
+ *      arrays and the text arena are compacted once holes (or unused text) take up more room than what is live.
+ *
+ * Reads share a read lock and writes take the write lock. New ids still come from the primary database's
+ *      hibernate_sequence, so they follow the same numbering as the other stores and snapshots and synthetic data
+ *      keep working unchanged. Everything else stays in memory: the primary account and message tables are only read
+ *      once at startup, and nothing written to this store survives a restart unless a snapshot is taken.
+ */
+@Component
+@ConditionalOnProperty(name = "app.messages.store", havingValue = "memory")
+public class MemoryStore implements MessageStore, AccountStore {
+    private static final int NO_ACCOUNT = -1; // the poster of a message without a postedBy
+    private static final int DELETED = -2; // the poster of a slot whose message was deleted
+    private static final long NO_TIME = Long.MIN_VALUE; // the time of a message without a timePostedEpoch
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int IMPORT_BATCH_SIZE = 1000;
+    private static final int MAX_LENGTH = 255; // the size of the varchar columns
+
+    private final JdbcTemplate primary;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private TextArena texts = new TextArena();
+
+    // accounts, one slot each, they are only ever removed all at once
+    private int accountCount;
+    private int[] accountIds = new int[INITIAL_CAPACITY];
+    private long[] usernames = new long[INITIAL_CAPACITY];
+    private long[] passwords = new long[INITIAL_CAPACITY];
+    private int[] usernameHashes = new int[INITIAL_CAPACITY];
+    private int[] usernameTable = emptyTable(INITIAL_CAPACITY * 2); // account slots by username hash, -1 is empty
+    private int[][] postings = new int[INITIAL_CAPACITY][]; // message slots of every account in messageId order
+    private int[] postingSizes = new int[INITIAL_CAPACITY];
+    private final IntIntMap accountSlots = new IntIntMap(INITIAL_CAPACITY);
+    private boolean accountsInIdOrder = true;
+
+    // messages, one slot each
+    private int messageSlotCount; // slots handed out so far, including the deleted ones
+    private int messageCount;
+    private int[] messageIds = new int[INITIAL_CAPACITY];
+    private int[] posters = new int[INITIAL_CAPACITY];
+    private long[] times = new long[INITIAL_CAPACITY];
+    private long[] messageTexts = new long[INITIAL_CAPACITY];
+    private int[] byTime = new int[INITIAL_CAPACITY]; // live message slots in timePostedEpoch, messageId order
+    private int timeCount; // how many slots are in byTime, the same as messageCount except part way through a change
+    private final IntIntMap messageSlots = new IntIntMap(INITIAL_CAPACITY);
+    private boolean messagesInIdOrder = true;
+
+    @Autowired
+    public MemoryStore(JdbcTemplate primary, MeterRegistry meterRegistry) {
+        this.primary = primary;
+
+        Gauge.builder("app.store.memory.messages", this, MemoryStore::getMessageCount)
+                .description("Messages in the memory store").register(meterRegistry);
+        Gauge.builder("app.store.memory.heap", this, MemoryStore::heapBytes).baseUnit("bytes")
+                .description("Heap used by the memory store's arrays and maps").register(meterRegistry);
+        Gauge.builder("app.store.memory.off-heap", this, MemoryStore::offHeapBytes).baseUnit("bytes")
+                .description("Direct memory used for the memory store's texts").register(meterRegistry);
+    } // end constructor
+
+    /**
+     * Copies the accounts and messages out of the primary database. This runs once the application is ready so that
+     *      `data.sql` has already been loaded, and before a snapshot restore or synthetic data (which then go into this
+     *      store instead).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void importPrimaryRows() {
+        JdbcTemplate streaming = new JdbcTemplate(primary.getDataSource());
+        streaming.setFetchSize(IMPORT_BATCH_SIZE);
+        List<Account> accounts = new ArrayList<>();
+        streaming.query("select accountId, username, password from account order by accountId", rs -> {
+            accounts.add(new Account(rs.getInt(1), rs.getString(2), rs.getString(3)));
+
+            if (accounts.size() == IMPORT_BATCH_SIZE) {
+                loadAllAccounts(accounts.iterator());
+                accounts.clear();
+            } // end if statement
+        });
+        loadAllAccounts(accounts.iterator());
+
+        List<Message> messages = new ArrayList<>();
+        streaming.query("select messageId, postedBy, messageText, timePostedEpoch from message order by messageId",
+                rs -> {
+                    messages.add(new Message(rs.getInt(1), rs.getObject(2, Integer.class), rs.getString(3),
+                            rs.getObject(4, Long.class)));
+
+                    if (messages.size() == IMPORT_BATCH_SIZE) {
+                        loadAll(messages.iterator());
+                        messages.clear();
+                    } // end if statement
+                });
+        loadAll(messages.iterator());
+    } // end importPrimaryRows()
+
+    // ---------------------------------------------------------------------------------------------------------------
+    // MessageStore
+
+    @Override
+    public Message save(Message message) {
+        if (message.getMessageId() == null) { // new messages get their id from the primary sequence
+            message.setMessageId(nextId());
+        } // end if statement
+
+        lock.writeLock().lock();
+
+        try {
+            int slot = messageSlots.get(message.getMessageId());
+
+            if (slot == IntIntMap.MISSING) {
+                addMessage(message, null);
+            } // end if statement
+            else {
+                replaceMessage(slot, message);
+            } // end else statement
+
+            return message;
+        } // end try block
+        finally {
+            lock.writeLock().unlock();
+        } // end finally block
+    } // end save()
+
+    @Override
+    public List<Message> findAll() {
+        lock.readLock().lock();
+
+        try {
+            int[] slots = liveSlotsInIdOrder();
+            List<Message> messages = new ArrayList<>(slots.length);
+
+            for (int slot : slots) {
+                messages.add(message(slot));
+            } // end for loop
+
+            return messages;
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end findAll()
+
+    @Override
+    public Optional<Message> findById(Integer id) {
+        lock.readLock().lock();
+
+        try {
+            int slot = id == null ? IntIntMap.MISSING : messageSlots.get(id);
+            return slot == IntIntMap.MISSING ? Optional.empty() : Optional.of(message(slot));
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end findById()
+
+    @Override
+    public List<Message> findAllById(Collection<Integer> ids) {
+        lock.readLock().lock();
+
+        try {
+            List<Message> found = new ArrayList<>(ids.size());
+
+            for (Integer id : ids) {
+                int slot = id == null ? IntIntMap.MISSING : messageSlots.get(id);
+
+                if (slot != IntIntMap.MISSING) {
+                    found.add(message(slot));
+                } // end if statement
+            } // end for loop
+
+            return found;
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end findAllById()
+
+    @Override
+    public boolean existsById(Integer id) {
+        lock.readLock().lock();
+
+        try {
+            return id != null && messageSlots.get(id) != IntIntMap.MISSING;
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end existsById()
+
+    @Override
+    public void deleteById(Integer id) {
+        lock.writeLock().lock();
+
+        try {
+            removeMessage(id);
+            compactIfNeeded();
+        } // end try block
+        finally {
+            lock.writeLock().unlock();
+        } // end finally block
+    } // end deleteById()
+
+    @Override
+    public List<Message> findByPostedBy(Integer postedBy) {
+        lock.readLock().lock();
+
+        try {
+            int account = postedBy == null ? IntIntMap.MISSING : accountSlots.get(postedBy);
+
+            if (account == IntIntMap.MISSING) {
+                return new ArrayList<>();
+            } // end if statement
+
+            List<Message> messages = new ArrayList<>(postingSizes[account]);
+
+            for (int i = 0; i < postingSizes[account]; i++) {
+                messages.add(message(postings[account][i]));
+            } // end for loop
+
+            return messages;
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end findByPostedBy()
+
+    @Override
+    public List<Message> findByTimeRange(Integer postedBy, long since, long until, int page, int size) {
+        long from = Math.max(since, NO_TIME + 1); // messages without a time are never in a range
+        long skip = (long) page * size;
+        lock.readLock().lock();
+
+        try {
+            List<Message> messages = new ArrayList<>();
+
+            if (postedBy == null) { // walk the time order from the start of the range
+                for (int i = lowerBound(from, Integer.MIN_VALUE); i < timeCount && messages.size() < size; i++) {
+                    int slot = byTime[i];
+
+                    if (times[slot] >= until) {
+                        break;
+                    } // end if statement
+
+                    if (skip > 0) {
+                        skip--;
+                    } // end if statement
+                    else {
+                        messages.add(message(slot));
+                    } // end else statement
+                } // end for loop
+
+                return messages;
+            } // end if statement
+
+            int account = accountSlots.get(postedBy);
+
+            if (account == IntIntMap.MISSING) {
+                return messages;
+            } // end if statement
+
+            int[] matching = new int[postingSizes[account]];
+            int count = 0;
+
+            for (int i = 0; i < postingSizes[account]; i++) { // the posting list is in id order, not time order
+                int slot = postings[account][i];
+
+                if (times[slot] >= from && times[slot] < until) {
+                    matching[count++] = slot;
+                } // end if statement
+            } // end for loop
+
+            sortByTime(matching, 0, count);
+
+            for (long i = skip; i < count && messages.size() < size; i++) {
+                messages.add(message(matching[(int) i]));
+            } // end for loop
+
+            return messages;
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end findByTimeRange()
+
+    @Override
+    public List<Integer> findIdsByPostedBy(Integer postedBy, int afterId, int limit) {
+        lock.readLock().lock();
+
+        try {
+            int account = postedBy == null ? IntIntMap.MISSING : accountSlots.get(postedBy);
+            List<Integer> ids = new ArrayList<>();
+
+            if (account == IntIntMap.MISSING) {
+                return ids;
+            } // end if statement
+
+            int[] posting = postings[account];
+
+            for (int i = postingBound(posting, postingSizes[account], afterId);
+                    i < postingSizes[account] && ids.size() < limit; i++) {
+                ids.add(messageIds[posting[i]]);
+            } // end for loop
+
+            return ids;
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end findIdsByPostedBy()
+
+    @Override
+    public List<Integer> findIdsByTimeRange(long since, long until, int afterId, int limit) {
+        long from = Math.max(since, NO_TIME + 1);
+        lock.readLock().lock();
+
+        try {
+            int[] found = new int[16];
+            int count = 0;
+
+            for (int i = lowerBound(from, Integer.MIN_VALUE); i < timeCount && times[byTime[i]] < until; i++) {
+                int id = messageIds[byTime[i]];
+
+                if (id > afterId) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    } // end if statement
+
+                    found[count++] = id;
+                } // end if statement
+            } // end for loop
+
+            Arrays.sort(found, 0, count);
+            List<Integer> ids = new ArrayList<>(Math.min(count, limit));
+
+            for (int i = 0; i < count && i < limit; i++) {
+                ids.add(found[i]);
+            } // end for loop
+
+            return ids;
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end findIdsByTimeRange()
+
+    @Override
+    public Map<Integer, long[]> countByPostedBy() {
+        lock.readLock().lock();
+
+        try {
+            Map<Integer, long[]> stats = new HashMap<>();
+
+            for (int account = 0; account < accountCount; account++) {
+                if (postingSizes[account] > 0) {
+                    long latest = Long.MIN_VALUE; // the same as NO_TIME, which is what a message without a time has
+
+                    for (int i = 0; i < postingSizes[account]; i++) {
+                        latest = Math.max(latest, times[postings[account][i]]);
+                    } // end for loop
+
+                    stats.put(accountIds[account], new long[] {postingSizes[account], latest});
+                } // end if statement
+            } // end for loop
+
+            return stats;
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end countByPostedBy()
+
+    @Override
+    public int deleteAllById(List<Integer> ids) {
+        lock.writeLock().lock();
+
+        try {
+            int deleted = 0;
+
+            for (Integer id : ids) {
+                if (removeMessage(id)) {
+                    deleted++;
+                } // end if statement
+            } // end for loop
+
+            compactIfNeeded();
+            return deleted;
+        } // end try block
+        finally {
+            lock.writeLock().unlock();
+        } // end finally block
+    } // end deleteAllById()
+
+    /**
+     * Hands the messages over in messageId order while holding the read lock, so nothing can change them part way
+     *      through (a snapshot of this store is always consistent) but writes wait until it is done.
+     */
+    @Override
+    public void forEachMessage(Consumer<Message> action) {
+        lock.readLock().lock();
+
+        try {
+            for (int slot : liveSlotsInIdOrder()) {
+                action.accept(message(slot));
+            } // end for loop
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end forEachMessage()
+
+    @Override
+    public void deleteAll() {
+        lock.writeLock().lock();
+
+        try {
+            for (int slot = 0; slot < messageSlotCount; slot++) {
+                if (posters[slot] != DELETED) {
+                    texts.free(messageTexts[slot]);
+                } // end if statement
+            } // end for loop
+
+            messageSlotCount = 0;
+            messageCount = 0;
+            timeCount = 0;
+            messageSlots.clear();
+            messagesInIdOrder = true;
+            Arrays.fill(postingSizes, 0, accountCount, 0);
+            compactIfNeeded();
+        } // end try block
+        finally {
+            lock.writeLock().unlock();
+        } // end finally block
+    } // end deleteAll()
+
+    /**
+     * Adds the messages at the end of the arrays and the posting lists without keeping them in order, then sorts just
+     *      what was added and merges it in. That keeps bulk loads in any order linear apart from the sorting.
+     *
+     * @throws DuplicateKeyException If a message_id is already in the store.
+     * @throws DataIntegrityViolationException If a message is posted by an account that is not in the store.
+     */
+    @Override
+    public long loadAll(Iterator<Message> messages) {
+        lock.writeLock().lock();
+        int timeFrom = timeCount;
+        IntIntMap touched = new IntIntMap(64); // account slot -> the size of its posting list before the load
+        long loaded = 0;
+
+        try {
+            while (messages.hasNext()) {
+                Message message = messages.next();
+
+                if (message.getMessageId() == null) {
+                    throw new IllegalArgumentException("Messages have to have their message_id to be loaded");
+                } // end if statement
+
+                if (messageSlots.get(message.getMessageId()) != IntIntMap.MISSING) {
+                    throw new DuplicateKeyException("There already is a message " + message.getMessageId());
+                } // end if statement
+
+                addMessage(message, touched);
+                loaded++;
+            } // end while loop
+
+            return loaded;
+        } // end try block
+        finally { // even if the load failed part way, the rows that did get in have to be put in order
+            touched.forEach(this::mergePostingTail);
+            mergeTimeTail(timeFrom);
+            lock.writeLock().unlock();
+        } // end finally block
+    } // end loadAll()
+
+    // ---------------------------------------------------------------------------------------------------------------
+    // AccountStore
+
+    /**
+     * @throws DuplicateKeyException If another account already has the username.
+     */
+    @Override
+    public Account saveAccount(Account account) {
+        if (account.getAccountId() == null) {
+            account.setAccountId(nextId());
+        } // end if statement
+
+        lock.writeLock().lock();
+
+        try {
+            int slot = accountSlots.get(account.getAccountId());
+
+            if (slot == IntIntMap.MISSING) {
+                addAccount(account);
+            } // end if statement
+            else {
+                replaceAccount(slot, account);
+            } // end else statement
+
+            return account;
+        } // end try block
+        finally {
+            lock.writeLock().unlock();
+        } // end finally block
+    } // end saveAccount()
+
+    @Override
+    public Optional<Account> findAccountById(Integer id) {
+        lock.readLock().lock();
+
+        try {
+            int slot = id == null ? IntIntMap.MISSING : accountSlots.get(id);
+            return slot == IntIntMap.MISSING ? Optional.empty() : Optional.of(account(slot));
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end findAccountById()
+
+    @Override
+    public Account findAccountByUsername(String username) {
+        if (username == null) {
+            return null;
+        } // end if statement
+
+        byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+        lock.readLock().lock();
+
+        try {
+            int slot = usernameSlot(bytes, hash(bytes));
+            return slot == IntIntMap.MISSING ? null : account(slot);
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end findAccountByUsername()
+
+    @Override
+    public void forEachAccount(Consumer<Account> action) {
+        lock.readLock().lock();
+
+        try {
+            int[] slots = new int[accountCount];
+
+            for (int i = 0; i < accountCount; i++) {
+                slots[i] = i;
+            } // end for loop
+
+            if (!accountsInIdOrder) {
+                sortById(slots, slots.length, accountIds);
+            } // end if statement
+
+            for (int slot : slots) {
+                action.accept(account(slot));
+            } // end for loop
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end forEachAccount()
+
+    /**
+     * @throws DataIntegrityViolationException If there are still messages posted by any of the accounts.
+     */
+    @Override
+    public void deleteAllAccounts() {
+        lock.writeLock().lock();
+
+        try {
+            for (int account = 0; account < accountCount; account++) { // like the foreign key, check before removing
+                if (postingSizes[account] > 0) {
+                    throw new DataIntegrityViolationException("Account " + accountIds[account] + " still has messages");
+                } // end if statement
+            } // end for loop
+
+            for (int account = 0; account < accountCount; account++) {
+                texts.free(usernames[account]);
+                texts.free(passwords[account]);
+                postings[account] = null;
+            } // end for loop
+
+            accountCount = 0;
+            accountSlots.clear();
+            Arrays.fill(usernameTable, IntIntMap.MISSING);
+            accountsInIdOrder = true;
+            compactIfNeeded();
+        } // end try block
+        finally {
+            lock.writeLock().unlock();
+        } // end finally block
+    } // end deleteAllAccounts()
+
+    /**
+     * @throws DuplicateKeyException If an account_id or username is already in the store.
+     */
+    @Override
+    public long loadAllAccounts(Iterator<Account> accounts) {
+        lock.writeLock().lock();
+
+        try {
+            long loaded = 0;
+
+            while (accounts.hasNext()) {
+                Account account = accounts.next();
+
+                if (account.getAccountId() == null) {
+                    throw new IllegalArgumentException("Accounts have to have their account_id to be loaded");
+                } // end if statement
+
+                if (accountSlots.get(account.getAccountId()) != IntIntMap.MISSING) {
+                    throw new DuplicateKeyException("There already is an account " + account.getAccountId());
+                } // end if statement
+
+                addAccount(account);
+                loaded++;
+            } // end while loop
+
+            return loaded;
+        } // end try block
+        finally {
+            lock.writeLock().unlock();
+        } // end finally block
+    } // end loadAllAccounts()
+
+    // ---------------------------------------------------------------------------------------------------------------
+    // Sizes, for the gauges and MemoryStoreBenchmark
+
+    public int getMessageCount() {
+        lock.readLock().lock();
+
+        try {
+            return messageCount;
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end getMessageCount()
+
+    /**
+     * @return Roughly how many bytes of heap the arrays and maps take up (the JVM's object headers are left out).
+     */
+    public long heapBytes() {
+        lock.readLock().lock();
+
+        try {
+            long bytes = 4L * messageIds.length + 4L * posters.length + 8L * times.length + 8L * messageTexts.length
+                    + 4L * byTime.length + messageSlots.bytes();
+            bytes += 4L * accountIds.length + 8L * usernames.length + 8L * passwords.length
+                    + 4L * usernameHashes.length + 4L * usernameTable.length + 8L * postings.length
+                    + 4L * postingSizes.length + accountSlots.bytes();
+
+            for (int account = 0; account < accountCount; account++) {
+                bytes += postings[account] == null ? 0 : 4L * postings[account].length;
+            } // end for loop
+
+            return bytes;
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end heapBytes()
+
+    /**
+     * @return How many bytes of direct memory the texts take up.
+     */
+    public long offHeapBytes() {
+        lock.readLock().lock();
+
+        try {
+            return texts.allocatedBytes();
+        } // end try block
+        finally {
+            lock.readLock().unlock();
+        } // end finally block
+    } // end offHeapBytes()
+
+    // ---------------------------------------------------------------------------------------------------------------
+    // Everything below is only called while holding the lock
+
+    private int nextId() {
+        return primary.queryForObject("select next value for hibernate_sequence", Integer.class);
+    } // end nextId()
+
+    private Message message(int slot) {
+        return new Message(messageIds[slot], posters[slot] < 0 ? null : accountIds[posters[slot]],
+                texts.get(messageTexts[slot]), times[slot] == NO_TIME ? null : times[slot]);
+    } // end message()
+
+    private Account account(int slot) {
+        return new Account(accountIds[slot], texts.get(usernames[slot]), texts.get(passwords[slot]));
+    } // end account()
+
+    /**
+     * @param touched Set for a bulk load, the message then goes at the end of its posting list and the time order
+     *      (the caller puts them in order afterwards) and its account is remembered here.
+     */
+    private void addMessage(Message message, IntIntMap touched) {
+        int poster = posterSlot(message.getPostedBy());
+        long text = texts.add(checkLength(message.getMessageText()));
+
+        if (messageSlotCount == messageIds.length) {
+            int capacity = messageIds.length * 2;
+            messageIds = Arrays.copyOf(messageIds, capacity);
+            posters = Arrays.copyOf(posters, capacity);
+            times = Arrays.copyOf(times, capacity);
+            messageTexts = Arrays.copyOf(messageTexts, capacity);
+        } // end if statement
+
+        if (timeCount == byTime.length) {
+            byTime = Arrays.copyOf(byTime, byTime.length * 2);
+        } // end if statement
+
+        int slot = messageSlotCount++;
+        int id = message.getMessageId();
+        messagesInIdOrder &= slot == 0 || messageIds[slot - 1] < id;
+        messageIds[slot] = id;
+        posters[slot] = poster;
+        times[slot] = message.getTimePostedEpoch() == null ? NO_TIME : message.getTimePostedEpoch();
+        messageTexts[slot] = text;
+        messageSlots.put(id, slot);
+
+        if (touched == null) {
+            addToPosting(poster, slot);
+            addToTime(slot);
+        } // end if statement
+        else {
+            if (poster >= 0 && touched.get(poster) == IntIntMap.MISSING) {
+                touched.put(poster, postingSizes[poster]);
+            } // end if statement
+
+            appendToPosting(poster, slot);
+            byTime[timeCount++] = slot;
+        } // end else statement
+
+        messageCount++;
+    } // end addMessage()
+
+    private void replaceMessage(int slot, Message message) {
+        int poster = posterSlot(message.getPostedBy());
+        long time = message.getTimePostedEpoch() == null ? NO_TIME : message.getTimePostedEpoch();
+        long text = texts.add(checkLength(message.getMessageText()));
+
+        if (poster != posters[slot]) {
+            removeFromPosting(posters[slot], slot);
+            posters[slot] = poster;
+            addToPosting(poster, slot);
+        } // end if statement
+
+        if (time != times[slot]) {
+            removeFromTime(slot);
+            times[slot] = time;
+            addToTime(slot);
+        } // end if statement
+
+        texts.free(messageTexts[slot]);
+        messageTexts[slot] = text;
+        compactIfNeeded();
+    } // end replaceMessage()
+
+    private boolean removeMessage(Integer id) {
+        int slot = id == null ? IntIntMap.MISSING : messageSlots.remove(id);
+
+        if (slot == IntIntMap.MISSING) {
+            return false;
+        } // end if statement
+
+        removeFromPosting(posters[slot], slot);
+        removeFromTime(slot);
+        texts.free(messageTexts[slot]);
+        posters[slot] = DELETED;
+        messageCount--;
+        return true;
+    } // end removeMessage()
+
+    /**
+     * @return The slot of the account, or NO_ACCOUNT for a null postedBy.
+     * @throws DataIntegrityViolationException If there is no such account, like the foreign key would.
+     */
+    private int posterSlot(Integer postedBy) {
+        if (postedBy == null) {
+            return NO_ACCOUNT;
+        } // end if statement
+
+        int account = accountSlots.get(postedBy);
+
+        if (account == IntIntMap.MISSING) {
+            throw new DataIntegrityViolationException("There is no account " + postedBy + " to post the message");
+        } // end if statement
+
+        return account;
+    } // end posterSlot()
+
+    private int[] liveSlotsInIdOrder() {
+        int[] slots = new int[messageCount];
+        int count = 0;
+
+        for (int slot = 0; slot < messageSlotCount; slot++) {
+            if (posters[slot] != DELETED) {
+                slots[count++] = slot;
+            } // end if statement
+        } // end for loop
+
+        if (!messagesInIdOrder) {
+            sortById(slots, count, messageIds);
+        } // end if statement
+
+        return slots;
+    } // end liveSlotsInIdOrder()
+
+    /**
+     * Sorts slots by the id they have in `ids`, by packing id and slot into one long so a primitive sort can be used.
+     */
+    private static void sortById(int[] slots, int count, int[] ids) {
+        long[] keys = new long[count];
+
+        for (int i = 0; i < count; i++) {
+            keys[i] = (long) ids[slots[i]] << 32 | slots[i];
+        } // end for loop
+
+        Arrays.sort(keys);
+
+        for (int i = 0; i < count; i++) {
+            slots[i] = (int) keys[i];
+        } // end for loop
+    } // end sortById()
+
+    // posting lists, every one is in messageId order
+
+    private void addToPosting(int account, int slot) {
+        if (account < 0) {
+            return;
+        } // end if statement
+
+        appendToPosting(account, slot);
+        int[] posting = postings[account];
+        int last = postingSizes[account] - 1;
+
+        if (last > 0 && messageIds[posting[last - 1]] > messageIds[slot]) { // new ids are almost always the highest
+            int at = postingBound(posting, last, messageIds[slot] - 1);
+            System.arraycopy(posting, at, posting, at + 1, last - at);
+            posting[at] = slot;
+        } // end if statement
+    } // end addToPosting()
+
+    private void appendToPosting(int account, int slot) {
+        if (account < 0) {
+            return;
+        } // end if statement
+
+        if (postings[account] == null) {
+            postings[account] = new int[4];
+        } // end if statement
+        else if (postingSizes[account] == postings[account].length) {
+            postings[account] = Arrays.copyOf(postings[account], postingSizes[account] * 2);
+        } // end else if statement
+
+        postings[account][postingSizes[account]++] = slot;
+    } // end appendToPosting()
+
+    private void removeFromPosting(int account, int slot) {
+        if (account < 0) {
+            return;
+        } // end if statement
+
+        int[] posting = postings[account];
+        int at = postingBound(posting, postingSizes[account], messageIds[slot] - 1);
+        System.arraycopy(posting, at + 1, posting, at, postingSizes[account] - at - 1);
+        postingSizes[account]--;
+    } // end removeFromPosting()
+
+    /**
+     * @return The first position in the posting list whose message has an id above `afterId`.
+     */
+    private int postingBound(int[] posting, int size, int afterId) {
+        int low = 0;
+        int high = size;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (messageIds[posting[middle]] <= afterId) {
+                low = middle + 1;
+            } // end if statement
+            else {
+                high = middle;
+            } // end else statement
+        } // end while loop
+
+        return low;
+    } // end postingBound()
+
+    /**
+     * Puts the end of a posting list that a bulk load appended to back in messageId order.
+     *
+     * @param from Where the appended part starts, everything before it is already in order.
+     */
+    private void mergePostingTail(int account, int from) {
+        int[] posting = postings[account];
+        int size = postingSizes[account];
+        long[] tail = new long[size - from];
+
+        for (int i = 0; i < tail.length; i++) {
+            tail[i] = (long) messageIds[posting[from + i]] << 32 | posting[from + i];
+        } // end for loop
+
+        Arrays.sort(tail);
+        int i = from - 1;
+        int j = tail.length - 1;
+
+        for (int k = size - 1; j >= 0; k--) { // merge from the back so only the tail needs copying
+            if (i >= 0 && messageIds[posting[i]] > (int) (tail[j] >> 32)) {
+                posting[k] = posting[i--];
+            } // end if statement
+            else {
+                posting[k] = (int) tail[j--];
+            } // end else statement
+        } // end for loop
+    } // end mergePostingTail()
+
+    // the time order, by timePostedEpoch and then messageId
+
+    private int compareByTime(int a, int b) {
+        int byTimes = Long.compare(times[a], times[b]);
+        return byTimes != 0 ? byTimes : Integer.compare(messageIds[a], messageIds[b]);
+    } // end compareByTime()
+
+    /**
+     * @return The first position in the time order at or after (`time`, `id`).
+     */
+    private int lowerBound(long time, int id) {
+        int low = 0;
+        int high = timeCount;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int slot = byTime[middle];
+
+            if (times[slot] < time || (times[slot] == time && messageIds[slot] < id)) {
+                low = middle + 1;
+            } // end if statement
+            else {
+                high = middle;
+            } // end else statement
+        } // end while loop
+
+        return low;
+    } // end lowerBound()
+
+    /**
+     * Adds a slot to the time order, new messages are almost always the latest so this is usually an append.
+     */
+    private void addToTime(int slot) {
+        int at = timeCount > 0 && compareByTime(byTime[timeCount - 1], slot) > 0
+                ? lowerBound(times[slot], messageIds[slot]) : timeCount;
+        System.arraycopy(byTime, at, byTime, at + 1, timeCount - at);
+        byTime[at] = slot;
+        timeCount++;
+    } // end addToTime()
+
+    private void removeFromTime(int slot) {
+        int at = lowerBound(times[slot], messageIds[slot]);
+        System.arraycopy(byTime, at + 1, byTime, at, timeCount - at - 1);
+        timeCount--;
+    } // end removeFromTime()
+
+    /**
+     * Puts the end of the time order that a bulk load appended to back in order.
+     *
+     * @param from Where the appended part starts, everything before it is already in order.
+     */
+    private void mergeTimeTail(int from) {
+        sortByTime(byTime, from, timeCount);
+
+        if (from == 0 || from == timeCount || compareByTime(byTime[from - 1], byTime[from]) < 0) {
+            return; // the new messages all come after the old ones
+        } // end if statement
+
+        int[] tail = Arrays.copyOfRange(byTime, from, timeCount);
+        int i = from - 1;
+        int j = tail.length - 1;
+
+        for (int k = timeCount - 1; j >= 0; k--) { // merge from the back so only the tail needs copying
+            byTime[k] = i >= 0 && compareByTime(byTime[i], tail[j]) > 0 ? byTime[i--] : tail[j--];
+        } // end for loop
+    } // end mergeTimeTail()
+
+    /**
+     * A bottom up merge sort of message slots by time, since the slots cannot be sorted by a comparator without
+     *      boxing them.
+     */
+    private void sortByTime(int[] slots, int from, int to) {
+        int[] buffer = new int[Math.max(0, to - from)];
+
+        for (int width = 1; width < to - from; width *= 2) {
+            for (int low = from; low < to - width; low += 2 * width) {
+                int middle = low + width;
+                int high = Math.min(middle + width, to);
+
+                if (compareByTime(slots[middle - 1], slots[middle]) <= 0) {
+                    continue; // the two runs are already in order
+                } // end if statement
+
+                System.arraycopy(slots, low, buffer, 0, width);
+                int i = 0;
+                int j = middle;
+                int k = low;
+
+                while (i < width && j < high) {
+                    slots[k++] = compareByTime(slots[j], buffer[i]) < 0 ? slots[j++] : buffer[i++];
+                } // end while loop
+
+                System.arraycopy(buffer, i, slots, k, width - i);
+            } // end for loop
+        } // end for loop
+    } // end sortByTime()
+
+    // accounts
+
+    private void addAccount(Account account) {
+        byte[] username = usernameBytes(account);
+        int hash = hash(username);
+
+        if (usernameSlot(username, hash) != IntIntMap.MISSING) {
+            throw new DuplicateKeyException("The username " + account.getUsername() + " is already taken");
+        } // end if statement
+
+        long usernameRef = texts.add(username);
+        long passwordRef = texts.add(checkLength(account.getPassword()));
+
+        if (accountCount == accountIds.length) {
+            int capacity = accountIds.length * 2;
+            accountIds = Arrays.copyOf(accountIds, capacity);
+            usernames = Arrays.copyOf(usernames, capacity);
+            passwords = Arrays.copyOf(passwords, capacity);
+            usernameHashes = Arrays.copyOf(usernameHashes, capacity);
+            postings = Arrays.copyOf(postings, capacity);
+            postingSizes = Arrays.copyOf(postingSizes, capacity);
+        } // end if statement
+
+        int slot = accountCount++;
+        accountsInIdOrder &= slot == 0 || accountIds[slot - 1] < account.getAccountId();
+        accountIds[slot] = account.getAccountId();
+        usernames[slot] = usernameRef;
+        passwords[slot] = passwordRef;
+        usernameHashes[slot] = hash;
+        accountSlots.put(account.getAccountId(), slot);
+
+        if (accountCount * 2 > usernameTable.length) {
+            rebuildUsernameTable(usernameTable.length * 2);
+        } // end if statement
+        else {
+            putUsername(slot);
+        } // end else statement
+    } // end addAccount()
+
+    /**
+     * Changes the username and password of an account. Nothing does this today, so it simply rebuilds the username
+     *      table when the username changes.
+     */
+    private void replaceAccount(int slot, Account account) {
+        byte[] username = usernameBytes(account);
+        int hash = hash(username);
+        int taken = usernameSlot(username, hash);
+
+        if (taken != IntIntMap.MISSING && taken != slot) {
+            throw new DuplicateKeyException("The username " + account.getUsername() + " is already taken");
+        } // end if statement
+
+        long passwordRef = texts.add(checkLength(account.getPassword()));
+        texts.free(passwords[slot]);
+        passwords[slot] = passwordRef;
+
+        if (taken != slot) {
+            long usernameRef = texts.add(username);
+            texts.free(usernames[slot]);
+            usernames[slot] = usernameRef;
+            usernameHashes[slot] = hash;
+            rebuildUsernameTable(usernameTable.length);
+        } // end if statement
+
+        compactIfNeeded();
+    } // end replaceAccount()
+
+    /**
+     * @throws DataIntegrityViolationException If the username is null, like the not null constraint would.
+     */
+    private static byte[] usernameBytes(Account account) {
+        if (account.getUsername() == null) {
+            throw new DataIntegrityViolationException("An account has to have a username");
+        } // end if statement
+
+        return checkLength(account.getUsername()).getBytes(StandardCharsets.UTF_8);
+    } // end usernameBytes()
+
+    /**
+     * @throws DataIntegrityViolationException If the value would not fit in the varchar(255) columns of the tables.
+     */
+    private static String checkLength(String value) {
+        if (value != null && value.length() > MAX_LENGTH) {
+            throw new DataIntegrityViolationException("A value can be at most " + MAX_LENGTH + " characters long");
+        } // end if statement
+
+        return value;
+    } // end checkLength()
+
+    private static int hash(byte[] bytes) {
+        int hash = Arrays.hashCode(bytes) * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    } // end hash()
+
+    /**
+     * @return The slot of the account with this username, or MISSING.
+     */
+    private int usernameSlot(byte[] username, int hash) {
+        int mask = usernameTable.length - 1;
+
+        for (int i = hash & mask; usernameTable[i] != IntIntMap.MISSING; i = (i + 1) & mask) {
+            int slot = usernameTable[i];
+
+            if (usernameHashes[slot] == hash && texts.equals(usernames[slot], username)) {
+                return slot;
+            } // end if statement
+        } // end for loop
+
+        return IntIntMap.MISSING;
+    } // end usernameSlot()
+
+    private void putUsername(int slot) {
+        int mask = usernameTable.length - 1;
+        int i = usernameHashes[slot] & mask;
+
+        while (usernameTable[i] != IntIntMap.MISSING) {
+            i = (i + 1) & mask;
+        } // end while loop
+
+        usernameTable[i] = slot;
+    } // end putUsername()
+
+    private void rebuildUsernameTable(int size) {
+        usernameTable = emptyTable(size);
+
+        for (int slot = 0; slot < accountCount; slot++) {
+            putUsername(slot);
+        } // end for loop
+    } // end rebuildUsernameTable()
+
+    // compaction
+
+    /**
+     * Compacts the message arrays once deleted slots outnumber the live ones, and the text arena once more of it is
+     *      unused than used. Either way everything is copied once, so the cost is spread over the deletes that made
+     *      the garbage.
+     */
+    private void compactIfNeeded() {
+        int holes = messageSlotCount - messageCount;
+
+        if (holes > INITIAL_CAPACITY && holes > messageCount) {
+            compactMessages();
+        } // end if statement
+
+        if (texts.garbageBytes() > TextArena.CHUNK_SIZE && texts.garbageBytes() > texts.liveBytes()) {
+            compactTexts();
+        } // end if statement
+    } // end compactIfNeeded()
+
+    /**
+     * Moves the live messages to the front of the arrays, in messageId order, and points the maps, posting lists and
+     *      time order at their new slots.
+     */
+    private void compactMessages() {
+        int[] live = liveSlotsInIdOrder();
+        int[] newSlot = new int[messageSlotCount];
+        int capacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, live.length)) * 2);
+        int[] newIds = new int[capacity];
+        int[] newPosters = new int[capacity];
+        long[] newTimes = new long[capacity];
+        long[] newTexts = new long[capacity];
+        messageSlots.clear();
+
+        for (int i = 0; i < live.length; i++) {
+            int slot = live[i];
+            newSlot[slot] = i;
+            newIds[i] = messageIds[slot];
+            newPosters[i] = posters[slot];
+            newTimes[i] = times[slot];
+            newTexts[i] = messageTexts[slot];
+            messageSlots.put(newIds[i], i);
+        } // end for loop
+
+        for (int account = 0; account < accountCount; account++) { // the order by id does not change
+            for (int i = 0; i < postingSizes[account]; i++) {
+                postings[account][i] = newSlot[postings[account][i]];
+            } // end for loop
+        } // end for loop
+
+        for (int i = 0; i < timeCount; i++) {
+            byTime[i] = newSlot[byTime[i]];
+        } // end for loop
+
+        messageIds = newIds;
+        posters = newPosters;
+        times = newTimes;
+        messageTexts = newTexts;
+        messageSlotCount = live.length;
+        messagesInIdOrder = true;
+    } // end compactMessages()
+
+    /**
+     * Copies the strings that are still in use into a new arena, the old one's direct buffers are freed once they are
+     *      garbage collected.
+     */
+    private void compactTexts() {
+        TextArena compacted = new TextArena();
+
+        for (int slot = 0; slot < messageSlotCount; slot++) {
+            if (posters[slot] != DELETED) {
+                messageTexts[slot] = texts.copy(messageTexts[slot], compacted);
+            } // end if statement
+        } // end for loop
+
+        for (int slot = 0; slot < accountCount; slot++) {
+            usernames[slot] = texts.copy(usernames[slot], compacted);
+            passwords[slot] = texts.copy(passwords[slot], compacted);
+        } // end for loop
+
+        texts = compacted;
+    } // end compactTexts()
+
+    private static int[] emptyTable(int size) {
+        int[] table = new int[size];
+        Arrays.fill(table, IntIntMap.MISSING);
+        return table;
+    } // end emptyTable()
+} // end MemoryStore Class
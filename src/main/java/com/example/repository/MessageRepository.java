@@ -1,14 +1,67 @@
 package com.example.repository;
 
+import java.util.Collection;
 import java.util.List;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.example.entity.Message;
-import com.example.entity.Account;
 
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Integer>{
-    List<Message> findMessagesByPostedBy(Integer id); // A function that can find a list of messages based on who posted it
+    // The list queries build plain Message objects instead of loading managed entities, so the persistence context
+    // does not keep a copy of every message for dirty checking. They are only for reading, use findById to change one.
+    String PROJECTION = "select new com.example.entity.Message(m.messageId, m.postedBy, m.messageText, "
+            + "m.timePostedEpoch) from Message m ";
+
+    // Finds every message.
+    @Query(PROJECTION)
+    List<Message> findAllDetached();
+
+    // A function that can find a list of messages based on who posted it, the result goes through the query cache.
+    @Query(PROJECTION + "where m.postedBy = :postedBy")
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+    List<Message> findMessagesByPostedBy(@Param("postedBy") Integer id);
+
+    // Finds the messages with any of the ids with one statement. These are entities rather than a projection, so that
+    // they go into the second-level cache like the ones findById loads.
+    @Query("select m from Message m where m.messageId in :ids")
+    List<Message> findByMessageIdIn(@Param("ids") Collection<Integer> ids);
+
+    // Finds a page of the messages posted in a time range, this uses the timePostedEpoch index.
+    @Query(PROJECTION + "where m.timePostedEpoch >= :since and m.timePostedEpoch < :until "
+            + "order by m.timePostedEpoch, m.messageId")
+    List<Message> findByTimeRange(@Param("since") long since, @Param("until") long until, Pageable page);
+
+    // Finds a page of the messages an account posted in a time range, this uses the (postedBy, timePostedEpoch) index.
+    @Query(PROJECTION + "where m.postedBy = :postedBy and m.timePostedEpoch >= :since "
+            + "and m.timePostedEpoch < :until order by m.timePostedEpoch, m.messageId")
+    List<Message> findByPostedByAndTimeRange(@Param("postedBy") Integer postedBy, @Param("since") long since,
+            @Param("until") long until, Pageable page);
+
+    // Finds the next page of message ids for an account, used to delete an account's messages in chunks.
+    @Query("select m.messageId from Message m where m.postedBy = :postedBy and m.messageId > :afterId order by m.messageId")
+    List<Integer> findIdsByPostedBy(@Param("postedBy") Integer postedBy, @Param("afterId") int afterId, Pageable page);
+
+    // Finds the next page of message ids in a time range, used to delete old messages in chunks.
+    @Query("select m.messageId from Message m where m.timePostedEpoch >= :since and m.timePostedEpoch < :until "
+            + "and m.messageId > :afterId order by m.messageId")
+    List<Integer> findIdsByTimeRange(@Param("since") long since, @Param("until") long until,
+            @Param("afterId") int afterId, Pageable page);
+
+    // Counts the messages of every account along with the latest time each account posted.
+    @Query("select m.postedBy, count(m), max(m.timePostedEpoch) from Message m group by m.postedBy")
+    List<Object[]> countByPostedBy();
+
+    @Modifying
+    @Query("delete from Message m where m.messageId in :ids")
+    int deleteByMessageIdIn(@Param("ids") Collection<Integer> ids); // Deletes a group of messages with one statement.
 }
@@ -0,0 +1,187 @@
+package com.example.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import com.example.entity.Message;
+
+/**
+ * The operations that MessageService needs from whatever is storing the messages.
+ * 
+ * The default implementation hands everything to the MessageRepository, other backends can be picked with the
+ *      `app.messages.store` property.
+ */
+public interface MessageStore {
+    Message save(Message message); // Add a new message or replace an existing one.
+
+    List<Message> findAll(); // Every message in the store.
+
+    Optional<Message> findById(Integer id); // Find a single message based on its message_id.
+
+    boolean existsById(Integer id); // Check if a message with a matching message_id exists.
+
+    void deleteById(Integer id); // Remove a message based on its message_id.
+
+    List<Message> findByPostedBy(Integer postedBy); // Find all the messages that were posted by a single account.
+
+    /**
+     * Finds one page of the messages posted in a time range, ordered by timePostedEpoch and then message_id.
+     * 
+     * The default implementation filters `findAll()` or `findByPostedBy()`, stores that can do this with an indexed 
+     *      query should override it.
+     * 
+     * @param postedBy The id of the account whose messages are wanted, or null for every account.
+     * @param since The earliest timePostedEpoch to include.
+     * @param until The timePostedEpoch to stop before.
+     * @param page The number of the page, starting from 0.
+     * @param size How many messages are on a page.
+     * @return The messages on the page.
+     */
+    default List<Message> findByTimeRange(Integer postedBy, long since, long until, int page, int size) {
+        List<Message> messages = postedBy == null ? findAll() : findByPostedBy(postedBy);
+        return messages.stream().filter(message -> message.getTimePostedEpoch() != null
+                && message.getTimePostedEpoch() >= since && message.getTimePostedEpoch() < until)
+                .sorted(Comparator.comparing(Message::getTimePostedEpoch).thenComparing(Message::getMessageId))
+                .skip((long) page * size).limit(size).collect(Collectors.toList());
+    } // end findByTimeRange()
+
+    /**
+     * Finds the ids of the messages posted by an account, in message_id order, starting after a given id.
+     * 
+     * The default implementation filters `findByPostedBy()`, stores that can do this with a query should override it.
+     * 
+     * @param postedBy The id of the account.
+     * @param afterId Only ids greater than this are returned.
+     * @param limit The most ids to return.
+     * @return Up to `limit` message ids.
+     */
+    default List<Integer> findIdsByPostedBy(Integer postedBy, int afterId, int limit) {
+        return findByPostedBy(postedBy).stream().map(Message::getMessageId).filter(id -> id > afterId).sorted()
+                .limit(limit).collect(Collectors.toList());
+    } // end findIdsByPostedBy()
+
+    /**
+     * Finds the ids of the messages posted between two times, in message_id order, starting after a given id.
+     * 
+     * The default implementation filters `findAll()`, stores that can do this with a query should override it.
+     * 
+     * @param since The earliest timePostedEpoch to include.
+     * @param until The timePostedEpoch to stop before.
+     * @param afterId Only ids greater than this are returned.
+     * @param limit The most ids to return.
+     * @return Up to `limit` message ids.
+     */
+    default List<Integer> findIdsByTimeRange(long since, long until, int afterId, int limit) {
+        return findAll().stream().filter(message -> message.getTimePostedEpoch() != null
+                && message.getTimePostedEpoch() >= since && message.getTimePostedEpoch() < until)
+                .map(Message::getMessageId).filter(id -> id > afterId).sorted(Comparator.naturalOrder())
+                .limit(limit).collect(Collectors.toList());
+    } // end findIdsByTimeRange()
+
+    /**
+     * Counts the messages of every account and finds the latest timePostedEpoch of each.
+     * 
+     * The default implementation goes through `findAll()`, stores that can do this with a query should override it.
+     * 
+     * @return A map from account id to a pair of {message count, latest timePostedEpoch}, accounts without any 
+     *      messages are left out. The latest time is Long.MIN_VALUE if none of the messages have a time.
+     */
+    default Map<Integer, long[]> countByPostedBy() {
+        Map<Integer, long[]> stats = new HashMap<>();
+
+        for (Message message : findAll()) {
+            long[] entry = stats.computeIfAbsent(message.getPostedBy(), postedBy -> new long[] {0, Long.MIN_VALUE});
+            entry[0]++;
+
+            if (message.getTimePostedEpoch() != null) {
+                entry[1] = Math.max(entry[1], message.getTimePostedEpoch());
+            } // end if statement
+        } // end for loop
+
+        return stats;
+    } // end countByPostedBy()
+
+    /**
+     * Finds the messages with any of the ids, in no particular order. Ids without a message are left out.
+     * 
+     * The default implementation looks them up one at a time, stores that can do this with one query should override 
+     *      it.
+     */
+    default List<Message> findAllById(Collection<Integer> ids) {
+        List<Message> found = new ArrayList<>(ids.size());
+
+        for (Integer id : ids) {
+            findById(id).ifPresent(found::add);
+        } // end for loop
+
+        return found;
+    } // end findAllById()
+
+    /**
+     * Removes a group of messages at once.
+     * 
+     * @param ids The ids of the messages that need to be removed.
+     * @return How many messages were removed.
+     */
+    default int deleteAllById(List<Integer> ids) {
+        int deleted = 0;
+
+        for (Integer id : ids) {
+            if (existsById(id)) {
+                deleteById(id);
+                deleted++;
+            } // end if statement
+        } // end for loop
+
+        return deleted;
+    } // end deleteAllById()
+
+    /**
+     * Hands every message in the store to `action`, one at a time.
+     * 
+     * The default implementation goes through `findAll()`, stores that can stream their messages without loading all 
+     *      of them at once should override it.
+     * 
+     * @param action Called once for every message.
+     */
+    default void forEachMessage(Consumer<Message> action) {
+        findAll().forEach(action);
+    } // end forEachMessage()
+
+    /**
+     * Removes every message, used before a snapshot is restored.
+     * 
+     * The default implementation deletes the ids from `findAll()`, stores that can empty themselves at once should 
+     *      override it.
+     */
+    default void deleteAll() {
+        deleteAllById(findAll().stream().map(Message::getMessageId).collect(Collectors.toList()));
+    } // end deleteAll()
+
+    /**
+     * Adds a large number of messages that already have their message_id, used to restore a snapshot.
+     * 
+     * The default implementation saves them one at a time, stores that can load in bulk should override it.
+     * 
+     * @param messages The messages to add, each with its message_id filled in.
+     * @return How many messages were added.
+     */
+    default long loadAll(Iterator<Message> messages) {
+        long loaded = 0;
+
+        while (messages.hasNext()) {
+            save(messages.next());
+            loaded++;
+        } // end while loop
+
+        return loaded;
+    } // end loadAll()
+} // end MessageStore interface
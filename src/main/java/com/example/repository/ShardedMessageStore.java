@@ -0,0 +1,449 @@
+package com.example.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import com.example.entity.Message;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * A MessageStore that spreads the message table across several databases.
+ *
+ * Every message lives on the shard picked by a hash of its postedBy, so the messages of one account can always be
+ *      found on a single shard. Lookups that only know the message_id are sent to every shard at the same time and
+ *      the results are gathered back together, lists are merged in timePostedEpoch order.
+ * Each shard is its own H2 database, by default an in memory one, but setting `app.messages.shards.url` to something
+ *      like `jdbc:h2:file:./data/message-shard-%d` keeps every shard in its own file.
+ *
+ * Message ids still come from the primary database's sequence so they stay unique across all the shards
+ *      (and across every node that shares the primary database). If the shards are kept in files they can outlive
+ *      an in memory primary database, so the sequence is moved past the highest id in the shards at startup. New
+ *      messages are inserted rather than merged, so an id that is somehow used twice fails instead of overwriting
+ *      the older message.
+ */
+@Component
+@ConditionalOnProperty(name = "app.messages.store", havingValue = "sharded")
+public class ShardedMessageStore implements MessageStore {
+    private static final int LOAD_BATCH_SIZE = 1000;
+    private static final String COLUMNS = "messageId, postedBy, messageText, timePostedEpoch";
+    private static final RowMapper<Message> MESSAGE_MAPPER = (rs, rowNum) -> new Message(rs.getInt("messageId"),
+            rs.getObject("postedBy", Integer.class), rs.getString("messageText"),
+            rs.getObject("timePostedEpoch", Long.class));
+
+    private final JdbcTemplate primary;
+    private final List<HikariDataSource> dataSources = new ArrayList<>();
+    private final List<JdbcTemplate> shards = new ArrayList<>();
+    private final ExecutorService executor;
+
+    @Autowired
+    public ShardedMessageStore(JdbcTemplate primary,
+            @Value("${app.messages.shards.count:4}") int shardCount,
+            @Value("${app.messages.shards.url:jdbc:h2:mem:message-shard-%d}") String urlTemplate,
+            @Value("${app.messages.shards.username:sa}") String username,
+            @Value("${app.messages.shards.password:}") String password) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("app.messages.shards.count must be at least 1 but was " + shardCount);
+        } // end if statement
+
+        this.primary = primary;
+
+        for (int i = 0; i < shardCount; i++) { // open a connection pool and create the message table for every shard
+            HikariDataSource dataSource = DataSourceBuilder.create().type(HikariDataSource.class)
+                    .url(String.format(urlTemplate, i)).username(username).password(password).build();
+            dataSource.setPoolName("message-shard-" + i);
+            JdbcTemplate shard = new JdbcTemplate(dataSource);
+
+            shard.execute("create table if not exists message (messageId int primary key, postedBy int, "
+                    + "messageText varchar(255), timePostedEpoch bigint)");
+            shard.execute("create index if not exists message_timePostedEpoch on message (timePostedEpoch)");
+            shard.execute("create index if not exists message_postedBy_timePostedEpoch on message "
+                    + "(postedBy, timePostedEpoch)");
+            dataSources.add(dataSource);
+            shards.add(shard);
+        } // end for loop
+
+        this.executor = Executors.newFixedThreadPool(shardCount, runnable -> {
+            Thread thread = new Thread(runnable, "message-shard-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    } // end constructor
+
+    /**
+     * Copies the messages out of the primary message table the first time the shards are used, otherwise moves the
+     *      id sequence past every id in the shards.
+     *
+     * This runs once the application is ready so that `data.sql` has already been loaded, and it is skipped if any
+     *      shard already has messages in it (eg. the shards are stored in files and were filled by an earlier run).
+     *      It runs after a snapshot restore or synthetic data (which fill the shards themselves) and before the
+     *      listeners that read every message, like the message id filter.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE + 3)
+    public void importPrimaryMessages() {
+        for (JdbcTemplate shard : shards) {
+            if (shard.queryForObject("select count(*) from message", Long.class) > 0) {
+                moveSequencePastShards(); // the shards have already been filled
+                return;
+            } // end if statement
+        } // end for loop
+
+        for (Message message : primary.query("select " + COLUMNS + " from message", MESSAGE_MAPPER)) {
+            insert(shardFor(message.getPostedBy()), message);
+        } // end for loop
+    } // end importPrimaryMessages()
+
+    /**
+     * Restarts hibernate_sequence after the highest messageId in any shard, if it is not past it already (eg. the
+     *      shards are files from an earlier run and the primary database is the in memory one that started over).
+     */
+    private void moveSequencePastShards() {
+        long highest = Long.MIN_VALUE;
+
+        for (Long shardMax : scatter(shard -> shard.queryForObject("select max(messageId) from message", Long.class))) {
+            if (shardMax != null) {
+                highest = Math.max(highest, shardMax);
+            } // end if statement
+        } // end for loop
+
+        Long next = primary.queryForObject("select base_value from information_schema.sequences "
+                + "where sequence_name = 'HIBERNATE_SEQUENCE'", Long.class); // the value it hands out next
+
+        if (next != null && next <= highest) { // the shards outlived the primary database
+            primary.execute("alter sequence hibernate_sequence restart with " + (highest + 1));
+        } // end if statement
+    } // end moveSequencePastShards()
+
+    @Override
+    public Message save(Message message) {
+        if (message.getMessageId() == null) { // new messages get their id from the primary sequence
+            message.setMessageId(primary.queryForObject("select next value for hibernate_sequence", Integer.class));
+            insert(shardFor(message.getPostedBy()), message); // fails rather than overwrite a message with the id
+            return message;
+        } // end if statement
+
+        update(shardFor(message.getPostedBy()), message);
+        return message;
+    } // end save()
+
+    @Override
+    public List<Message> findAll() {
+        return mergeByTime(scatter(shard -> shard.query(
+                "select " + COLUMNS + " from message order by timePostedEpoch, messageId", MESSAGE_MAPPER)));
+    } // end findAll()
+
+    @Override
+    public Optional<Message> findById(Integer id) {
+        for (List<Message> found : scatter(shard -> shard.query(
+                "select " + COLUMNS + " from message where messageId = ?", MESSAGE_MAPPER, id))) {
+            if (!found.isEmpty()) { // only one shard can have the message
+                return Optional.of(found.get(0));
+            } // end if statement
+        } // end for loop
+
+        return Optional.empty();
+    } // end findById()
+
+    /**
+     * Messages are spread by who posted them, so every shard is asked, with one `in` query each.
+     */
+    @Override
+    public List<Message> findAllById(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        } // end if statement
+
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        List<Message> found = new ArrayList<>(ids.size());
+
+        for (List<Message> shard : scatter(shard -> shard.query("select " + COLUMNS + " from message "
+                + "where messageId in (" + placeholders + ")", MESSAGE_MAPPER, ids.toArray()))) {
+            found.addAll(shard);
+        } // end for loop
+
+        return found;
+    } // end findAllById()
+
+    @Override
+    public boolean existsById(Integer id) {
+        return findById(id).isPresent();
+    } // end existsById()
+
+    @Override
+    public void deleteById(Integer id) {
+        scatter(shard -> shard.update("delete from message where messageId = ?", id));
+    } // end deleteById()
+
+    @Override
+    public List<Message> findByPostedBy(Integer postedBy) {
+        return shardFor(postedBy).query("select " + COLUMNS + " from message where postedBy = ? "
+                + "order by timePostedEpoch, messageId", MESSAGE_MAPPER, postedBy);
+    } // end findByPostedBy()
+
+    @Override
+    public List<Message> findByTimeRange(Integer postedBy, long since, long until, int page, int size) {
+        if (postedBy != null) { // all of an account's messages are on one shard
+            return shardFor(postedBy).query("select " + COLUMNS + " from message where postedBy = ? "
+                    + "and timePostedEpoch >= ? and timePostedEpoch < ? order by timePostedEpoch, messageId "
+                    + "limit ? offset ?", MESSAGE_MAPPER, postedBy, since, until, size, (long) page * size);
+        } // end if statement
+
+        long end = (long) (page + 1) * size; // any shard could hold every message up to the end of the page
+        List<Message> merged = mergeByTime(scatter(shard -> shard.query("select " + COLUMNS + " from message "
+                + "where timePostedEpoch >= ? and timePostedEpoch < ? order by timePostedEpoch, messageId limit ?",
+                MESSAGE_MAPPER, since, until, end)));
+        int from = (int) Math.min((long) page * size, merged.size());
+        return new ArrayList<>(merged.subList(from, (int) Math.min(end, merged.size())));
+    } // end findByTimeRange()
+
+    @Override
+    public List<Integer> findIdsByPostedBy(Integer postedBy, int afterId, int limit) {
+        return shardFor(postedBy).queryForList("select messageId from message where postedBy = ? and messageId > ? "
+                + "order by messageId limit ?", Integer.class, postedBy, afterId, limit);
+    } // end findIdsByPostedBy()
+
+    @Override
+    public List<Integer> findIdsByTimeRange(long since, long until, int afterId, int limit) {
+        List<Integer> ids = new ArrayList<>();
+
+        for (List<Integer> found : scatter(shard -> shard.queryForList("select messageId from message where "
+                + "timePostedEpoch >= ? and timePostedEpoch < ? and messageId > ? order by messageId limit ?",
+                Integer.class, since, until, afterId, limit))) {
+            ids.addAll(found);
+        } // end for loop
+
+        Collections.sort(ids); // every shard returned its own first page, keep the overall first page
+        return ids.size() > limit ? new ArrayList<>(ids.subList(0, limit)) : ids;
+    } // end findIdsByTimeRange()
+
+    @Override
+    public Map<Integer, long[]> countByPostedBy() {
+        Map<Integer, long[]> stats = new HashMap<>();
+
+        for (List<Map<String, Object>> rows : scatter(shard -> shard.queryForList("select postedBy, count(*) as total, "
+                + "max(timePostedEpoch) as latest from message group by postedBy"))) {
+            for (Map<String, Object> row : rows) { // every account is only on one shard so nothing needs combining
+                Number latest = (Number) row.get("latest");
+                stats.put((Integer) row.get("postedBy"), new long[] {((Number) row.get("total")).longValue(),
+                        latest == null ? Long.MIN_VALUE : latest.longValue()});
+            } // end for loop
+        } // end for loop
+
+        return stats;
+    } // end countByPostedBy()
+
+    @Override
+    public int deleteAllById(List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        } // end if statement
+
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        int deleted = 0;
+
+        for (int count : scatter(shard -> shard.update("delete from message where messageId in (" + placeholders + ")",
+                ids.toArray()))) {
+            deleted += count;
+        } // end for loop
+
+        return deleted;
+    } // end deleteAllById()
+
+    @Override
+    public void deleteAll() {
+        scatter(shard -> shard.update("delete from message"));
+    } // end deleteAll()
+
+    @Override
+    public long loadAll(Iterator<Message> messages) {
+        List<List<Object[]>> batches = new ArrayList<>(shards.size());
+        long loaded = 0;
+
+        for (int i = 0; i < shards.size(); i++) {
+            batches.add(new ArrayList<>());
+        } // end for loop
+
+        while (messages.hasNext()) { // gather a batch for each shard and send it once it is full
+            Message message = messages.next();
+            int shard = shardIndex(message.getPostedBy());
+            List<Object[]> batch = batches.get(shard);
+            batch.add(new Object[] {message.getMessageId(), message.getPostedBy(), message.getMessageText(),
+                    message.getTimePostedEpoch()});
+            loaded++;
+
+            if (batch.size() == LOAD_BATCH_SIZE) {
+                loadBatch(shards.get(shard), batch);
+            } // end if statement
+        } // end while loop
+
+        for (int i = 0; i < shards.size(); i++) {
+            loadBatch(shards.get(i), batches.get(i));
+        } // end for loop
+
+        return loaded;
+    } // end loadAll()
+
+    /**
+     * Picks the shard that owns all the messages of an account.
+     *
+     * The account id is mixed before taking the remainder so that accounts with ids next to each other still get
+     *      spread over every shard.
+     *
+     * @param postedBy The id of the account.
+     * @return The shard that stores the messages of the account.
+     */
+    JdbcTemplate shardFor(Integer postedBy) {
+        return shards.get(shardIndex(postedBy));
+    } // end shardFor()
+
+    private int shardIndex(Integer postedBy) {
+        int hash = postedBy == null ? 0 : postedBy * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, shards.size());
+    } // end shardIndex()
+
+    private void loadBatch(JdbcTemplate shard, List<Object[]> batch) {
+        if (!batch.isEmpty()) {
+            shard.batchUpdate("merge into message (" + COLUMNS + ") key (messageId) values (?, ?, ?, ?)", batch);
+            batch.clear();
+        } // end if statement
+    } // end loadBatch()
+
+    private void insert(JdbcTemplate shard, Message message) {
+        shard.update("insert into message (" + COLUMNS + ") values (?, ?, ?, ?)",
+                message.getMessageId(), message.getPostedBy(), message.getMessageText(), message.getTimePostedEpoch());
+    } // end insert()
+
+    /**
+     * Writes a message that was saved before, eg. a patched one.
+     */
+    private void update(JdbcTemplate shard, Message message) {
+        shard.update("merge into message (" + COLUMNS + ") key (messageId) values (?, ?, ?, ?)",
+                message.getMessageId(), message.getPostedBy(), message.getMessageText(), message.getTimePostedEpoch());
+    } // end update()
+
+    /**
+     * Runs the same query on every shard in parallel and waits for all of them to finish.
+     *
+     * @param query The query that should be run against a single shard.
+     * @return The result from each shard, in shard order.
+     */
+    private <T> List<T> scatter(Function<JdbcTemplate, T> query) {
+        List<Future<T>> pending = new ArrayList<>(shards.size());
+
+        for (JdbcTemplate shard : shards) {
+            pending.add(executor.submit(() -> query.apply(shard)));
+        } // end for loop
+
+        List<T> results = new ArrayList<>(shards.size());
+
+        try {
+            for (Future<T> future : pending) {
+                results.add(future.get());
+            } // end for loop
+        } // end try block
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the message shards", e);
+        } // end catch block
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } // end if statement
+            throw new IllegalStateException("A message shard could not be read", e.getCause());
+        } // end catch block
+
+        return results;
+    } // end scatter()
+
+    /**
+     * Does a k-way merge of lists that are each already sorted by timePostedEpoch and then messageId.
+     *
+     * @param sorted One sorted list per shard.
+     * @return A single list with every message, sorted the same way.
+     */
+    static List<Message> mergeByTime(List<List<Message>> sorted) {
+        PriorityQueue<Head> heads = new PriorityQueue<>();
+        int total = 0;
+
+        for (List<Message> list : sorted) {
+            total += list.size();
+            Iterator<Message> iterator = list.iterator();
+
+            if (iterator.hasNext()) {
+                heads.add(new Head(iterator.next(), iterator));
+            } // end if statement
+        } // end for loop
+
+        List<Message> merged = new ArrayList<>(total);
+
+        while (!heads.isEmpty()) { // take the oldest message and move that shard's cursor forward
+            Head head = heads.poll();
+            merged.add(head.message);
+
+            if (head.rest.hasNext()) {
+                heads.add(new Head(head.rest.next(), head.rest));
+            } // end if statement
+        } // end while loop
+
+        return merged;
+    } // end mergeByTime()
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+
+        for (HikariDataSource dataSource : dataSources) {
+            dataSource.close();
+        } // end for loop
+    } // end close()
+
+    /**
+     * The next message from one shard during a merge, along with the rest of that shard's messages.
+     */
+    private static final class Head implements Comparable<Head> {
+        private final Message message;
+        private final Iterator<Message> rest;
+
+        private Head(Message message, Iterator<Message> rest) {
+            this.message = message;
+            this.rest = rest;
+        } // end constructor
+
+        @Override
+        public int compareTo(Head other) {
+            int byTime = Long.compare(timeOf(message), timeOf(other.message));
+            return byTime != 0 ? byTime : Integer.compare(message.getMessageId(), other.message.getMessageId());
+        } // end compareTo()
+
+        private static long timeOf(Message message) {
+            return message.getTimePostedEpoch() == null ? Long.MIN_VALUE : message.getTimePostedEpoch();
+        } // end timeOf()
+    } // end Head Class
+} // end ShardedMessageStore Class
@@ -0,0 +1,135 @@
+package com.example.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps strings as UTF-8 bytes outside of the Java heap, in direct buffers of CHUNK_SIZE bytes, so millions of
+ *      message texts do not turn into millions of String objects for the garbage collector to walk.
+ *
+ * Every string is appended and gets a long reference: | 16 bits of chunk | 32 bits of offset | 16 bits of length |.
+ *      NULL is the reference of a null string. Strings are never changed in place, `free()` only counts the space as
+ *      garbage and the owner copies the live strings into a new arena (with `copy()`) once enough has built up.
+ * Not thread safe, MemoryStore guards it with its lock.
+ */
+final class TextArena {
+    static final long NULL = -1;
+    static final int CHUNK_SIZE = 4 << 20;
+    private static final int MAX_LENGTH = 0xFFFF;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private ByteBuffer current;
+    private long used;
+    private long garbage;
+
+    /**
+     * @return A reference to the string, or NULL for a null string.
+     * @throws IllegalArgumentException If the string is longer than 65535 bytes as UTF-8.
+     */
+    long add(String text) {
+        return text == null ? NULL : add(text.getBytes(StandardCharsets.UTF_8));
+    } // end add()
+
+    long add(byte[] bytes) {
+        if (bytes.length > MAX_LENGTH) {
+            throw new IllegalArgumentException("A string can be at most " + MAX_LENGTH + " bytes, not " + bytes.length);
+        } // end if statement
+
+        if (current == null || current.remaining() < bytes.length) {
+            if (chunks.size() == 0xFFFF) {
+                throw new IllegalStateException("The text arena is full");
+            } // end if statement
+
+            current = ByteBuffer.allocateDirect(CHUNK_SIZE);
+            chunks.add(current);
+        } // end if statement
+
+        long ref = (long) (chunks.size() - 1) << 48 | (long) current.position() << 16 | bytes.length;
+        current.put(bytes);
+        used += bytes.length;
+        return ref;
+    } // end add()
+
+    /**
+     * @return The string, or null for NULL.
+     */
+    String get(long ref) {
+        return ref == NULL ? null : new String(bytes(ref), StandardCharsets.UTF_8);
+    } // end get()
+
+    /**
+     * @return True if the string at `ref` is exactly these UTF-8 bytes.
+     */
+    boolean equals(long ref, byte[] bytes) {
+        if (ref == NULL || length(ref) != bytes.length) {
+            return false;
+        } // end if statement
+
+        ByteBuffer chunk = chunks.get(chunk(ref));
+        int offset = offset(ref);
+
+        for (int i = 0; i < bytes.length; i++) {
+            if (chunk.get(offset + i) != bytes[i]) {
+                return false;
+            } // end if statement
+        } // end for loop
+
+        return true;
+    } // end equals()
+
+    /**
+     * Counts the string as garbage, its space is given back the next time the owner copies the arena.
+     */
+    void free(long ref) {
+        if (ref != NULL) {
+            garbage += length(ref);
+        } // end if statement
+    } // end free()
+
+    /**
+     * @return A reference to the same string in `target`.
+     */
+    long copy(long ref, TextArena target) {
+        return ref == NULL ? NULL : target.add(bytes(ref));
+    } // end copy()
+
+    /**
+     * @return How many bytes of strings that are still in use.
+     */
+    long liveBytes() {
+        return used - garbage;
+    } // end liveBytes()
+
+    long garbageBytes() {
+        return garbage;
+    } // end garbageBytes()
+
+    /**
+     * @return How many bytes of direct memory the chunks take up.
+     */
+    long allocatedBytes() {
+        return (long) chunks.size() * CHUNK_SIZE;
+    } // end allocatedBytes()
+
+    private byte[] bytes(long ref) {
+        byte[] bytes = new byte[length(ref)];
+        ByteBuffer view = chunks.get(chunk(ref)).duplicate(); // the chunk's own position is where the next add goes
+        view.position(offset(ref));
+        view.get(bytes);
+        return bytes;
+    } // end bytes()
+
+    private static int chunk(long ref) {
+        return (int) (ref >>> 48);
+    } // end chunk()
+
+    private static int offset(long ref) {
+        return (int) (ref >>> 16); // keeps the 32 bits under the chunk
+    } // end offset()
+
+    private static int length(long ref) {
+        return (int) ref & MAX_LENGTH;
+    } // end length()
+} // end TextArena Class
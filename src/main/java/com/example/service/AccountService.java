@@ -1,18 +1,30 @@
 package com.example.service;
 
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.example.entity.Account;
-import com.example.repository.AccountRepository;
+import com.example.repository.AccountStore;
 
 @Service
 public class AccountService {
-    private final AccountRepository accountRepository;
+    private final AccountStore accountStore;
+    private final UsernameIndex usernameIndex;
+    private final InvalidationBus invalidationBus;
+    private final int maxSearchLimit;
 
     @Autowired
-    public AccountService(AccountRepository accountRepository) {
-        this.accountRepository = accountRepository;
+    public AccountService(AccountStore accountStore, UsernameIndex usernameIndex, InvalidationBus invalidationBus,
+            @Value("${app.accounts.search.max-limit:100}") int maxSearchLimit) {
+        this.accountStore = accountStore;
+        this.usernameIndex = usernameIndex;
+        this.invalidationBus = invalidationBus;
+        this.maxSearchLimit = maxSearchLimit;
     } // end constructor
 
     /**
@@ -21,6 +33,8 @@ public class AccountService {
      * The account can only be added if the username is not empty, the password is at least 4 characters long, and 
      *      the username is not already in use. 
      * If the above conditions are met then the account can be added. 
+     * Whether the username is in use is checked in the UsernameIndex, not the database. If two people register the 
+     *      same username at once the unique constraint on the username lets only one of them in.
      * 
      * @param account The Account that needs to be added to the database.
      * @return The account that was added to the database. 
@@ -31,15 +45,24 @@ public class AccountService {
             // check to make sure the username is not empty and the password is longer than 4 characters. 
             return null;
         } // end if statement 
-        Account found = accountRepository.findAccountByUsername(account.getUsername());
-
-        if (found != null) { // check if an account exists with a matching username
-            return null; // if there is no account with a matching username then return null
+        if (usernameIndex.isReady() ? usernameIndex.contains(account.getUsername())
+                : accountStore.findAccountByUsername(account.getUsername()) != null) {
+            // check if an account exists with a matching username
+            return null; // if there is an account with a matching username then return null
         } // end if statement
 
         try {
-            return accountRepository.save(account); // try to add the account to the database
+            Account added = accountStore.saveAccount(account); // try to add the account to the database
+            usernameIndex.added(added);
+            invalidationBus.publish(InvalidationEvent.ACCOUNT_CREATED, added.getAccountId(), null);
+            return added;
         } // end try block
+        catch (DataIntegrityViolationException e) {
+            if (accountStore.findAccountByUsername(account.getUsername()) != null) {
+                return null; // someone else registered the username first
+            } // end if statement
+            throw e; // throw execption if account is not added for another reason
+        } // end catch block
         catch (Exception e) {
             throw e; // throw execption if account is not added
         } // end catch block
@@ -48,11 +71,14 @@ public class AccountService {
     /**
      * Logs a user into their account. 
      * 
+     * This only reads, so it runs in a read-only transaction and the account that is found is not dirty checked.
+     * 
      * @param account The account that is trying to log in. 
      * @return
      */
+    @Transactional(readOnly = true)
     public Account login(Account account) {
-        Account found = accountRepository.findAccountByUsername(account.getUsername());
+        Account found = accountStore.findAccountByUsername(account.getUsername());
         
         if (found == null) { // check if an account exists in the database with a matching username
             return null; // if there is not account with a matching username return null
@@ -65,4 +91,19 @@ public class AccountService {
         
         return null; // return null if the password does not match
     } // end login()
+
+    /**
+     * Finds the accounts whose username starts with a prefix, for autocompleting mentions.
+     * 
+     * @param prefix The start of the username, at least one character.
+     * @param limit The most accounts to return, cut down to `app.accounts.search.max-limit`.
+     * @return The accounts in username order, or null if the prefix or limit is invalid.
+     */
+    public List<UsernameMatch> searchByUsernamePrefix(String prefix, int limit) {
+        if (prefix == null || prefix.isEmpty() || limit < 1) { // check that there is something to search for
+            return null;
+        } // end if statement
+
+        return usernameIndex.search(prefix, Math.min(limit, maxSearchLimit));
+    } // end searchByUsernamePrefix()
 } // end AccountService Class
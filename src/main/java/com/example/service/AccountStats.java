@@ -0,0 +1,33 @@
+package com.example.service;
+
+/**
+ * How many messages an account has posted and when it last posted, as returned by GET '/accounts/{accountId}/stats'.
+ */
+public class AccountStats {
+    private final Integer accountId;
+    private final long messageCount;
+    private final Long lastPostedEpoch;
+
+    /**
+     * @param accountId The id of the account.
+     * @param messageCount How many messages the account has.
+     * @param lastPostedEpoch The latest timePostedEpoch of the account's messages, or null if it has none.
+     */
+    public AccountStats(Integer accountId, long messageCount, Long lastPostedEpoch) {
+        this.accountId = accountId;
+        this.messageCount = messageCount;
+        this.lastPostedEpoch = lastPostedEpoch;
+    } // end constructor
+
+    public Integer getAccountId() {
+        return accountId;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public Long getLastPostedEpoch() {
+        return lastPostedEpoch;
+    }
+} // end AccountStats Class
@@ -0,0 +1,225 @@
+package com.example.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.entity.Message;
+import com.example.repository.MessageStore;
+
+/**
+ * Keeps a running count of every account's messages and the time of its latest message.
+ *
+ * MessageService tells this service about every message that it adds or deletes, so reading the stats of an account
+ *      is a single map lookup.
+ * Anything that changes the message table without going through MessageService (eg. a bulk delete) makes the counters
+ *      drift, so they are rebuilt from the table when the application starts and every
+ *      `app.stats.rebuild-interval-ms` milliseconds.
+ * Posts keep going while the table is read, and one that lands around the read could be seen by the read and counted
+ *      as well. So MessageService holds the account's lock (see lockFor) from changing the table until it has told
+ *      this service, and every change is numbered. A rebuild notes the numbers before reading the table: an account
+ *      that was not changed in the meantime takes what the table said, and one that was is counted again on its own
+ *      while its lock is held.
+ */
+@Service
+public class AccountStatsService {
+    private final MessageStore messageStore;
+    private final Map<Integer, Counters> counters = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[64]; // striped by account id
+
+    @Autowired
+    public AccountStatsService(MessageStore messageStore) {
+        this.messageStore = messageStore;
+
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        } // end for loop
+    } // end constructor
+
+    /**
+     * The lock to hold while adding or deleting a message of the account and telling this service about it, so that a
+     *      rebuild cannot read the table in between.
+     *
+     * @param accountId The id of the account that posted the message.
+     */
+    public Object lockFor(Integer accountId) {
+        return locks[Math.floorMod(Objects.hashCode(accountId), locks.length)];
+    } // end lockFor()
+
+    /**
+     * Counts a message that was just added.
+     *
+     * @param message The message that was added.
+     */
+    public void messageAdded(Message message) {
+        if (message.getPostedBy() == null) {
+            return;
+        } // end if statement
+
+        synchronized (lockFor(message.getPostedBy())) {
+            Counters account = counters.computeIfAbsent(message.getPostedBy(), postedBy -> new Counters());
+            account.changes++;
+            account.count++;
+
+            if (message.getTimePostedEpoch() != null && message.getTimePostedEpoch() > account.lastPosted) {
+                account.lastPosted = message.getTimePostedEpoch();
+            } // end if statement
+        } // end synchronized block
+    } // end messageAdded()
+
+    /**
+     * Un-counts a message that was just deleted.
+     *
+     * If the deleted message was the latest one of the account then the time of the new latest message is not known,
+     *      so the account is marked stale and its stats are looked up again the next time they are read.
+     *
+     * @param message The message that was deleted.
+     */
+    public void messageDeleted(Message message) {
+        if (message.getPostedBy() == null) {
+            return;
+        } // end if statement
+
+        synchronized (lockFor(message.getPostedBy())) {
+            Counters account = counters.computeIfAbsent(message.getPostedBy(), postedBy -> new Counters());
+            account.changes++;
+            account.count--;
+
+            if (message.getTimePostedEpoch() != null && message.getTimePostedEpoch() >= account.lastPosted) {
+                account.stale = true;
+            } // end if statement
+        } // end synchronized block
+    } // end messageDeleted()
+
+    /**
+     * Marks the stats of an account stale, so they are looked up again the next time they are read. For changes this
+     *      service was not told the details of, eg. a message posted on another node (see InvalidationBus).
+     *
+     * @param accountId The id of the account.
+     */
+    public void accountChanged(Integer accountId) {
+        counters.computeIfAbsent(accountId, postedBy -> new Counters()).stale = true;
+    } // end accountChanged()
+
+    /**
+     * Gets the message count and latest post time of an account.
+     *
+     * @param accountId The id of the account.
+     * @return The stats of the account, an account without messages has a count of 0.
+     */
+    public AccountStats getStats(Integer accountId) {
+        Counters account = counters.get(accountId);
+
+        if (account == null) {
+            return new AccountStats(accountId, 0, null);
+        } // end if statement
+
+        if (account.stale) { // the latest message was deleted, find the one before it
+            recount(accountId);
+        } // end if statement
+
+        synchronized (lockFor(accountId)) {
+            return new AccountStats(accountId, account.count,
+                    account.lastPosted == Long.MIN_VALUE ? null : account.lastPosted);
+        } // end synchronized block
+    } // end getStats()
+
+    /**
+     * Brings every counter in line with the message table, without losing or doubling what is counted while the table
+     *      is read.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${app.stats.rebuild-interval-ms:300000}",
+            initialDelayString = "${app.stats.rebuild-interval-ms:300000}")
+    public void rebuild() {
+        Map<Integer, Long> changesBefore = new HashMap<>();
+
+        for (Map.Entry<Integer, Counters> entry : counters.entrySet()) {
+            synchronized (lockFor(entry.getKey())) { // waits for a change that is halfway done
+                changesBefore.put(entry.getKey(), entry.getValue().changes);
+            } // end synchronized block
+        } // end for loop
+
+        Map<Integer, long[]> table = messageStore.countByPostedBy();
+        List<Integer> changedWhileReading = new ArrayList<>();
+
+        for (Map.Entry<Integer, long[]> entry : table.entrySet()) {
+            if (entry.getKey() != null && !apply(entry.getKey(), changesBefore.remove(entry.getKey()),
+                    entry.getValue()[0], entry.getValue()[1])) {
+                changedWhileReading.add(entry.getKey());
+            } // end if statement
+        } // end for loop
+
+        for (Map.Entry<Integer, Long> entry : changesBefore.entrySet()) { // every message of these accounts is gone
+            if (!apply(entry.getKey(), entry.getValue(), 0, Long.MIN_VALUE)) {
+                changedWhileReading.add(entry.getKey());
+            } // end if statement
+        } // end for loop
+
+        for (Integer accountId : changedWhileReading) {
+            recount(accountId);
+        } // end for loop
+    } // end rebuild()
+
+    /**
+     * Sets the counters of an account to what the table said, unless the account was changed after its changes were
+     *      noted (the read may or may not have seen the change).
+     *
+     * @param changesBefore How many changes the account had before the table was read, or null if it had no counters.
+     * @return False if the account was changed in the meantime and has to be recounted.
+     */
+    private boolean apply(Integer accountId, Long changesBefore, long count, long lastPosted) {
+        synchronized (lockFor(accountId)) {
+            Counters account = counters.computeIfAbsent(accountId, postedBy -> new Counters());
+
+            if (account.changes != (changesBefore == null ? 0 : changesBefore)) {
+                return false;
+            } // end if statement
+
+            account.count = count;
+            account.lastPosted = lastPosted;
+            return true;
+        } // end synchronized block
+    } // end apply()
+
+    /**
+     * Counts the messages of one account again. The account's lock is held while its messages are read, so nothing is
+     *      added or deleted in the meantime.
+     */
+    private void recount(Integer accountId) {
+        synchronized (lockFor(accountId)) {
+            Counters account = counters.computeIfAbsent(accountId, postedBy -> new Counters());
+            account.stale = false; // a change from another node that marks it again after this is handled next time
+            List<Message> messages = messageStore.findByPostedBy(accountId);
+            long lastPosted = Long.MIN_VALUE;
+
+            for (Message message : messages) {
+                if (message.getTimePostedEpoch() != null) {
+                    lastPosted = Math.max(lastPosted, message.getTimePostedEpoch());
+                } // end if statement
+            } // end for loop
+
+            account.count = messages.size();
+            account.lastPosted = lastPosted;
+        } // end synchronized block
+    } // end recount()
+
+    /**
+     * The counters of a single account, guarded by the account's lock.
+     */
+    private static final class Counters {
+        private long count;
+        private long lastPosted = Long.MIN_VALUE;
+        private long changes; // how many messages were added or deleted through this service
+        private volatile boolean stale;
+    } // end Counters Class
+} // end AccountStatsService Class
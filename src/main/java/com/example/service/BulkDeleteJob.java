@@ -0,0 +1,125 @@
+package com.example.service;
+
+/**
+ * The progress of deleting a group of messages, either every message of an account or every message in a time range.
+ *
+ * The messages are deleted in message_id order, `lastMessageId` is the highest id that has been handled so far so a
+ *      job that stopped part way through can pick up where it left off.
+ * The getters are used by Jackson to report the job back to the client.
+ */
+public class BulkDeleteJob {
+    public enum Status { RUNNING, COMPLETED, CANCELLED, FAILED }
+
+    private final long jobId;
+    private final Integer postedBy;
+    private final Long since;
+    private final Long until;
+    private volatile Status status = Status.RUNNING;
+    private volatile long deleted;
+    private volatile int chunks;
+    private volatile int lastMessageId;
+    private volatile String error;
+    private volatile boolean cancelRequested;
+    private boolean stopping; // the job saw the cancel and is on its way out, guarded by the job
+
+    /**
+     * @param jobId The id used to look up the job.
+     * @param postedBy The account whose messages are deleted, or null when deleting by time.
+     * @param since The earliest timePostedEpoch that is deleted, or null when deleting by account.
+     * @param until The timePostedEpoch to stop before, or null when deleting by account.
+     */
+    BulkDeleteJob(long jobId, Integer postedBy, Long since, Long until) {
+        this.jobId = jobId;
+        this.postedBy = postedBy;
+        this.since = since;
+        this.until = until;
+    } // end constructor
+
+    public long getJobId() {
+        return jobId;
+    }
+
+    public Integer getPostedBy() {
+        return postedBy;
+    }
+
+    public Long getSince() {
+        return since;
+    }
+
+    public Long getUntil() {
+        return until;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getDeleted() {
+        return deleted;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    public int getLastMessageId() {
+        return lastMessageId;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    void requestCancel() {
+        cancelRequested = true;
+    }
+
+    /**
+     * Called by the job between chunks. Once it has seen the cancel request a resume can no longer take it back.
+     *
+     * @return True if the job should stop.
+     */
+    synchronized boolean stopIfCancelRequested() {
+        stopping = cancelRequested;
+        return stopping;
+    } // end stopIfCancelRequested()
+
+    /**
+     * Takes back a cancel request that the running job has not acted on yet.
+     *
+     * @return True if the job is running and will carry on.
+     */
+    synchronized boolean withdrawCancel() {
+        if (status != Status.RUNNING || !cancelRequested || stopping) {
+            return false;
+        } // end if statement
+
+        cancelRequested = false;
+        return true;
+    } // end withdrawCancel()
+
+    /**
+     * Records a chunk that was deleted.
+     *
+     * @param count How many messages were deleted.
+     * @param lastId The highest message_id in the chunk.
+     */
+    void chunkDeleted(int count, int lastId) {
+        deleted += count;
+        chunks++;
+        lastMessageId = lastId;
+    } // end chunkDeleted()
+
+    synchronized void restart() {
+        stopping = false;
+        cancelRequested = false;
+        error = null;
+        status = Status.RUNNING;
+    } // end restart()
+
+    synchronized void finish(Status finalStatus, String failure) {
+        error = failure;
+        status = finalStatus;
+    } // end finish()
+} // end BulkDeleteJob Class
@@ -0,0 +1,234 @@
+package com.example.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.entity.Message;
+import com.example.repository.MessageStore;
+
+/**
+ * Deletes every message of an account, or every message in a time range, in the background.
+ *
+ * Instead of one large delete that would hold its locks until every row is gone, the messages are deleted in chunks
+ *      of `app.bulk-delete.chunk-size` ids, each chunk in its own short transaction, with a short pause between
+ *      chunks (`app.bulk-delete.pause-ms`) so that live requests can get to the table.
+ * A job that was cancelled or failed can be resumed and carries on after the last message_id it handled. If the
+ *      application is restarted the job is lost, but sending the same request again only has the remaining
+ *      messages left to delete.
+ */
+@Service
+public class BulkDeleteService {
+    private static final Log log = LogFactory.getLog(BulkDeleteService.class);
+    private static final int MAX_FINISHED_JOBS = 100;
+
+    private final MessageStore messageStore;
+    private final AccountStatsService accountStatsService;
+    private final MessageEventService messageEventService;
+    private final InvalidationBus invalidationBus;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final long pauseMillis;
+    private final Map<Long, BulkDeleteJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong nextJobId = new AtomicLong(1);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "bulk-delete");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public BulkDeleteService(MessageStore messageStore, AccountStatsService accountStatsService,
+            MessageEventService messageEventService, InvalidationBus invalidationBus,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.bulk-delete.chunk-size:500}") int chunkSize,
+            @Value("${app.bulk-delete.pause-ms:10}") long pauseMillis) {
+        this.messageStore = messageStore;
+        this.accountStatsService = accountStatsService;
+        this.messageEventService = messageEventService;
+        this.invalidationBus = invalidationBus;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.pauseMillis = pauseMillis;
+    } // end constructor
+
+    /**
+     * Starts deleting every message that was posted by an account.
+     *
+     * @param postedBy The id of the account.
+     * @return The job, which can be used to follow the progress.
+     */
+    public BulkDeleteJob deleteByAccount(Integer postedBy) {
+        return start(new BulkDeleteJob(nextJobId.getAndIncrement(), postedBy, null, null));
+    } // end deleteByAccount()
+
+    /**
+     * Starts deleting every message with a timePostedEpoch in a range.
+     *
+     * @param since The earliest timePostedEpoch to delete, or null for no lower limit.
+     * @param until The timePostedEpoch to stop before, or null for no upper limit.
+     * @return The job, which can be used to follow the progress.
+     */
+    public BulkDeleteJob deleteByTimeRange(Long since, Long until) {
+        return start(new BulkDeleteJob(nextJobId.getAndIncrement(), null, since, until));
+    } // end deleteByTimeRange()
+
+    /**
+     * @param jobId The id of the job.
+     * @return The job or null if there is no job with that id.
+     */
+    public BulkDeleteJob getJob(long jobId) {
+        return jobs.get(jobId);
+    } // end getJob()
+
+    /**
+     * Asks a running job to stop after the chunk it is working on.
+     *
+     * @param jobId The id of the job.
+     * @return The job or null if there is no job with that id.
+     */
+    public BulkDeleteJob cancel(long jobId) {
+        BulkDeleteJob job = jobs.get(jobId);
+
+        if (job != null) {
+            job.requestCancel();
+        } // end if statement
+
+        return job;
+    } // end cancel()
+
+    /**
+     * Starts a cancelled or failed job again from the last message_id it handled. A job that is still running with a
+     *      cancel pending just carries on, as long as it has not stopped for the cancel yet.
+     *
+     * @param jobId The id of the job.
+     * @return True if the job is running again, false if there is no job with that id, the job is still running (or
+     *      already stopping for a cancel) or it is done.
+     */
+    public synchronized boolean resume(long jobId) {
+        BulkDeleteJob job = jobs.get(jobId);
+
+        if (job == null || job.getStatus() == BulkDeleteJob.Status.COMPLETED) {
+            return false;
+        } // end if statement
+        if (job.getStatus() == BulkDeleteJob.Status.RUNNING) {
+            return job.withdrawCancel();
+        } // end if statement
+
+        job.restart();
+        executor.execute(() -> run(job));
+        return true;
+    } // end resume()
+
+    private BulkDeleteJob start(BulkDeleteJob job) {
+        forgetOldJobs();
+        jobs.put(job.getJobId(), job);
+        executor.execute(() -> run(job));
+        return job;
+    } // end start()
+
+    /**
+     * Deletes chunk after chunk until there is nothing left, the job is cancelled or something goes wrong.
+     */
+    private void run(BulkDeleteJob job) {
+        try {
+            while (!job.stopIfCancelRequested()) {
+                List<Integer> chunk = transactionTemplate.execute(status -> {
+                    List<Integer> ids = nextChunk(job);
+
+                    if (!ids.isEmpty()) {
+                        job.chunkDeleted(messageStore.deleteAllById(ids), ids.get(ids.size() - 1));
+                    } // end if statement
+
+                    return ids;
+                });
+
+                if (chunk.isEmpty()) { // nothing is left to delete
+                    finish(job, BulkDeleteJob.Status.COMPLETED, null);
+                    log.info("Bulk delete job " + job.getJobId() + " deleted " + job.getDeleted() + " messages in "
+                            + job.getChunks() + " chunks");
+                    return;
+                } // end if statement
+
+                publishDeleted(job, chunk); // only once the chunk is committed
+                Thread.sleep(pauseMillis); // give live requests a turn between chunks
+            } // end while loop
+
+            finish(job, BulkDeleteJob.Status.CANCELLED, null);
+        } // end try block
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finish(job, BulkDeleteJob.Status.CANCELLED, "Interrupted");
+        } // end catch block
+        catch (RuntimeException e) {
+            log.warn("Bulk delete job " + job.getJobId() + " failed after message " + job.getLastMessageId(), e);
+            finish(job, BulkDeleteJob.Status.FAILED, e.getMessage());
+        } // end catch block
+    } // end run()
+
+    private void finish(BulkDeleteJob job, BulkDeleteJob.Status status, String error) {
+        try {
+            if (job.getDeleted() > 0) { // the deleted messages were not taken off the account stats one by one
+                accountStatsService.rebuild();
+            } // end if statement
+        } // end try block
+        catch (RuntimeException e) {
+            log.warn("Could not rebuild the account stats after bulk delete job " + job.getJobId(), e);
+        } // end catch block
+
+        job.finish(status, error);
+    } // end finish()
+
+    /**
+     * Sends a delete event for every message in the chunk that was just committed, to the event stream and the other
+     *      nodes. When deleting by time range the account of each message is not known, so those events go to every
+     *      subscriber.
+     */
+    private void publishDeleted(BulkDeleteJob job, List<Integer> ids) {
+        for (Integer id : ids) {
+            messageEventService.publish(MessageEventService.DELETED, new Message(id, job.getPostedBy(), null, null));
+            invalidationBus.publish(InvalidationEvent.MESSAGE_DELETED, id, job.getPostedBy());
+        } // end for loop
+    } // end publishDeleted()
+
+    private List<Integer> nextChunk(BulkDeleteJob job) {
+        if (job.getPostedBy() != null) {
+            return messageStore.findIdsByPostedBy(job.getPostedBy(), job.getLastMessageId(), chunkSize);
+        } // end if statement
+
+        long since = job.getSince() == null ? Long.MIN_VALUE : job.getSince();
+        long until = job.getUntil() == null ? Long.MAX_VALUE : job.getUntil();
+        return messageStore.findIdsByTimeRange(since, until, job.getLastMessageId(), chunkSize);
+    } // end nextChunk()
+
+    /**
+     * Drops the oldest finished jobs so that the job list does not keep growing.
+     */
+    private void forgetOldJobs() {
+        if (jobs.size() < MAX_FINISHED_JOBS) {
+            return;
+        } // end if statement
+
+        jobs.values().stream().filter(job -> job.getStatus() != BulkDeleteJob.Status.RUNNING)
+                .map(BulkDeleteJob::getJobId).sorted().limit(jobs.size() - MAX_FINISHED_JOBS + 1)
+                .forEach(jobs::remove);
+    } // end forgetOldJobs()
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    } // end close()
+} // end BulkDeleteService Class
@@ -0,0 +1,134 @@
+package com.example.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counting Bloom filter of int ids: it can say an id is definitely not in the set, or that it might be.
+ *
+ * Every id bumps `hashes` counters, picked by double hashing (h1 + i * h2) from a 64-bit mix of the id. The counters
+ *      are 4 bits each, 16 to a long, changed with compare-and-set so adds and removes from many threads need no lock.
+ *      A counter that reaches 15 sticks there and is never decremented, since it no longer knows how many ids it
+ *      stands for. Removing an id that was never added (or removing one twice) breaks the filter, whoever calls
+ *      `remove()` has to be sure the id is in it.
+ * The number of counters and hashes are worked out from the capacity and the false positive rate wanted at that
+ *      capacity, about 9.6 counters (4.8 bytes) per id for 1%.
+ */
+final class CountingBloomFilter {
+    private static final int MAX_COUNT = 15;
+
+    private final AtomicLongArray words;
+    private final long counters;
+    private final int hashes;
+    private final long capacity;
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * @param capacity How many ids the filter is sized for.
+     * @param falsePositiveRate The chance of a false positive once `capacity` ids are in it, between 0 and 1.
+     */
+    CountingBloomFilter(long capacity, double falsePositiveRate) {
+        if (capacity < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("The capacity has to be at least 1 and the false positive rate between "
+                    + "0 and 1, they were " + capacity + " and " + falsePositiveRate);
+        } // end if statement
+
+        long wanted = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.words = new AtomicLongArray(Math.toIntExact((wanted + 15) / 16));
+        this.counters = words.length() * 16L;
+        this.hashes = (int) Math.max(1, Math.round((double) counters / capacity * Math.log(2)));
+        this.capacity = capacity;
+    } // end constructor
+
+    void add(int id) {
+        long h1 = mix(id);
+        long h2 = mix(h1) | 1;
+
+        for (int i = 0; i < hashes; i++) {
+            change(Math.floorMod(h1 + i * h2, counters), 1);
+        } // end for loop
+
+        size.increment();
+    } // end add()
+
+    void remove(int id) {
+        long h1 = mix(id);
+        long h2 = mix(h1) | 1;
+
+        for (int i = 0; i < hashes; i++) {
+            change(Math.floorMod(h1 + i * h2, counters), -1);
+        } // end for loop
+
+        size.decrement();
+    } // end remove()
+
+    /**
+     * @return False if the id is definitely not in the filter.
+     */
+    boolean mightContain(int id) {
+        long h1 = mix(id);
+        long h2 = mix(h1) | 1;
+
+        for (int i = 0; i < hashes; i++) {
+            long counter = Math.floorMod(h1 + i * h2, counters);
+
+            if (((words.get((int) (counter >>> 4)) >>> ((counter & 15) * 4)) & 15) == 0) {
+                return false;
+            } // end if statement
+        } // end for loop
+
+        return true;
+    } // end mightContain()
+
+    /**
+     * @return How many ids are in the filter, as far as adds and removes go.
+     */
+    long size() {
+        return size.sum();
+    } // end size()
+
+    long capacity() {
+        return capacity;
+    } // end capacity()
+
+    long bytes() {
+        return words.length() * 8L;
+    } // end bytes()
+
+    /**
+     * @return The false positive rate the filter should have with the ids that are in it now, (1 - e^(-k n / m))^k.
+     */
+    double expectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashes * Math.max(0, size()) / counters), hashes);
+    } // end expectedFalsePositiveRate()
+
+    private void change(long counter, int delta) {
+        int word = (int) (counter >>> 4);
+        int shift = (int) (counter & 15) * 4;
+
+        while (true) {
+            long current = words.get(word);
+            long count = (current >>> shift) & 15;
+
+            if (count == MAX_COUNT || (delta < 0 && count == 0)) {
+                return; // stuck at the top, or (if the caller broke the rules) already empty
+            } // end if statement
+
+            if (words.compareAndSet(word, current, current + ((long) delta << shift))) {
+                return;
+            } // end if statement
+        } // end while loop
+    } // end change()
+
+    /**
+     * The finalizer of MurmurHash3's 64-bit hash, spreads every bit of the input over the whole result.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    } // end mix()
+} // end CountingBloomFilter Class
@@ -0,0 +1,230 @@
+package com.example.service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.entity.Account;
+import com.example.entity.Message;
+import com.example.repository.AccountStore;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Tells the other nodes that share the database about messages and accounts that changed here, and acts on what they
+ *      tell this node, so that no node keeps serving what it has cached about them.
+ *
+ * MessageService and AccountService publish an InvalidationEvent for every change. Publishing only adds it to a queue,
+ *      a sender thread takes everything queued every `app.invalidation.batch-window-ms`, coalesces the events about the
+ *      same message or account into one and sends the batch with the InvalidationTransport picked by
+ *      `app.invalidation.transport`. Without a transport (the default, a single node) publishing does nothing.
+ * A node that receives a batch evicts the messages and accounts from the Hibernate second-level cache along with the
+ *      cached query results, lets new message ids through MessageIdFilter, marks the affected accounts' stats stale
+ *      and adds new usernames to the UsernameIndex.
+ *
+ * Metrics: `app.invalidation.events` (by `stage`: published, sent after coalescing, received), `app.invalidation.batches`
+ *      (sent and received) and `app.invalidation.lag`, the time from an event being published on one node to being
+ *      acted on here (the nodes' clocks are assumed to agree, which they do on one host).
+ */
+@Service
+public class InvalidationBus {
+    private static final Log log = LogFactory.getLog(InvalidationBus.class);
+
+    private final InvalidationTransport transport; // null when there is only this node
+    private final Cache cache;
+    private final MessageIdFilter messageIdFilter;
+    private final AccountStatsService accountStatsService;
+    private final UsernameIndex usernameIndex;
+    private final AccountStore accountStore;
+    private final ConcurrentLinkedQueue<InvalidationEvent> queued = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService sender;
+    private final Counter published;
+    private final Counter sent;
+    private final Counter received;
+    private final Counter batchesSent;
+    private final Counter batchesReceived;
+    private final Timer lag;
+
+    @Autowired
+    public InvalidationBus(ObjectProvider<InvalidationTransport> transport, EntityManagerFactory entityManagerFactory,
+            MessageIdFilter messageIdFilter, AccountStatsService accountStatsService, UsernameIndex usernameIndex,
+            AccountStore accountStore, MeterRegistry meterRegistry,
+            @Value("${app.invalidation.batch-window-ms:5}") long batchWindowMillis) {
+        this.transport = transport.getIfAvailable();
+        this.cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        this.messageIdFilter = messageIdFilter;
+        this.accountStatsService = accountStatsService;
+        this.usernameIndex = usernameIndex;
+        this.accountStore = accountStore;
+        this.published = events(meterRegistry, "published");
+        this.sent = events(meterRegistry, "sent");
+        this.received = events(meterRegistry, "received");
+        this.batchesSent = batches(meterRegistry, "sent");
+        this.batchesReceived = batches(meterRegistry, "received");
+        this.lag = Timer.builder("app.invalidation.lag").publishPercentiles(0.5, 0.99)
+                .description("Time from a change being published on another node to being acted on here")
+                .register(meterRegistry);
+
+        if (this.transport == null) {
+            this.sender = null;
+            return;
+        } // end if statement
+
+        this.sender = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "invalidation-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sender.scheduleWithFixedDelay(this::flush, batchWindowMillis, batchWindowMillis, TimeUnit.MILLISECONDS);
+        this.transport.listen(this::apply);
+    } // end constructor
+
+    /**
+     * Queues an event for the other nodes, this never blocks.
+     *
+     * @param type One of the InvalidationEvent constants.
+     * @param id The id of the message or account that changed.
+     * @param accountId For a message, the account that posted it, or null.
+     */
+    public void publish(byte type, Integer id, Integer accountId) {
+        if (transport == null || id == null) {
+            return;
+        } // end if statement
+
+        queued.add(new InvalidationEvent(type, id, accountId == null ? 0 : accountId, nowMicros()));
+        published.increment();
+    } // end publish()
+
+    /**
+     * Sends everything that is queued as one batch, with only the first event about each message or account (which is
+     *      the one that has waited longest, so the lag that is measured includes the wait).
+     */
+    synchronized void flush() {
+        if (queued.isEmpty()) {
+            return;
+        } // end if statement
+
+        Map<Long, InvalidationEvent> coalesced = new LinkedHashMap<>();
+
+        for (InvalidationEvent event = queued.poll(); event != null; event = queued.poll()) {
+            coalesced.putIfAbsent(event.key(), event);
+        } // end for loop
+
+        try {
+            transport.send(new ArrayList<>(coalesced.values()));
+            sent.increment(coalesced.size());
+            batchesSent.increment();
+        } // end try block
+        catch (IOException | RuntimeException e) { // the other nodes catch up with their periodic rebuilds
+            log.warn("Could not send " + coalesced.size() + " invalidation events", e);
+        } // end catch block
+    } // end flush()
+
+    /**
+     * Acts on a batch from another node. Called on the transport's thread.
+     */
+    void apply(List<InvalidationEvent> batch) {
+        boolean messagesChanged = false;
+
+        for (InvalidationEvent event : batch) {
+            switch (event.getType()) {
+                case InvalidationEvent.MESSAGE_CREATED:
+                    messageIdFilter.added(event.getId());
+                    accountChanged(event.getAccountId());
+                    messagesChanged = true;
+                    break;
+                case InvalidationEvent.MESSAGE_PATCHED:
+                    cache.evictEntityData(Message.class, event.getId());
+                    messagesChanged = true;
+                    break;
+                case InvalidationEvent.MESSAGE_DELETED:
+                    cache.evictEntityData(Message.class, event.getId());
+                    accountChanged(event.getAccountId());
+                    messagesChanged = true;
+                    break;
+                case InvalidationEvent.ACCOUNT_CREATED:
+                    cache.evictEntityData(Account.class, event.getId());
+                    accountStore.findAccountById(event.getId()).ifPresent(usernameIndex::added);
+                    break;
+                default: // from a newer node, nothing to do with it here
+                    break;
+            } // end switch statement
+        } // end for loop
+
+        if (messagesChanged) { // the cached lists of messages may be missing or still have any of them
+            cache.evictDefaultQueryRegion();
+        } // end if statement
+
+        long now = nowMicros();
+
+        for (InvalidationEvent event : batch) {
+            lag.record(Math.max(0, now - event.getPublishedAtMicros()), TimeUnit.MICROSECONDS);
+        } // end for loop
+
+        received.increment(batch.size());
+        batchesReceived.increment();
+    } // end apply()
+
+    private void accountChanged(int accountId) {
+        if (accountId != 0) { // 0 when the account is not known, eg. for a bulk delete by time range
+            accountStatsService.accountChanged(accountId);
+        } // end if statement
+    } // end accountChanged()
+
+    /**
+     * Sends what is still queued before the application stops.
+     */
+    @PreDestroy
+    public void close() {
+        if (sender != null) {
+            sender.shutdown();
+
+            try {
+                sender.awaitTermination(5, TimeUnit.SECONDS);
+            } // end try block
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } // end catch block
+
+            flush();
+        } // end if statement
+    } // end close()
+
+    private static long nowMicros() {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+    } // end nowMicros()
+
+    private static Counter events(MeterRegistry meterRegistry, String stage) {
+        return Counter.builder("app.invalidation.events").tag("stage", stage)
+                .description("Invalidation events published here, sent to or received from the other nodes")
+                .register(meterRegistry);
+    } // end events()
+
+    private static Counter batches(MeterRegistry meterRegistry, String direction) {
+        return Counter.builder("app.invalidation.batches").tag("direction", direction)
+                .description("Batches of invalidation events sent to or received from the other nodes")
+                .register(meterRegistry);
+    } // end batches()
+} // end InvalidationBus Class
@@ -0,0 +1,52 @@
+package com.example.service;
+
+/**
+ * Tells the other nodes that a message or an account changed, so they stop serving what they have cached about it.
+ */
+public final class InvalidationEvent {
+    public static final byte MESSAGE_CREATED = 1;
+    public static final byte MESSAGE_PATCHED = 2;
+    public static final byte MESSAGE_DELETED = 3;
+    public static final byte ACCOUNT_CREATED = 4;
+
+    private final byte type;
+    private final int id;
+    private final int accountId;
+    private final long publishedAtMicros;
+
+    /**
+     * @param type One of the constants above.
+     * @param id The id of the message or account.
+     * @param accountId For a message, the account that posted it (0 if not known).
+     * @param publishedAtMicros When the change was published, in microseconds since the epoch.
+     */
+    public InvalidationEvent(byte type, int id, int accountId, long publishedAtMicros) {
+        this.type = type;
+        this.id = id;
+        this.accountId = accountId;
+        this.publishedAtMicros = publishedAtMicros;
+    } // end constructor
+
+    public byte getType() {
+        return type;
+    } // end getType()
+
+    public int getId() {
+        return id;
+    } // end getId()
+
+    public int getAccountId() {
+        return accountId;
+    } // end getAccountId()
+
+    public long getPublishedAtMicros() {
+        return publishedAtMicros;
+    } // end getPublishedAtMicros()
+
+    /**
+     * @return The same for two events about the same thing, which is what batches are coalesced by.
+     */
+    long key() {
+        return ((long) type << 32) | (id & 0xffffffffL);
+    } // end key()
+} // end InvalidationEvent Class
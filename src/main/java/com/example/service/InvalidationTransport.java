@@ -0,0 +1,26 @@
+package com.example.service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Carries batches of InvalidationEvents between the nodes for the InvalidationBus.
+ *
+ * The transport is picked with `app.invalidation.transport` (the only one so far is `multicast`, see
+ *      MulticastInvalidationTransport). A transport has to leave out the batches this node sent itself.
+ */
+public interface InvalidationTransport extends AutoCloseable {
+    /**
+     * Sends one batch to every other node. May be split into several packets, but not reordered.
+     */
+    void send(List<InvalidationEvent> batch) throws IOException;
+
+    /**
+     * Starts handing the batches other nodes send to `listener`, on a thread of the transport's own.
+     */
+    void listen(Consumer<List<InvalidationEvent>> listener);
+
+    @Override
+    void close();
+} // end InvalidationTransport interface
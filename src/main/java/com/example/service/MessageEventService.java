@@ -0,0 +1,470 @@
+package com.example.service;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.example.entity.Message;
+
+/**
+ * Pushes message created, patched and deleted events to clients over Server-Sent Events.
+ *
+ * Publishing an event only claims the next sequence number and writes the event into a fixed size ring buffer, so
+ *      MessageService never waits on a subscriber. A single dispatcher thread then walks every subscriber and moves
+ *      the events between its own cursor and the end of the ring into that subscriber's queue, which holds at most
+ *      `app.events.queue-size` events. The dispatcher never writes to a connection itself, a pool of
+ *      `app.events.writer-threads` threads drains the queues, so a client that stops reading only holds up itself.
+ * A write that takes longer than `app.events.write-timeout-ms` drops the subscriber. Its writer thread stays blocked
+ *      until Tomcat gives up on the connection, so the pool gets an extra thread until then.
+ * A subscriber that falls more than `app.events.buffer-size` events behind has lost events that were overwritten. By
+ *      default it gets a `lagged` event with the number of events that it missed and carries on from the oldest event
+ *      that is still in the ring, with `app.events.slow-subscribers=drop` its stream is closed instead.
+ *
+ * Idle subscribers only cost a small object and their open connection, no thread is held for them.
+ */
+@Service
+public class MessageEventService {
+    public static final String CREATED = "created";
+    public static final String PATCHED = "patched";
+    public static final String DELETED = "deleted";
+
+    private static final int MAX_EVENTS_PER_TURN = 256;
+    private static final long RECONNECT_MILLIS = 3000;
+
+    private final AtomicReferenceArray<MessageEvent> ring;
+    private final int mask;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final long timeoutMillis;
+    private final long heartbeatNanos;
+    private final int maxSubscribers;
+    private final boolean dropSlowSubscribers;
+    private final int queueSize;
+    private final int writerThreads;
+    private final long writeTimeoutNanos;
+    private final ThreadPoolExecutor writers;
+    private final Thread dispatcher;
+    private int stuckWriters;
+    private volatile boolean running = true;
+
+    @Autowired
+    public MessageEventService(@Value("${app.events.buffer-size:4096}") int bufferSize,
+            @Value("${app.events.timeout-ms:0}") long timeoutMillis,
+            @Value("${app.events.heartbeat-ms:30000}") long heartbeatMillis,
+            @Value("${app.events.max-subscribers:20000}") int maxSubscribers,
+            @Value("${app.events.slow-subscribers:catch-up}") String slowSubscribers,
+            @Value("${app.events.queue-size:32}") int queueSize,
+            @Value("${app.events.writer-threads:4}") int writerThreads,
+            @Value("${app.events.write-timeout-ms:5000}") long writeTimeoutMillis) {
+        int capacity = Integer.highestOneBit(Math.max(bufferSize - 1, 1)) << 1; // round up to a power of two
+        this.ring = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.timeoutMillis = timeoutMillis;
+        this.heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatMillis);
+        this.maxSubscribers = maxSubscribers;
+        this.dropSlowSubscribers = "drop".equals(slowSubscribers);
+        this.queueSize = queueSize;
+        this.writerThreads = writerThreads;
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+        this.writers = new ThreadPoolExecutor(writerThreads, writerThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "message-events-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.writers.allowCoreThreadTimeOut(true);
+        this.dispatcher = new Thread(this::dispatch, "message-events");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    } // end constructor
+
+    /**
+     * Adds an event to the ring and wakes up the dispatcher, this never blocks.
+     *
+     * @param type One of CREATED, PATCHED or DELETED.
+     * @param message The message the event is about, for a delete only the messageId and postedBy are needed.
+     */
+    public void publish(String type, Message message) {
+        long sequence = nextSequence.getAndIncrement();
+        ring.set((int) (sequence & mask), new MessageEvent(sequence, type, message));
+        LockSupport.unpark(dispatcher);
+    } // end publish()
+
+    /**
+     * Opens a new event stream.
+     *
+     * @param accountId Only send events about messages posted by this account, or null for every message.
+     * @param lastEventId The id of the last event the client saw before it reconnected, or null to start with the
+     *      next event.
+     * @return The emitter for the stream, or null if there are already too many subscribers.
+     */
+    public SseEmitter subscribe(Integer accountId, Long lastEventId) {
+        if (subscribers.size() >= maxSubscribers) {
+            return null;
+        } // end if statement
+
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        long cursor = lastEventId == null ? nextSequence.get() : lastEventId + 1;
+        Subscriber subscriber = new Subscriber(emitter, accountId, Math.min(cursor, nextSequence.get()), queueSize);
+
+        try { // something has to be written right away or the response headers are held back until the first event
+            emitter.send(SseEmitter.event().reconnectTime(RECONNECT_MILLIS));
+        } // end try block
+        catch (IOException e) {
+            return null;
+        } // end catch block
+
+        emitter.onCompletion(() -> forget(subscriber));
+        emitter.onTimeout(() -> forget(subscriber));
+        emitter.onError(error -> forget(subscriber));
+        subscribers.add(subscriber);
+        LockSupport.unpark(dispatcher);
+        return emitter;
+    } // end subscribe()
+
+    /**
+     * @return How many streams are open right now.
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    } // end getSubscriberCount()
+
+    /**
+     * The dispatcher loop, it keeps going until every subscriber is caught up (or has a full queue) and then sleeps
+     *      until the next event, the next heartbeat, or until a writer makes room in a queue. While there are
+     *      subscribers it also wakes up every half write timeout to look for writes that are stuck.
+     */
+    private void dispatch() {
+        long nextHeartbeat = System.nanoTime() + heartbeatNanos;
+
+        while (running) {
+            long end = nextSequence.get();
+            long now = System.nanoTime();
+            boolean behind = false;
+
+            for (Subscriber subscriber : subscribers) {
+                if (writeTimedOut(subscriber, now)) {
+                    continue;
+                } // end if statement
+
+                behind |= deliver(subscriber, end);
+            } // end for loop
+
+            if (System.nanoTime() - nextHeartbeat >= 0) { // an SSE comment finds connections that were closed
+                for (Subscriber subscriber : subscribers) {
+                    enqueue(subscriber, SseEmitter.event().comment("heartbeat")); // a full queue needs no heartbeat
+                } // end for loop
+                nextHeartbeat = System.nanoTime() + heartbeatNanos;
+            } // end if statement
+
+            if (!behind) {
+                long sleep = nextHeartbeat - System.nanoTime();
+
+                if (!subscribers.isEmpty()) {
+                    sleep = Math.min(sleep, writeTimeoutNanos / 2);
+                } // end if statement
+
+                LockSupport.parkNanos(this, Math.max(sleep, 0));
+            } // end if statement
+        } // end while loop
+    } // end dispatch()
+
+    /**
+     * Drops a subscriber whose current write started more than the write timeout ago. The writer thread is stuck
+     *      in that write, so the pool gets another thread until the write returns.
+     *
+     * @return True if the subscriber was dropped.
+     */
+    private boolean writeTimedOut(Subscriber subscriber, long now) {
+        synchronized (subscriber) {
+            if (subscriber.writeStarted == 0 || subscriber.stuck || now - subscriber.writeStarted < writeTimeoutNanos) {
+                return false;
+            } // end if statement
+
+            subscriber.stuck = true;
+        } // end synchronized block
+
+        resizeWriters(1);
+        close(subscriber, new TimeoutException("No write to the event stream finished within "
+                + TimeUnit.NANOSECONDS.toMillis(writeTimeoutNanos) + " ms"));
+        return true;
+    } // end writeTimedOut()
+
+    /**
+     * Moves the events from a subscriber's cursor up to `end` into its queue, but no more than MAX_EVENTS_PER_TURN so
+     *      that one subscriber that is far behind does not hold up the others, and no more than there is room for.
+     *
+     * @return True if the subscriber still has events waiting after this turn and room in its queue for them.
+     */
+    private boolean deliver(Subscriber subscriber, long end) {
+        int sent = 0;
+
+        while (subscriber.cursor < end && sent < MAX_EVENTS_PER_TURN) {
+            if (subscriber.queue.remainingCapacity() == 0) {
+                return false; // the writer unparks the dispatcher once it has made room
+            } // end if statement
+
+            MessageEvent event = ring.get((int) (subscriber.cursor & mask));
+
+            if (event == null || event.sequence < subscriber.cursor) {
+                return false; // a publisher claimed this slot but has not written it yet
+            } // end if statement
+
+            if (event.sequence > subscriber.cursor) { // the ring has wrapped past the subscriber
+                if (!lagged(subscriber)) {
+                    return false;
+                } // end if statement
+                continue;
+            } // end if statement
+
+            if (subscriber.accepts(event.message)) {
+                enqueue(subscriber, SseEmitter.event().id(Long.toString(event.sequence)).name(event.type)
+                        .data(event.message, MediaType.APPLICATION_JSON));
+                sent++;
+            } // end if statement
+
+            subscriber.cursor++;
+        } // end while loop
+
+        return subscriber.cursor < end;
+    } // end deliver()
+
+    /**
+     * Handles a subscriber whose next event has already been overwritten.
+     *
+     * @return True if the subscriber was moved forward and can keep reading, false if it was dropped.
+     */
+    private boolean lagged(Subscriber subscriber) {
+        if (dropSlowSubscribers) {
+            close(subscriber, null);
+            return false;
+        } // end if statement
+
+        long oldest = Math.max(nextSequence.get() - mask, subscriber.cursor + 1); // leave room for one more publish
+        enqueue(subscriber, SseEmitter.event().name("lagged").data(oldest - subscriber.cursor));
+        subscriber.cursor = oldest;
+        return true;
+    } // end lagged()
+
+    /**
+     * Queues an event for a subscriber and makes sure a writer is draining its queue.
+     *
+     * @return False if the queue was full.
+     */
+    private boolean enqueue(Subscriber subscriber, SseEmitter.SseEventBuilder event) {
+        if (!subscriber.queue.offer(event)) {
+            return false;
+        } // end if statement
+
+        schedule(subscriber);
+        return true;
+    } // end enqueue()
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.draining.compareAndSet(false, true)) {
+            try {
+                writers.execute(() -> drain(subscriber));
+            } // end try block
+            catch (RejectedExecutionException e) { // shutting down, close() has already ended the stream
+                subscriber.draining.set(false);
+            } // end catch block
+        } // end if statement
+    } // end schedule()
+
+    /**
+     * Runs on a writer thread, it sends what is in a subscriber's queue. Only one writer drains a queue at a time, so
+     *      every call on the emitter, the final complete() included, happens here and not on the dispatcher.
+     */
+    private void drain(Subscriber subscriber) {
+        try {
+            SseEmitter.SseEventBuilder event;
+
+            while (!subscriber.closed && (event = subscriber.queue.poll()) != null) {
+                synchronized (subscriber) {
+                    subscriber.writeStarted = System.nanoTime();
+                } // end synchronized block
+
+                try {
+                    subscriber.emitter.send(event);
+                } // end try block
+                catch (IOException | IllegalStateException e) { // the client went away
+                    close(subscriber, e);
+                } // end catch block
+                finally {
+                    writeFinished(subscriber);
+                } // end finally block
+            } // end while loop
+
+            if (subscriber.closed) {
+                subscriber.queue.clear();
+            } // end if statement
+
+            if (subscriber.closed && subscriber.completed.compareAndSet(false, true)) {
+                if (subscriber.error == null) {
+                    subscriber.emitter.complete();
+                } // end if statement
+                else {
+                    subscriber.emitter.completeWithError(subscriber.error);
+                } // end else statement
+            } // end if statement
+        } // end try block
+        finally {
+            subscriber.draining.set(false);
+        } // end finally block
+
+        if (subscriber.closed ? !subscriber.completed.get() : !subscriber.queue.isEmpty()) {
+            schedule(subscriber); // queued or closed after the loop ended but before draining was cleared
+        } // end if statement
+
+        LockSupport.unpark(dispatcher); // there is room in the queue again
+    } // end drain()
+
+    private void writeFinished(Subscriber subscriber) {
+        boolean wasStuck;
+
+        synchronized (subscriber) {
+            subscriber.writeStarted = 0;
+            wasStuck = subscriber.stuck;
+            subscriber.stuck = false;
+        } // end synchronized block
+
+        if (wasStuck) {
+            resizeWriters(-1);
+        } // end if statement
+    } // end writeFinished()
+
+    /**
+     * Gives the writer pool one thread more (or less) for every writer that is stuck in a write that timed out.
+     */
+    private synchronized void resizeWriters(int stuckDelta) {
+        stuckWriters += stuckDelta;
+        int size = writerThreads + stuckWriters;
+
+        if (size > writers.getMaximumPoolSize()) {
+            writers.setMaximumPoolSize(size);
+            writers.setCorePoolSize(size);
+        } // end if statement
+        else {
+            writers.setCorePoolSize(size);
+            writers.setMaximumPoolSize(size);
+        } // end else statement
+    } // end resizeWriters()
+
+    /**
+     * Stops sending to a subscriber and has its writer end the stream.
+     *
+     * @param error Why the stream is ended, or null to end it normally.
+     */
+    private void close(Subscriber subscriber, Throwable error) {
+        subscribers.remove(subscriber);
+
+        if (!subscriber.closed) {
+            subscriber.error = error;
+            subscriber.closed = true;
+        } // end if statement
+
+        if (!writers.isShutdown()) {
+            schedule(subscriber);
+        } // end if statement
+    } // end close()
+
+    /**
+     * The emitter was completed, timed out or failed on the servlet side, there is nothing left to write.
+     */
+    private void forget(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        subscriber.closed = true;
+        subscriber.completed.set(true);
+    } // end forget()
+
+    /**
+     * Ends every stream as soon as the application starts shutting down, otherwise stopping the web server would wait
+     *      for the open streams to time out.
+     */
+    @PreDestroy
+    @EventListener(ContextClosedEvent.class)
+    public void close() {
+        running = false;
+        LockSupport.unpark(dispatcher);
+
+        for (Subscriber subscriber : subscribers) {
+            close(subscriber, null);
+        } // end for loop
+
+        writers.shutdown(); // the streams are still ended, only a stuck writer is not waited for
+
+        try {
+            writers.awaitTermination(1, TimeUnit.SECONDS);
+        } // end try block
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } // end catch block
+    } // end close()
+
+    /**
+     * One published event, it keeps its sequence number so a reader can tell if the slot was overwritten.
+     */
+    private static final class MessageEvent {
+        private final long sequence;
+        private final String type;
+        private final Message message;
+
+        private MessageEvent(long sequence, String type, Message message) {
+            this.sequence = sequence;
+            this.type = type;
+            this.message = message;
+        } // end constructor
+    } // end MessageEvent Class
+
+    /**
+     * One open stream along with how far it has read and what is waiting to be written to it. The cursor is only
+     *      touched by the dispatcher thread, writeStarted and stuck are guarded by the subscriber itself.
+     */
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final Integer accountId;
+        private final BlockingQueue<SseEmitter.SseEventBuilder> queue;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private long cursor;
+        private long writeStarted;
+        private boolean stuck;
+        private volatile boolean closed;
+        private volatile Throwable error;
+
+        private Subscriber(SseEmitter emitter, Integer accountId, long cursor, int queueSize) {
+            this.emitter = emitter;
+            this.accountId = accountId;
+            this.cursor = cursor;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+        } // end constructor
+
+        /**
+         * Events where the account is not known (eg. from a delete by time range) go to every subscriber.
+         */
+        private boolean accepts(Message message) {
+            return accountId == null || message.getPostedBy() == null || accountId.equals(message.getPostedBy());
+        } // end accepts()
+    } // end Subscriber Class
+} // end MessageEventService Class
@@ -0,0 +1,199 @@
+package com.example.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.repository.MessageStore;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Keeps a counting Bloom filter of the ids of every message, so lookups of ids that do not exist (scrapers walking
+ *      the id space, clients holding on to deleted ids) can be answered without going to the database.
+ *
+ * MessageService adds the id of every message it saves and removes the id of every message it deletes. The filter
+ *      can only be wrong one way: it may say a deleted or never used id might be there (a false positive, the lookup
+ *      goes to the database like it always did), but it never says an id that is there is missing. Anything that
+ *      deletes messages without going through MessageService (eg. a bulk delete) only leaves false positives behind.
+ *      Anything that adds them in bulk (a snapshot restore, synthetic data) has to call `rebuild()`.
+ * The filter is rebuilt from the message table when the application starts and every
+ *      `app.messages.id-filter.rebuild-interval-ms` milliseconds, sized for twice the messages there were last time
+ *      (at least `app.messages.id-filter.min-capacity`) so it keeps close to `app.messages.id-filter.false-positive-rate`
+ *      as the table grows. Until the first rebuild is done every id might be there.
+ *
+ * Lookups are counted in `app.messages.id-filter.lookups`, tagged with whether the filter said the id was absent, it
+ *      might be there, or it might be there and was not (a false positive). `app.messages.id-filter.false-positive-rate`
+ *      is the share of missing ids that the filter let through, and `app.messages.id-filter.expected-false-positive-rate`
+ *      is what it should be going by the number of ids in the filter and its size.
+ */
+@Service
+public class MessageIdFilter {
+    private final MessageStore messageStore;
+    private final boolean enabled;
+    private final double falsePositiveRate;
+    private final long minCapacity;
+    private final Counter absent;
+    private final Counter maybe;
+    private final Counter falsePositive;
+    private volatile CountingBloomFilter filter; // null until the first rebuild is done
+    private volatile CountingBloomFilter building; // the filter being rebuilt, if there is one
+
+    @Autowired
+    public MessageIdFilter(MessageStore messageStore, MeterRegistry meterRegistry,
+            @Value("${app.messages.id-filter.enabled:true}") boolean enabled,
+            @Value("${app.messages.id-filter.false-positive-rate:0.01}") double falsePositiveRate,
+            @Value("${app.messages.id-filter.min-capacity:100000}") long minCapacity) {
+        this.messageStore = messageStore;
+        this.enabled = enabled;
+        this.falsePositiveRate = falsePositiveRate;
+        this.minCapacity = minCapacity;
+        this.absent = lookups(meterRegistry, "absent");
+        this.maybe = lookups(meterRegistry, "maybe");
+        this.falsePositive = lookups(meterRegistry, "false-positive");
+
+        Gauge.builder("app.messages.id-filter.false-positive-rate", this, MessageIdFilter::observedFalsePositiveRate)
+                .description("Share of lookups of missing ids that the filter let through").register(meterRegistry);
+        Gauge.builder("app.messages.id-filter.expected-false-positive-rate", this,
+                MessageIdFilter::expectedFalsePositiveRate)
+                .description("False positive rate the filter should have with the ids in it").register(meterRegistry);
+        Gauge.builder("app.messages.id-filter.ids", this, MessageIdFilter::size).register(meterRegistry);
+        Gauge.builder("app.messages.id-filter.size", this, MessageIdFilter::bytes).baseUnit("bytes")
+                .register(meterRegistry);
+    } // end constructor
+
+    /**
+     * @return False if there is definitely no message with this id, true if there might be.
+     */
+    public boolean mightContain(Integer id) {
+        CountingBloomFilter current = filter;
+
+        if (current == null || id == null) {
+            return true;
+        } // end if statement
+
+        if (!current.mightContain(id)) {
+            absent.increment();
+            return false;
+        } // end if statement
+
+        maybe.increment();
+        return true;
+    } // end mightContain()
+
+    /**
+     * Counts a lookup that `mightContain()` let through but found nothing.
+     */
+    public void falsePositive() {
+        if (filter != null) { // before the first rebuild every lookup is let through, those do not count
+            falsePositive.increment();
+        } // end if statement
+    } // end falsePositive()
+
+    /**
+     * Adds the id of a message that was just saved.
+     */
+    public void added(Integer id) {
+        CountingBloomFilter next = building; // read before the filter, see rebuild()
+        CountingBloomFilter current = filter;
+
+        if (next != null) { // the rebuild may already have gone past it
+            next.add(id);
+        } // end if statement
+
+        if (current != null && current != next) {
+            current.add(id);
+        } // end if statement
+    } // end added()
+
+    /**
+     * @return Something to hand back to `deleted()`, taken before the message is deleted.
+     */
+    public Object generation() {
+        return filter;
+    } // end generation()
+
+    /**
+     * Removes the id of a message that was just deleted.
+     *
+     * An id can only be taken out of the filter that was in use both before and after the delete: a filter swapped in
+     *      by a rebuild in between may never have had the id, and taking it out of that one could hide another id that
+     *      shares its counters. Leaving it in only means a false positive until the next rebuild.
+     *
+     * @param generation What `generation()` returned before the delete.
+     */
+    public void deleted(Integer id, Object generation) {
+        CountingBloomFilter current = filter;
+
+        if (current != null && current == generation) {
+            current.remove(id);
+        } // end if statement
+    } // end deleted()
+
+    /**
+     * Builds a new filter from the message table and swaps it in.
+     *
+     * Ids saved while the table is being read go into both the old and the new filter, deletes only come out of the
+     *      old one.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${app.messages.id-filter.rebuild-interval-ms:600000}",
+            initialDelayString = "${app.messages.id-filter.rebuild-interval-ms:600000}")
+    public synchronized void rebuild() {
+        if (!enabled) {
+            return;
+        } // end if statement
+
+        CountingBloomFilter current = filter;
+        long capacity = Math.max(minCapacity, 2 * (current == null ? 0 : current.size()));
+
+        while (true) {
+            CountingBloomFilter next = new CountingBloomFilter(capacity, falsePositiveRate);
+            building = next;
+
+            try {
+                messageStore.forEachMessage(message -> next.add(message.getMessageId()));
+
+                if (next.size() <= capacity) {
+                    filter = next; // swapped in before `building` is cleared, so no save can miss both
+                    return;
+                } // end if statement
+            } // end try block
+            finally {
+                building = null;
+            } // end finally block
+
+            capacity = 2 * next.size(); // there were more messages than it was sized for, go again with room to grow
+        } // end while loop
+    } // end rebuild()
+
+    private double observedFalsePositiveRate() {
+        double missing = absent.count() + falsePositive.count();
+        return missing == 0 ? 0 : falsePositive.count() / missing;
+    } // end observedFalsePositiveRate()
+
+    private double expectedFalsePositiveRate() {
+        CountingBloomFilter current = filter;
+        return current == null ? 1 : current.expectedFalsePositiveRate();
+    } // end expectedFalsePositiveRate()
+
+    private double size() {
+        CountingBloomFilter current = filter;
+        return current == null ? 0 : current.size();
+    } // end size()
+
+    private double bytes() {
+        CountingBloomFilter current = filter;
+        return current == null ? 0 : current.bytes();
+    } // end bytes()
+
+    private static Counter lookups(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("app.messages.id-filter.lookups").tag("result", result)
+                .description("Message id lookups the filter answered").register(meterRegistry);
+    } // end lookups()
+} // end MessageIdFilter Class
@@ -1,24 +1,95 @@
 package com.example.service;
 
+import javax.annotation.PreDestroy;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.example.entity.Message;
-import com.example.repository.AccountRepository;
-import com.example.repository.MessageRepository;
+import com.example.repository.AccountStore;
+import com.example.repository.MessageStore;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
 
+/**
+ * The read methods run in read-only transactions, which puts Hibernate in manual flush mode and loads any entity as 
+ *      read-only, so no snapshot is kept for dirty checking and nothing is flushed at the end. The lists are plain 
+ *      Message objects built straight from the query results (see MessageRepository).
+ * 
+ * Looking up a message by id and the messages of an account go through a SingleFlight, so when many requests ask for
+ *      the same hot message or account at once only one of them goes to the database and the rest share its result.
+ *      Their read-only transaction is started inside the shared call, so the requests that are waiting do not hold a
+ *      connection. Writes forget the keys they change, `app.singleflight.enabled=false` turns this off.
+ * 
+ * Before any of that, ids are checked against MessageIdFilter, so looking up, deleting or patching an id that 
+ *      definitely does not exist returns straight away without going to the database.
+ * 
+ * Every change is also published on the InvalidationBus, for the other nodes that share the database.
+ * 
+ * With `app.messages.patch-coalescing.window-ms` above 0, patches are checked straight away but written by a 
+ *      PatchCoalescer, which holds the patches to a message for that long and only writes the last one. The reads 
+ *      swap in the held text, so they still see every patch as soon as it is answered. The patched event and the 
+ *      invalidation go out once, when the text is written.
+ */
 @Service
 public class MessageService {
-    private final AccountRepository accountRepository;
-    private final MessageRepository messageRepository;
+    private final AccountStore accountStore;
+    private final MessageStore messageStore;
+    private final AccountStatsService accountStatsService;
+    private final MessageEventService messageEventService;
+    private final int maxPageSize;
+    private final int maxIds;
+    private final TransactionTemplate readTransaction;
+    private final SingleFlight<Integer, Optional<Message>> messagesById; // null when single flight is turned off
+    private final SingleFlight<Integer, List<Message>> messagesByAccount;
+    private final MessageIdFilter messageIdFilter;
+    private final InvalidationBus invalidationBus;
+    private final PatchCoalescer patchCoalescer; // null unless patches are coalesced
+    private final Object[] deleteLocks = new Object[64]; // striped by message id
 
     @Autowired
-    public MessageService(AccountRepository accountRepository, MessageRepository messageRepository) {
-        this.accountRepository = accountRepository;
-        this.messageRepository = messageRepository;
+    public MessageService(AccountStore accountStore, MessageStore messageStore,
+            AccountStatsService accountStatsService, MessageEventService messageEventService,
+            MessageIdFilter messageIdFilter, InvalidationBus invalidationBus,
+            PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+            @Value("${app.messages.max-page-size:1000}") int maxPageSize,
+            @Value("${app.messages.max-ids:500}") int maxIds,
+            @Value("${app.singleflight.enabled:true}") boolean singleFlight,
+            @Value("${app.singleflight.timeout-ms:2000}") long singleFlightTimeoutMillis,
+            @Value("${app.messages.patch-coalescing.window-ms:0}") long patchWindowMillis) {
+        this.accountStore = accountStore;
+        this.messageStore = messageStore;
+        this.accountStatsService = accountStatsService;
+        this.messageEventService = messageEventService;
+        this.messageIdFilter = messageIdFilter;
+        this.invalidationBus = invalidationBus;
+        this.maxPageSize = maxPageSize;
+        this.maxIds = maxIds;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.messagesById = singleFlight
+                ? new SingleFlight<>("messages-by-id", singleFlightTimeoutMillis, meterRegistry) : null;
+        this.messagesByAccount = singleFlight
+                ? new SingleFlight<>("messages-by-account", singleFlightTimeoutMillis, meterRegistry) : null;
+        this.patchCoalescer = patchWindowMillis > 0
+                ? new PatchCoalescer(patchWindowMillis, this::writeHeldPatch, meterRegistry) : null;
+
+        for (int i = 0; i < deleteLocks.length; i++) {
+            deleteLocks[i] = new Object();
+        } // end for loop
     } // end constructor
 
     /**
@@ -37,13 +108,24 @@ public class MessageService {
             // check if message text if empty or longer than 225 characters long
             return null; // return null if message text is invalid
         } // end if statement 
-        if (accountRepository.findById(message.getPostedBy()).get() == null) {
+        if (accountStore.findAccountById(message.getPostedBy()).get() == null) {
             // check if message is posted by a valid account holder
             return null; // if there is no valid account holder return null
         } // end if statement
 
         try {
-            return messageRepository.save(message); // try adding the message to the database
+            Message added;
+
+            synchronized (accountStatsService.lockFor(message.getPostedBy())) { // so a stats rebuild is not in between
+                added = messageStore.save(message); // try adding the message to the database
+                accountStatsService.messageAdded(added); // count the message for the account that posted it
+            } // end synchronized block
+
+            messageIdFilter.added(added.getMessageId()); // so lookups of the new id are let through
+            forget(null, added.getPostedBy()); // the account's list has changed
+            messageEventService.publish(MessageEventService.CREATED, added); // tell the event stream subscribers
+            invalidationBus.publish(InvalidationEvent.MESSAGE_CREATED, added.getMessageId(), added.getPostedBy());
+            return added;
         } // end try block
         catch (Exception e) {
             throw e;
@@ -59,8 +141,9 @@ public class MessageService {
      * 
      * @return List<Message> of all the messages in the database.
      */
+    @Transactional(readOnly = true)
     public List<Message> getAllMessages() {
-        return messageRepository.findAll();
+        return latest(messageStore.findAll());
     } // end getAllMessages()
 
     /**
@@ -68,26 +151,116 @@ public class MessageService {
      * 
      * In Spring Data JPA `findById()` returns an optional containing the object that was found (or not found).
      * So after checking that an object was found it is safe to return it, if no object was found then return null.
+     * Concurrent calls for the same id share one lookup, so the message may be the same object other requests got and 
+     *      must not be changed.
      * 
      * @param id int that represents the message_id
      * @return The found message or null.
      */
     public Message getMessageById(Integer id) {
-        Optional<Message> message = messageRepository.findById(id);
+        if (!messageIdFilter.mightContain(id)) { // there is definitely no message with this id
+            return null;
+        } // end if statement
+
+        Supplier<Optional<Message>> lookup = () -> readTransaction.execute(status -> messageStore.findById(id));
+        Optional<Message> message = messagesById == null ? lookup.get() : messagesById.load(id, lookup);
 
         if (!message.isPresent()) { // if nothing is present in the message optional then return null.
+            messageIdFilter.falsePositive();
             return null;
         } // end if statement 
 
-        return message.get(); // return the message that was found.
+        // return the message that was found, with the text of a patch that is held
+        return patchCoalescer == null ? message.get() : patchCoalescer.latest(message.get());
     } // end getMessageById()
 
+    /**
+     * Looks up a group of messages at once, for clients that would otherwise ask for them one at a time.
+     * 
+     * Ids the MessageIdFilter turns away and repeated ids are not looked up, the rest go to the store in one call 
+     *      (for the jpa store, the second-level cache and then one `in` query).
+     * 
+     * @param ids The ids of the messages, at most `app.messages.max-ids` of them.
+     * @return The messages in the same order as the ids, with null for the ids that have no message, or null if there 
+     *      are too many ids.
+     */
+    public List<Message> getMessagesByIds(List<Integer> ids) {
+        if (ids.size() > maxIds) {
+            return null;
+        } // end if statement
+
+        Set<Integer> wanted = new LinkedHashSet<>();
+
+        for (Integer id : ids) {
+            if (id != null && messageIdFilter.mightContain(id)) {
+                wanted.add(id);
+            } // end if statement
+        } // end for loop
+
+        Map<Integer, Message> found = new HashMap<>();
+
+        if (!wanted.isEmpty()) {
+            for (Message message : readTransaction.execute(status -> messageStore.findAllById(wanted))) {
+                found.put(message.getMessageId(), message);
+            } // end for loop
+        } // end if statement
+
+        for (int i = found.size(); i < wanted.size(); i++) { // the filter let through ids that are not there
+            messageIdFilter.falsePositive();
+        } // end for loop
+
+        List<Message> messages = new ArrayList<>(ids.size());
+
+        for (Integer id : ids) {
+            messages.add(id == null ? null : found.get(id));
+        } // end for loop
+
+        return latest(messages);
+    } // end getMessagesByIds()
+
+    /**
+     * Deletes a message by its id.
+     * 
+     * Deletes of the same id are done one at a time, so only one of them finds the message and takes its id out of 
+     *      the MessageIdFilter.
+     * 
+     * @param id The id of the message that needs to be deleted.
+     * @return True if there was a message to delete.
+     */
     public boolean deleteMessageById(Integer id) {
-        if (messageRepository.existsById(id)) { // if a message with a matching message_id exists 
-            messageRepository.deleteById(id); // delete the message from the database
+        if (!messageIdFilter.mightContain(id)) { // there is definitely no message with this id
+            return false;
+        } // end if statement
+
+        Optional<Message> message;
+
+        synchronized (deleteLocks[Math.floorMod(id, deleteLocks.length)]) {
+            Object generation = messageIdFilter.generation();
+            message = messageStore.findById(id);
+
+            if (message.isPresent()) { // if a message with a matching message_id exists 
+                synchronized (accountStatsService.lockFor(message.get().getPostedBy())) {
+                    messageStore.deleteById(id); // delete the message from the database
+                    accountStatsService.messageDeleted(message.get()); // stop counting the message for its account
+                } // end synchronized block
+
+                messageIdFilter.deleted(id, generation);
+
+                if (patchCoalescer != null) { // a patch that is held must not bring it back
+                    patchCoalescer.discard(id);
+                } // end if statement
+            } // end if statement
+        } // end synchronized block
+
+        if (message.isPresent()) {
+            forget(id, message.get().getPostedBy());
+            messageEventService.publish(MessageEventService.DELETED,
+                    new Message(id, message.get().getPostedBy(), null, null));
+            invalidationBus.publish(InvalidationEvent.MESSAGE_DELETED, id, message.get().getPostedBy());
             return true; // return true
         } // end if statement
 
+        messageIdFilter.falsePositive();
         return false; // if there is no matching message in the database return false
     } // end deleteMessageById()
 
@@ -107,24 +280,121 @@ public class MessageService {
             return false; // if text is bad return false
         } // end if statement
 
-        Optional<Message> message = messageRepository.findById(id); // find message based on its id
+        if (!messageIdFilter.mightContain(id)) { // there is definitely no message with this id
+            return false;
+        } // end if statement
+
+        if (patchCoalescer != null) { // hold the text, only the last one in the window is written
+            if (!patchCoalescer.hold(id, text, () -> messageStore.findById(id))) {
+                messageIdFilter.falsePositive();
+                return false;
+            } // end if statement
+
+            return true;
+        } // end if statement
+
+        Optional<Message> message = messageStore.findById(id); // find message based on its id
 
         if (!message.isPresent()) { // if nothing is present in the message optional then return null.
+            messageIdFilter.falsePositive();
             return false;
         } // end if statement 
 
         message.get().setMessageText(text); // change the text in the message
-        messageRepository.save(message.get()); // add the message to the database
+        Message saved = messageStore.save(message.get()); // add the message to the database
+        forget(id, saved.getPostedBy());
+        messageEventService.publish(MessageEventService.PATCHED, saved);
+        invalidationBus.publish(InvalidationEvent.MESSAGE_PATCHED, id, saved.getPostedBy());
         return true; // if the message was added then return true
     } // end patchMesage()
 
+    /**
+     * Writes the last patch the PatchCoalescer held for a message, unless the message was deleted in the meantime. 
+     *      Runs on the PatchCoalescer's thread, and one at a time with the deletes of the same id.
+     */
+    private void writeHeldPatch(Message held) {
+        Integer id = held.getMessageId();
+        Message saved;
+
+        synchronized (deleteLocks[Math.floorMod(id, deleteLocks.length)]) {
+            if (!messageStore.existsById(id)) { // deleted after the patch looked it up
+                return;
+            } // end if statement
+
+            saved = messageStore.save(new Message(id, held.getPostedBy(), held.getMessageText(),
+                    held.getTimePostedEpoch())); // a copy, the held one may still be handed to readers
+        } // end synchronized block
+
+        forget(id, saved.getPostedBy());
+        messageEventService.publish(MessageEventService.PATCHED, saved);
+        invalidationBus.publish(InvalidationEvent.MESSAGE_PATCHED, id, saved.getPostedBy());
+    } // end writeHeldPatch()
+
     /**
      * Get a list of messages that were posted by a single user. 
      * 
+     * Concurrent calls for the same account share one lookup, so the list may be the same one other requests got and 
+     *      must not be changed.
+     * 
      * @param id The id of the account whose messages need to be found. 
      * @return The List of messages that were posted by the user. 
      */
     public List<Message> getByAccountId(Integer id) {
-        return messageRepository.findMessagesByPostedBy(id); // return the list of messages posted by the user
+        Supplier<List<Message>> lookup = () -> readTransaction.execute(status -> messageStore.findByPostedBy(id));
+        return latest(messagesByAccount == null ? lookup.get() : messagesByAccount.load(id, lookup));
     } // end getByAccountId()
+
+    /**
+     * Get one page of the messages that were posted in a time range, oldest first. 
+     * 
+     * A missing `since` or `until` leaves that end of the range open. Pages bigger than `app.messages.max-page-size` 
+     *      are cut down to that size.
+     * 
+     * @param postedBy The id of the account whose messages need to be found, or null for every account.
+     * @param since The earliest timePostedEpoch to include.
+     * @param until The timePostedEpoch to stop before.
+     * @param page The number of the page, starting from 0.
+     * @param size How many messages are on a page.
+     * @return The List of messages on the page, or null if the page or size is invalid.
+     */
+    @Transactional(readOnly = true)
+    public List<Message> getByTimeRange(Integer postedBy, Long since, Long until, int page, int size) {
+        if (page < 0 || size < 1) { // check that the page exists
+            return null;
+        } // end if statement
+
+        return latest(messageStore.findByTimeRange(postedBy, since == null ? Long.MIN_VALUE : since,
+                until == null ? Long.MAX_VALUE : until, page, Math.min(size, maxPageSize)));
+    } // end getByTimeRange()
+
+    /**
+     * Writes the patches that are still held before the application stops.
+     */
+    @PreDestroy
+    public void close() {
+        if (patchCoalescer != null) {
+            patchCoalescer.close();
+        } // end if statement
+    } // end close()
+
+    /**
+     * @return The messages with the text of any patch that is held swapped in.
+     */
+    private List<Message> latest(List<Message> messages) {
+        return patchCoalescer == null ? messages : patchCoalescer.overlay(messages);
+    } // end latest()
+
+    /**
+     * Makes the next lookups of a changed message and of its account's messages start over, rather than sharing a 
+     *      lookup that started before the change.
+     */
+    private void forget(Integer messageId, Integer postedBy) {
+        if (messagesById != null && messageId != null) {
+            messagesById.forget(messageId);
+        } // end if statement
+
+        if (messagesByAccount != null && postedBy != null) {
+            messagesByAccount.forget(postedBy);
+        } // end if statement
+    } // end forget()
 } // end MessageService Class
\ No newline at end of file
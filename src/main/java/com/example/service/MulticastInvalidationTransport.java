@@ -0,0 +1,163 @@
+package com.example.service;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * An InvalidationTransport that sends every batch as UDP multicast packets, which is enough for nodes on the same
+ *      host or network segment (there is no retry, a lost packet leaves the other nodes' caches stale until the
+ *      entries expire or the periodic rebuilds run).
+ *
+ * The group and port are `app.invalidation.multicast.group` and `.port`, and packets go out on the interface named by
+ *      `.interface` (the loopback interface by default, so only the nodes on this host hear them). Every packet is:
+ *      a magic number, the id of the node that sent it, the number of events, then for every event its type, id,
+ *      account id and the time it was published. The node id is made up at startup and is how a node recognises
+ *      its own packets.
+ */
+@Component
+@ConditionalOnProperty(name = "app.invalidation.transport", havingValue = "multicast")
+public class MulticastInvalidationTransport implements InvalidationTransport {
+    private static final Log log = LogFactory.getLog(MulticastInvalidationTransport.class);
+    private static final int MAGIC = 0x494e5631; // "INV1"
+    private static final int HEADER_BYTES = 4 + 8 + 2;
+    private static final int EVENT_BYTES = 1 + 4 + 4 + 8;
+    private static final int MAX_PACKET_BYTES = 1400; // fits in one Ethernet frame
+
+    private final long nodeId = ThreadLocalRandom.current().nextLong();
+    private final InetSocketAddress group;
+    private final DatagramChannel sender;
+    private final DatagramChannel receiver;
+    private final ByteBuffer sendBuffer = ByteBuffer.allocate(MAX_PACKET_BYTES);
+    private Thread receiverThread;
+
+    @Autowired
+    public MulticastInvalidationTransport(@Value("${app.invalidation.multicast.group:239.255.42.99}") String group,
+            @Value("${app.invalidation.multicast.port:4446}") int port,
+            @Value("${app.invalidation.multicast.interface:}") String interfaceName) throws IOException {
+        NetworkInterface networkInterface = interfaceName.isEmpty()
+                ? NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress())
+                : NetworkInterface.getByName(interfaceName);
+
+        if (networkInterface == null) {
+            throw new IOException("There is no network interface called " + interfaceName);
+        } // end if statement
+
+        this.group = new InetSocketAddress(InetAddress.getByName(group), port);
+        this.sender = DatagramChannel.open(StandardProtocolFamily.INET)
+                .setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface)
+                .setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true); // the other nodes may be on this host
+        this.receiver = DatagramChannel.open(StandardProtocolFamily.INET)
+                .setOption(StandardSocketOptions.SO_REUSEADDR, true) // so every node on the host can bind the port
+                .bind(new InetSocketAddress(port));
+        this.receiver.join(this.group.getAddress(), networkInterface);
+    } // end constructor
+
+    /**
+     * Sends the batch in as many packets as it takes. Only ever called by the InvalidationBus's sender thread.
+     */
+    @Override
+    public void send(List<InvalidationEvent> batch) throws IOException {
+        int perPacket = (MAX_PACKET_BYTES - HEADER_BYTES) / EVENT_BYTES;
+
+        for (int from = 0; from < batch.size(); from += perPacket) {
+            int to = Math.min(batch.size(), from + perPacket);
+            sendBuffer.clear();
+            sendBuffer.putInt(MAGIC).putLong(nodeId).putShort((short) (to - from));
+
+            for (InvalidationEvent event : batch.subList(from, to)) {
+                sendBuffer.put(event.getType()).putInt(event.getId()).putInt(event.getAccountId())
+                        .putLong(event.getPublishedAtMicros());
+            } // end for loop
+
+            sendBuffer.flip();
+            sender.send(sendBuffer, group);
+        } // end for loop
+    } // end send()
+
+    @Override
+    public synchronized void listen(Consumer<List<InvalidationEvent>> listener) {
+        if (receiverThread != null) {
+            throw new IllegalStateException("Already listening");
+        } // end if statement
+
+        receiverThread = new Thread(() -> receive(listener), "invalidation-receiver");
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+    } // end listen()
+
+    private void receive(Consumer<List<InvalidationEvent>> listener) {
+        ByteBuffer buffer = ByteBuffer.allocate(65536);
+
+        while (receiver.isOpen()) {
+            try {
+                buffer.clear();
+                receiver.receive(buffer);
+                buffer.flip();
+                List<InvalidationEvent> batch = decode(buffer);
+
+                if (batch != null) {
+                    listener.accept(batch);
+                } // end if statement
+            } // end try block
+            catch (ClosedChannelException e) { // close() was called
+                return;
+            } // end catch block
+            catch (IOException | RuntimeException e) { // keep listening, one bad packet is one lost batch
+                log.warn("Could not handle an invalidation packet", e);
+            } // end catch block
+        } // end while loop
+    } // end receive()
+
+    /**
+     * @return The events in the packet, or null if it is not one of ours or this node sent it.
+     */
+    private List<InvalidationEvent> decode(ByteBuffer buffer) {
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getLong() == nodeId) {
+                return null;
+            } // end if statement
+
+            int count = buffer.getShort() & 0xffff;
+            List<InvalidationEvent> batch = new ArrayList<>(count);
+
+            for (int i = 0; i < count; i++) {
+                batch.add(new InvalidationEvent(buffer.get(), buffer.getInt(), buffer.getInt(), buffer.getLong()));
+            } // end for loop
+
+            return batch;
+        } // end try block
+        catch (BufferUnderflowException e) { // too short to be one of ours
+            return null;
+        } // end catch block
+    } // end decode()
+
+    @Override
+    public void close() {
+        try {
+            receiver.close();
+            sender.close();
+        } // end try block
+        catch (IOException e) {
+            log.warn("Could not close the invalidation channels", e);
+        } // end catch block
+    } // end close()
+} // end MulticastInvalidationTransport Class
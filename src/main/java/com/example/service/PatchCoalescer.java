@@ -0,0 +1,178 @@
+package com.example.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.example.entity.Message;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Holds patches to a message for `windowMillis` and then writes only the last one, for editors that autosave the
+ *      same message many times a second.
+ *
+ * The first patch of a message looks the message up and starts the window, the patches that come in while it is open
+ *      only replace the text that is held. When the window closes the held message is handed to the writer. A patch
+ *      that comes in while the writer is running is held for another window, since what is being written is already
+ *      out of date.
+ * Until it is written, the held message is what readers should see, `latest()` and `overlay()` swap it in for what
+ *      the store returned.
+ *
+ * Metrics: `app.messages.patch-coalescing.patches` (patches accepted), `app.messages.patch-coalescing.writes` (held
+ *      messages written) and `app.messages.patch-coalescing.pending` (messages held right now).
+ */
+public class PatchCoalescer {
+    private static final Log log = LogFactory.getLog(PatchCoalescer.class);
+
+    private final Map<Integer, Message> pending = new ConcurrentHashMap<>();
+    private final long windowMillis;
+    private final Consumer<Message> writer;
+    private final ScheduledExecutorService flusher;
+    private final Counter patches;
+    private final Counter writes;
+
+    /**
+     * @param windowMillis How long patches to a message are held before the last one is written.
+     * @param writer Writes a held message, on the flusher thread.
+     */
+    public PatchCoalescer(long windowMillis, Consumer<Message> writer, MeterRegistry meterRegistry) {
+        this.windowMillis = windowMillis;
+        this.writer = writer;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "patch-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.patches = Counter.builder("app.messages.patch-coalescing.patches")
+                .description("Patches accepted, whether or not they were written").register(meterRegistry);
+        this.writes = Counter.builder("app.messages.patch-coalescing.writes")
+                .description("Held patches written to the store").register(meterRegistry);
+        Gauge.builder("app.messages.patch-coalescing.pending", pending, Map::size)
+                .description("Messages with a patch waiting to be written").register(meterRegistry);
+    } // end constructor
+
+    /**
+     * Holds a patch. If nothing is held for the message yet, it is looked up with `lookup` first.
+     *
+     * @return False if there is no such message.
+     */
+    public boolean hold(Integer id, String text, Supplier<Optional<Message>> lookup) {
+        if (pending.computeIfPresent(id, (key, held) -> withText(held, text)) == null) {
+            Optional<Message> message = lookup.get(); // outside the map, the lookup can take a while
+
+            if (!message.isPresent()) {
+                return false;
+            } // end if statement
+
+            boolean[] opened = new boolean[1];
+            pending.compute(id, (key, held) -> {
+                opened[0] = held == null;
+                return withText(held == null ? message.get() : held, text);
+            });
+
+            if (opened[0]) {
+                flusher.schedule(() -> flush(id), windowMillis, TimeUnit.MILLISECONDS);
+            } // end if statement
+        } // end if statement
+
+        patches.increment();
+        return true;
+    } // end hold()
+
+    /**
+     * Drops what is held for a message that was deleted. Its window still closes, but there is nothing to write then.
+     */
+    public void discard(Integer id) {
+        pending.remove(id);
+    } // end discard()
+
+    /**
+     * @return The held version of the message if there is one, otherwise the message itself.
+     */
+    public Message latest(Message message) {
+        Message held = message == null ? null : pending.get(message.getMessageId());
+        return held == null ? message : held;
+    } // end latest()
+
+    /**
+     * @return The messages with the held version of any that have one, in a new list if any did.
+     */
+    public List<Message> overlay(List<Message> messages) {
+        if (pending.isEmpty() || messages == null) {
+            return messages;
+        } // end if statement
+
+        List<Message> latest = null;
+
+        for (int i = 0; i < messages.size(); i++) {
+            Message held = messages.get(i) == null ? null : pending.get(messages.get(i).getMessageId());
+
+            if (held != null) {
+                if (latest == null) { // the list may be shared, so it is copied rather than changed
+                    latest = new ArrayList<>(messages);
+                } // end if statement
+
+                latest.set(i, held);
+            } // end if statement
+        } // end for loop
+
+        return latest == null ? messages : latest;
+    } // end overlay()
+
+    /**
+     * Writes what is held for a message once its window closes. It stays held while it is being written, so readers
+     *      never see the store's older text in between.
+     */
+    void flush(Integer id) {
+        Message held = pending.get(id);
+
+        if (held == null) { // deleted while it was held
+            return;
+        } // end if statement
+
+        try {
+            writer.accept(held);
+            writes.increment();
+        } // end try block
+        catch (RuntimeException e) { // the patches were already answered, so all that can be done is to say so
+            log.warn("Could not write the held patch of message " + id + ", it is lost", e);
+        } // end catch block
+
+        if (!pending.remove(id, held) && !flusher.isShutdown()) { // patched again while it was being written
+            flusher.schedule(() -> flush(id), windowMillis, TimeUnit.MILLISECONDS);
+        } // end if statement
+    } // end flush()
+
+    /**
+     * Writes everything that is held straight away and stops the flusher.
+     */
+    public void close() {
+        flusher.shutdownNow();
+
+        while (!pending.isEmpty()) { // until nothing is patched while being written
+            for (Integer id : new ArrayList<>(pending.keySet())) {
+                flush(id);
+            } // end for loop
+        } // end while loop
+    } // end close()
+
+    /**
+     * Messages that are held are never changed, a patch replaces them with a copy, since readers may have them.
+     */
+    private static Message withText(Message message, String text) {
+        return new Message(message.getMessageId(), message.getPostedBy(), text, message.getTimePostedEpoch());
+    } // end withText()
+} // end PatchCoalescer Class
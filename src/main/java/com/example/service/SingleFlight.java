@@ -0,0 +1,115 @@
+package com.example.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Lets concurrent lookups of the same key share one call instead of each making their own.
+ *
+ * The first caller for a key (the leader) runs the lookup on its own thread. Anyone asking for the same key while
+ *      that is running waits for the leader's result and gets the very same object, so the results must only be read.
+ *      If the lookup throws, everyone waiting gets the same exception. A caller that waits longer than `timeoutMillis`
+ *      stops waiting and runs the lookup itself, so one stuck call cannot hold up everyone behind it for good.
+ * Nothing is cached: once the leader is done the key is dropped and the next caller starts a new lookup. After a
+ *      write, `forget()` the key so callers that come after it do not join a lookup that started before it.
+ *
+ * The calls are counted in `app.singleflight.calls`, tagged with the name and whether the caller led, shared or timed
+ *      out.
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+    private final long timeoutMillis;
+    private final Counter led;
+    private final Counter shared;
+    private final Counter timedOut;
+
+    /**
+     * @param name What the lookups are, used to tag the metrics.
+     * @param timeoutMillis How long a caller waits for someone else's lookup before running its own.
+     */
+    public SingleFlight(String name, long timeoutMillis, MeterRegistry meterRegistry) {
+        this.timeoutMillis = timeoutMillis;
+        this.led = counter(meterRegistry, name, "led");
+        this.shared = counter(meterRegistry, name, "shared");
+        this.timedOut = counter(meterRegistry, name, "timed-out");
+    } // end constructor
+
+    /**
+     * Runs `loader` for `key`, or waits for the lookup of `key` that is already running.
+     *
+     * @return What the lookup returned.
+     */
+    public V load(K key, Supplier<V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> running = flights.putIfAbsent(key, flight);
+
+        if (running == null) { // nobody else is looking this up, so lead
+            led.increment();
+
+            try {
+                V result = loader.get();
+                flight.complete(result);
+                return result;
+            } // end try block
+            catch (RuntimeException | Error e) {
+                flight.completeExceptionally(e);
+                throw e;
+            } // end catch block
+            finally {
+                flights.remove(key, flight); // unless it was forgotten and someone else is leading by now
+            } // end finally block
+        } // end if statement
+
+        shared.increment();
+
+        try {
+            return running.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } // end try block
+        catch (TimeoutException e) {
+            timedOut.increment();
+            return loader.get();
+        } // end catch block
+        catch (ExecutionException e) { // the leader's lookup failed, fail the same way
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } // end if statement
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            } // end if statement
+            throw new IllegalStateException("The shared lookup failed", e.getCause());
+        } // end catch block
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a shared lookup", e);
+        } // end catch block
+    } // end load()
+
+    /**
+     * Stops new callers from joining the lookup of `key` that is running, if there is one. The callers already waiting
+     *      for it still get its result.
+     */
+    public void forget(K key) {
+        flights.remove(key);
+    } // end forget()
+
+    /**
+     * @return How many keys are being looked up right now.
+     */
+    public int inFlight() {
+        return flights.size();
+    } // end inFlight()
+
+    private static Counter counter(MeterRegistry meterRegistry, String name, String outcome) {
+        return Counter.builder("app.singleflight.calls").tag("name", name).tag("outcome", outcome)
+                .description("Lookups that led, shared someone else's call or gave up waiting for it")
+                .register(meterRegistry);
+    } // end counter()
+} // end SingleFlight Class
@@ -0,0 +1,377 @@
+package com.example.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import com.example.entity.Account;
+import com.example.entity.Message;
+
+/**
+ * Reads and writes the binary snapshot files made by SnapshotService.
+ *
+ * A file is a 48 byte header followed by the body:
+ *  - header: magic "SMSP", version, time the snapshot was taken, number of accounts, number of messages, length of
+ *      the body and the CRC32 of the body. The header is written last, so a file that was cut short never looks valid.
+ *  - body: every account and then every message. Numbers are written as variable length zigzag integers and ids and
+ *      times as the difference from the row before, so a message takes about 8 bytes on top of its text against about
+ *      59 for its insert statement (62 against 113 bytes a message in SnapshotRestoreBenchmark, whose texts average
+ *      54 bytes).
+ *
+ * The file is read through memory mapped windows of up to WINDOW_SIZE bytes, so nothing is copied onto the heap except
+ *      the strings, and files larger than 2 GB can still be read.
+ */
+final class SnapshotFile {
+    static final int MAGIC = 0x534D5350; // "SMSP"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 48;
+    static final int MAX_STRING_BYTES = 1 << 16; // far more than the varchar(255) columns can hold
+    private static final int MAX_RECORD_SIZE = 3 * 10 + 3 * (5 + MAX_STRING_BYTES) + 1;
+    private static final long WINDOW_SIZE = 256L << 20;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    private static final int POSTED_BY = 1; // flags telling which nullable message columns are in the record
+    private static final int TIME_POSTED = 2;
+
+    private SnapshotFile() {
+    } // end constructor
+
+    /**
+     * Writes a snapshot to a temporary file next to `target` and moves it into place once it is complete.
+     */
+    static final class Writer implements AutoCloseable {
+        private final Path target;
+        private final Path temporary;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32 crc = new CRC32();
+        private long bodyLength;
+        private long accounts;
+        private long messages;
+        private long lastAccountId;
+        private long lastMessageId;
+        private long lastTimePosted;
+        private boolean finished;
+
+        Writer(Path target) throws IOException {
+            this.target = target;
+            this.temporary = target.resolveSibling(target.getFileName() + ".tmp");
+            this.channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            channel.position(HEADER_SIZE); // the header is filled in by finish()
+        } // end constructor
+
+        void writeAccount(Account account) throws IOException {
+            if (messages > 0) {
+                throw new IllegalStateException("Every account has to be written before the first message");
+            } // end if statement
+
+            ensure(MAX_RECORD_SIZE);
+            writeVarLong(zigzag(account.getAccountId() - lastAccountId));
+            writeString(account.getUsername());
+            writeString(account.getPassword());
+            lastAccountId = account.getAccountId();
+            accounts++;
+        } // end writeAccount()
+
+        void writeMessage(Message message) throws IOException {
+            ensure(MAX_RECORD_SIZE);
+            int flags = (message.getPostedBy() != null ? POSTED_BY : 0)
+                    | (message.getTimePostedEpoch() != null ? TIME_POSTED : 0);
+            buffer.put((byte) flags);
+            writeVarLong(zigzag(message.getMessageId() - lastMessageId));
+
+            if (message.getPostedBy() != null) {
+                writeVarLong(zigzag(message.getPostedBy()));
+            } // end if statement
+
+            if (message.getTimePostedEpoch() != null) { // messages are mostly written in time order
+                writeVarLong(zigzag(message.getTimePostedEpoch() - lastTimePosted));
+                lastTimePosted = message.getTimePostedEpoch();
+            } // end if statement
+
+            writeString(message.getMessageText());
+            lastMessageId = message.getMessageId();
+            messages++;
+        } // end writeMessage()
+
+        /**
+         * Writes the header, forces everything to the disk and moves the file into place.
+         *
+         * @param createdEpochMillis When the snapshot was taken.
+         * @return The size of the file in bytes.
+         */
+        long finish(long createdEpochMillis) throws IOException {
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(createdEpochMillis).putLong(accounts).putLong(messages)
+                    .putLong(bodyLength).putLong(crc.getValue()).flip();
+
+            while (header.hasRemaining()) {
+                channel.write(header, HEADER_SIZE - header.remaining());
+            } // end while loop
+
+            channel.force(true);
+            channel.close();
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+            return HEADER_SIZE + bodyLength;
+        } // end finish()
+
+        long getAccounts() {
+            return accounts;
+        }
+
+        long getMessages() {
+            return messages;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) { // something went wrong, do not leave half a snapshot behind
+                channel.close();
+                Files.deleteIfExists(temporary);
+            } // end if statement
+        } // end close()
+
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                buffer.put((byte) 0);
+                return;
+            } // end if statement
+
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+            if (bytes.length > MAX_STRING_BYTES) {
+                throw new IOException("A string of " + bytes.length + " bytes is too long for a snapshot");
+            } // end if statement
+
+            writeVarLong(bytes.length + 1L); // 0 is kept for null
+            buffer.put(bytes);
+        } // end writeString()
+
+        private void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            } // end while loop
+
+            buffer.put((byte) value);
+        } // end writeVarLong()
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            } // end if statement
+        } // end ensure()
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            bodyLength += buffer.remaining();
+
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            } // end while loop
+
+            buffer.clear();
+        } // end flush()
+    } // end Writer Class
+
+    /**
+     * Reads a snapshot back, the header and checksum are checked by the constructor before any row is read.
+     */
+    static final class Reader implements AutoCloseable {
+        private final FileChannel channel;
+        private final long end;
+        private final long createdEpochMillis;
+        private final long accounts;
+        private final long messages;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long accountsRead;
+        private long messagesRead;
+        private long lastAccountId;
+        private long lastMessageId;
+        private long lastTimePosted;
+
+        Reader(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+
+            try {
+                long size = channel.size();
+
+                if (size < HEADER_SIZE) {
+                    throw new IOException(file + " is too small to be a snapshot");
+                } // end if statement
+
+                ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+
+                if (header.getInt() != MAGIC) {
+                    throw new IOException(file + " is not a snapshot");
+                } // end if statement
+
+                int version = header.getInt();
+
+                if (version != VERSION) {
+                    throw new IOException(file + " is a version " + version + " snapshot, only version " + VERSION
+                            + " can be read");
+                } // end if statement
+
+                this.createdEpochMillis = header.getLong();
+                this.accounts = header.getLong();
+                this.messages = header.getLong();
+                long bodyLength = header.getLong();
+                long checksum = header.getLong();
+                this.end = HEADER_SIZE + bodyLength;
+
+                if (end != size) {
+                    throw new IOException(file + " should be " + end + " bytes but is " + size);
+                } // end if statement
+
+                if (checksum(HEADER_SIZE, end) != checksum) {
+                    throw new IOException(file + " is corrupt, its checksum does not match");
+                } // end if statement
+
+                map(HEADER_SIZE);
+            } // end try block
+            catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            } // end catch block
+        } // end constructor
+
+        long getCreatedEpochMillis() {
+            return createdEpochMillis;
+        }
+
+        long getAccounts() {
+            return accounts;
+        }
+
+        long getMessages() {
+            return messages;
+        }
+
+        /**
+         * @return The next account, or null once every account has been read.
+         */
+        Account nextAccount() throws IOException {
+            if (accountsRead == accounts) {
+                return null;
+            } // end if statement
+
+            ensure();
+            lastAccountId += unzigzag(readVarLong());
+            Account account = new Account(Math.toIntExact(lastAccountId), readString(), readString());
+            accountsRead++;
+            return account;
+        } // end nextAccount()
+
+        /**
+         * @return The next message, or null once every message has been read. The accounts have to be read first.
+         */
+        Message nextMessage() throws IOException {
+            if (accountsRead != accounts) {
+                throw new IllegalStateException("Every account has to be read before the first message");
+            } // end if statement
+
+            if (messagesRead == messages) {
+                return null;
+            } // end if statement
+
+            ensure();
+            int flags = window.get();
+            lastMessageId += unzigzag(readVarLong());
+            Integer postedBy = (flags & POSTED_BY) != 0 ? Math.toIntExact(unzigzag(readVarLong())) : null;
+            Long timePosted = null;
+
+            if ((flags & TIME_POSTED) != 0) {
+                lastTimePosted += unzigzag(readVarLong());
+                timePosted = lastTimePosted;
+            } // end if statement
+
+            Message message = new Message(Math.toIntExact(lastMessageId), postedBy, readString(), timePosted);
+            messagesRead++;
+            return message;
+        } // end nextMessage()
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        } // end close()
+
+        private long checksum(long from, long to) throws IOException {
+            CRC32 crc = new CRC32();
+
+            for (long position = from; position < to; position += WINDOW_SIZE) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, to - position)));
+            } // end for loop
+
+            return crc.getValue();
+        } // end checksum()
+
+        /**
+         * Moves the window forward when the next record could run past its end.
+         */
+        private void ensure() throws IOException {
+            long position = windowStart + window.position();
+
+            if (window.remaining() < MAX_RECORD_SIZE && windowStart + window.limit() < end) {
+                map(position);
+            } // end if statement
+        } // end ensure()
+
+        private void map(long position) throws IOException {
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, end - position));
+        } // end map()
+
+        private String readString() throws IOException {
+            long length = readVarLong() - 1;
+
+            if (length < 0) {
+                return null;
+            } // end if statement
+
+            if (length > MAX_STRING_BYTES || length > window.remaining()) {
+                throw new IOException("The snapshot has a string of " + length + " bytes, it is corrupt");
+            } // end if statement
+
+            byte[] bytes = new byte[(int) length];
+            window.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        } // end readString()
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte next = window.get();
+                value |= (long) (next & 0x7F) << shift;
+
+                if (next >= 0) {
+                    return value;
+                } // end if statement
+            } // end for loop
+
+            throw new IOException("The snapshot has a number that is too long, it is corrupt");
+        } // end readVarLong()
+    } // end Reader Class
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    } // end zigzag()
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    } // end unzigzag()
+} // end SnapshotFile Class
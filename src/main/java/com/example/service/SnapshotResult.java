@@ -0,0 +1,55 @@
+package com.example.service;
+
+/**
+ * What happened when a snapshot was written or restored, as returned by the '/admin/snapshots' handlers.
+ */
+public class SnapshotResult {
+    private final String file;
+    private final long createdEpochMillis;
+    private final long accounts;
+    private final long messages;
+    private final long bytes;
+    private final long millis;
+
+    /**
+     * @param file The name of the snapshot file.
+     * @param createdEpochMillis When the snapshot was taken.
+     * @param accounts How many accounts are in the snapshot.
+     * @param messages How many messages are in the snapshot.
+     * @param bytes The size of the snapshot file.
+     * @param millis How long writing or restoring the snapshot took.
+     */
+    public SnapshotResult(String file, long createdEpochMillis, long accounts, long messages, long bytes,
+            long millis) {
+        this.file = file;
+        this.createdEpochMillis = createdEpochMillis;
+        this.accounts = accounts;
+        this.messages = messages;
+        this.bytes = bytes;
+        this.millis = millis;
+    } // end constructor
+
+    public String getFile() {
+        return file;
+    }
+
+    public long getCreatedEpochMillis() {
+        return createdEpochMillis;
+    }
+
+    public long getAccounts() {
+        return accounts;
+    }
+
+    public long getMessages() {
+        return messages;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+} // end SnapshotResult Class
@@ -0,0 +1,306 @@
+package com.example.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.entity.Account;
+import com.example.entity.Message;
+import com.example.repository.AccountStore;
+import com.example.repository.MessageStore;
+
+/**
+ * Writes every account and message to a compact binary file (see SnapshotFile) and loads them back again, which is a
+ *      lot faster than replaying inserts one row at a time.
+ *
+ * Snapshots are kept in `app.snapshot.dir`. Writing one reads the AccountStore and the MessageStore in a single
+ *      repeatable read transaction, so the snapshot is consistent for the jpa store (the sharded store is read shard by
+ *      shard, messages whose account is not in the snapshot are left out so the snapshot can always be restored).
+ * Restoring checks the whole file first, then deletes every account and message and loads the snapshot with batched
+ *      inserts, and moves hibernate_sequence past the highest id. Like a bulk delete the rows go in with one short
+ *      transaction per `app.snapshot.chunk-size` rows, committing millions of rows in one transaction takes H2 almost
+ *      as long as inserting them. So a restore that fails part way (eg. the disk is full) leaves part of the snapshot
+ *      behind, and has to be run again.
+ * Setting `app.snapshot.restore-on-startup` to a file restores it every time the application starts, before anything
+ *      else gets to the data.
+ */
+@Service
+public class SnapshotService {
+    private static final Log log = LogFactory.getLog(SnapshotService.class);
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]{0,127}");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AccountStore accountStore;
+    private final MessageStore messageStore;
+    private final AccountStatsService accountStatsService;
+    private final MessageIdFilter messageIdFilter;
+    private final UsernameIndex usernameIndex;
+    private final EntityManagerFactory entityManagerFactory;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate writeTransaction;
+    private final Path directory;
+    private final String restoreOnStartup;
+    private final int chunkSize;
+
+    @Autowired
+    public SnapshotService(JdbcTemplate jdbcTemplate, AccountStore accountStore, MessageStore messageStore,
+            AccountStatsService accountStatsService, MessageIdFilter messageIdFilter, UsernameIndex usernameIndex,
+            EntityManagerFactory entityManagerFactory, PlatformTransactionManager transactionManager,
+            @Value("${app.snapshot.dir:./data/snapshots}") String directory,
+            @Value("${app.snapshot.restore-on-startup:}") String restoreOnStartup,
+            @Value("${app.snapshot.chunk-size:10000}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.accountStore = accountStore;
+        this.messageStore = messageStore;
+        this.accountStatsService = accountStatsService;
+        this.messageIdFilter = messageIdFilter;
+        this.usernameIndex = usernameIndex;
+        this.entityManagerFactory = entityManagerFactory;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.readTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.directory = Paths.get(directory);
+        this.restoreOnStartup = restoreOnStartup;
+        this.chunkSize = chunkSize;
+    } // end constructor
+
+    /**
+     * Writes a snapshot of every account and message.
+     *
+     * @param name The name of the file in `app.snapshot.dir`, an existing file with that name is replaced.
+     * @return What was written.
+     * @throws IllegalArgumentException If the name is not a plain file name.
+     */
+    public synchronized SnapshotResult write(String name) throws IOException {
+        Path file = resolve(name);
+        Files.createDirectories(directory);
+        long started = System.nanoTime();
+        long created = System.currentTimeMillis();
+
+        try (SnapshotFile.Writer writer = new SnapshotFile.Writer(file)) {
+            readTransaction.execute(status -> {
+                writeRows(writer);
+                return null;
+            });
+
+            long bytes = writer.finish(created);
+            SnapshotResult result = new SnapshotResult(name, created, writer.getAccounts(), writer.getMessages(),
+                    bytes, (System.nanoTime() - started) / 1_000_000);
+            log.info("Wrote snapshot " + file + " with " + result.getAccounts() + " accounts and "
+                    + result.getMessages() + " messages (" + bytes + " bytes) in " + result.getMillis() + " ms");
+            return result;
+        } // end try block
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        } // end catch block
+    } // end write()
+
+    /**
+     * Replaces every account and message with the ones in a snapshot.
+     *
+     * @param name The name of the file in `app.snapshot.dir`.
+     * @return What was restored.
+     * @throws IllegalArgumentException If the name is not a plain file name.
+     * @throws NoSuchFileException If there is no such snapshot.
+     * @throws IOException If the file could not be read or is not a valid snapshot, nothing has been changed then.
+     */
+    public SnapshotResult restore(String name) throws IOException {
+        return restore(resolve(name));
+    } // end restore()
+
+    /**
+     * Restores `app.snapshot.restore-on-startup` if it is set. This runs before the other listeners (apart from the
+     *      memory store copying `data.sql`, which the restore then replaces) so that the account stats and the message
+     *      shards start from the restored data.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE + 1)
+    public void restoreOnStartup() throws IOException {
+        if (!restoreOnStartup.isEmpty()) {
+            restore(Paths.get(restoreOnStartup));
+        } // end if statement
+    } // end restoreOnStartup()
+
+    private synchronized SnapshotResult restore(Path file) throws IOException {
+        long started = System.nanoTime();
+
+        try (SnapshotFile.Reader reader = new SnapshotFile.Reader(file)) { // the checksum is checked right away
+            writeTransaction.execute(status -> {
+                jdbcTemplate.update("delete from message"); // the sharded store can leave rows behind in this table
+                messageStore.deleteAll();
+                accountStore.deleteAllAccounts();
+                return null;
+            });
+
+            RowIterator<Account> accounts = new RowIterator<>(reader::nextAccount, Account::getAccountId);
+
+            while (accounts.hasNext()) {
+                Iterator<Account> chunk = accounts.nextChunk(chunkSize);
+                writeTransaction.execute(status -> accountStore.loadAllAccounts(chunk));
+            } // end while loop
+
+            RowIterator<Message> messages = new RowIterator<>(reader::nextMessage, Message::getMessageId);
+
+            while (messages.hasNext()) {
+                Iterator<Message> chunk = messages.nextChunk(chunkSize);
+                writeTransaction.execute(status -> messageStore.loadAll(chunk));
+            } // end while loop
+
+            long highestId = Math.max(accounts.highestId, messages.highestId);
+            jdbcTemplate.execute("alter sequence hibernate_sequence restart with " + (highestId + 1));
+
+            // the tables were changed behind Hibernate's back
+            entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
+            accountStatsService.rebuild();
+            messageIdFilter.rebuild(); // the new ids have to be in it, or lookups of them would be turned away
+            usernameIndex.rebuild();
+            SnapshotResult result = new SnapshotResult(file.getFileName().toString(), reader.getCreatedEpochMillis(),
+                    reader.getAccounts(), reader.getMessages(), Files.size(file),
+                    (System.nanoTime() - started) / 1_000_000);
+            log.info("Restored snapshot " + file + " with " + result.getAccounts() + " accounts and "
+                    + result.getMessages() + " messages in " + result.getMillis() + " ms");
+            return result;
+        } // end try block
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        } // end catch block
+        catch (RuntimeException e) {
+            log.warn("Restoring snapshot " + file + " failed part way, restore it again to get a complete copy", e);
+            throw e;
+        } // end catch block
+    } // end restore()
+
+    private void writeRows(SnapshotFile.Writer writer) {
+        Set<Integer> accountIds = new HashSet<>();
+        accountStore.forEachAccount(account -> {
+            write(() -> writer.writeAccount(account));
+            accountIds.add(account.getAccountId());
+        });
+
+        messageStore.forEachMessage(message -> {
+            if (message.getPostedBy() == null || accountIds.contains(message.getPostedBy())) {
+                write(() -> writer.writeMessage(message));
+            } // end if statement
+        });
+    } // end writeRows()
+
+    private Path resolve(String name) {
+        if (name == null || !NAME.matcher(name).matches()) { // keep every snapshot inside the directory
+            throw new IllegalArgumentException("A snapshot name can only have letters, digits, '.', '_' and '-'");
+        } // end if statement
+
+        return directory.resolve(name);
+    } // end resolve()
+
+    private static void write(IoAction action) {
+        try {
+            action.run();
+        } // end try block
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } // end catch block
+    } // end write()
+
+    private static <T> T read(IoSupplier<T> supplier) {
+        try {
+            return supplier.get();
+        } // end try block
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } // end catch block
+    } // end read()
+
+    private interface IoAction {
+        void run() throws IOException;
+    } // end IoAction interface
+
+    private interface IoSupplier<T> {
+        T get() throws IOException;
+    } // end IoSupplier interface
+
+    /**
+     * Reads the accounts or messages of a snapshot one at a time, hands them out in chunks and keeps track of the
+     *      highest id.
+     */
+    private static final class RowIterator<T> implements Iterator<T> {
+        private final IoSupplier<T> reader;
+        private final ToLongFunction<T> id;
+        private T next;
+        private long highestId;
+
+        private RowIterator(IoSupplier<T> reader, ToLongFunction<T> id) {
+            this.reader = reader;
+            this.id = id;
+            this.next = read(reader);
+        } // end constructor
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        } // end hasNext()
+
+        @Override
+        public T next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            } // end if statement
+
+            T current = next;
+            highestId = Math.max(highestId, id.applyAsLong(current));
+            next = read(reader);
+            return current;
+        } // end next()
+
+        /**
+         * @param size The most rows in the chunk.
+         * @return An iterator over the next `size` rows (or fewer at the end), sharing this iterator's position.
+         */
+        private Iterator<T> nextChunk(int size) {
+            return new Iterator<T>() {
+                private int left = size;
+
+                @Override
+                public boolean hasNext() {
+                    return left > 0 && RowIterator.this.hasNext();
+                } // end hasNext()
+
+                @Override
+                public T next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    } // end if statement
+
+                    left--;
+                    return RowIterator.this.next();
+                } // end next()
+            };
+        } // end nextChunk()
+    } // end RowIterator Class
+} // end SnapshotService Class
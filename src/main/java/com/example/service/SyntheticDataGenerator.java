@@ -0,0 +1,188 @@
+package com.example.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import com.example.entity.Account;
+import com.example.entity.Message;
+
+/**
+ * Makes up accounts and messages that look like real traffic, always the same ones for the same seed.
+ *
+ *  - Who posts follows a Zipf distribution (`exponent` 1.1 by default), so a few accounts post most of the messages
+ *      and most accounts post a handful. Which accounts are the busy ones is shuffled, they are not just the first ids.
+ *  - The length of a message is log-normal, most are around 40 characters with a long tail up to the 255 that the
+ *      column allows.
+ *  - The messages are spread over `days` days before `endEpoch`, busier in the evening than at night, and come out
+ *      in timePostedEpoch order.
+ *
+ * The messages are made in chunks of CHUNK_SIZE, and every chunk has its own random numbers that only depend on the
+ *      seed and the chunk number. So chunks can be made in any order and on any number of threads and the result is
+ *      still the same.
+ */
+public final class SyntheticDataGenerator {
+    public static final int CHUNK_SIZE = 10_000;
+    private static final double MEDIAN_LENGTH = 40;
+    private static final double LENGTH_SIGMA = 0.8;
+    private static final int MAX_LENGTH = 255;
+    private static final long DAY = 86400;
+    private static final String[] WORDS = {"the", "a", "and", "to", "of", "in", "is", "it", "you", "that", "was",
+        "for", "on", "are", "with", "as", "I", "this", "be", "at", "have", "from", "or", "had", "by", "hot", "word",
+        "but", "what", "some", "we", "can", "out", "other", "were", "all", "there", "when", "up", "use", "your", "how",
+        "said", "an", "each", "she", "which", "do", "their", "time", "if", "will", "way", "about", "many", "then",
+        "them", "write", "would", "like", "so", "these", "her", "long", "make", "thing", "see", "him", "two", "has",
+        "look", "more", "day", "could", "go", "come", "did", "number", "sound", "no", "most", "people", "my", "over",
+        "know", "water", "than", "call", "first", "who", "may", "down", "side", "been", "now", "find", "coffee",
+        "weekend", "game", "music", "today", "tomorrow", "finally", "great", "news", "photo", "lol", "thanks",
+        "friends", "happy", "new", "love", "work", "home", "movie", "food", "city", "rain", "sun", "!", "?", "#java"};
+
+    private final int accounts;
+    private final long messages;
+    private final long seed;
+    private final long endEpoch;
+    private final long spanSeconds;
+    private final String usernamePrefix;
+    private final double[] cumulative; // the Zipf distribution, cumulative[rank] = P(poster rank <= rank)
+    private final int[] accountOfRank;
+
+    /**
+     * @param accounts How many accounts to make.
+     * @param messages How many messages to make.
+     * @param seed Makes the data, the same seed always gives the same data.
+     * @param exponent The Zipf exponent, higher puts more of the messages on the busiest accounts.
+     * @param endEpoch The timePostedEpoch (in seconds) the messages end at.
+     * @param days How many days before `endEpoch` the messages start.
+     * @param usernamePrefix Goes in front of every username, so they do not clash with real ones.
+     */
+    public SyntheticDataGenerator(int accounts, long messages, long seed, double exponent, long endEpoch, int days,
+            String usernamePrefix) {
+        if (accounts < 1 && messages > 0) {
+            throw new IllegalArgumentException("Messages need at least one account to post them");
+        } // end if statement
+
+        this.accounts = accounts;
+        this.messages = messages;
+        this.seed = seed;
+        this.endEpoch = endEpoch;
+        this.spanSeconds = Math.max(1, days * DAY);
+        this.usernamePrefix = usernamePrefix;
+        this.cumulative = new double[accounts];
+        double total = 0;
+
+        for (int rank = 0; rank < accounts; rank++) {
+            total += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = total;
+        } // end for loop
+
+        for (int rank = 0; rank < accounts; rank++) {
+            cumulative[rank] /= total;
+        } // end for loop
+
+        this.accountOfRank = new int[accounts];
+        SplittableRandom shuffle = new SplittableRandom(seed);
+
+        for (int i = 0; i < accounts; i++) { // Fisher-Yates, so the busiest accounts are spread over the ids
+            int j = shuffle.nextInt(i + 1);
+            accountOfRank[i] = accountOfRank[j];
+            accountOfRank[j] = i;
+        } // end for loop
+    } // end constructor
+
+    public int getAccounts() {
+        return accounts;
+    }
+
+    public long getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return How many chunks the messages are made in.
+     */
+    public int getChunks() {
+        return (int) ((messages + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    } // end getChunks()
+
+    /**
+     * @param index Which account, from 0 to `getAccounts() - 1`.
+     * @return The account, without an id.
+     */
+    public Account account(int index) {
+        return new Account(usernamePrefix + "-" + seed + "-" + index, "password" + index);
+    } // end account()
+
+    /**
+     * Makes one chunk of messages. The postedBy of each message is the index of an account (as given to
+     *      `account()`) and the message has no id, the caller swaps in the real ids.
+     *
+     * @param chunk Which chunk, from 0 to `getChunks() - 1`.
+     * @return The messages of the chunk, in timePostedEpoch order.
+     */
+    public List<Message> messageChunk(int chunk) {
+        long from = (long) chunk * CHUNK_SIZE;
+        int size = (int) Math.min(CHUNK_SIZE, messages - from);
+        Random random = new Random(seed * 0x9E3779B97F4A7C15L + chunk); // only depends on the seed and the chunk
+        long[] times = times(random, from, size);
+        List<Message> chunkMessages = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            chunkMessages.add(new Message(poster(random), text(random), times[i]));
+        } // end for loop
+
+        return chunkMessages;
+    } // end messageChunk()
+
+    /**
+     * @return An account index picked from the Zipf distribution.
+     */
+    private int poster(Random random) {
+        int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+        rank = rank < 0 ? -rank - 1 : rank;
+        return accountOfRank[Math.min(rank, accounts - 1)];
+    } // end poster()
+
+    private String text(Random random) {
+        double length = Math.exp(Math.log(MEDIAN_LENGTH) + LENGTH_SIGMA * random.nextGaussian());
+        int target = (int) Math.max(1, Math.min(MAX_LENGTH, Math.round(length)));
+        StringBuilder text = new StringBuilder(target + 16);
+
+        while (text.length() < target) {
+            if (text.length() > 0) {
+                text.append(' ');
+            } // end if statement
+
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        } // end while loop
+
+        text.setLength(target);
+        return text.toString();
+    } // end text()
+
+    /**
+     * Picks the times for a chunk. The chunk covers its share of the whole time span, and inside it times are picked
+     *      at random with more of them in the evening (a day is weighted 1 + 0.8 * cos, peaking at 20:00) and sorted.
+     */
+    private long[] times(Random random, long from, int size) {
+        long start = endEpoch - spanSeconds;
+        long windowStart = start + (long) ((double) from / messages * spanSeconds);
+        long windowEnd = start + (long) ((double) (from + size) / messages * spanSeconds);
+        long window = Math.max(1, windowEnd - windowStart);
+        long[] times = new long[size];
+
+        for (int i = 0; i < size; i++) {
+            long time;
+
+            do { // keep a time with the chance of its hour being busy
+                time = windowStart + (long) (random.nextDouble() * window);
+            } while (random.nextDouble() * 1.8 > 1 + 0.8 * Math.cos(2 * Math.PI * ((time % DAY) - 72000) / DAY));
+
+            times[i] = time;
+        } // end for loop
+
+        Arrays.sort(times);
+        return times;
+    } // end times()
+} // end SyntheticDataGenerator Class
@@ -0,0 +1,40 @@
+package com.example.service;
+
+/**
+ * What SyntheticDataService loaded.
+ */
+public class SyntheticDataResult {
+    private final long seed;
+    private final int accounts;
+    private final long messages;
+    private final long millis;
+
+    /**
+     * @param seed The seed the data was made from.
+     * @param accounts How many accounts were added.
+     * @param messages How many messages were added.
+     * @param millis How long making and loading them took.
+     */
+    public SyntheticDataResult(long seed, int accounts, long messages, long millis) {
+        this.seed = seed;
+        this.accounts = accounts;
+        this.messages = messages;
+        this.millis = millis;
+    } // end constructor
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getAccounts() {
+        return accounts;
+    }
+
+    public long getMessages() {
+        return messages;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+} // end SyntheticDataResult Class
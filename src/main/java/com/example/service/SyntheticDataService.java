@@ -0,0 +1,270 @@
+package com.example.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.entity.Account;
+import com.example.entity.Message;
+import com.example.repository.AccountStore;
+import com.example.repository.MessageStore;
+
+/**
+ * Loads made up accounts and messages (see SyntheticDataGenerator) so that benchmarks and load tests can run against
+ *      something the size and shape of production instead of the handful of rows in `data.sql`.
+ *
+ * Setting `app.synthetic.accounts` and `app.synthetic.messages` loads that many when the application starts (after a
+ *      snapshot restore, if there is one), on top of whatever is already there. Harnesses can also call `generate()`.
+ * `app.synthetic.mode` picks how the rows get in:
+ *  - `jdbc` (the default) gives them a block of ids from hibernate_sequence and bulk loads them with
+ *      AccountStore.loadAllAccounts() and MessageStore.loadAll(), which are batched inserts for the database stores.
+ *      The ids only depend on where the sequence was.
+ *  - `repository` saves every account and message through AccountStore.saveAccount() and MessageStore.save(), the same way
+ *      requests do, which is slower but also exercises the id generator and the entity mappings. The rows are the
+ *      same for a seed but which message gets which id depends on the order the threads got to the sequence.
+ * Either way the messages are loaded in chunks of SyntheticDataGenerator.CHUNK_SIZE, one transaction each, on
+ *      `app.synthetic.threads` threads.
+ */
+@Service
+public class SyntheticDataService {
+    private static final Log log = LogFactory.getLog(SyntheticDataService.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AccountStore accountStore;
+    private final MessageStore messageStore;
+    private final AccountStatsService accountStatsService;
+    private final MessageIdFilter messageIdFilter;
+    private final UsernameIndex usernameIndex;
+    private final EntityManagerFactory entityManagerFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final int startupAccounts;
+    private final long startupMessages;
+    private final long seed;
+    private final double exponent;
+    private final long endEpoch;
+    private final int days;
+    private final int threads;
+    private final String mode;
+    private final String usernamePrefix;
+
+    @Autowired
+    public SyntheticDataService(JdbcTemplate jdbcTemplate, AccountStore accountStore,
+            MessageStore messageStore, AccountStatsService accountStatsService, MessageIdFilter messageIdFilter,
+            UsernameIndex usernameIndex, EntityManagerFactory entityManagerFactory,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.synthetic.accounts:0}") int startupAccounts,
+            @Value("${app.synthetic.messages:0}") long startupMessages,
+            @Value("${app.synthetic.seed:42}") long seed,
+            @Value("${app.synthetic.zipf-exponent:1.1}") double exponent,
+            @Value("${app.synthetic.end-epoch:1669947792}") long endEpoch,
+            @Value("${app.synthetic.days:365}") int days,
+            @Value("${app.synthetic.threads:4}") int threads,
+            @Value("${app.synthetic.mode:jdbc}") String mode,
+            @Value("${app.synthetic.username-prefix:synthetic}") String usernamePrefix) {
+        if (!"jdbc".equals(mode) && !"repository".equals(mode)) {
+            throw new IllegalArgumentException("app.synthetic.mode has to be jdbc or repository but was " + mode);
+        } // end if statement
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.accountStore = accountStore;
+        this.messageStore = messageStore;
+        this.accountStatsService = accountStatsService;
+        this.messageIdFilter = messageIdFilter;
+        this.usernameIndex = usernameIndex;
+        this.entityManagerFactory = entityManagerFactory;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.startupAccounts = startupAccounts;
+        this.startupMessages = startupMessages;
+        this.seed = seed;
+        this.exponent = exponent;
+        this.endEpoch = endEpoch;
+        this.days = days;
+        this.threads = Math.max(1, threads);
+        this.mode = mode;
+        this.usernamePrefix = usernamePrefix;
+    } // end constructor
+
+    /**
+     * Loads `app.synthetic.accounts` and `app.synthetic.messages` if they are set, right after a snapshot is restored.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE + 2)
+    public void generateOnStartup() {
+        if (startupAccounts > 0 || startupMessages > 0) {
+            generate(startupAccounts, startupMessages, seed);
+        } // end if statement
+    } // end generateOnStartup()
+
+    /**
+     * Makes up and loads accounts and messages with the `app.synthetic.*` settings.
+     *
+     * @param accounts How many accounts to add.
+     * @param messages How many messages to add, they are all posted by the new accounts.
+     * @param seed The same seed always makes the same data. The usernames have the seed in them, so loading the same
+     *      seed twice fails on the unique usernames.
+     * @return What was loaded.
+     */
+    public synchronized SyntheticDataResult generate(int accounts, long messages, long seed) {
+        long started = System.nanoTime();
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(accounts, messages, seed, exponent, endEpoch,
+                days, usernamePrefix);
+        boolean jdbc = "jdbc".equals(mode);
+        long firstId = reserveIds(jdbc ? accounts + messages : 0); // the repositories still need the sequence moved
+        int[] accountIds = jdbc ? insertAccounts(generator, firstId) : saveAccounts(generator);
+        loadMessages(generator, accountIds, jdbc ? firstId + accounts : -1);
+
+        // the jdbc inserts went behind Hibernate's back, and the stats were not told about any of the messages
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
+        accountStatsService.rebuild();
+        messageIdFilter.rebuild(); // the new ids have to be in it, or lookups of them would be turned away
+        usernameIndex.rebuild();
+        SyntheticDataResult result = new SyntheticDataResult(seed, accounts, messages,
+                (System.nanoTime() - started) / 1_000_000);
+        log.info("Loaded " + accounts + " synthetic accounts and " + messages + " messages (seed " + seed + ", "
+                + mode + ") in " + result.getMillis() + " ms");
+        return result;
+    } // end generate()
+
+    /**
+     * Takes a block of ids from hibernate_sequence by moving it past the block. The block also starts after every id
+     *      in the account and message tables, since `data.sql` inserts its rows with ids that did not come from the
+     *      sequence and the sequence would run into them (at 9996) otherwise.
+     *
+     * @return The first id of the block.
+     */
+    private long reserveIds(long count) {
+        return transactionTemplate.execute(status -> {
+            long next = jdbcTemplate.queryForObject("select next value for hibernate_sequence", Long.class);
+            long highest = Math.max(
+                    jdbcTemplate.queryForObject("select coalesce(max(accountId), 0) from account", Long.class),
+                    jdbcTemplate.queryForObject("select coalesce(max(messageId), 0) from message", Long.class));
+            long first = Math.max(next, highest + 1);
+            Math.toIntExact(first + count); // the ids are still int columns
+            jdbcTemplate.execute("alter sequence hibernate_sequence restart with " + (first + count));
+            return first;
+        });
+    } // end reserveIds()
+
+    private int[] insertAccounts(SyntheticDataGenerator generator, long firstId) {
+        int[] ids = new int[generator.getAccounts()];
+
+        for (int from = 0; from < ids.length; from += SyntheticDataGenerator.CHUNK_SIZE) {
+            List<Account> chunk = new ArrayList<>();
+
+            for (int i = from; i < Math.min(ids.length, from + SyntheticDataGenerator.CHUNK_SIZE); i++) {
+                Account account = generator.account(i);
+                ids[i] = (int) (firstId + i);
+                account.setAccountId(ids[i]);
+                chunk.add(account);
+            } // end for loop
+
+            transactionTemplate.execute(status -> accountStore.loadAllAccounts(chunk.iterator()));
+        } // end for loop
+
+        return ids;
+    } // end insertAccounts()
+
+    private int[] saveAccounts(SyntheticDataGenerator generator) {
+        int[] ids = new int[generator.getAccounts()];
+
+        for (int from = 0; from < ids.length; from += SyntheticDataGenerator.CHUNK_SIZE) {
+            List<Account> chunk = new ArrayList<>();
+
+            for (int i = from; i < Math.min(ids.length, from + SyntheticDataGenerator.CHUNK_SIZE); i++) {
+                chunk.add(generator.account(i));
+            } // end for loop
+
+            transactionTemplate.execute(status -> {
+                chunk.forEach(accountStore::saveAccount);
+                return null;
+            });
+
+            for (int i = 0; i < chunk.size(); i++) {
+                ids[from + i] = chunk.get(i).getAccountId();
+            } // end for loop
+        } // end for loop
+
+        return ids;
+    } // end saveAccounts()
+
+    /**
+     * Makes and loads the message chunks on `app.synthetic.threads` threads.
+     *
+     * @param firstMessageId The id of the first message, or -1 to let the MessageStore give them ids.
+     */
+    private void loadMessages(SyntheticDataGenerator generator, int[] accountIds, long firstMessageId) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "synthetic-data");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<Future<?>> pending = new ArrayList<>();
+
+            for (int chunk = 0; chunk < generator.getChunks(); chunk++) {
+                int current = chunk;
+                pending.add(executor.submit(() -> loadChunk(generator, current, accountIds, firstMessageId)));
+            } // end for loop
+
+            for (Future<?> future : pending) {
+                future.get();
+            } // end for loop
+        } // end try block
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading synthetic messages", e);
+        } // end catch block
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } // end if statement
+            throw new IllegalStateException("Synthetic messages could not be loaded", e.getCause());
+        } // end catch block
+        finally {
+            executor.shutdownNow();
+        } // end finally block
+    } // end loadMessages()
+
+    private void loadChunk(SyntheticDataGenerator generator, int chunk, int[] accountIds, long firstMessageId) {
+        List<Message> messages = generator.messageChunk(chunk);
+        long firstInChunk = firstMessageId + (long) chunk * SyntheticDataGenerator.CHUNK_SIZE;
+
+        for (int i = 0; i < messages.size(); i++) { // swap the account index for the real id
+            Message message = messages.get(i);
+            message.setPostedBy(accountIds[message.getPostedBy()]);
+
+            if (firstMessageId >= 0) {
+                message.setMessageId((int) (firstInChunk + i));
+            } // end if statement
+        } // end for loop
+
+        transactionTemplate.execute(status -> {
+            if (firstMessageId >= 0) {
+                return messageStore.loadAll(messages.iterator());
+            } // end if statement
+
+            messages.forEach(messageStore::save);
+            return (long) messages.size();
+        });
+    } // end loadChunk()
+} // end SyntheticDataService Class
@@ -0,0 +1,248 @@
+package com.example.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.example.entity.Account;
+import com.example.repository.AccountStore;
+
+/**
+ * Every username in memory, sorted, so the accounts whose username starts with a prefix can be found without a
+ *      `like 'x%'` query, and `register()` can tell a username is taken without a query at all.
+ *
+ * Most usernames sit in two plain arrays (the usernames sorted and their account ids) that are never changed once
+ *      built, so any number of threads can binary search them without a lock. Usernames registered since are kept in
+ *      a ConcurrentSkipListMap next to them, and a search walks both in order. Once
+ *      `app.accounts.username-index.merge-threshold` usernames have piled up in the map they are merged into a new
+ *      pair of arrays, which is swapped in all at once.
+ * The arrays are built from the account table when the application starts, and again by anything that changes the
+ *      table without going through AccountService (a snapshot restore, synthetic data). Until the first build is done
+ *      the index is not ready, searches find nothing and `register()` looks the username up in the table like before.
+ */
+@Service
+public class UsernameIndex {
+    private final AccountStore accountStore;
+    private final int mergeThreshold;
+    private final ConcurrentSkipListMap<String, Registered> recent = new ConcurrentSkipListMap<>();
+    private final AtomicInteger recentCount = new AtomicInteger();
+    private final AtomicLong registrations = new AtomicLong();
+    private volatile Sorted sorted; // null until the first rebuild is done
+
+    @Autowired
+    public UsernameIndex(AccountStore accountStore,
+            @Value("${app.accounts.username-index.merge-threshold:4096}") int mergeThreshold) {
+        this.accountStore = accountStore;
+        this.mergeThreshold = mergeThreshold;
+    } // end constructor
+
+    /**
+     * @return True once the index has every username in the account table.
+     */
+    public boolean isReady() {
+        return sorted != null;
+    } // end isReady()
+
+    /**
+     * @return True if an account has this username, only to be trusted once the index `isReady()`.
+     */
+    public boolean contains(String username) {
+        Sorted current = sorted;
+        return (current != null && Arrays.binarySearch(current.usernames, username) >= 0)
+                || recent.containsKey(username);
+    } // end contains()
+
+    /**
+     * Finds the accounts whose username starts with `prefix`, in username order.
+     *
+     * @param limit The most accounts to return.
+     * @return The accounts that were found, an empty List if the index is not ready yet.
+     */
+    public List<UsernameMatch> search(String prefix, int limit) {
+        Sorted current = sorted;
+
+        if (current == null) {
+            return Collections.emptyList();
+        } // end if statement
+
+        List<UsernameMatch> matches = new ArrayList<>(Math.min(limit, 16));
+        int index = Arrays.binarySearch(current.usernames, prefix);
+        index = index < 0 ? -index - 1 : index; // the first username that is not before the prefix
+        Iterator<Map.Entry<String, Registered>> more = recent.tailMap(prefix, true).entrySet().iterator();
+        Map.Entry<String, Registered> next = nextMatch(more, prefix);
+
+        while (matches.size() < limit) {
+            String fromSorted = index < current.usernames.length && current.usernames[index].startsWith(prefix)
+                    ? current.usernames[index] : null;
+
+            if (fromSorted == null && next == null) {
+                break; // nothing else starts with the prefix
+            } // end if statement
+
+            int order = fromSorted == null ? 1 : next == null ? -1 : fromSorted.compareTo(next.getKey());
+
+            if (order <= 0) {
+                matches.add(new UsernameMatch(current.accountIds[index], fromSorted));
+                index++;
+
+                if (order == 0) { // in both for a moment while it is being merged, only list it once
+                    next = nextMatch(more, prefix);
+                } // end if statement
+            } // end if statement
+            else {
+                matches.add(new UsernameMatch(next.getValue().accountId, next.getKey()));
+                next = nextMatch(more, prefix);
+            } // end else statement
+        } // end while loop
+
+        return matches;
+    } // end search()
+
+    /**
+     * Adds the username of an account that was just registered.
+     */
+    public void added(Account account) {
+        if (account.getAccountId() == null || account.getUsername() == null) {
+            return;
+        } // end if statement
+
+        Registered registered = new Registered(account.getAccountId(), registrations.incrementAndGet());
+
+        if (recent.put(account.getUsername(), registered) == null
+                && recentCount.incrementAndGet() >= mergeThreshold) {
+            merge();
+        } // end if statement
+    } // end added()
+
+    /**
+     * Builds the sorted arrays from the account table and swaps them in.
+     *
+     * Usernames registered while the table is being read stay in the map if the scan missed them. The ones registered
+     *      before it started are dropped from the map either way, since the scan would have seen them if they were
+     *      still in the table.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        long started = registrations.get();
+        List<Account> accounts = new ArrayList<>();
+        accountStore.forEachAccount(accounts::add);
+        accounts.sort((a, b) -> a.getUsername().compareTo(b.getUsername()));
+
+        String[] usernames = new String[accounts.size()];
+        int[] accountIds = new int[accounts.size()];
+
+        for (int i = 0; i < usernames.length; i++) {
+            usernames[i] = accounts.get(i).getUsername();
+            accountIds[i] = accounts.get(i).getAccountId();
+        } // end for loop
+
+        Sorted rebuilt = new Sorted(usernames, accountIds);
+        sorted = rebuilt;
+
+        for (Map.Entry<String, Registered> entry : recent.entrySet()) {
+            if (entry.getValue().number <= started || Arrays.binarySearch(usernames, entry.getKey()) >= 0) {
+                forget(entry);
+            } // end if statement
+        } // end for loop
+    } // end rebuild()
+
+    /**
+     * Merges the usernames registered since the last merge into a new pair of sorted arrays.
+     */
+    private synchronized void merge() {
+        Sorted current = sorted;
+
+        if (current == null || recentCount.get() < mergeThreshold) {
+            return; // not built yet, or another thread merged them already
+        } // end if statement
+
+        List<Map.Entry<String, Registered>> merging = new ArrayList<>(recent.entrySet());
+        int size = current.usernames.length + merging.size();
+        String[] usernames = new String[size];
+        int[] accountIds = new int[size];
+        int from = 0;
+        int to = 0;
+
+        for (Map.Entry<String, Registered> entry : merging) { // both are sorted, so merge them like a merge sort
+            while (from < current.usernames.length && current.usernames[from].compareTo(entry.getKey()) < 0) {
+                usernames[to] = current.usernames[from];
+                accountIds[to++] = current.accountIds[from++];
+            } // end while loop
+
+            if (from < current.usernames.length && current.usernames[from].equals(entry.getKey())) {
+                from++; // registered again after being merged, the newer account wins
+            } // end if statement
+
+            usernames[to] = entry.getKey();
+            accountIds[to++] = entry.getValue().accountId;
+        } // end for loop
+
+        while (from < current.usernames.length) {
+            usernames[to] = current.usernames[from];
+            accountIds[to++] = current.accountIds[from++];
+        } // end while loop
+
+        sorted = new Sorted(Arrays.copyOf(usernames, to), Arrays.copyOf(accountIds, to));
+
+        for (Map.Entry<String, Registered> entry : merging) {
+            forget(entry);
+        } // end for loop
+    } // end merge()
+
+    /**
+     * Drops an entry from the map, unless the username was registered again since.
+     */
+    private void forget(Map.Entry<String, Registered> entry) {
+        if (recent.remove(entry.getKey(), entry.getValue())) {
+            recentCount.decrementAndGet();
+        } // end if statement
+    } // end forget()
+
+    private static Map.Entry<String, Registered> nextMatch(Iterator<Map.Entry<String, Registered>> entries,
+            String prefix) {
+        if (!entries.hasNext()) {
+            return null;
+        } // end if statement
+
+        Map.Entry<String, Registered> entry = entries.next();
+        return entry.getKey().startsWith(prefix) ? entry : null;
+    } // end nextMatch()
+
+    /**
+     * Every username sorted, and the id of the account with that username at the same index.
+     */
+    private static final class Sorted {
+        private final String[] usernames;
+        private final int[] accountIds;
+
+        private Sorted(String[] usernames, int[] accountIds) {
+            this.usernames = usernames;
+            this.accountIds = accountIds;
+        } // end constructor
+    } // end Sorted Class
+
+    /**
+     * The account id of a username in the map, and the number of the registration that put it there.
+     */
+    private static final class Registered {
+        private final int accountId;
+        private final long number;
+
+        private Registered(int accountId, long number) {
+            this.accountId = accountId;
+            this.number = number;
+        } // end constructor
+    } // end Registered Class
+} // end UsernameIndex Class
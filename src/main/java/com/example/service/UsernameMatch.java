@@ -0,0 +1,22 @@
+package com.example.service;
+
+/**
+ * An account whose username starts with the prefix that was searched for, as returned by GET '/accounts/search'.
+ */
+public class UsernameMatch {
+    private final Integer accountId;
+    private final String username;
+
+    public UsernameMatch(Integer accountId, String username) {
+        this.accountId = accountId;
+        this.username = username;
+    } // end constructor
+
+    public Integer getAccountId() {
+        return accountId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+} // end UsernameMatch Class
@@ -12,6 +12,10 @@ create table message (
     timePostedEpoch bigint,
     foreign key (postedBy) references account(accountId)
 );
+create index message_timePostedEpoch on message (timePostedEpoch);
+create index message_postedBy_timePostedEpoch on message (postedBy, timePostedEpoch);
+-- Hibernate normally creates this for the generated ids, but not when `spring.jpa.hibernate.ddl-auto=none`
+create sequence if not exists hibernate_sequence start with 1 increment by 1;
 
 -- Starting test values with ids of 9999 to avoid test issues
 insert into account values (9999, 'testuser1', 'password');
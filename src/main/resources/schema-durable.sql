@@ -0,0 +1,16 @@
+-- Schema for the durable profile, every statement is safe to run against a database that already exists.
+create table if not exists account (
+    accountId int primary key auto_increment,
+    username varchar(255) not null unique,
+    password varchar(255)
+);
+create table if not exists message (
+    messageId int primary key auto_increment,
+    postedBy int,
+    messageText varchar(255),
+    timePostedEpoch bigint,
+    foreign key (postedBy) references account(accountId)
+);
+create index if not exists message_timePostedEpoch on message (timePostedEpoch);
+create index if not exists message_postedBy_timePostedEpoch on message (postedBy, timePostedEpoch);
+create sequence if not exists hibernate_sequence start with 1 increment by 1;
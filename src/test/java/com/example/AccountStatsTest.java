@@ -0,0 +1,164 @@
+package com.example;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.example.repository.MessageStore;
+import com.example.service.AccountStats;
+import com.example.service.AccountStatsService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class AccountStatsTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    private JsonNode getStats(int accountId) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/" + accountId + "/stats"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+        return objectMapper.readTree(response.body());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/9999/stats 
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the one seeded message and its time
+     */
+    @Test
+    public void getStatsOfSeededAccount() throws IOException, InterruptedException {
+        JsonNode stats = getStats(9999);
+        Assertions.assertEquals(9999, stats.get("accountId").asInt());
+        Assertions.assertEquals(1, stats.get("messageCount").asLong());
+        Assertions.assertEquals(1669947792L, stats.get("lastPostedEpoch").asLong());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/9998/stats (account without any messages)
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: a count of 0 and no last post time
+     */
+    @Test
+    public void getStatsOfAccountWithoutMessages() throws IOException, InterruptedException {
+        JsonNode stats = getStats(9998);
+        Assertions.assertEquals(0, stats.get("messageCount").asLong());
+        Assertions.assertTrue(stats.get("lastPostedEpoch").isNull());
+    }
+
+    /**
+     * Post a newer message for account 9999 and then delete it again.
+     * 
+     * Expected Response:
+     *  The stats go up to 2 messages with the new time, then back to 1 message with the seeded time.
+     */
+    @Test
+    public void statsFollowCreateAndDelete() throws IOException, InterruptedException {
+        String json = "{\"postedBy\":9999,\"messageText\": \"newer message\",\"timePostedEpoch\": 1669950000}";
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Message added = objectMapper.readValue(response.body(), Message.class);
+
+        JsonNode stats = getStats(9999);
+        Assertions.assertEquals(2, stats.get("messageCount").asLong());
+        Assertions.assertEquals(1669950000L, stats.get("lastPostedEpoch").asLong());
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + added.getMessageId()))
+                .DELETE()
+                .build();
+        webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString());
+
+        stats = getStats(9999);
+        Assertions.assertEquals(1, stats.get("messageCount").asLong());
+        Assertions.assertEquals(1669947792L, stats.get("lastPostedEpoch").asLong());
+    }
+
+    /**
+     * Adding two messages to account 9999 and deleting the message of account 9997 while a rebuild is reading the
+     *      message table: the first message and the delete change the table before the read but are counted after it,
+     *      the second message is added and counted after the read
+     *
+     * Expected Response:
+     *  The stats match the table afterwards, nothing is counted twice or left out
+     */
+    @Test
+    public void changesDuringARebuildAreCountedOnce() {
+        MessageStore store = app.getBean(MessageStore.class);
+        AccountStatsService[] stats = new AccountStatsService[1];
+        boolean[] interleave = new boolean[1];
+        MessageStore reading = (MessageStore) Proxy.newProxyInstance(MessageStore.class.getClassLoader(),
+                new Class<?>[] {MessageStore.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("countByPostedBy") || !interleave[0]) {
+                        return method.invoke(store, args);
+                    }
+                    interleave[0] = false;
+                    Message seen = store.save(new Message(9999, "seen by the rebuild", 1669950000L));
+                    Message deleted = store.findById(9997).get();
+                    store.deleteById(9997);
+                    Object result = method.invoke(store, args);
+                    stats[0].messageAdded(seen);
+                    stats[0].messageDeleted(deleted);
+                    stats[0].messageAdded(store.save(new Message(9999, "missed by the rebuild", 1669950001L)));
+                    return result;
+                });
+        stats[0] = new AccountStatsService(reading);
+        stats[0].rebuild();
+        interleave[0] = true;
+        stats[0].rebuild();
+
+        AccountStats posted = stats[0].getStats(9999);
+        Assertions.assertEquals(3, store.findByPostedBy(9999).size());
+        Assertions.assertEquals(3, posted.getMessageCount());
+        Assertions.assertEquals(1669950001L, posted.getLastPostedEpoch());
+        AccountStats emptied = stats[0].getStats(9997);
+        Assertions.assertEquals(0, emptied.getMessageCount());
+        Assertions.assertNull(emptied.getLastPostedEpoch());
+
+        stats[0].rebuild(); // nothing changes while this one reads
+        Assertions.assertEquals(3, stats[0].getStats(9999).getMessageCount());
+        Assertions.assertEquals(0, stats[0].getStats(9997).getMessageCount());
+    }
+}
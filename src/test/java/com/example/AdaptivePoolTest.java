@@ -0,0 +1,128 @@
+package com.example;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.config.AdaptiveConcurrencyDataSource;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class AdaptivePoolTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with the adaptive connection limit turned on, and create 
+     * a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--app.pool.adaptive.enabled=true", "--app.pool.adaptive.interval-ms=200",
+                "--app.pool.adaptive.min-samples=1"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    private JsonNode getMetric(String name) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/actuator/metrics/" + name))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+        return objectMapper.readTree(response.body()).get("measurements").get(0).get("value");
+    }
+
+    /**
+     * Sending 200 GET localhost:8080/messages requests 20 at a time, and then reading the app.pool metrics
+     *
+     * Expected Response:
+     *  Status Code: 200 for every request
+     *  Response Body: a connection limit between the bounds and at least one decision made by the controller
+     */
+    @Test
+    public void limitIsAdjustedWithinBounds() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+
+        for (int round = 0; round < 10; round++) {
+            List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                responses.add(webClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+            }
+            for (CompletableFuture<HttpResponse<String>> response : responses) {
+                Assertions.assertEquals(200, response.get().statusCode(), "Expected Status Code 200 - Actual Code was: " + response.get().statusCode());
+            }
+        }
+        Thread.sleep(500);
+
+        double limit = getMetric("app.pool.limit").asDouble();
+        Assertions.assertTrue(limit >= 2 && limit <= 20, "Expected a limit between 2 and 20 - Actual limit was: " + limit);
+        Assertions.assertTrue(getMetric("app.pool.adjustments").asDouble() > 0, "Expected the controller to have run");
+        Assertions.assertEquals(0, getMetric("app.pool.in-flight").asDouble());
+    }
+
+    /**
+     * Borrowing from a pool that fails the first three times, with a limit of one connection
+     *
+     * Expected Result:
+     *  Every failure reaches the caller as it was, the failed borrows give their turn back, and the fourth borrow gets
+     *  a connection straight away
+     */
+    @Test
+    public void failedBorrowsGiveTheirTurnBack() throws SQLException {
+        AtomicInteger calls = new AtomicInteger();
+        Connection pooled = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, (proxy, method, args) -> null);
+        DataSource pool = (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+                new Class<?>[] {DataSource.class}, (proxy, method, args) -> {
+                    if (calls.incrementAndGet() <= 3) {
+                        throw new SQLTransientConnectionException("Connection is not available, request timed out");
+                    }
+                    return pooled;
+                });
+        AdaptiveConcurrencyDataSource dataSource = new AdaptiveConcurrencyDataSource(pool, 1, 100);
+
+        for (int i = 0; i < 3; i++) {
+            SQLException e = Assertions.assertThrows(SQLException.class, dataSource::getConnection);
+            Assertions.assertEquals("Connection is not available, request timed out", e.getMessage());
+        }
+
+        Connection connection = dataSource.getConnection();
+        Assertions.assertEquals(1, dataSource.getInFlight());
+        connection.close();
+        Assertions.assertEquals(0, dataSource.getInFlight());
+        dataSource.getConnection().close();
+        Assertions.assertEquals(5, calls.get());
+    }
+}
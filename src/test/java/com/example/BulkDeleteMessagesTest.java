@@ -0,0 +1,166 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class BulkDeleteMessagesTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with one message a chunk and half a second between
+     * chunks (so a job is still running while the test cancels and resumes it), and create a new webClient and
+     * ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--app.bulk-delete.chunk-size=1", "--app.bulk-delete.pause-ms=500"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Polls the bulk delete job until it is no longer running.
+     */
+    private JsonNode waitForJob(JsonNode job) throws IOException, InterruptedException {
+        for (int i = 0; i < 50 && job.get("status").asText().equals("RUNNING"); i++) {
+            Thread.sleep(100);
+            HttpResponse<String> response = send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/bulk-deletes/" + job.get("jobId").asLong())));
+            job = objectMapper.readTree(response.body());
+        }
+        return job;
+    }
+
+    private HttpResponse<String> post(String path) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.noBody()));
+    }
+
+    private List<Message> getMessages(String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)));
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    /**
+     * Sending an http request to DELETE localhost:8080/accounts/9999/messages
+     * 
+     * Expected Response:
+     *  Status Code: 202
+     *  Response Body: a job that completes after deleting the one message posted by account 9999
+     */
+    @Test
+    public void bulkDeleteByAccount() throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/9999/messages"))
+                .DELETE());
+        int status = response.statusCode();
+        Assertions.assertEquals(202, status, "Expected Status Code 202 - Actual Code was: " + status);
+
+        JsonNode job = waitForJob(objectMapper.readTree(response.body()));
+        Assertions.assertEquals("COMPLETED", job.get("status").asText());
+        Assertions.assertEquals(1, job.get("deleted").asInt());
+        Assertions.assertTrue(getMessages("/accounts/9999/messages").isEmpty());
+        Assertions.assertEquals(2, getMessages("/messages").size());
+    }
+
+    /**
+     * Sending an http request to DELETE localhost:8080/messages?since=1669947792&until=1669947793
+     * 
+     * Expected Response:
+     *  Status Code: 202
+     *  Response Body: a job that completes after deleting all three messages posted at 1669947792
+     */
+    @Test
+    public void bulkDeleteByTimeRange() throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?since=1669947792&until=1669947793"))
+                .DELETE());
+        int status = response.statusCode();
+        Assertions.assertEquals(202, status, "Expected Status Code 202 - Actual Code was: " + status);
+
+        JsonNode job = waitForJob(objectMapper.readTree(response.body()));
+        Assertions.assertEquals("COMPLETED", job.get("status").asText());
+        Assertions.assertEquals(3, job.get("deleted").asInt());
+        Assertions.assertEquals(new ArrayList<Message>(), getMessages("/messages"));
+    }
+
+    /**
+     * Sending an http request to DELETE localhost:8080/messages without a time range
+     * 
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void bulkDeleteWithoutRange() throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .DELETE());
+        int status = response.statusCode();
+        Assertions.assertEquals(400, status, "Expected Status Code 400 - Actual Code was: " + status);
+        Assertions.assertEquals(3, getMessages("/messages").size());
+    }
+
+    /**
+     * Cancelling a running bulk delete and resuming it before it stops, then resuming it again once it is done and
+     * resuming a job that does not exist
+     *
+     * Expected Response:
+     *  Status Code: 200 for the cancel and 202 for the first resume, the job carries on and deletes all three
+     *  messages, then 409 for the job that is done and 404 for the one that does not exist
+     */
+    @Test
+    public void resumeTakesBackAPendingCancel() throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?since=1669947792&until=1669947793"))
+                .DELETE());
+        long jobId = objectMapper.readTree(response.body()).get("jobId").asLong();
+
+        response = post("/messages/bulk-deletes/" + jobId + "/cancel");
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+        Assertions.assertEquals("RUNNING", objectMapper.readTree(response.body()).get("status").asText());
+        response = post("/messages/bulk-deletes/" + jobId + "/resume");
+        Assertions.assertEquals(202, response.statusCode(), "Expected Status Code 202 - Actual Code was: " + response.statusCode());
+
+        JsonNode job = waitForJob(objectMapper.readTree(response.body()));
+        Assertions.assertEquals("COMPLETED", job.get("status").asText());
+        Assertions.assertEquals(3, job.get("deleted").asInt());
+        Assertions.assertEquals(new ArrayList<Message>(), getMessages("/messages"));
+
+        response = post("/messages/bulk-deletes/" + jobId + "/resume");
+        Assertions.assertEquals(409, response.statusCode(), "Expected Status Code 409 - Actual Code was: " + response.statusCode());
+        response = post("/messages/bulk-deletes/12345/resume");
+        Assertions.assertEquals(404, response.statusCode(), "Expected Status Code 404 - Actual Code was: " + response.statusCode());
+    }
+}
@@ -0,0 +1,97 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.entity.Account;
+import com.example.entity.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class DurableModeCrashRecoveryTest {
+    ConfigurableApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    @TempDir
+    Path databaseDir;
+
+    /**
+     * Before every test create a new webClient and ObjectMapper for interacting locally on the web. 
+     * The app itself is started by each test since it needs to be restarted in the middle of the test.
+     */
+    @BeforeEach
+    public void setUp() {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        if (app != null && app.isActive()) {
+            SpringApplication.exit(app);
+        }
+    }
+
+    private ConfigurableApplicationContext startDurableApp() throws InterruptedException {
+        String[] args = new String[] {"--spring.profiles.active=durable",
+                "--app.h2.path=" + databaseDir.resolve("socialmedia"), "--app.h2.write-delay-ms=0"};
+        ConfigurableApplicationContext started = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+        return started;
+    }
+
+    private HttpResponse<String> post(String path, String json) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Register an account and post a message, crash the database with SHUTDOWN IMMEDIATELY and start the app again.
+     * 
+     * Expected Response:
+     *  The message can still be retrieved and the username is still taken, since the durable schema bootstrap does 
+     *  not drop any tables.
+     */
+    @Test
+    public void committedWritesSurviveCrash() throws IOException, InterruptedException {
+        app = startDurableApp();
+        String accountJson = "{\"username\":\"durable user\",\"password\":\"password\"}";
+        Account account = objectMapper.readValue(post("/register", accountJson).body(), Account.class);
+        String messageJson = "{\"postedBy\":" + account.getAccountId()
+                + ",\"messageText\": \"still here\",\"timePostedEpoch\": 1669947792}";
+        Message posted = objectMapper.readValue(post("/messages", messageJson).body(), Message.class);
+
+        app.getBean(JdbcTemplate.class).execute("shutdown immediately"); // close the database files like a crash would
+        SpringApplication.exit(app);
+        app = startDurableApp();
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + posted.getMessageId()))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+        Message recovered = objectMapper.readValue(response.body(), Message.class);
+        Assertions.assertEquals(posted, recovered, "Expected=" + posted + ", Actual=" + recovered);
+
+        int status = post("/register", accountJson).statusCode();
+        Assertions.assertEquals(409, status, "Expected Status Code 409 - Actual Code was: " + status);
+    }
+}
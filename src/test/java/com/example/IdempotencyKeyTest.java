@@ -0,0 +1,236 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.ResponseEntity;
+
+import com.example.controller.IdempotencyKeyStore;
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class IdempotencyKeyTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    private HttpRequest post(String path, String json, String key) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .header("Idempotency-Key", key)
+                .build();
+    }
+
+    private List<Message> getAllMessages() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    /**
+     * Sending the same POST localhost:8080/messages twice with the same Idempotency-Key
+     *
+     * Expected Response:
+     *  Status Code: 200 both times
+     *  Response Body: the same message both times, and it is only added once
+     */
+    @Test
+    public void retriedMessageIsAddedOnce() throws IOException, InterruptedException {
+        String json = "{\"postedBy\":9999,\"messageText\": \"once\",\"timePostedEpoch\": 1669947792}";
+        HttpResponse<String> first = webClient.send(post("/messages", json, "retry-1"), HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> second = webClient.send(post("/messages", json, "retry-1"), HttpResponse.BodyHandlers.ofString());
+
+        Assertions.assertEquals(200, first.statusCode(), "Expected Status Code 200 - Actual Code was: " + first.statusCode());
+        Assertions.assertEquals(200, second.statusCode(), "Expected Status Code 200 - Actual Code was: " + second.statusCode());
+        Assertions.assertEquals(first.body(), second.body());
+        Assertions.assertEquals("true", second.headers().firstValue("Idempotent-Replayed").orElse(null));
+        Assertions.assertEquals(4, getAllMessages().size());
+    }
+
+    /**
+     * Sending the same POST localhost:8080/register twice with the same Idempotency-Key, then the same key with another
+     *      password for that username and with another username
+     *
+     * Expected Response:
+     *  Status Code: 200 both times instead of a 409 for the retry, 422 for the other password, and 200 for the other
+     *  username since keys belong to the account they are for
+     */
+    @Test
+    public void retriedRegisterDoesNotConflict() throws IOException, InterruptedException {
+        String json = "{\"username\": \"retrier\",\"password\": \"password\"}";
+        HttpResponse<String> first = webClient.send(post("/register", json, "signup-1"), HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> second = webClient.send(post("/register", json, "signup-1"), HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> reused = webClient.send(post("/register", "{\"username\": \"retrier\",\"password\": \"other\"}", "signup-1"),
+                HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> otherAccount = webClient.send(post("/register", "{\"username\": \"other\",\"password\": \"password\"}", "signup-1"),
+                HttpResponse.BodyHandlers.ofString());
+
+        Assertions.assertEquals(200, first.statusCode(), "Expected Status Code 200 - Actual Code was: " + first.statusCode());
+        Assertions.assertEquals(200, second.statusCode(), "Expected Status Code 200 - Actual Code was: " + second.statusCode());
+        Assertions.assertEquals(first.body(), second.body());
+        Assertions.assertEquals(422, reused.statusCode(), "Expected Status Code 422 - Actual Code was: " + reused.statusCode());
+        Assertions.assertEquals(200, otherAccount.statusCode(), "Expected Status Code 200 - Actual Code was: " + otherAccount.statusCode());
+    }
+
+    /**
+     * Sending POST localhost:8080/messages with the same Idempotency-Key twice, with the texts "Aa" and "BB" (which
+     *      have the same String hashCode)
+     *
+     * Expected Response:
+     *  Status Code: 200 for the first and 422 for the second, which is not replayed
+     */
+    @Test
+    public void reusedKeyWithACollidingBodyIsRejected() throws IOException, InterruptedException {
+        HttpResponse<String> first = webClient.send(post("/messages",
+                "{\"postedBy\":9999,\"messageText\": \"Aa\",\"timePostedEpoch\": 1669947792}", "collide-1"),
+                HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> reused = webClient.send(post("/messages",
+                "{\"postedBy\":9999,\"messageText\": \"BB\",\"timePostedEpoch\": 1669947792}", "collide-1"),
+                HttpResponse.BodyHandlers.ofString());
+
+        Assertions.assertEquals(200, first.statusCode(), "Expected Status Code 200 - Actual Code was: " + first.statusCode());
+        Assertions.assertEquals(422, reused.statusCode(), "Expected Status Code 422 - Actual Code was: " + reused.statusCode());
+        Assertions.assertEquals(4, getAllMessages().size());
+    }
+
+    /**
+     * Sending 8 POST localhost:8080/messages at the same time with the same Idempotency-Key
+     *
+     * Expected Response:
+     *  Status Code: 200 for all of them
+     *  Response Body: the same message for all of them, and it is only added once
+     */
+    @Test
+    public void concurrentDuplicatesWaitForTheFirst() throws Exception {
+        String json = "{\"postedBy\":9999,\"messageText\": \"together\",\"timePostedEpoch\": 1669947792}";
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            responses.add(webClient.sendAsync(post("/messages", json, "burst-1"), HttpResponse.BodyHandlers.ofString()));
+        }
+
+        String body = responses.get(0).get().body();
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            Assertions.assertEquals(200, response.get().statusCode(), "Expected Status Code 200 - Actual Code was: " + response.get().statusCode());
+            Assertions.assertEquals(body, response.get().body());
+        }
+        Assertions.assertEquals(4, getAllMessages().size());
+    }
+
+    /**
+     * Sending POST localhost:8080/messages for account 9999 and then for account 9997 with the same Idempotency-Key
+     *
+     * Expected Response:
+     *  Status Code: 200 both times
+     *  Response Body: two different messages, a key picked by one account does not answer for another
+     */
+    @Test
+    public void sameKeyFromTwoAccountsAddsTwoMessages() throws IOException, InterruptedException {
+        HttpResponse<String> first = webClient.send(post("/messages",
+                "{\"postedBy\":9999,\"messageText\": \"mine\",\"timePostedEpoch\": 1669947792}", "shared-1"),
+                HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> second = webClient.send(post("/messages",
+                "{\"postedBy\":9997,\"messageText\": \"theirs\",\"timePostedEpoch\": 1669947792}", "shared-1"),
+                HttpResponse.BodyHandlers.ofString());
+
+        Assertions.assertEquals(200, first.statusCode(), "Expected Status Code 200 - Actual Code was: " + first.statusCode());
+        Assertions.assertEquals(200, second.statusCode(), "Expected Status Code 200 - Actual Code was: " + second.statusCode());
+        Assertions.assertEquals("theirs", objectMapper.readValue(second.body(), Message.class).getMessageText());
+        Assertions.assertEquals(5, getAllMessages().size());
+    }
+
+    /**
+     * Filling a store that keeps 2 keys while the request of the first key is still running
+     *
+     * Expected Response:
+     *  The finished key is forgotten to make room, the running one is not and its retry waits for it instead of
+     *  running the request again, and once both kept keys are running a new key gets a 503
+     */
+    @Test
+    public void runningKeysAreNeverEvicted() throws Exception {
+        IdempotencyKeyStore store = new IdempotencyKeyStore(86400000, 2, 5000);
+        byte[] body = IdempotencyKeyStore.fingerprint("body");
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        CompletableFuture<ResponseEntity> running = CompletableFuture.supplyAsync(() -> store.execute("messages", 1,
+                "slow", body, () -> {
+                    runs.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return ResponseEntity.status(200).body("slow");
+                }));
+        while (store.size() == 0) {
+            Thread.sleep(10);
+        }
+
+        Assertions.assertEquals(200, store.execute("messages", 1, "fast-1", body, () -> ResponseEntity.ok("fast")).getStatusCodeValue());
+        Assertions.assertEquals(200, store.execute("messages", 1, "fast-2", body, () -> ResponseEntity.ok("fast")).getStatusCodeValue());
+        Assertions.assertEquals(2, store.size());
+
+        CompletableFuture<ResponseEntity> retry = CompletableFuture.supplyAsync(() -> store.execute("messages", 1,
+                "slow", body, () -> ResponseEntity.ok("ran twice")));
+        CompletableFuture<ResponseEntity> alsoRunning = CompletableFuture.supplyAsync(() -> store.execute("messages", 1,
+                "blocking", body, () -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return ResponseEntity.ok("blocking");
+                }));
+        while (!store.execute("messages", 1, "probe", body, () -> ResponseEntity.ok("probe")).getStatusCode().is5xxServerError()) {
+            Thread.sleep(10); // until "blocking" took the place of the finished keys
+        }
+        ResponseEntity full = store.execute("messages", 1, "one-too-many", body, () -> ResponseEntity.ok("too many"));
+        Assertions.assertEquals(503, full.getStatusCodeValue());
+
+        release.countDown();
+        Assertions.assertEquals("slow", running.get().getBody());
+        Assertions.assertEquals("slow", retry.get().getBody());
+        Assertions.assertEquals("true", retry.get().getHeaders().getFirst(IdempotencyKeyStore.REPLAYED_HEADER));
+        Assertions.assertEquals("blocking", alsoRunning.get().getBody());
+        Assertions.assertEquals(1, runs.get());
+    }
+}
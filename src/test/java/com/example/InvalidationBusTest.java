@@ -0,0 +1,147 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.entity.Message;
+import com.example.service.InvalidationBus;
+import com.example.service.InvalidationEvent;
+import com.example.service.MessageIdFilter;
+import com.example.service.MulticastInvalidationTransport;
+import com.example.service.UsernameIndex;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+public class InvalidationBusTest {
+    static final int PORT = 4447;
+
+    ConfigurableApplicationContext app;
+    HttpClient webClient;
+    MulticastInvalidationTransport otherNode;
+    List<List<InvalidationEvent>> receivedByOtherNode = new CopyOnWriteArrayList<>();
+
+    /**
+     * Before every test, reset the database, restart the app with the multicast transport, and create a new webClient
+     * for interacting locally on the web. The test plays the other node with a transport of its own on the same group.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException, IOException {
+        webClient = HttpClient.newHttpClient();
+        String[] args = new String[] {"--app.invalidation.transport=multicast", "--app.invalidation.multicast.port=" + PORT,
+                "--app.invalidation.batch-window-ms=200"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        otherNode = new MulticastInvalidationTransport("239.255.42.99", PORT, "");
+        otherNode.listen(receivedByOtherNode::add);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        otherNode.close();
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(20);
+        }
+
+        Assertions.assertTrue(condition.getAsBoolean());
+    }
+
+    /**
+     * Patching a message, then publishing a hundred more patches of it at once
+     *
+     * Expected Response:
+     *  The other node hears about the patch, and the hundred are coalesced into one event per batch
+     */
+    @Test
+    public void changesReachTheOtherNodeCoalesced() throws Exception {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"patched here\"}"))
+                .header("Content-Type", "application/json").build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+
+        await(() -> !receivedByOtherNode.isEmpty());
+        InvalidationEvent patched = receivedByOtherNode.get(0).get(0);
+        Assertions.assertEquals(InvalidationEvent.MESSAGE_PATCHED, patched.getType());
+        Assertions.assertEquals(9999, patched.getId());
+        Assertions.assertEquals(9999, patched.getAccountId());
+        receivedByOtherNode.clear();
+
+        InvalidationBus bus = app.getBean(InvalidationBus.class);
+        for (int i = 0; i < 100; i++) {
+            bus.publish(InvalidationEvent.MESSAGE_PATCHED, 9997, 9997);
+        }
+
+        await(() -> !receivedByOtherNode.isEmpty());
+        Thread.sleep(500); // in case the hundred were split between two windows
+        int events = 0;
+        for (List<InvalidationEvent> batch : receivedByOtherNode) {
+            Assertions.assertEquals(1, batch.size());
+            events += batch.size();
+        }
+        Assertions.assertTrue(events <= 2, "Expected the patches to be coalesced, got " + events + " events");
+    }
+
+    /**
+     * The other node says it patched a message this node has cached, posted a new message and registered an account
+     *
+     * Expected Response:
+     *  The cached message is evicted, the new message id is let through the id filter and the username is in the index
+     */
+    @Test
+    public void changesFromTheOtherNodeAreActedOn() throws Exception {
+        Cache cache = app.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getCache();
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999")).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+        Assertions.assertTrue(cache.containsEntity(Message.class, 9999));
+
+        // what the other node wrote to the shared database
+        JdbcTemplate jdbcTemplate = app.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("update message set messageText = 'patched there' where messageId = 9999");
+        jdbcTemplate.update("insert into message (messageId, postedBy, messageText, timePostedEpoch) values (123456, 9999, 'posted there', 1669947792)");
+        jdbcTemplate.update("insert into account (accountId, username, password) values (123456, 'elsewhere', 'password')");
+        MessageIdFilter messageIdFilter = app.getBean(MessageIdFilter.class);
+        Assertions.assertFalse(messageIdFilter.mightContain(123456));
+
+        long now = System.currentTimeMillis() * 1000;
+        otherNode.send(List.of(new InvalidationEvent(InvalidationEvent.MESSAGE_PATCHED, 9999, 9999, now),
+                new InvalidationEvent(InvalidationEvent.MESSAGE_CREATED, 123456, 9999, now),
+                new InvalidationEvent(InvalidationEvent.ACCOUNT_CREATED, 123456, 0, now)));
+
+        await(() -> !cache.containsEntity(Message.class, 9999));
+        await(() -> app.getBean(UsernameIndex.class).contains("elsewhere"));
+        Assertions.assertTrue(messageIdFilter.mightContain(123456));
+        await(() -> app.getBean(MeterRegistry.class).get("app.invalidation.lag").timer().count() == 3);
+
+        response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999")).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertTrue(response.body().contains("patched there"), response.body());
+        response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/9999/stats")).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertTrue(response.body().contains("\"messageCount\":2"), response.body());
+    }
+}
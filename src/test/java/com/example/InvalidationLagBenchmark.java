@@ -0,0 +1,135 @@
+package com.example;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Two nodes in two JVMs: node A runs in this one and node B is started as a child process, and both use the same
+ * file backed H2 database (A serves it to B with AUTO_SERVER). A message is posted on A and read on B so B has it in
+ * its second-level cache. Then, `bench.rounds` times, the message is patched on A and B is polled until it serves
+ * the new text, which is the lag a reader on B sees. The same is done once without a transport, to show B would
+ * otherwise keep serving the old text.
+ *
+ * Run with `mvn -Pbench test -Dtest=InvalidationLagBenchmark`, the number of patches can be changed with
+ * -Dbench.rounds.
+ */
+public class InvalidationLagBenchmark {
+    static final int ROUNDS = Integer.getInteger("bench.rounds", 200);
+    static final int NODE_B_PORT = 18081;
+
+    final HttpClient webClient = HttpClient.newHttpClient();
+    final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void lagBetweenTwoJvms() throws Exception {
+        System.out.println(run("multicast", ROUNDS));
+        System.out.println(run("none", 1));
+    }
+
+    private String run(String transport, int rounds) throws Exception {
+        Path directory = Files.createTempDirectory("invalidation");
+        List<String> args = List.of("--spring.profiles.active=durable",
+                "--spring.datasource.url=jdbc:h2:file:" + directory.resolve("shared") + ";AUTO_SERVER=TRUE",
+                "--app.invalidation.transport=" + transport, "--app.invalidation.multicast.port=4448",
+                "--app.cache.enabled=true");
+        List<String> appArgs = new ArrayList<>(args);
+        appArgs.add("--server.port=0");
+        ConfigurableApplicationContext nodeA = SpringApplication.run(SocialMediaApp.class, appArgs.toArray(new String[0]));
+        Process nodeB = null;
+
+        try {
+            String a = "http://localhost:" + nodeA.getEnvironment().getProperty("local.server.port");
+            String b = "http://localhost:" + NODE_B_PORT;
+            List<String> command = new ArrayList<>(List.of(ProcessHandle.current().info().command().get(), "-cp",
+                    System.getProperty("java.class.path"), SocialMediaApp.class.getName(), "--server.port=" + NODE_B_PORT));
+            command.addAll(args);
+            nodeB = new ProcessBuilder(command).redirectErrorStream(true)
+                    .redirectOutput(directory.resolve("node-b.log").toFile()).start();
+            awaitUp(b);
+
+            JsonNode account = objectMapper.readTree(send(HttpRequest.newBuilder(URI.create(a + "/register"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"lag\", \"password\": \"password\"}"))
+                    .header("Content-Type", "application/json")).body());
+            JsonNode message = objectMapper.readTree(send(HttpRequest.newBuilder(URI.create(a + "/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"postedBy\": " + account.get("accountId")
+                            + ", \"messageText\": \"round -1\", \"timePostedEpoch\": 1669947792}"))
+                    .header("Content-Type", "application/json")).body());
+            HttpRequest readOnB = HttpRequest.newBuilder(URI.create(b + "/messages/" + message.get("messageId"))).build();
+            long created = awaitText(readOnB, "round -1", 5_000_000_000L); // B only finds it if it heard of the new id
+
+            long[] nanos = new long[rounds];
+            long stale = 0;
+
+            for (int round = 0; round < rounds; round++) {
+                send(HttpRequest.newBuilder(URI.create(a + "/messages/" + message.get("messageId")))
+                        .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"round " + round + "\"}"))
+                        .header("Content-Type", "application/json"));
+                nanos[round] = awaitText(readOnB, "round " + round, 2_000_000_000L);
+                stale += nanos[round] < 0 ? 1 : 0;
+            }
+
+            if (stale > 0) {
+                return String.format("transport %-9s new message %s, %d of %d patches still stale on node B after 2 s",
+                        transport, created < 0 ? "never seen" : "seen", stale, rounds);
+            }
+
+            Arrays.sort(nanos);
+            return String.format("transport %-9s new message seen after %,.1f ms, %d patches: p50 %,.2f ms  p99 %,.2f ms  max %,.2f ms",
+                    transport, created / 1e6, rounds, nanos[rounds / 2] / 1e6, nanos[(int) (rounds * 0.99)] / 1e6,
+                    nanos[rounds - 1] / 1e6);
+        } finally {
+            if (nodeB != null) {
+                nodeB.destroy();
+                nodeB.waitFor();
+            }
+            SpringApplication.exit(nodeA);
+        }
+    }
+
+    /**
+     * @return How long it took for node B to serve the text, or -1 if it did not within `timeoutNanos`.
+     */
+    private long awaitText(HttpRequest read, String text, long timeoutNanos) throws Exception {
+        long started = System.nanoTime();
+
+        while (System.nanoTime() - started < timeoutNanos) {
+            if (webClient.send(read, HttpResponse.BodyHandlers.ofString()).body().contains("\"" + text + "\"")) {
+                return System.nanoTime() - started;
+            }
+        }
+
+        return -1;
+    }
+
+    private void awaitUp(String base) throws Exception {
+        for (int i = 0; i < 600; i++) {
+            try {
+                if (send(HttpRequest.newBuilder(URI.create(base + "/actuator/health"))).statusCode() == 200) {
+                    return;
+                }
+            } catch (java.io.IOException e) { // not listening yet
+            }
+            Thread.sleep(100);
+        }
+
+        throw new IllegalStateException("Node B did not start");
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws Exception {
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
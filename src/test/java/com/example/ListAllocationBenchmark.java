@@ -0,0 +1,102 @@
+package com.example;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.Supplier;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.entity.Account;
+import com.example.entity.Message;
+import com.example.service.AccountService;
+import com.example.service.MessageService;
+
+/**
+ * Measures how much memory one list request allocates, and how much GC a run of them causes, when the messages are
+ * loaded as managed entities in a read-write transaction (how getAllMessages and getByAccountId used to work) and
+ * through the read-only MessageService methods that build plain Message objects.
+ *
+ * Run with `mvn -Pbench test -Dtest=ListAllocationBenchmark`, the number of requests can be changed with
+ * -Dbench.requests.
+ */
+public class ListAllocationBenchmark {
+    static final int REQUESTS = Integer.getInteger("bench.requests", 500);
+    static final int ACCOUNTS = 10;
+    static final int MESSAGES_PER_ACCOUNT = 500;
+
+    @Test
+    public void managedEntitiesVersusReadOnlyProjections() throws Exception {
+        ConfigurableApplicationContext app = SpringApplication.run(SocialMediaApp.class, new String[] {});
+
+        try {
+            AccountService accountService = app.getBean(AccountService.class);
+            MessageService messageService = app.getBean(MessageService.class);
+            EntityManager entityManager = app.getBean(EntityManager.class); // shared, bound to the transaction
+            TransactionTemplate readWrite = new TransactionTemplate(app.getBean(PlatformTransactionManager.class));
+            Integer accountId = null;
+
+            for (int i = 0; i < ACCOUNTS; i++) {
+                Account account = accountService.register(new Account("lister" + i, "password"));
+                accountId = account.getAccountId();
+
+                for (int j = 0; j < MESSAGES_PER_ACCOUNT; j++) {
+                    messageService.addMessage(new Message(accountId, "listed message " + j, 1669947792L + j));
+                }
+            }
+
+            Integer postedBy = accountId;
+            Supplier<List<Message>> managedAll = () -> readWrite.execute(status -> entityManager
+                    .createQuery("select m from Message m", Message.class).getResultList());
+            Supplier<List<Message>> managedByAccount = () -> readWrite.execute(status -> entityManager
+                    .createQuery("select m from Message m where m.postedBy = :postedBy", Message.class)
+                    .setParameter("postedBy", postedBy).getResultList());
+
+            System.out.println(measure("all, managed entities", managedAll));
+            System.out.println(measure("all, read-only projection", messageService::getAllMessages));
+            System.out.println(measure("account, managed entities", managedByAccount));
+            System.out.println(measure("account, read-only projection", () -> messageService.getByAccountId(postedBy)));
+        } finally {
+            SpringApplication.exit(app);
+        }
+    }
+
+    private String measure(String name, Supplier<List<Message>> request) {
+        for (int i = 0; i < REQUESTS / 5; i++) { // warm up
+            request.get();
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long gcCountBefore = gcCount();
+        long gcMillisBefore = gcMillis();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        int size = 0;
+
+        for (int i = 0; i < REQUESTS; i++) {
+            size = request.get().size();
+        }
+
+        long micros = (System.nanoTime() - start) / 1000 / REQUESTS;
+        long allocated = (threads.getCurrentThreadAllocatedBytes() - allocatedBefore) / REQUESTS;
+
+        return String.format("%-30s %5d messages %,12d bytes/request %6d us/request %4d GCs %5d ms GC", name, size,
+                allocated, micros, gcCount() - gcCountBefore, gcMillis() - gcMillisBefore);
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+}
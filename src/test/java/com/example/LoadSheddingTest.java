@@ -0,0 +1,130 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.config.AdmissionGate;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+public class LoadSheddingTest {
+    ConfigurableApplicationContext app;
+    HttpClient webClient;
+    AdmissionGate gate;
+
+    /**
+     * Before every test, reset the database, restart the app with room for one request at a time and one more waiting,
+     * and create a new webClient for interacting locally on the web. The test holds the one turn itself with the
+     * gate, so the requests it sends have to queue.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        String[] args = new String[] {"--app.admission.limit=1", "--app.admission.queue-size=1",
+                "--app.admission.max-wait-ms=1000"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        gate = app.getBean(AdmissionGate.class);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+    }
+
+    private CompletableFuture<HttpResponse<String>> sendAsync(HttpRequest.Builder request) {
+        return webClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void awaitQueued(int queued) throws InterruptedException {
+        for (int i = 0; i < 100 && gate.getQueued() != queued; i++) {
+            Thread.sleep(20);
+        }
+
+        Assertions.assertEquals(queued, gate.getQueued());
+    }
+
+    /**
+     * AdmissionFilter gives the turn back after the response is written, so the client can have it before then.
+     */
+    private void awaitInFlight(int inFlight) throws InterruptedException {
+        for (int i = 0; i < 100 && gate.getInFlight() != inFlight; i++) {
+            Thread.sleep(20);
+        }
+
+        Assertions.assertEquals(inFlight, gate.getInFlight());
+    }
+
+    private double shed(String priority, String reason) {
+        return app.getBean(MeterRegistry.class).get("app.admission.shed").tag("priority", priority)
+                .tag("reason", reason).counter().count();
+    }
+
+    /**
+     * While the only turn is taken: a read waits, a bulk read finds the queue full, then a delete arrives
+     *
+     * Expected Response:
+     *  The bulk read gets a 503 straight away, the delete takes the read's place in the queue (the read gets a 503)
+     *  and runs once the turn is given back
+     */
+    @Test
+    public void writesGetAheadOfReads() throws Exception {
+        Assertions.assertEquals(AdmissionGate.Outcome.ADMITTED, gate.acquire(AdmissionGate.Priority.READ));
+        CompletableFuture<HttpResponse<String>> read = sendAsync(request("/messages/9997"));
+        awaitQueued(1);
+
+        HttpResponse<String> bulk = webClient.send(request("/messages").build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(503, bulk.statusCode(), "Expected Status Code 503 - Actual Code was: " + bulk.statusCode());
+        Assertions.assertEquals("1", bulk.headers().firstValue("Retry-After").orElse(null));
+        Assertions.assertEquals(1, shed("bulk", "queue-full"));
+
+        CompletableFuture<HttpResponse<String>> delete = sendAsync(request("/messages/9999").DELETE());
+        HttpResponse<String> response = read.get();
+        Assertions.assertEquals(503, response.statusCode(), "Expected Status Code 503 - Actual Code was: " + response.statusCode());
+        Assertions.assertEquals(1, shed("read", "displaced"));
+        awaitQueued(1);
+
+        gate.release();
+        response = delete.get();
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+        Assertions.assertEquals("1", response.body());
+        awaitInFlight(0);
+    }
+
+    /**
+     * A read waits for longer than app.admission.max-wait-ms
+     *
+     * Expected Response:
+     *  It gets a 503, and once the turn is back the next request goes straight through
+     */
+    @Test
+    public void requestsThatWaitTooLongAreShed() throws Exception {
+        Assertions.assertEquals(AdmissionGate.Outcome.ADMITTED, gate.acquire(AdmissionGate.Priority.READ));
+        HttpResponse<String> response = webClient.send(request("/messages/9997").build(),
+                HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(503, response.statusCode(), "Expected Status Code 503 - Actual Code was: " + response.statusCode());
+        Assertions.assertEquals(1, shed("read", "timed-out"));
+        Assertions.assertEquals(0, gate.getQueued());
+
+        gate.release();
+        response = webClient.send(request("/messages/9997").build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+    }
+}
@@ -0,0 +1,216 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.entity.Message;
+import com.example.repository.LogMessageStore;
+import com.example.repository.MessageStore;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class LogMessageStoreTest {
+    ConfigurableApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    @TempDir
+    Path logDir;
+
+    /**
+     * Before every test create a new webClient and ObjectMapper for interacting locally on the web.
+     * The app itself is only started by the tests that go through HTTP, the others open the store directly.
+     */
+    @BeforeEach
+    public void setUp() {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        if (app != null && app.isActive()) {
+            Thread.sleep(500);
+            SpringApplication.exit(app);
+        }
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build());
+    }
+
+    private Message post(String text) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"postedBy\":9999,\"messageText\":\"" + text + "\",\"timePostedEpoch\":1669947793}"))
+                .header("Content-Type", "application/json")
+                .build());
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private LogMessageStore open(int segmentBytes) throws IOException {
+        return new LogMessageStore(null, new SimpleMeterRegistry(), logDir.toString(), segmentBytes, 0, 0.5, 3600000);
+    }
+
+    /**
+     * Posting, patching and deleting with `app.messages.store=log`
+     *
+     * Expected Response:
+     *  The same status codes and bodies as the jpa store, with the data.sql messages copied into the log and the ids
+     *  still coming from the sequence
+     */
+    @Test
+    public void requestsWorkTheSameOnTheLog() throws IOException, InterruptedException {
+        app = SpringApplication.run(SocialMediaApp.class, new String[] {"--app.messages.store=log",
+                "--app.messages.log.dir=" + logDir});
+        Thread.sleep(500);
+        Assertions.assertTrue(app.getBean(MessageStore.class) instanceof LogMessageStore);
+
+        List<Message> seeded = objectMapper.readValue(get("/messages").body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(List.of(new Message(9996, 9996, "test message 3", 1669947792L),
+                new Message(9997, 9997, "test message 2", 1669947792L),
+                new Message(9999, 9999, "test message 1", 1669947792L)), seeded);
+
+        HttpResponse<String> created = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"postedBy\":9999,\"messageText\":\"hello log\",\"timePostedEpoch\":1669947793}"))
+                .header("Content-Type", "application/json")
+                .build());
+        Assertions.assertEquals(200, created.statusCode(), "Expected Status Code 200 - Actual Code was: " + created.statusCode());
+        Message message = objectMapper.readValue(created.body(), Message.class);
+        Assertions.assertEquals(new Message(1, 9999, "hello log", 1669947793L), message);
+
+        HttpResponse<String> patched = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"hello again\"}"))
+                .header("Content-Type", "application/json")
+                .build());
+        Assertions.assertEquals(200, patched.statusCode(), "Expected Status Code 200 - Actual Code was: " + patched.statusCode());
+        List<Message> byAccount = objectMapper.readValue(get("/accounts/9999/messages").body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(List.of(new Message(1, 9999, "hello again", 1669947793L),
+                new Message(9999, 9999, "test message 1", 1669947792L)), byAccount);
+
+        HttpResponse<String> deleted = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9997"))
+                .DELETE()
+                .build());
+        Assertions.assertEquals(200, deleted.statusCode(), "Expected Status Code 200 - Actual Code was: " + deleted.statusCode());
+        Assertions.assertEquals("", get("/messages/9997").body());
+        Assertions.assertEquals(3, app.getBean(LogMessageStore.class).getMessageCount());
+    }
+
+    /**
+     * Posting a message, restarting the app (the in memory primary database and its sequence start over) and posting
+     * another one
+     *
+     * Expected Response:
+     *  The log is not imported again, and the second message gets an id past every id in the log
+     */
+    @Test
+    public void idsStayUniqueAcrossRestarts() throws IOException, InterruptedException {
+        String[] args = new String[] {"--app.messages.store=log", "--app.messages.log.dir=" + logDir};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+        Assertions.assertEquals(new Message(1, 9999, "before the restart", 1669947793L), post("before the restart"));
+        SpringApplication.exit(app);
+
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+        Assertions.assertEquals(new Message(10000, 9999, "after the restart", 1669947793L), post("after the restart"));
+        Assertions.assertEquals(Optional.of(new Message(1, 9999, "before the restart", 1669947793L)),
+                app.getBean(MessageStore.class).findById(1));
+        Assertions.assertEquals(5, app.getBean(LogMessageStore.class).getMessageCount());
+    }
+
+    /**
+     * Writing to the log, closing it, tearing the last record as a power failure would and opening it again
+     *
+     * Expected Response:
+     *  Every message but the torn one is back with its latest text, deleted ones stay deleted, and the next record is
+     *  written where the torn one was
+     */
+    @Test
+    public void recoversEverythingUpToATornRecord() throws IOException {
+        LogMessageStore store = open(4096);
+        store.save(new Message(1, 7, "first", 100L));
+        store.save(new Message(2, 7, "second", 200L));
+        store.save(new Message(3, null, null, null));
+        store.save(new Message(1, 7, "first, edited", 100L));
+        store.deleteById(2);
+        store.save(new Message(4, 8, "torn", 400L));
+        long bytes = store.getBytes(false);
+        store.close();
+
+        Path segment = Files.list(logDir).sorted().collect(Collectors.toList()).get(0);
+
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(bytes - 2); // the last bytes of the text, so the CRC no longer matches
+            file.write(new byte[] {'x', 'x'});
+        }
+
+        LogMessageStore reopened = open(4096);
+        Assertions.assertEquals(Optional.of(new Message(1, 7, "first, edited", 100L)), reopened.findById(1));
+        Assertions.assertEquals(Optional.empty(), reopened.findById(2));
+        Assertions.assertEquals(Optional.of(new Message(3, null, null, null)), reopened.findById(3));
+        Assertions.assertEquals(Optional.empty(), reopened.findById(4));
+        Assertions.assertEquals(List.of(new Message(1, 7, "first, edited", 100L)), reopened.findByPostedBy(7));
+
+        reopened.save(new Message(5, 8, "after the tear", 500L));
+        reopened.close();
+        Assertions.assertEquals(Optional.of(new Message(5, 8, "after the tear", 500L)), open(4096).findById(5));
+    }
+
+    /**
+     * Filling several small segments, deleting most of the messages and compacting
+     *
+     * Expected Response:
+     *  There are fewer segments afterwards, and after opening the log again the messages that were kept are there and
+     *  the deleted ones are still gone
+     */
+    @Test
+    public void compactionDropsDeadRecordsAndKeepsDeletesDeleted() throws IOException {
+        LogMessageStore store = open(4096);
+        store.loadAll(IntStream.rangeClosed(1, 400).mapToObj(id -> new Message(id, id % 10, "message number " + id,
+                (long) id)).iterator());
+        store.deleteAllById(IntStream.rangeClosed(1, 400).filter(id -> id % 5 != 0).boxed().collect(Collectors.toList()));
+        int segmentsBefore = store.getSegmentCount();
+
+        Assertions.assertTrue(store.compact() > 0);
+        Assertions.assertTrue(store.getSegmentCount() < segmentsBefore,
+                store.getSegmentCount() + " segments after compacting, " + segmentsBefore + " before");
+        store.close();
+
+        LogMessageStore reopened = open(4096);
+        Assertions.assertEquals(80, reopened.getMessageCount());
+        Assertions.assertEquals(Optional.of(new Message(400, 0, "message number 400", 400L)), reopened.findById(400));
+        Assertions.assertEquals(Optional.empty(), reopened.findById(399));
+        Assertions.assertEquals(List.of(5, 15, 25), reopened.findIdsByPostedBy(5, 0, 3));
+    }
+}
@@ -0,0 +1,102 @@
+package com.example;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.entity.Account;
+import com.example.entity.Message;
+import com.example.service.AccountService;
+import com.example.service.MessageService;
+
+/**
+ * Compares the log store with the jpa store, on the in memory database and on the durable profile's file database,
+ * for posting messages and reading them back by id.
+ *
+ * Every configuration starts with only data.sql's rows and one new account. Messages are posted one at a time through MessageService, the
+ * same call POST /messages makes, and each one is timed. Then random ids are read one at a time through
+ * MessageService.getMessageById(). The durable configurations are run as they ship (a 500 ms write delay for H2, a
+ * 50 ms fsync interval for the log) and with every write forced to disk before it returns.
+ *
+ * Run with `mvn -Pbench test -Dtest=LogStoreBenchmark`, the number of messages can be changed with -Dbench.messages
+ * (the default is 100,000) and the number of timed reads with -Dbench.reads.
+ */
+public class LogStoreBenchmark {
+    static final int MESSAGES = Integer.getInteger("bench.messages", 100_000);
+    static final int READS = Integer.getInteger("bench.reads", 50_000);
+
+    @Test
+    public void logVersusH2() throws Exception {
+        Path directory = Files.createTempDirectory("log-store");
+        run("warm-up", "--app.messages.store=jpa"); // so the first configuration is not the one paying for the JIT
+        List<String> lines = new ArrayList<>();
+        lines.add(run("jpa, memory", "--app.messages.store=jpa"));
+        lines.add(run("jpa, file", "--spring.profiles.active=durable",
+                "--app.h2.path=" + directory.resolve("h2-delayed/socialmedia")));
+        lines.add(run("jpa, file, sync", "--spring.profiles.active=durable",
+                "--app.h2.path=" + directory.resolve("h2-sync/socialmedia"), "--app.h2.write-delay-ms=0"));
+        lines.add(run("log", "--app.messages.store=log", "--app.messages.log.dir=" + directory.resolve("log-delayed")));
+        lines.add(run("log, sync", "--app.messages.store=log", "--app.messages.log.dir=" + directory.resolve("log-sync"),
+                "--app.messages.log.fsync-interval-ms=0"));
+
+        System.out.println(String.format("%,d messages posted, %,d timed reads by id", MESSAGES, READS));
+        lines.forEach(System.out::println);
+    }
+
+    private String run(String name, String... store) throws Exception {
+        String[] args = new String[store.length + 2];
+        args[0] = "--server.port=0";
+        args[1] = "--app.stats.rebuild-interval-ms=3600000";
+        System.arraycopy(store, 0, args, 2, store.length);
+        ConfigurableApplicationContext app = SpringApplication.run(SocialMediaApp.class, args);
+
+        try {
+            // past the data.sql ids, which the sequence would otherwise run into
+            app.getBean(JdbcTemplate.class).execute("alter sequence hibernate_sequence restart with 10000");
+            int postedBy = app.getBean(AccountService.class).register(new Account("benchmark", "password"))
+                    .getAccountId();
+            MessageService messageService = app.getBean(MessageService.class);
+            int[] ids = new int[MESSAGES];
+            long[] writes = new long[MESSAGES];
+            long started = System.nanoTime();
+
+            for (int i = 0; i < MESSAGES; i++) {
+                long before = System.nanoTime();
+                ids[i] = messageService.addMessage(new Message(postedBy, "benchmark message number " + i,
+                        1669947793L + i)).getMessageId();
+                writes[i] = System.nanoTime() - before;
+            }
+
+            double seconds = (System.nanoTime() - started) / 1e9;
+            Random random = new Random(7);
+
+            for (int i = 0; i < READS / 4; i++) {
+                messageService.getMessageById(ids[random.nextInt(MESSAGES)]);
+            }
+
+            long[] reads = new long[READS];
+
+            for (int i = 0; i < READS; i++) {
+                long before = System.nanoTime();
+                messageService.getMessageById(ids[random.nextInt(MESSAGES)]);
+                reads[i] = System.nanoTime() - before;
+            }
+
+            Arrays.sort(writes);
+            Arrays.sort(reads);
+            return String.format("%-16s %,8.0f posts/s  post p50 %,7.1f us  p99 %,8.1f us  |  read p50 %,6.1f us  p99 %,7.1f us",
+                    name, MESSAGES / seconds, writes[MESSAGES / 2] / 1000.0, writes[(int) (MESSAGES * 0.99)] / 1000.0,
+                    reads[READS / 2] / 1000.0, reads[(int) (READS * 0.99)] / 1000.0);
+        } finally {
+            SpringApplication.exit(app);
+        }
+    }
+}
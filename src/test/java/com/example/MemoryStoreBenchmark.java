@@ -0,0 +1,136 @@
+package com.example;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.entity.Account;
+import com.example.repository.AccountStore;
+import com.example.repository.MessageStore;
+import com.example.service.AccountService;
+import com.example.service.MessageService;
+import com.example.service.SyntheticDataService;
+
+/**
+ * Compares the memory store with the default jpa store (H2's in memory database behind Hibernate) on how much memory
+ * every message takes and how long reads take.
+ *
+ * The same synthetic accounts and messages (see SyntheticDataService) are loaded into each. The memory is what the
+ * heap and the direct buffers grew by after a full GC, divided by the number of messages (the accounts are counted in
+ * too). Then every read is timed one at a time through the services, the same calls the controller makes: a message
+ * by id, the messages of an account, the first page of a random day and a login. Both stores run in one JVM, one
+ * after the other.
+ *
+ * Run with `mvn -Pbench test -Dtest=MemoryStoreBenchmark`, the number of messages can be changed with
+ * -Dbench.messages (the default is 500,000) and the number of timed reads of each kind with -Dbench.reads.
+ */
+public class MemoryStoreBenchmark {
+    static final int MESSAGES = Integer.getInteger("bench.messages", 500_000);
+    static final int ACCOUNTS = Math.max(1, MESSAGES / 100);
+    static final int READS = Integer.getInteger("bench.reads", 20_000);
+    static final long END_EPOCH = 1669947792L;
+    static final long DAY = 86400;
+
+    @Test
+    public void memoryVersusJpa() throws Exception {
+        List<String> lines = new ArrayList<>();
+        lines.addAll(run("jpa"));
+        lines.addAll(run("memory"));
+
+        System.out.println(String.format("%,d accounts, %,d messages, %,d timed reads of each kind", ACCOUNTS, MESSAGES,
+                READS));
+        lines.forEach(System.out::println);
+    }
+
+    private List<String> run(String store) throws Exception {
+        ConfigurableApplicationContext app = SpringApplication.run(SocialMediaApp.class, new String[] {
+                "--server.port=0", "--app.messages.store=" + store, "--app.stats.rebuild-interval-ms=3600000"});
+
+        try {
+            long before = usedBytes();
+            app.getBean(SyntheticDataService.class).generate(ACCOUNTS, MESSAGES, 42);
+            long after = usedBytes();
+
+            int[] messageIds = new int[MESSAGES + 3];
+            int[] count = new int[1];
+            app.getBean(MessageStore.class).forEachMessage(message -> messageIds[count[0]++] = message.getMessageId());
+            List<Account> accounts = new ArrayList<>();
+            app.getBean(AccountStore.class).forEachAccount(accounts::add);
+
+            MessageService messageService = app.getBean(MessageService.class);
+            AccountService accountService = app.getBean(AccountService.class);
+            List<String> lines = new ArrayList<>();
+            lines.add(String.format("%-6s %,8.1f bytes per message (%,d MB)", store,
+                    (after - before) / (double) MESSAGES, (after - before) >> 20));
+            lines.add(time(store, "by id", READS, random -> messageService.getMessageById(
+                    messageIds[random.nextInt(count[0])])));
+            lines.add(time(store, "by account", READS, random -> messageService.getByAccountId(
+                    accounts.get(random.nextInt(accounts.size())).getAccountId())));
+            lines.add(time(store, "day page", READS, random -> {
+                long since = END_EPOCH - (1 + random.nextInt(365)) * DAY;
+                messageService.getByTimeRange(null, since, since + DAY, 0, 50);
+            }));
+            lines.add(time(store, "login", READS, random -> {
+                Account account = accounts.get(random.nextInt(accounts.size()));
+                accountService.login(new Account(account.getUsername(), account.getPassword()));
+            }));
+            return lines;
+        } finally {
+            SpringApplication.exit(app);
+        }
+    }
+
+    /**
+     * Runs `read` a quarter of `reads` times to warm up, then `reads` times one at a time and reports the percentiles.
+     */
+    private String time(String store, String name, int reads, RandomRead read) {
+        Random random = new Random(7);
+
+        for (int i = 0; i < reads / 4; i++) {
+            read.run(random);
+        }
+
+        long[] nanos = new long[reads];
+
+        for (int i = 0; i < reads; i++) {
+            long started = System.nanoTime();
+            read.run(random);
+            nanos[i] = System.nanoTime() - started;
+        }
+
+        Arrays.sort(nanos);
+        return String.format("%-6s %-10s p50 %,9.1f us  p99 %,9.1f us  p99.9 %,9.1f us", store, name,
+                nanos[reads / 2] / 1000.0, nanos[(int) (reads * 0.99)] / 1000.0, nanos[(int) (reads * 0.999)] / 1000.0);
+    }
+
+    /**
+     * @return The heap and direct memory in use after a full GC.
+     */
+    private static long usedBytes() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+
+        long direct = 0;
+
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                direct = pool.getMemoryUsed();
+            }
+        }
+
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() + direct;
+    }
+
+    private interface RandomRead {
+        void run(Random random);
+    }
+}
@@ -0,0 +1,273 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.DuplicateKeyException;
+
+import com.example.entity.Account;
+import com.example.entity.Message;
+import com.example.repository.AccountStore;
+import com.example.repository.MemoryStore;
+import com.example.repository.MessageStore;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class MemoryStoreTest {
+    ConfigurableApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test create a new webClient and ObjectMapper for interacting locally on the web.
+     * The app itself is only started by the tests that go through HTTP, the others use a store of their own.
+     */
+    @BeforeEach
+    public void setUp() {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        if (app != null && app.isActive()) {
+            Thread.sleep(500);
+            SpringApplication.exit(app);
+        }
+    }
+
+    /**
+     * Restarts the app with the memory profile, which resets the database.
+     */
+    private void startApp() throws InterruptedException {
+        String[] args = new String[] {"--spring.profiles.active=memory"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    /**
+     * A store without a primary database, everything in it has to be given its id.
+     */
+    private MemoryStore newStore(int accounts) {
+        MemoryStore store = new MemoryStore(null, new SimpleMeterRegistry());
+        store.loadAllAccounts(IntStream.rangeClosed(1, accounts)
+                .mapToObj(id -> new Account(id, "user" + id, "password" + id)).iterator());
+        return store;
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build());
+    }
+
+    private HttpResponse<String> post(String path, String json) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build());
+    }
+
+    /**
+     * Starting the app with the memory profile
+     *
+     * Expected Response:
+     *  Both stores are the MemoryStore, and GET localhost:8080/messages has the rows from data.sql
+     */
+    @Test
+    public void memoryProfileServesTheDataSqlRows() throws IOException, InterruptedException {
+        startApp();
+        Assertions.assertTrue(app.getBean(MessageStore.class) instanceof MemoryStore);
+        Assertions.assertSame(app.getBean(MessageStore.class), app.getBean(AccountStore.class));
+
+        HttpResponse<String> response = get("/messages");
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+        List<Message> expectedResult = new ArrayList<Message>();
+        expectedResult.add(new Message(9996, 9996, "test message 3", 1669947792L));
+        expectedResult.add(new Message(9997, 9997, "test message 2", 1669947792L));
+        expectedResult.add(new Message(9999, 9999, "test message 1", 1669947792L));
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(expectedResult, actualResult, "Expected="+expectedResult + ", Actual="+actualResult);
+    }
+
+    /**
+     * Registering, logging in, posting, patching and deleting with the memory profile
+     *
+     * Expected Response:
+     *  The same status codes and bodies as the database stores, with the ids still coming from the sequence
+     */
+    @Test
+    public void requestsWorkTheSameInMemory() throws IOException, InterruptedException {
+        startApp();
+        HttpResponse<String> registered = post("/register", "{\"username\":\"user\",\"password\":\"password\"}");
+        Assertions.assertEquals(200, registered.statusCode(), "Expected Status Code 200 - Actual Code was: " + registered.statusCode());
+        Assertions.assertEquals(new Account(1, "user", "password"), objectMapper.readValue(registered.body(), Account.class));
+        Assertions.assertEquals(409, post("/register", "{\"username\":\"user\",\"password\":\"password\"}").statusCode());
+        Assertions.assertEquals(200, post("/login", "{\"username\":\"user\",\"password\":\"password\"}").statusCode());
+        Assertions.assertEquals(401, post("/login", "{\"username\":\"user\",\"password\":\"wrong\"}").statusCode());
+
+        HttpResponse<String> created = post("/messages",
+                "{\"postedBy\":1,\"messageText\":\"hello memory\",\"timePostedEpoch\":1669947793}");
+        Assertions.assertEquals(200, created.statusCode(), "Expected Status Code 200 - Actual Code was: " + created.statusCode());
+        Assertions.assertEquals(new Message(2, 1, "hello memory", 1669947793L), objectMapper.readValue(created.body(), Message.class));
+        Assertions.assertEquals(400, post("/messages",
+                "{\"postedBy\":5050,\"messageText\":\"nobody\",\"timePostedEpoch\":1669947793}").statusCode());
+
+        HttpResponse<String> patched = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"hello again\"}"))
+                .header("Content-Type", "application/json")
+                .build());
+        Assertions.assertEquals(200, patched.statusCode(), "Expected Status Code 200 - Actual Code was: " + patched.statusCode());
+        List<Message> byAccount = objectMapper.readValue(get("/accounts/1/messages").body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(List.of(new Message(2, 1, "hello again", 1669947793L)), byAccount);
+
+        HttpResponse<String> deleted = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .DELETE()
+                .build());
+        Assertions.assertEquals(200, deleted.statusCode(), "Expected Status Code 200 - Actual Code was: " + deleted.statusCode());
+        Assertions.assertEquals("", get("/messages/2").body());
+        Assertions.assertEquals("[]", get("/accounts/1/messages").body());
+    }
+
+    /**
+     * Loading 3000 messages with times that run the other way from their ids, deleting nine in ten of them (so the
+     *      deleted slots are more than 1024 and more than the live ones) and adding one more message
+     *
+     * Expected Response:
+     *  The message arrays shrink, and the posting lists, the time order and the lookups by id still find every live
+     *  message and only those
+     */
+    @Test
+    public void compactingMessagesKeepsPostingListsAndTimeOrder() {
+        MemoryStore store = newStore(2);
+        store.loadAll(IntStream.rangeClosed(1, 3000).mapToObj(id -> new Message(id, (id / 10) % 2 + 1,
+                "message " + id, 3000L - id)).iterator());
+        long heapBefore = store.heapBytes();
+
+        store.deleteAllById(IntStream.rangeClosed(1, 3000).filter(id -> id % 10 != 0).boxed().collect(Collectors.toList()));
+        Assertions.assertTrue(store.heapBytes() < heapBefore, store.heapBytes() + " bytes after, " + heapBefore + " before");
+        Assertions.assertEquals(300, store.getMessageCount());
+        Assertions.assertEquals(Optional.of(new Message(20, 1, "message 20", 2980L)), store.findById(20));
+        Assertions.assertEquals(Optional.empty(), store.findById(21));
+
+        List<Integer> expectedIds = IntStream.rangeClosed(1, 150).map(i -> i * 20).boxed().collect(Collectors.toList());
+        List<Integer> actualIds = store.findByPostedBy(1).stream().map(Message::getMessageId).collect(Collectors.toList());
+        Assertions.assertEquals(expectedIds, actualIds);
+        Assertions.assertEquals(List.of(10, 30, 50), store.findIdsByPostedBy(2, 0, 3));
+
+        store.save(new Message(5000, 1, "after compacting", 5L));
+        List<Integer> byTime = store.findByTimeRange(null, 0, Long.MAX_VALUE, 0, 4).stream()
+                .map(Message::getMessageId).collect(Collectors.toList());
+        Assertions.assertEquals(List.of(3000, 5000, 2990, 2980), byTime);
+        Assertions.assertEquals(151, store.findByPostedBy(1).size());
+    }
+
+    /**
+     * Loading 20000 messages of 250 characters (two arena chunks) and deleting all but 100 of them
+     *
+     * Expected Response:
+     *  The text arena is copied into a smaller one, and the texts of the live messages and the usernames and
+     *  passwords are the same as before
+     */
+    @Test
+    public void compactingTextsKeepsEveryString() {
+        MemoryStore store = newStore(3);
+        String padding = "x".repeat(240);
+        store.loadAll(IntStream.rangeClosed(1, 20000).mapToObj(id -> new Message(id, id % 3 + 1,
+                String.format("%05d", id) + padding, (long) id)).iterator());
+        long offHeapBefore = store.offHeapBytes();
+
+        store.deleteAllById(IntStream.rangeClosed(1, 20000).filter(id -> id % 200 != 0).boxed()
+                .collect(Collectors.toList()));
+        Assertions.assertTrue(store.offHeapBytes() < offHeapBefore,
+                store.offHeapBytes() + " bytes after, " + offHeapBefore + " before");
+        Assertions.assertEquals(Optional.of(new Message(400, 2, "00400" + padding, 400L)), store.findById(400));
+        Assertions.assertEquals(Optional.of(new Message(20000, 3, "20000" + padding, 20000L)), store.findById(20000));
+        Assertions.assertEquals(new Account(2, "user2", "password2"), store.findAccountByUsername("user2"));
+        Assertions.assertEquals(100, store.findAll().size());
+    }
+
+    /**
+     * Adding 3000 accounts one at a time (the username table grows a few times), taking a username twice and
+     *      renaming an account
+     *
+     * Expected Response:
+     *  Every username finds its own account, a taken username is refused, and after the rename only the new username
+     *  finds the account
+     */
+    @Test
+    public void usernameTableFindsEveryAccount() {
+        MemoryStore store = newStore(0);
+
+        for (int id = 1; id <= 3000; id++) {
+            store.saveAccount(new Account(id, "user" + id, "password" + id));
+        }
+
+        for (int id = 1; id <= 3000; id++) {
+            Assertions.assertEquals(new Account(id, "user" + id, "password" + id), store.findAccountByUsername("user" + id));
+        }
+        Assertions.assertNull(store.findAccountByUsername("user3001"));
+        Assertions.assertThrows(DuplicateKeyException.class, () -> store.saveAccount(new Account(3001, "user7", "other")));
+
+        store.saveAccount(new Account(7, "renamed", "password7"));
+        Assertions.assertNull(store.findAccountByUsername("user7"));
+        Assertions.assertEquals(new Account(7, "renamed", "password7"), store.findAccountByUsername("renamed"));
+        Assertions.assertEquals(new Account(8, "user8", "password8"), store.findAccountByUsername("user8"));
+        Assertions.assertEquals(Optional.of(new Account(7, "renamed", "password7")), store.findAccountById(7));
+    }
+
+    /**
+     * Paging through the messages of one account in a time range, five at a time, when its posting list is in id
+     *      order and the times are not
+     *
+     * Expected Response:
+     *  The pages together are exactly the account's messages in the range in time order, and the page after the
+     *  last one is empty
+     */
+    @Test
+    public void timeRangePagesOfOneAccount() {
+        MemoryStore store = newStore(2);
+        List<Message> messages = IntStream.rangeClosed(1, 50).mapToObj(id -> new Message(id, id % 2 + 1,
+                "message " + id, (id * 7L) % 50)).collect(Collectors.toList());
+        store.loadAll(messages.iterator());
+
+        List<Message> expected = messages.stream()
+                .filter(message -> message.getPostedBy() == 1 && message.getTimePostedEpoch() >= 10
+                        && message.getTimePostedEpoch() < 40)
+                .sorted(Comparator.comparing(Message::getTimePostedEpoch))
+                .collect(Collectors.toList());
+        List<Message> actual = new ArrayList<>();
+
+        for (int page = 0; page * 5 < expected.size(); page++) {
+            List<Message> messagesOnPage = store.findByTimeRange(1, 10, 40, page, 5);
+            Assertions.assertEquals(Math.min(5, expected.size() - page * 5), messagesOnPage.size());
+            actual.addAll(messagesOnPage);
+        }
+
+        Assertions.assertEquals(expected, actual);
+        Assertions.assertEquals(List.of(), store.findByTimeRange(1, 10, 40, (expected.size() + 4) / 5, 5));
+        Assertions.assertEquals(List.of(), store.findByTimeRange(9999, 10, 40, 0, 5));
+    }
+}
@@ -0,0 +1,170 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.example.service.MessageEventService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class MessageEventStreamTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--app.events.write-timeout-ms=1000"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Opens an event stream and collects its `event:` and `data:` lines in the background.
+     */
+    private BlockingQueue<String> subscribe(String query) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/events" + query))
+                .header("Accept", "text/event-stream")
+                .build();
+        HttpResponse<Stream<String>> response = webClient.send(request, HttpResponse.BodyHandlers.ofLines());
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+
+        BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        Thread reader = new Thread(() -> response.body()
+                .filter(line -> line.startsWith("event:") || line.startsWith("data:"))
+                .forEach(lines::add));
+        reader.setDaemon(true);
+        reader.start();
+        return lines;
+    }
+
+    private void postMessage(int postedBy, String text) throws IOException, InterruptedException {
+        String json = "{\"postedBy\":" + postedBy + ",\"messageText\": \"" + text + "\",\"timePostedEpoch\": 1669947792}";
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+    }
+
+    private String next(BlockingQueue<String> lines) throws InterruptedException {
+        String line = lines.poll(5, TimeUnit.SECONDS);
+        Assertions.assertNotNull(line, "Expected an event within 5 seconds");
+        return line;
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/events?accountId=9999 and then posting a message for
+     *      account 9998 followed by one for account 9999
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: a single `created` event for the message of account 9999
+     */
+    @Test
+    public void createdEventForAccount() throws IOException, InterruptedException {
+        BlockingQueue<String> lines = subscribe("?accountId=9999");
+        postMessage(9998, "not for this stream");
+        postMessage(9999, "hello stream");
+
+        Assertions.assertEquals("event:created", next(lines));
+        Message actual = objectMapper.readValue(next(lines).substring("data:".length()), Message.class);
+        Assertions.assertEquals(new Message(2, 9999, "hello stream", 1669947792L), actual);
+        Assertions.assertNull(lines.poll(500, TimeUnit.MILLISECONDS), "Expected no other events");
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/events and then deleting message 9999
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: a `deleted` event with the messageId and postedBy of the deleted message
+     */
+    @Test
+    public void deletedEvent() throws IOException, InterruptedException {
+        BlockingQueue<String> lines = subscribe("");
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .DELETE()
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+
+        Assertions.assertEquals("event:deleted", next(lines));
+        Message actual = objectMapper.readValue(next(lines).substring("data:".length()), Message.class);
+        Assertions.assertEquals(9999, actual.getMessageId());
+        Assertions.assertEquals(9999, actual.getPostedBy());
+    }
+
+    /**
+     * Opening one stream that is never read from and one that is, and then publishing about 20 MB of events
+     *
+     * Expected Response:
+     *  The stream that is read gets every event while the other one is stuck, and the stuck one is dropped once a
+     *  write to it has taken longer than the write timeout
+     */
+    @Test
+    public void clientThatStopsReadingIsDropped() throws IOException, InterruptedException {
+        MessageEventService events = app.getBean(MessageEventService.class);
+
+        try (Socket stalled = new Socket()) {
+            stalled.setReceiveBufferSize(1024);
+            stalled.connect(new InetSocketAddress("localhost", 8080));
+            stalled.getOutputStream().write(("GET /messages/events HTTP/1.1\r\nHost: localhost\r\n"
+                    + "Accept: text/event-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            BlockingQueue<String> lines = subscribe("");
+            Assertions.assertEquals(2, events.getSubscriberCount());
+
+            String text = "x".repeat(10000);
+
+            for (int id = 1; id <= 2000; id++) {
+                events.publish(MessageEventService.CREATED, new Message(id, 9999, text, 1669947792L));
+            }
+            events.publish(MessageEventService.CREATED, new Message(2001, 9999, "last", 1669947792L));
+
+            String line;
+            do {
+                line = next(lines);
+            } while (!line.contains("\"last\""));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (events.getSubscriberCount() > 1 && System.nanoTime() < deadline) {
+                Thread.sleep(100);
+            }
+            Assertions.assertEquals(1, events.getSubscriberCount(), "Expected the stream that is not read to be dropped");
+        }
+    }
+}
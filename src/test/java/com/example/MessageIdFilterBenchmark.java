@@ -0,0 +1,96 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.service.MessageService;
+import com.example.service.SyntheticDataService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * A scraper walking the id space: synthetic messages are loaded, then random ids are looked up and deleted, most of
+ * them past the highest id that was handed out, with the message id filter turned on and off. The second-level cache
+ * is turned off so every lookup that gets past the filter has to go to the database. The number of JDBC statements
+ * comes from Hibernate's statistics, the latencies are per call.
+ *
+ * Run with `mvn -Pbench test -Dtest=MessageIdFilterBenchmark`, the number of messages, the number of lookups and the
+ * share of them that are for ids that exist can be changed with -Dbench.messages, -Dbench.reads and -Dbench.hits.
+ */
+public class MessageIdFilterBenchmark {
+    static final int MESSAGES = Integer.getInteger("bench.messages", 200_000);
+    static final int READS = Integer.getInteger("bench.reads", 50_000);
+    static final double HITS = Double.parseDouble(System.getProperty("bench.hits", "0.1"));
+
+    @Test
+    public void filterOnVersusOff() throws Exception {
+        String on = run("on", "--app.messages.id-filter.enabled=true");
+        String off = run("off", "--app.messages.id-filter.enabled=false");
+
+        System.out.println(String.format("%,d messages, %,d lookups and deletes, %.0f%% of them for ids that exist",
+                MESSAGES, READS, HITS * 100));
+        System.out.println(on);
+        System.out.println(off);
+    }
+
+    private String run(String name, String extraArg) throws Exception {
+        ConfigurableApplicationContext app = SpringApplication.run(SocialMediaApp.class, new String[] {
+                "--server.port=0", "--app.cache.enabled=false", "--app.stats.rebuild-interval-ms=3600000",
+                "--spring.jpa.properties.hibernate.generate_statistics=true", extraArg});
+
+        try {
+            app.getBean(SyntheticDataService.class).generate(Math.max(1, MESSAGES / 100), MESSAGES, 42);
+            MessageService messageService = app.getBean(MessageService.class);
+            Statistics statistics = app.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+            Random random = new Random(7);
+            int highestId = MESSAGES + MESSAGES / 100;
+            long[] byId = new long[READS];
+            long[] delete = new long[READS];
+
+            for (int i = 0; i < READS / 4; i++) { // warm up
+                messageService.getMessageById(randomId(random, highestId));
+            }
+
+            statistics.clear();
+
+            for (int i = 0; i < READS; i++) {
+                int id = randomId(random, highestId);
+                long started = System.nanoTime();
+                messageService.getMessageById(id);
+                long read = System.nanoTime();
+                messageService.deleteMessageById(random.nextDouble() < HITS ? id : highestId + 1 + i);
+                byId[i] = read - started;
+                delete[i] = System.nanoTime() - read;
+            }
+
+            long statements = statistics.getPrepareStatementCount();
+            MeterRegistry meterRegistry = app.getBean(MeterRegistry.class);
+            double falsePositiveRate = meterRegistry.find("app.messages.id-filter.false-positive-rate").gauge().value();
+            return String.format("id filter %-3s statements=%,7d  false positive rate %.4f  %s  %s", name, statements,
+                    falsePositiveRate, percentiles("by id", byId), percentiles("delete", delete));
+        } finally {
+            SpringApplication.exit(app);
+        }
+    }
+
+    /**
+     * @return An id that exists `bench.hits` of the time, otherwise one past the highest id.
+     */
+    private static int randomId(Random random, int highestId) {
+        return random.nextDouble() < HITS ? 1 + random.nextInt(highestId) : highestId + 1 + random.nextInt(10_000_000);
+    }
+
+    private String percentiles(String name, long[] nanos) {
+        Arrays.sort(nanos);
+        return String.format("%s p50 %,7.1f us p99 %,7.1f us", name, nanos[nanos.length / 2] / 1e3,
+                nanos[(int) (nanos.length * 0.99)] / 1e3);
+    }
+}
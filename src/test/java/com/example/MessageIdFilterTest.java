@@ -0,0 +1,111 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+public class MessageIdFilterTest {
+    ConfigurableApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper for
+     * interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+    }
+
+    private double lookups(String result) {
+        return app.getBean(MeterRegistry.class).get("app.messages.id-filter.lookups").tag("result", result).counter()
+                .count();
+    }
+
+    /**
+     * Getting, deleting and patching a message id that was never used
+     *
+     * Expected Response:
+     *  The same empty responses as always, and the filter turned every one of them away
+     */
+    @Test
+    public void missingIdsAreTurnedAway() throws IOException, InterruptedException {
+        HttpResponse<String> response = send(request("/messages/123456"));
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+        Assertions.assertEquals("", response.body());
+
+        response = send(request("/messages/123456").DELETE());
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+        Assertions.assertEquals("", response.body());
+
+        response = send(request("/messages/123456").method("PATCH",
+                HttpRequest.BodyPublishers.ofString("{\"messageText\": \"new text\"}"))
+                .header("Content-Type", "application/json"));
+        Assertions.assertEquals(400, response.statusCode(), "Expected Status Code 400 - Actual Code was: " + response.statusCode());
+
+        Assertions.assertEquals(3, lookups("absent"));
+        Assertions.assertEquals(0, lookups("false-positive"));
+    }
+
+    /**
+     * Posting a message, getting it, deleting it and getting it again
+     *
+     * Expected Response:
+     *  The new message is found, and once it is deleted the filter turns its id away
+     */
+    @Test
+    public void createdMessagesAreFoundAndDeletedOnesAreNot() throws IOException, InterruptedException {
+        HttpResponse<String> created = send(request("/messages")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"postedBy\":9999,\"messageText\":\"filtered\",\"timePostedEpoch\":1669947792}"))
+                .header("Content-Type", "application/json"));
+        Assertions.assertEquals(200, created.statusCode(), "Expected Status Code 200 - Actual Code was: " + created.statusCode());
+        Message message = objectMapper.readValue(created.body(), Message.class);
+
+        HttpResponse<String> response = send(request("/messages/" + message.getMessageId()));
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+        Assertions.assertEquals(message, objectMapper.readValue(response.body(), Message.class));
+
+        response = send(request("/messages/" + message.getMessageId()).DELETE());
+        Assertions.assertEquals("1", response.body());
+
+        double absent = lookups("absent");
+        response = send(request("/messages/" + message.getMessageId()));
+        Assertions.assertEquals("", response.body());
+        Assertions.assertEquals(absent + 1, lookups("absent"));
+    }
+}
@@ -0,0 +1,139 @@
+package com.example;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.config.StatementCountingFilter;
+import com.example.repository.MessageStore;
+import com.example.service.SyntheticDataService;
+
+/**
+ * Compares rendering a list of messages with one `GET /messages/{messageId}` per message against one
+ * `GET /messages?ids=...`.
+ *
+ * A render asks for -Dbench.ids (50) random ids out of -Dbench.messages (100,000) synthetic messages, and one in ten
+ * of the ids does not exist. Each way does -Dbench.renders (2,000) renders one after the other, after a quarter as
+ * many to warm up, with the second-level cache on and off. Every way gets an application of its own, so neither
+ * finds the messages the other one cached. The statements are read from the X-SQL-Statements header.
+ *
+ * Run with `mvn -Pbench test -Dtest=MultiGetBenchmark`.
+ */
+public class MultiGetBenchmark {
+    static final int MESSAGES = Integer.getInteger("bench.messages", 100_000);
+    static final int IDS = Integer.getInteger("bench.ids", 50);
+    static final int RENDERS = Integer.getInteger("bench.renders", 2_000);
+
+    @Test
+    public void oneByOneVersusMultiGet() throws Exception {
+        run(false, false); // warm-up, so the first run is not the one paying for the JIT
+        List<String> lines = new ArrayList<>();
+
+        for (boolean cache : new boolean[] {true, false}) {
+            lines.add(run(cache, false));
+            lines.add(run(cache, true));
+        }
+
+        System.out.println(String.format("%,d messages, %d ids per render, %,d renders", MESSAGES, IDS, RENDERS));
+        lines.forEach(System.out::println);
+    }
+
+    private String run(boolean cache, boolean multiGet) throws Exception {
+        ConfigurableApplicationContext app = SpringApplication.run(SocialMediaApp.class, new String[] {
+                "--server.port=0", "--app.sql.instrumentation.enabled=true", "--app.sql.debug-header=true",
+                "--app.cache.enabled=" + cache,
+                "--app.stats.rebuild-interval-ms=3600000"});
+
+        try {
+            app.getBean(SyntheticDataService.class).generate(Math.max(1, MESSAGES / 100), MESSAGES, 42);
+            int[] messageIds = new int[MESSAGES + 3];
+            int[] count = new int[1];
+            app.getBean(MessageStore.class).forEachMessage(message -> messageIds[count[0]++] = message.getMessageId());
+
+            String base = "http://localhost:" + ((WebServerApplicationContext) app).getWebServer().getPort();
+            HttpClient client = HttpClient.newHttpClient();
+            String name = (cache ? "cache on " : "cache off") + (multiGet ? "  multi-get " : "  one by one");
+
+            if (multiGet) {
+                return time(name, client, random -> List.of(base + "/messages?ids=" + IntStream.of(
+                        ids(random, messageIds, count[0])).mapToObj(Integer::toString).collect(Collectors.joining(","))));
+            }
+
+            return time(name, client, random -> IntStream.of(ids(random, messageIds, count[0]))
+                    .mapToObj(id -> base + "/messages/" + id).collect(Collectors.toList()));
+        } finally {
+            SpringApplication.exit(app);
+        }
+    }
+
+    private static int[] ids(Random random, int[] messageIds, int count) {
+        int[] ids = new int[IDS];
+
+        for (int i = 0; i < IDS; i++) {
+            ids[i] = random.nextInt(10) == 0 ? 1_000_000_000 + random.nextInt(1_000_000) // deleted, or never there
+                    : messageIds[random.nextInt(count)];
+        }
+
+        return ids;
+    }
+
+    /**
+     * Sends the requests of a render one after the other, and reports the time per render and the statements.
+     */
+    private String time(String name, HttpClient client, Render render) throws Exception {
+        Random random = new Random(7);
+
+        for (int i = 0; i < RENDERS / 4; i++) {
+            send(client, render.urls(random));
+        }
+
+        long[] nanos = new long[RENDERS];
+        long statements = 0;
+
+        for (int i = 0; i < RENDERS; i++) {
+            List<String> urls = render.urls(random);
+            long started = System.nanoTime();
+            statements += send(client, urls);
+            nanos[i] = System.nanoTime() - started;
+        }
+
+        Arrays.sort(nanos);
+        return String.format("%s  p50 %7.2f ms  p99 %7.2f ms  %6.1f requests and %6.1f statements per render", name,
+                nanos[RENDERS / 2] / 1e6, nanos[(int) (RENDERS * 0.99)] / 1e6,
+                (double) render.urls(new Random(7)).size(), statements / (double) RENDERS);
+    }
+
+    private static long send(HttpClient client, List<String> urls) throws Exception {
+        long statements = 0;
+
+        for (String url : urls) {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder().uri(URI.create(url)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException(url + " answered " + response.statusCode());
+            }
+
+            statements += Long.parseLong(response.headers().firstValue(StatementCountingFilter.STATEMENTS_HEADER)
+                    .orElse("0"));
+        }
+
+        return statements;
+    }
+
+    private interface Render {
+        List<String> urls(Random random);
+    }
+}
@@ -0,0 +1,99 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.config.StatementCountingFilter;
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class MultiGetMessagesTest {
+    ConfigurableApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with the SQL statement debug header on, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--app.sql.instrumentation.enabled=true", "--app.sql.debug-header=true"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static long statements(HttpResponse<String> response) {
+        return Long.parseLong(response.headers().firstValue(StatementCountingFilter.STATEMENTS_HEADER).get());
+    }
+
+    /**
+     * Sending GET localhost:8080/messages?ids=9999,5050,9996,9997,9999 after message 9997 was read on its own
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages in the order of the ids, null for 5050 and 9999 twice, from one statement for the
+     *  ids that were not cached. Asking again runs no statements, the ones that were looked up are cached now.
+     */
+    @Test
+    public void messagesComeBackInRequestOrderWithNulls() throws IOException, InterruptedException {
+        Assertions.assertEquals(1, statements(get("/messages/9997")));
+
+        HttpResponse<String> response = get("/messages?ids=9999,5050,9996,9997,9999");
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+        Message first = new Message(9999, 9999, "test message 1", 1669947792L);
+        List<Message> expectedResult = Arrays.asList(first, null, new Message(9996, 9996, "test message 3", 1669947792L),
+                new Message(9997, 9997, "test message 2", 1669947792L), first);
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(expectedResult, actualResult, "Expected="+expectedResult + ", Actual="+actualResult);
+        Assertions.assertEquals(1, statements(response));
+
+        Assertions.assertEquals(0, statements(get("/messages?ids=9997,9996,9999")));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages with no ids, and with more ids than app.messages.max-ids allows
+     *
+     * Expected Response:
+     *  An empty list for no ids, and Status Code 400 for too many
+     */
+    @Test
+    public void tooManyIdsIsAClientError() throws IOException, InterruptedException {
+        HttpResponse<String> none = get("/messages?ids=");
+        Assertions.assertEquals(200, none.statusCode(), "Expected Status Code 200 - Actual Code was: " + none.statusCode());
+        Assertions.assertEquals("[]", none.body());
+
+        String ids = IntStream.rangeClosed(1, 501).mapToObj(Integer::toString).collect(Collectors.joining(","));
+        HttpResponse<String> tooMany = get("/messages?ids=" + ids);
+        Assertions.assertEquals(400, tooMany.statusCode(), "Expected Status Code 400 - Actual Code was: " + tooMany.statusCode());
+    }
+}
@@ -0,0 +1,129 @@
+package com.example;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.entity.Message;
+import com.example.repository.MessageStore;
+import com.example.service.MessageService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Compares patching straight away with coalescing the patches, under autosave load.
+ *
+ * Each of -Dbench.editors (50) editors owns one message and sends `PATCH /messages/{messageId}` with a new draft every
+ * -Dbench.interval-ms (50), for -Dbench.seconds (15). The store writes are the patches when nothing is coalesced, and
+ * `app.messages.patch-coalescing.writes` when it is. Once the load stops and the last window has closed, every
+ * message in the store is checked against the last draft its editor sent.
+ *
+ * Run with `mvn -Pbench test -Dtest=PatchCoalescingBenchmark`.
+ */
+public class PatchCoalescingBenchmark {
+    static final int EDITORS = Integer.getInteger("bench.editors", 50);
+    static final long INTERVAL_MILLIS = Long.getLong("bench.interval-ms", 50);
+    static final int SECONDS = Integer.getInteger("bench.seconds", 15);
+
+    @Test
+    public void coalescedVersusStraightAway() throws Exception {
+        run(0); // warm-up, so the first run is not the one paying for the JIT
+        List<String> lines = new ArrayList<>();
+
+        for (long window : new long[] {0, 250, 1000}) {
+            lines.add(run(window));
+        }
+
+        System.out.println(String.format("%d editors, a patch every %d ms each, %d s", EDITORS, INTERVAL_MILLIS,
+                SECONDS));
+        lines.forEach(System.out::println);
+    }
+
+    private String run(long windowMillis) throws Exception {
+        ConfigurableApplicationContext app = SpringApplication.run(SocialMediaApp.class, new String[] {
+                "--server.port=0", "--app.messages.patch-coalescing.window-ms=" + windowMillis});
+        ExecutorService editors = Executors.newFixedThreadPool(EDITORS);
+
+        try {
+            int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+            MessageService messageService = app.getBean(MessageService.class);
+            int[] ids = new int[EDITORS];
+            String[] lastSent = new String[EDITORS];
+
+            for (int i = 0; i < EDITORS; i++) {
+                ids[i] = messageService.addMessage(new Message(9999, "draft", 1669947793L)).getMessageId();
+            }
+
+            HttpClient client = HttpClient.newHttpClient();
+            ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(SECONDS);
+            List<Future<?>> running = new ArrayList<>();
+
+            for (int i = 0; i < EDITORS; i++) {
+                int editor = i;
+                running.add(editors.submit(() -> {
+                    for (int draft = 1; System.nanoTime() < end; draft++) {
+                        String text = "draft " + draft + " of editor " + editor;
+                        long started = System.nanoTime();
+                        HttpResponse<String> response = client.send(HttpRequest.newBuilder()
+                                .uri(URI.create("http://localhost:" + port + "/messages/" + ids[editor]))
+                                .method("PATCH", HttpRequest.BodyPublishers.ofString(
+                                        "{\"messageText\": \"" + text + "\"}"))
+                                .header("Content-Type", "application/json")
+                                .build(), HttpResponse.BodyHandlers.ofString());
+                        latencies.add(System.nanoTime() - started);
+
+                        if (response.statusCode() != 200) {
+                            throw new IllegalStateException("PATCH answered " + response.statusCode());
+                        }
+
+                        lastSent[editor] = text;
+                        Thread.sleep(INTERVAL_MILLIS);
+                    }
+
+                    return null;
+                }));
+            }
+
+            for (Future<?> editor : running) {
+                editor.get();
+            }
+
+            Thread.sleep(windowMillis * 2 + 100); // the last windows close
+            MessageStore store = app.getBean(MessageStore.class);
+            int stale = 0;
+
+            for (int i = 0; i < EDITORS; i++) {
+                if (!lastSent[i].equals(store.findById(ids[i]).get().getMessageText())) {
+                    stale++;
+                }
+            }
+
+            long patches = latencies.size();
+            double writes = windowMillis == 0 ? patches
+                    : app.getBean(MeterRegistry.class).get("app.messages.patch-coalescing.writes").counter().count();
+            long[] nanos = latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(nanos);
+            return String.format("window %4d ms  %,7d patches  %,7.0f writes (%5.1fx fewer)  p50 %6.2f ms  p99 %6.2f ms"
+                    + "  %d stale", windowMillis, patches, writes, patches / writes, nanos[nanos.length / 2] / 1e6,
+                    nanos[(int) (nanos.length * 0.99)] / 1e6, stale);
+        } finally {
+            editors.shutdownNow();
+            SpringApplication.exit(app);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.entity.Message;
+import com.example.repository.MessageStore;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+public class PatchCoalescingTest {
+    ConfigurableApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with patches held for 500 ms, and create a new webClient
+     * and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--app.messages.patch-coalescing.window-ms=500"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(20);
+        }
+
+        Assertions.assertTrue(condition.getAsBoolean());
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> patch(int messageId, String text) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + messageId))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"" + text + "\"}"))
+                .header("Content-Type", "application/json")
+                .build());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build());
+    }
+
+    private double counted(String name) {
+        return app.getBean(MeterRegistry.class).get(name).counter().count();
+    }
+
+    /**
+     * Patching message 9999 ten times in a row
+     *
+     * Expected Response:
+     *  Every patch is answered with a 200 and the reads see each one straight away, but only the last text is written,
+     *  once, when the window closes
+     */
+    @Test
+    public void onlyTheLastPatchInTheWindowIsWritten() throws IOException, InterruptedException {
+        for (int i = 1; i <= 10; i++) {
+            HttpResponse<String> response = patch(9999, "draft " + i);
+            Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+            Message read = objectMapper.readValue(get("/messages/9999").body(), Message.class);
+            Assertions.assertEquals(new Message(9999, 9999, "draft " + i, 1669947792L), read);
+        }
+
+        List<Message> byAccount = objectMapper.readValue(get("/accounts/9999/messages").body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(List.of(new Message(9999, 9999, "draft 10", 1669947792L)), byAccount);
+        Assertions.assertEquals(10, counted("app.messages.patch-coalescing.patches"));
+        Assertions.assertEquals("test message 1", app.getBean(MessageStore.class).findById(9999).get().getMessageText());
+
+        await(() -> counted("app.messages.patch-coalescing.writes") == 1);
+        Assertions.assertEquals("draft 10", app.getBean(MessageStore.class).findById(9999).get().getMessageText());
+    }
+
+    /**
+     * Patching a message that does not exist with valid text, an existing one with blank text, and deleting a message
+     * whose patch is still held
+     *
+     * Expected Response:
+     *  The bad patches get a 400 straight away, and the deleted message stays deleted after the window closes
+     */
+    @Test
+    public void patchesAreCheckedStraightAwayAndDeletesWin() throws IOException, InterruptedException {
+        Assertions.assertEquals(400, patch(5050, "nobody").statusCode());
+        Assertions.assertEquals(400, patch(9999, "").statusCode());
+        Assertions.assertEquals(200, patch(9997, "held").statusCode());
+
+        HttpResponse<String> deleted = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9997"))
+                .DELETE()
+                .build());
+        Assertions.assertEquals(200, deleted.statusCode(), "Expected Status Code 200 - Actual Code was: " + deleted.statusCode());
+        Assertions.assertEquals("", get("/messages/9997").body());
+
+        Thread.sleep(1000);
+        Assertions.assertEquals(Optional.empty(), app.getBean(MessageStore.class).findById(9997));
+        Assertions.assertEquals(0, counted("app.messages.patch-coalescing.writes"));
+    }
+}
@@ -0,0 +1,131 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class RetrieveMessagesByTimeRangeTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Message> getMessages(String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = get(path);
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?since=1669947792&until=1669947793 
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the three seeded messages, ordered by time and then id
+     */
+    @Test
+    public void getMessagesInTimeRange() throws IOException, InterruptedException {
+        List<Message> expectedResult = new ArrayList<Message>();
+        expectedResult.add(new Message(9996, 9996, "test message 3", 1669947792L));
+        expectedResult.add(new Message(9997, 9997, "test message 2", 1669947792L));
+        expectedResult.add(new Message(9999, 9999, "test message 1", 1669947792L));
+        List<Message> actualResult = getMessages("/messages?since=1669947792&until=1669947793");
+        Assertions.assertEquals(expectedResult, actualResult, "Expected="+expectedResult + ", Actual="+actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?since=1669947792&page=1&size=2 
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the second page, which only has the last seeded message
+     */
+    @Test
+    public void getSecondPageOfTimeRange() throws IOException, InterruptedException {
+        List<Message> expectedResult = new ArrayList<Message>();
+        expectedResult.add(new Message(9999, 9999, "test message 1", 1669947792L));
+        List<Message> actualResult = getMessages("/messages?since=1669947792&page=1&size=2");
+        Assertions.assertEquals(expectedResult, actualResult, "Expected="+expectedResult + ", Actual="+actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?until=1669947792 (before every seeded message)
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: an empty list
+     */
+    @Test
+    public void getEmptyTimeRange() throws IOException, InterruptedException {
+        List<Message> actualResult = getMessages("/messages?until=1669947792");
+        Assertions.assertTrue(actualResult.isEmpty(), "Expected an empty list, but was " + actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/9999/messages?since=1669947792&until=1669947793
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: only the message posted by account 9999
+     */
+    @Test
+    public void getAccountMessagesInTimeRange() throws IOException, InterruptedException {
+        List<Message> expectedResult = new ArrayList<Message>();
+        expectedResult.add(new Message(9999, 9999, "test message 1", 1669947792L));
+        List<Message> actualResult = getMessages("/accounts/9999/messages?since=1669947792&until=1669947793");
+        Assertions.assertEquals(expectedResult, actualResult, "Expected="+expectedResult + ", Actual="+actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?since=0&size=0
+     * 
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getTimeRangeInvalidPage() throws IOException, InterruptedException {
+        int status = get("/messages?since=0&size=0").statusCode();
+        Assertions.assertEquals(400, status, "Expected Status Code 400 - Actual Code was: " + status);
+    }
+}
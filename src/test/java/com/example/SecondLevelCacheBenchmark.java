@@ -0,0 +1,118 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.entity.Account;
+import com.example.entity.Message;
+import com.example.service.AccountService;
+import com.example.service.MessageService;
+
+/**
+ * Measures read throughput through AccountService and MessageService with the Hibernate second-level and query cache
+ * turned on and turned off.
+ *
+ * Every operation is one login (findAccountByUsername), one message by id and one list of an account's messages
+ * (findMessagesByPostedBy), picked at random from the accounts and messages that are loaded first.
+ *
+ * Run with `mvn -Pbench test -Dtest=SecondLevelCacheBenchmark`, the length and number of reader threads can be
+ * changed with -Dbench.seconds and -Dbench.threads.
+ */
+public class SecondLevelCacheBenchmark {
+    static final int SECONDS = Integer.getInteger("bench.seconds", 10);
+    static final int THREADS = Integer.getInteger("bench.threads", 4);
+    static final int ACCOUNTS = 100;
+    static final int MESSAGES_PER_ACCOUNT = 20;
+
+    @Test
+    public void cacheOnVersusOff() throws Exception {
+        String on = run("cache on", new String[] {"--spring.jpa.properties.hibernate.generate_statistics=true"});
+        String off = run("cache off", new String[] {"--app.cache.enabled=false",
+                "--spring.jpa.properties.hibernate.generate_statistics=true"});
+
+        System.out.println(on);
+        System.out.println(off);
+    }
+
+    private String run(String name, String[] args) throws Exception {
+        ConfigurableApplicationContext app = SpringApplication.run(SocialMediaApp.class, args);
+
+        try {
+            AccountService accountService = app.getBean(AccountService.class);
+            MessageService messageService = app.getBean(MessageService.class);
+            List<Account> accounts = new ArrayList<>();
+            List<Integer> messageIds = new ArrayList<>();
+
+            for (int i = 0; i < ACCOUNTS; i++) {
+                Account account = accountService.register(new Account("reader" + i, "password"));
+                accounts.add(account);
+
+                for (int j = 0; j < MESSAGES_PER_ACCOUNT; j++) {
+                    messageIds.add(messageService.addMessage(
+                            new Message(account.getAccountId(), "cached message " + j, 1669947792L + j)).getMessageId());
+                }
+            }
+
+            run(accountService, messageService, accounts, messageIds, 2); // warm up
+            Statistics statistics = app.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+            statistics.clear();
+            long operations = run(accountService, messageService, accounts, messageIds, SECONDS);
+
+            return String.format("%-10s %,10.0f ops/s (%d threads, %d s) statements=%,d 2nd-level hits=%,d "
+                    + "query cache hits=%,d", name, operations / (double) SECONDS, THREADS, SECONDS,
+                    statistics.getPrepareStatementCount(), statistics.getSecondLevelCacheHitCount(),
+                    statistics.getQueryCacheHitCount());
+        } finally {
+            SpringApplication.exit(app);
+        }
+    }
+
+    /**
+     * @return The number of operations that were done before the time ran out.
+     */
+    private long run(AccountService accountService, MessageService messageService, List<Account> accounts,
+            List<Integer> messageIds, int seconds) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Future<Long>> workers = new ArrayList<>();
+
+        for (int i = 0; i < THREADS; i++) {
+            workers.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long operations = 0;
+
+                while (System.nanoTime() < deadline) {
+                    Account account = accounts.get(random.nextInt(accounts.size()));
+                    accountService.login(new Account(account.getUsername(), account.getPassword()));
+                    messageService.getMessageById(messageIds.get(random.nextInt(messageIds.size())));
+                    messageService.getByAccountId(account.getAccountId());
+                    operations++;
+                }
+
+                return operations;
+            }));
+        }
+
+        long total = 0;
+
+        for (Future<Long> worker : workers) {
+            total += worker.get();
+        }
+
+        executor.shutdown();
+        return total;
+    }
+}
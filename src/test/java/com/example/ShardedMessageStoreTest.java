@@ -0,0 +1,112 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.entity.Message;
+import com.example.repository.MessageStore;
+import com.example.repository.ShardedMessageStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ShardedMessageStoreTest {
+    ConfigurableApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    @TempDir
+    Path shardDir;
+
+    /**
+     * Before every test create a new webClient and ObjectMapper for interacting locally on the web.
+     * The app itself is started by each test since it needs to be restarted in the middle of the test.
+     */
+    @BeforeEach
+    public void setUp() {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        if (app != null && app.isActive()) {
+            SpringApplication.exit(app);
+        }
+    }
+
+    private ConfigurableApplicationContext startShardedApp() throws InterruptedException {
+        String[] args = new String[] {"--app.messages.store=sharded",
+                "--app.messages.shards.url=jdbc:h2:file:" + shardDir.resolve("message-shard-%d")};
+        ConfigurableApplicationContext started = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+        return started;
+    }
+
+    private Message post(String text) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"postedBy\":9999,\"messageText\":\"" + text + "\",\"timePostedEpoch\":1669947793}"))
+                .header("Content-Type", "application/json")
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    /**
+     * Posting a message to file-backed shards, restarting the app (the in memory primary database and its sequence
+     * start over) and posting another one
+     *
+     * Expected Response:
+     *  The second message gets an id past every id in the shards, and the first message is still there untouched
+     */
+    @Test
+    public void idsStayUniqueAcrossRestarts() throws IOException, InterruptedException {
+        app = startShardedApp();
+        Assertions.assertTrue(app.getBean(MessageStore.class) instanceof ShardedMessageStore);
+        Message first = post("before the restart");
+        SpringApplication.exit(app);
+
+        app = startShardedApp();
+        Message second = post("after the restart");
+        Assertions.assertTrue(second.getMessageId() > 9999, "Expected an id past 9999 - Actual id was: "
+                + second.getMessageId());
+        Assertions.assertEquals(Optional.of(first), app.getBean(MessageStore.class).findById(first.getMessageId()));
+    }
+
+    /**
+     * Turning the sequence back so the next new message gets the id of message 9999, then posting a message
+     *
+     * Expected Response:
+     *  The post fails instead of overwriting message 9999
+     */
+    @Test
+    public void aReusedIdFailsInsteadOfOverwriting() throws IOException, InterruptedException {
+        app = startShardedApp();
+        app.getBean(JdbcTemplate.class).execute("alter sequence hibernate_sequence restart with 9999");
+
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"postedBy\":9999,\"messageText\":\"overwritten\",\"timePostedEpoch\":1669947793}"))
+                .header("Content-Type", "application/json")
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertNotEquals(200, response.statusCode(), "Expected the post to fail - Actual Code was: " + response.statusCode());
+        Assertions.assertEquals(Optional.of(new Message(9999, 9999, "test message 1", 1669947792L)),
+                app.getBean(MessageStore.class).findById(9999));
+    }
+}
@@ -0,0 +1,114 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.entity.Account;
+import com.example.entity.Message;
+import com.example.service.AccountService;
+import com.example.service.MessageService;
+
+/**
+ * A thundering herd: every round, `bench.threads` threads are let go at the same moment and all ask for the same
+ * viral message by id and then the messages of the account that posted it, with single flight turned on and off.
+ * The second-level cache is turned off so every lookup that is not shared has to go to the database. The number of
+ * JDBC statements comes from Hibernate's statistics, the latencies are per call.
+ *
+ * Run with `mvn -Pbench test -Dtest=SingleFlightBenchmark`, the number of threads, rounds and messages posted by the
+ * viral account can be changed with -Dbench.threads, -Dbench.rounds and -Dbench.messages.
+ */
+public class SingleFlightBenchmark {
+    static final int THREADS = Integer.getInteger("bench.threads", 200);
+    static final int ROUNDS = Integer.getInteger("bench.rounds", 50);
+    static final int MESSAGES = Integer.getInteger("bench.messages", 2_000);
+
+    @Test
+    public void singleFlightOnVersusOff() throws Exception {
+        String on = run("on", new String[] {"--app.singleflight.enabled=true"});
+        String off = run("off", new String[] {"--app.singleflight.enabled=false"});
+
+        System.out.println(String.format("%d threads, %d rounds, the viral account has %,d messages", THREADS, ROUNDS,
+                MESSAGES));
+        System.out.println(on);
+        System.out.println(off);
+    }
+
+    private String run(String name, String[] extraArgs) throws Exception {
+        List<String> args = new ArrayList<>(Arrays.asList("--server.port=0", "--app.cache.enabled=false",
+                "--spring.jpa.properties.hibernate.generate_statistics=true"));
+        args.addAll(Arrays.asList(extraArgs));
+        ConfigurableApplicationContext app = SpringApplication.run(SocialMediaApp.class, args.toArray(new String[0]));
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            MessageService messageService = app.getBean(MessageService.class);
+            Account viral = app.getBean(AccountService.class).register(new Account("viral", "password"));
+            int viralMessage = 0;
+
+            for (int i = 0; i < MESSAGES; i++) {
+                viralMessage = messageService.addMessage(
+                        new Message(viral.getAccountId(), "viral message " + i, 1669947792L + i)).getMessageId();
+            }
+
+            int messageId = viralMessage;
+            Statistics statistics = app.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+            statistics.clear();
+            CyclicBarrier start = new CyclicBarrier(THREADS);
+            List<Future<long[][]>> workers = new ArrayList<>();
+
+            for (int t = 0; t < THREADS; t++) {
+                workers.add(executor.submit(() -> {
+                    long[][] nanos = new long[2][ROUNDS];
+
+                    for (int round = 0; round < ROUNDS; round++) {
+                        start.await();
+                        long started = System.nanoTime();
+                        messageService.getMessageById(messageId);
+                        long byId = System.nanoTime();
+                        messageService.getByAccountId(viral.getAccountId());
+                        nanos[0][round] = byId - started;
+                        nanos[1][round] = System.nanoTime() - byId;
+                    }
+
+                    return nanos;
+                }));
+            }
+
+            long[] byId = new long[THREADS * ROUNDS];
+            long[] byAccount = new long[THREADS * ROUNDS];
+
+            for (int t = 0; t < THREADS; t++) {
+                long[][] nanos = workers.get(t).get();
+                System.arraycopy(nanos[0], 0, byId, t * ROUNDS, ROUNDS);
+                System.arraycopy(nanos[1], 0, byAccount, t * ROUNDS, ROUNDS);
+            }
+
+            long statements = statistics.getPrepareStatementCount();
+            return String.format("single flight %-3s statements=%,7d (%.2f per request)  %s  %s", name, statements,
+                    statements / (2.0 * THREADS * ROUNDS), percentiles("by id", byId),
+                    percentiles("by account", byAccount));
+        } finally {
+            executor.shutdownNow();
+            SpringApplication.exit(app);
+        }
+    }
+
+    private String percentiles(String name, long[] nanos) {
+        Arrays.sort(nanos);
+        return String.format("%s p50 %,8.2f ms p99 %,8.2f ms", name, nanos[nanos.length / 2] / 1e6,
+                nanos[(int) (nanos.length * 0.99)] / 1e6);
+    }
+}
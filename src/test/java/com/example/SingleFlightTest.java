@@ -0,0 +1,159 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.service.SingleFlight;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class SingleFlightTest {
+    static final int CALLERS = 8;
+
+    SimpleMeterRegistry meterRegistry;
+    ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        executor = Executors.newFixedThreadPool(CALLERS + 1);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private double calls(String outcome) {
+        return meterRegistry.get("app.singleflight.calls").tag("outcome", outcome).counter().count();
+    }
+
+    /**
+     * Waits until `count` callers are waiting for the leader.
+     */
+    private void awaitShared(int count) throws InterruptedException {
+        for (int i = 0; i < 500 && calls("shared") < count; i++) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(count, calls("shared"), "Expected " + count + " callers to be waiting");
+    }
+
+    /**
+     * Looking up the same key from several threads while the first lookup is still running
+     *
+     * Expected Result:
+     *  The lookup runs once and every caller gets the same object
+     */
+    @Test
+    public void concurrentLookupsShareOneCall() throws Exception {
+        SingleFlight<Integer, Object> singleFlight = new SingleFlight<>("test", 10_000, meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger lookups = new AtomicInteger();
+        Object result = new Object();
+        List<Future<Object>> callers = new ArrayList<>();
+
+        callers.add(executor.submit(() -> singleFlight.load(1, () -> {
+            lookups.incrementAndGet();
+            await(release);
+            return result;
+        })));
+        while (singleFlight.inFlight() == 0) {
+            Thread.sleep(1);
+        }
+        for (int i = 0; i < CALLERS; i++) {
+            callers.add(executor.submit(() -> singleFlight.load(1, () -> {
+                lookups.incrementAndGet();
+                return new Object();
+            })));
+        }
+        awaitShared(CALLERS);
+        release.countDown();
+
+        for (Future<Object> caller : callers) {
+            Assertions.assertSame(result, caller.get(5, TimeUnit.SECONDS));
+        }
+        Assertions.assertEquals(1, lookups.get());
+        Assertions.assertEquals(0, singleFlight.inFlight());
+    }
+
+    /**
+     * The shared lookup throws
+     *
+     * Expected Result:
+     *  Every caller that was waiting for it gets the same exception
+     */
+    @Test
+    public void errorsReachEveryWaitingCaller() throws Exception {
+        SingleFlight<Integer, Object> singleFlight = new SingleFlight<>("test", 10_000, meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("database is down");
+        List<Future<Object>> callers = new ArrayList<>();
+
+        callers.add(executor.submit(() -> singleFlight.load(1, () -> {
+            await(release);
+            throw failure;
+        })));
+        while (singleFlight.inFlight() == 0) {
+            Thread.sleep(1);
+        }
+        for (int i = 0; i < CALLERS; i++) {
+            callers.add(executor.submit(() -> singleFlight.load(1, Object::new)));
+        }
+        awaitShared(CALLERS);
+        release.countDown();
+
+        for (Future<Object> caller : callers) {
+            ExecutionException thrown = Assertions.assertThrows(ExecutionException.class,
+                    () -> caller.get(5, TimeUnit.SECONDS));
+            Assertions.assertSame(failure, thrown.getCause());
+        }
+    }
+
+    /**
+     * The shared lookup takes longer than the timeout, or the key was forgotten after a write
+     *
+     * Expected Result:
+     *  The caller stops waiting and runs its own lookup
+     */
+    @Test
+    public void slowOrForgottenLookupsAreNotShared() throws Exception {
+        SingleFlight<Integer, String> singleFlight = new SingleFlight<>("test", 50, meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> leader = executor.submit(() -> singleFlight.load(1, () -> {
+            await(release);
+            return "old";
+        }));
+        while (singleFlight.inFlight() == 0) {
+            Thread.sleep(1);
+        }
+
+        Assertions.assertEquals("own", singleFlight.load(1, () -> "own"));
+        Assertions.assertEquals(1, calls("timed-out"));
+
+        singleFlight.forget(1);
+        Assertions.assertEquals("new", singleFlight.load(1, () -> "new"));
+        release.countDown();
+        Assertions.assertEquals("old", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
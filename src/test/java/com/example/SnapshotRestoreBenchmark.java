@@ -0,0 +1,105 @@
+package com.example;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.service.SnapshotResult;
+import com.example.service.SnapshotService;
+import com.example.service.SyntheticDataService;
+
+/**
+ * Measures how long it takes to rebuild the database from a binary snapshot compared to replaying a `data.sql` style
+ * script of insert statements (with H2's RUNSCRIPT, one statement at a time). Both start from empty tables, the way a
+ * new environment would.
+ *
+ * The accounts and messages are made up by SyntheticDataService first.
+ *
+ * Run with `mvn -Pbench test -Dtest=SnapshotRestoreBenchmark`, the number of messages can be changed with
+ * -Dbench.messages (the default is 1,000,000). The rows are kept in H2's in memory database, 3,000,000 needs
+ * -DargLine=-Xmx4g and 10,000,000 needs more heap than that.
+ */
+public class SnapshotRestoreBenchmark {
+    static final int MESSAGES = Integer.getInteger("bench.messages", 1_000_000);
+    static final int ACCOUNTS = Math.max(1, MESSAGES / 100);
+
+    @Test
+    public void snapshotVersusSqlReplay() throws Exception {
+        Path dir = Files.createTempDirectory("snapshot-benchmark");
+        ConfigurableApplicationContext app = SpringApplication.run(SocialMediaApp.class, new String[] {
+                "--server.port=0", "--app.snapshot.dir=" + dir, "--app.stats.rebuild-interval-ms=3600000"});
+
+        try {
+            JdbcTemplate jdbcTemplate = app.getBean(JdbcTemplate.class);
+            SnapshotService snapshotService = app.getBean(SnapshotService.class);
+            app.getBean(SyntheticDataService.class).generate(ACCOUNTS, MESSAGES, 42);
+
+            SnapshotResult written = snapshotService.write("bench.bin");
+            double textBytes = jdbcTemplate.queryForObject("select avg(octet_length(messageText)) from message",
+                    Double.class);
+            Path script = dir.resolve("bench.sql");
+            long scriptStarted = System.nanoTime();
+            writeScript(jdbcTemplate, script);
+            long scriptMillis = (System.nanoTime() - scriptStarted) / 1_000_000;
+
+            empty(jdbcTemplate);
+            long replayStarted = System.nanoTime();
+            jdbcTemplate.execute("runscript from '" + script.toAbsolutePath() + "'");
+            long replayMillis = (System.nanoTime() - replayStarted) / 1_000_000;
+            long replayed = jdbcTemplate.queryForObject("select count(*) from message", Long.class);
+
+            empty(jdbcTemplate);
+            SnapshotResult restored = snapshotService.restore("bench.bin");
+            long restoredCount = jdbcTemplate.queryForObject("select count(*) from message", Long.class);
+
+            System.out.println(String.format("%,d accounts, %,d messages", ACCOUNTS, MESSAGES));
+            System.out.println(String.format("snapshot   write %,8d ms  %,14d bytes  restore %,8d ms  %,10.0f messages/s"
+                    + "  (%,d restored)", written.getMillis(), written.getBytes(), restored.getMillis(),
+                    restoredCount * 1000.0 / restored.getMillis(), restoredCount));
+            System.out.println(String.format("sql replay write %,8d ms  %,14d bytes  replay  %,8d ms  %,10.0f messages/s"
+                    + "  (%,d replayed)", scriptMillis, Files.size(script), replayMillis,
+                    replayed * 1000.0 / replayMillis, replayed));
+            System.out.println(String.format("per message: snapshot %.1f bytes, sql %.1f bytes, %.1f of them the text",
+                    (double) written.getBytes() / restoredCount, (double) Files.size(script) / replayed, textBytes));
+        } finally {
+            SpringApplication.exit(app);
+        }
+    }
+
+    private void empty(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.execute("truncate table message");
+        jdbcTemplate.update("delete from account");
+    }
+
+    /**
+     * Writes the same rows as `data.sql` would have them, one insert statement per row.
+     */
+    private void writeScript(JdbcTemplate jdbcTemplate, Path script) throws Exception {
+        try (BufferedWriter out = Files.newBufferedWriter(script)) {
+            jdbcTemplate.query("select accountId, username, password from account order by accountId", rs -> {
+                try {
+                    out.write("insert into account values (" + rs.getInt(1) + ", '" + rs.getString(2) + "', '"
+                            + rs.getString(3) + "');\n");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            jdbcTemplate.query("select messageId, postedBy, messageText, timePostedEpoch from message order by messageId",
+                    rs -> {
+                        try {
+                            out.write("insert into message values (" + rs.getInt(1) + ", " + rs.getInt(2) + ",'"
+                                    + rs.getString(3) + "'," + rs.getLong(4) + ");\n");
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Account;
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class SnapshotTest {
+    static final Path SNAPSHOT_DIR = Paths.get("target", "snapshot-test");
+
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with the snapshot handlers turned on, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--app.snapshot.admin-enabled=true", "--app.snapshot.dir=" + SNAPSHOT_DIR};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    private HttpResponse<String> post(String path, String json) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Message> getAllMessages() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    /**
+     * Taking a snapshot, adding a message and then restoring the snapshot
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  The message added after the snapshot is gone, the seeded messages are back, and a new account still gets an id
+     *  that is not in use
+     */
+    @Test
+    public void restoreReplacesEverythingAddedAfterTheSnapshot() throws IOException, InterruptedException {
+        HttpResponse<String> written = post("/admin/snapshots?name=before.bin", "");
+        Assertions.assertEquals(200, written.statusCode(), "Expected Status Code 200 - Actual Code was: " + written.statusCode());
+        Assertions.assertTrue(written.body().contains("\"messages\":3"), written.body());
+
+        post("/messages", "{\"postedBy\":9999,\"messageText\": \"after the snapshot\",\"timePostedEpoch\": 1669947800}");
+        Assertions.assertEquals(4, getAllMessages().size());
+
+        HttpResponse<String> restored = post("/admin/snapshots/before.bin/restore", "");
+        Assertions.assertEquals(200, restored.statusCode(), "Expected Status Code 200 - Actual Code was: " + restored.statusCode());
+
+        List<Message> messages = getAllMessages();
+        Assertions.assertEquals(3, messages.size());
+        Assertions.assertTrue(messages.contains(new Message(9999, 9999, "test message 1", 1669947792L)));
+
+        HttpResponse<String> registered = post("/register", "{\"username\": \"after restore\",\"password\": \"password\"}");
+        Assertions.assertEquals(200, registered.statusCode(), "Expected Status Code 200 - Actual Code was: " + registered.statusCode());
+        Account account = objectMapper.readValue(registered.body(), Account.class);
+        Assertions.assertTrue(account.getAccountId() > 9999, "Expected a new id past the restored ids - was " + account.getAccountId());
+    }
+
+    /**
+     * Restoring a snapshot file that has been damaged
+     *
+     * Expected Response:
+     *  Status Code: 400
+     *  Nothing is changed
+     */
+    @Test
+    public void corruptSnapshotIsRejected() throws IOException, InterruptedException {
+        post("/admin/snapshots?name=corrupt.bin", "");
+        Path file = SNAPSHOT_DIR.resolve("corrupt.bin");
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 3] ^= 0x55;
+        Files.write(file, bytes);
+        post("/messages", "{\"postedBy\":9999,\"messageText\": \"kept\",\"timePostedEpoch\": 1669947800}");
+
+        HttpResponse<String> restored = post("/admin/snapshots/corrupt.bin/restore", "");
+        Assertions.assertEquals(400, restored.statusCode(), "Expected Status Code 400 - Actual Code was: " + restored.statusCode());
+        Assertions.assertEquals(4, getAllMessages().size());
+
+        HttpResponse<String> missing = post("/admin/snapshots/missing.bin/restore", "");
+        Assertions.assertEquals(404, missing.statusCode(), "Expected Status Code 404 - Actual Code was: " + missing.statusCode());
+    }
+}
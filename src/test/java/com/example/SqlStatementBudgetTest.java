@@ -0,0 +1,123 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.config.StatementCounter;
+import com.example.config.StatementCountingFilter;
+import com.example.service.MessageService;
+
+/**
+ * The number of SQL statements every endpoint is allowed to run, read from the X-SQL-Statements debug header. The
+ * second-level cache is turned off so every lookup goes to the database and the counts do not depend on what was read
+ * before. A budget that is exceeded means a change added a query (or the cache was hiding one).
+ */
+public class SqlStatementBudgetTest {
+    ConfigurableApplicationContext app;
+    HttpClient webClient;
+
+    /**
+     * Before every test, reset the database, restart the app with the debug header on and the cache off, and create a
+     * new webClient for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        String[] args = new String[] {"--app.sql.instrumentation.enabled=true", "--app.sql.debug-header=true",
+                "--app.cache.enabled=false"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    private void assertBudget(int budget, String method, String path, String json)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path))
+                .method(method, json == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json");
+        HttpResponse<String> response = webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertTrue(response.statusCode() < 500, "Expected a Status Code below 500 - Actual Code was: " + response.statusCode());
+
+        long statements = Long.parseLong(response.headers().firstValue(StatementCountingFilter.STATEMENTS_HEADER)
+                .orElseThrow(() -> new AssertionError("Expected an " + StatementCountingFilter.STATEMENTS_HEADER
+                        + " header on " + method + " " + path)));
+        Assertions.assertTrue(response.headers().firstValue(StatementCountingFilter.TIME_HEADER).isPresent());
+        Assertions.assertTrue(statements <= budget, method + " " + path + " is allowed " + budget
+                + " SQL statements - Actual count was: " + statements);
+    }
+
+    /**
+     * Calling every endpoint once
+     *
+     * Expected Response:
+     *  None of them runs more statements than its budget
+     */
+    @Test
+    public void everyEndpointStaysWithinItsBudget() throws IOException, InterruptedException {
+        assertBudget(2, "POST", "/register", "{\"username\":\"budget\",\"password\":\"password\"}");
+        assertBudget(1, "POST", "/login", "{\"username\":\"testuser1\",\"password\":\"password\"}");
+        assertBudget(3, "POST", "/messages",
+                "{\"postedBy\":9999,\"messageText\":\"budget\",\"timePostedEpoch\":1669947792}");
+        assertBudget(1, "GET", "/messages", null);
+        assertBudget(1, "GET", "/messages?since=0&until=1669947793&page=0&size=10", null);
+        assertBudget(1, "GET", "/messages/9999", null);
+        assertBudget(1, "GET", "/messages?ids=9996,9997,9999,123456", null);
+        // the message is found, then save() and deleteById() each look it up again before they change it
+        assertBudget(3, "PATCH", "/messages/9999", "{\"messageText\": \"budget\"}");
+        assertBudget(3, "DELETE", "/messages/9999", null);
+        assertBudget(1, "GET", "/accounts/9999/messages", null);
+        assertBudget(1, "GET", "/accounts/9999/stats", null); // its latest message was just deleted, so it is recounted
+        assertBudget(0, "GET", "/accounts/9999/stats", null);
+        assertBudget(0, "GET", "/accounts/search?prefix=test", null);
+    }
+
+    /**
+     * Getting and deleting an id that was never used
+     *
+     * Expected Response:
+     *  No statements at all, the message id filter turns them away
+     */
+    @Test
+    public void missingIdsRunNoStatements() throws IOException, InterruptedException {
+        assertBudget(0, "GET", "/messages/123456", null);
+        assertBudget(0, "DELETE", "/messages/123456", null);
+    }
+
+    /**
+     * Counting the statements of a single service call, without going through HTTP
+     *
+     * Expected Result:
+     *  The lookup runs one statement, and the outer counter includes what the inner one counted
+     */
+    @Test
+    public void countersCanBeOpenedAroundAnyCall() {
+        MessageService messageService = app.getBean(MessageService.class);
+
+        try (StatementCounter outer = StatementCounter.start()) {
+            try (StatementCounter inner = StatementCounter.start()) {
+                Assertions.assertNotNull(messageService.getMessageById(9999));
+                Assertions.assertEquals(1, inner.getStatements());
+            }
+
+            messageService.getAllMessages();
+            Assertions.assertEquals(2, outer.getStatements());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class SyntheticDataTest {
+    static final String[] ARGS = new String[] {"--app.synthetic.accounts=50", "--app.synthetic.messages=25000",
+            "--app.synthetic.seed=7"};
+
+    ConfigurableApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with synthetic data, and create a new webClient and
+     * ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app = SpringApplication.run(SocialMediaApp.class, ARGS);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    private HttpResponse<String> getAllMessages() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Starting the app with 50 synthetic accounts and 25000 synthetic messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the 3 messages from data.sql and the 25000 synthetic ones, with a few accounts posting most of
+     *  them and every text fitting in the column
+     */
+    @Test
+    public void startsWithTheChosenDataSet() throws IOException, InterruptedException {
+        HttpResponse<String> response = getAllMessages();
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(25003, messages.size());
+
+        Map<Integer, Integer> perAccount = new HashMap<>();
+        for (Message message : messages) {
+            perAccount.merge(message.getPostedBy(), 1, Integer::sum);
+            Assertions.assertTrue(message.getMessageText().length() >= 1 && message.getMessageText().length() <= 255);
+        }
+        int busiest = perAccount.values().stream().max(Integer::compare).get();
+        Assertions.assertTrue(busiest > 25000 / 10, "Expected the busiest account to post over 10% - was " + busiest);
+    }
+
+    /**
+     * Restarting the app with the same seed
+     *
+     * Expected Response:
+     *  Response Body: exactly the same messages as the first time
+     */
+    @Test
+    public void sameSeedGivesTheSameData() throws IOException, InterruptedException {
+        String first = getAllMessages().body();
+        SpringApplication.exit(app);
+        app = SpringApplication.run(SocialMediaApp.class, ARGS);
+        Thread.sleep(500);
+
+        Assertions.assertEquals(first, getAllMessages().body());
+    }
+}
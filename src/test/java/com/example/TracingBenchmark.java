@@ -0,0 +1,119 @@
+package com.example;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Full load over HTTP: `bench.threads` clients ask for a message by id and then the messages of its account as fast as
+ * they can for `bench.seconds`, with tracing off, on at the default sample rate and on for every request. Each run
+ * warms up for a third of `bench.seconds` first, and a whole run with tracing on is thrown away before any of them so
+ * the JIT has seen both paths.
+ *
+ * Run with `mvn -Pbench test -Dtest=TracingBenchmark`, the number of clients and the length of each run can be
+ * changed with -Dbench.threads and -Dbench.seconds.
+ */
+public class TracingBenchmark {
+    static final int THREADS = Integer.getInteger("bench.threads", 16);
+    static final int SECONDS = Integer.getInteger("bench.seconds", 15);
+
+    @Test
+    public void tracingOnVersusOff() throws Exception {
+        Path directory = Files.createTempDirectory("traces");
+        run("warm-up", new String[] {"--app.tracing.enabled=true", "--app.tracing.sample-rate=0.5",
+                "--app.tracing.file=" + directory.resolve("warm-up.jsonl")});
+        String off = run("off", new String[] {"--app.tracing.enabled=false"});
+        String sampled = run("1%", new String[] {"--app.tracing.enabled=true", "--app.tracing.sample-rate=0.01",
+                "--app.tracing.file=" + directory.resolve("sampled.jsonl")});
+        String all = run("100%", new String[] {"--app.tracing.enabled=true", "--app.tracing.sample-rate=1",
+                "--app.tracing.file=" + directory.resolve("all.jsonl")});
+
+        System.out.println(String.format("%d clients, %d s per run", THREADS, SECONDS));
+        System.out.println(off);
+        System.out.println(sampled);
+        System.out.println(all);
+        System.out.println(String.format("spans written: %,d bytes at 1%%, %,d bytes at 100%%",
+                Files.size(directory.resolve("sampled.jsonl")), Files.size(directory.resolve("all.jsonl"))));
+    }
+
+    private String run(String name, String[] extraArgs) throws Exception {
+        List<String> args = new ArrayList<>(Arrays.asList("--server.port=0", "--app.cache.enabled=false"));
+        args.addAll(Arrays.asList(extraArgs));
+        ConfigurableApplicationContext app = SpringApplication.run(SocialMediaApp.class, args.toArray(new String[0]));
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            String base = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+            HttpClient webClient = HttpClient.newHttpClient();
+            HttpRequest byId = HttpRequest.newBuilder().uri(URI.create(base + "/messages/9999")).build();
+            HttpRequest byAccount = HttpRequest.newBuilder().uri(URI.create(base + "/accounts/9999/messages")).build();
+
+            measure(executor, webClient, byId, byAccount, SECONDS / 3);
+            long[] nanos = measure(executor, webClient, byId, byAccount, SECONDS);
+
+            Arrays.sort(nanos);
+            return String.format("tracing %-4s %,8.0f requests/s  p50 %,6.3f ms  p99 %,6.3f ms", name,
+                    nanos.length / (double) SECONDS, nanos[nanos.length / 2] / 1e6,
+                    nanos[(int) (nanos.length * 0.99)] / 1e6);
+        } finally {
+            executor.shutdownNow();
+            SpringApplication.exit(app);
+        }
+    }
+
+    /**
+     * @return The latency of every request that was made in `seconds`.
+     */
+    private long[] measure(ExecutorService executor, HttpClient webClient, HttpRequest byId, HttpRequest byAccount,
+            int seconds) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Future<long[]>> workers = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            workers.add(executor.submit(() -> {
+                long[] nanos = new long[1 << 16];
+                int count = 0;
+
+                while (running.get()) {
+                    long started = System.nanoTime();
+                    webClient.send(count % 2 == 0 ? byId : byAccount, HttpResponse.BodyHandlers.discarding());
+
+                    if (count == nanos.length) {
+                        nanos = Arrays.copyOf(nanos, count * 2);
+                    }
+
+                    nanos[count++] = System.nanoTime() - started;
+                }
+
+                return Arrays.copyOf(nanos, count);
+            }));
+        }
+
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        long[] all = new long[0];
+
+        for (Future<long[]> worker : workers) {
+            long[] nanos = worker.get();
+            int from = all.length;
+            all = Arrays.copyOf(all, from + nanos.length);
+            System.arraycopy(nanos, 0, all, from, nanos.length);
+        }
+
+        return all;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.config.TracingFilter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class TracingTest {
+    static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+    static final String CALLER_SPAN_ID = "00f067aa0ba902b7";
+
+    ConfigurableApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Path spans;
+
+    /**
+     * Before every test, reset the database, restart the app with tracing on (only requests with a sampled
+     * traceparent header are traced) writing to a temporary file, and create a new webClient and ObjectMapper for
+     * interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp(@TempDir Path directory) throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        spans = directory.resolve("spans.jsonl");
+        String[] args = new String[] {"--app.tracing.enabled=true", "--app.tracing.sample-rate=0",
+                "--app.tracing.file=" + spans, "--app.tracing.export-interval-ms=100", "--app.cache.enabled=false",
+                "--app.sql.instrumentation.enabled=true"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    private HttpResponse<String> get(String path, String traceparent) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (traceparent != null) {
+            request.header(TracingFilter.TRACEPARENT_HEADER, traceparent);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * @return Every span that was exported, waiting up to two seconds for at least `atLeast` of them.
+     */
+    private List<JsonNode> exportedSpans(int atLeast) throws IOException, InterruptedException {
+        List<JsonNode> found = new ArrayList<>();
+
+        for (int i = 0; i < 20 && found.size() < atLeast; i++) {
+            Thread.sleep(100);
+            found.clear();
+            if (Files.exists(spans)) {
+                for (String line : Files.readAllLines(spans)) {
+                    JsonNode request = objectMapper.readTree(line);
+                    Assertions.assertEquals("social-media", request.at("/resourceSpans/0/resource/attributes/0/value/stringValue").asText());
+                    request.at("/resourceSpans/0/scopeSpans/0/spans").forEach(found::add);
+                }
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Getting a message with a sampled traceparent header
+     *
+     * Expected Response:
+     *  The response has the caller's trace id, and the exported spans go from the request through the handler, the
+     *  service and the store down to the select, each one the child of the one above it
+     */
+    @Test
+    public void sampledRequestIsTracedDownToTheStatement() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages/9999", "00-" + TRACE_ID + "-" + CALLER_SPAN_ID + "-01");
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+        Assertions.assertEquals(TRACE_ID, response.headers().firstValue(TracingFilter.TRACE_ID_HEADER).orElse(null));
+
+        Map<String, JsonNode> byName = new HashMap<>();
+        for (JsonNode span : exportedSpans(5)) {
+            Assertions.assertEquals(TRACE_ID, span.get("traceId").asText());
+            byName.put(span.get("name").asText(), span);
+        }
+
+        JsonNode request = byName.get("GET /messages/{messageId}");
+        JsonNode handler = byName.get("SocialMediaController.getMessageById");
+        JsonNode service = byName.get("MessageService.getMessageById");
+        JsonNode store = byName.get("JpaMessageStore.findById");
+        JsonNode select = byName.get("SQL select");
+        Assertions.assertNotNull(request, "Expected a span for the request, found " + byName.keySet());
+        Assertions.assertNotNull(handler, "Expected a span for the handler, found " + byName.keySet());
+        Assertions.assertNotNull(service, "Expected a span for the service, found " + byName.keySet());
+        Assertions.assertNotNull(store, "Expected a span for the store, found " + byName.keySet());
+        Assertions.assertNotNull(select, "Expected a span for the statement, found " + byName.keySet());
+
+        Assertions.assertEquals(CALLER_SPAN_ID, request.get("parentSpanId").asText());
+        Assertions.assertEquals(request.get("spanId"), handler.get("parentSpanId"));
+        Assertions.assertEquals(handler.get("spanId"), service.get("parentSpanId"));
+        Assertions.assertEquals(service.get("spanId"), store.get("parentSpanId"));
+        Assertions.assertEquals(store.get("spanId"), select.get("parentSpanId"));
+        Assertions.assertTrue(Long.parseLong(request.get("endTimeUnixNano").asText())
+                >= Long.parseLong(select.get("endTimeUnixNano").asText()));
+    }
+
+    /**
+     * Getting messages without a traceparent header, and with one that says the caller did not sample the trace
+     *
+     * Expected Response:
+     *  Nothing is traced, the sample rate is 0
+     */
+    @Test
+    public void unsampledRequestsAreNotTraced() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages", null);
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+        Assertions.assertFalse(response.headers().firstValue(TracingFilter.TRACE_ID_HEADER).isPresent());
+
+        response = get("/messages", "00-" + TRACE_ID + "-" + CALLER_SPAN_ID + "-00");
+        Assertions.assertFalse(response.headers().firstValue(TracingFilter.TRACE_ID_HEADER).isPresent());
+
+        Assertions.assertEquals(0, exportedSpans(1).size());
+    }
+}
@@ -0,0 +1,72 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.service.AccountService;
+import com.example.service.SyntheticDataService;
+
+/**
+ * Mention autocomplete: synthetic accounts are loaded, then a username is "typed" one keystroke at a time and every
+ * prefix is searched for, once through the username index (GET /accounts/search goes through AccountService) and once
+ * with the `like 'x%'` query it replaces.
+ *
+ * Run with `mvn -Pbench test -Dtest=UsernameSearchBenchmark`, the number of accounts and searches can be changed with
+ * -Dbench.accounts and -Dbench.reads.
+ */
+public class UsernameSearchBenchmark {
+    static final int ACCOUNTS = Integer.getInteger("bench.accounts", 200_000);
+    static final int READS = Integer.getInteger("bench.reads", 20_000);
+    static final int LIMIT = 10;
+
+    @Test
+    public void indexVersusLike() throws Exception {
+        ConfigurableApplicationContext app = SpringApplication.run(SocialMediaApp.class, new String[] {
+                "--server.port=0", "--app.stats.rebuild-interval-ms=3600000"});
+
+        try {
+            app.getBean(SyntheticDataService.class).generate(ACCOUNTS, 0, 42);
+            AccountService accountService = app.getBean(AccountService.class);
+            JdbcTemplate jdbcTemplate = app.getBean(JdbcTemplate.class);
+
+            System.out.println(String.format("%,d accounts, %,d searches, top %d", ACCOUNTS, READS, LIMIT));
+            System.out.println(time("index", prefix -> accountService.searchByUsernamePrefix(prefix, LIMIT)));
+            System.out.println(time("like", prefix -> jdbcTemplate.queryForList(
+                    "select accountId, username from account where username like ? order by username limit ?",
+                    prefix + "%", LIMIT)));
+        } finally {
+            SpringApplication.exit(app);
+        }
+    }
+
+    /**
+     * Types a quarter of `bench.reads` prefixes to warm up, then times `bench.reads` of them.
+     */
+    private String time(String name, Function<String, List<?>> search) {
+        Random random = new Random(7);
+        long[] nanos = new long[READS];
+        long found = 0;
+
+        for (int i = -READS / 4; i < READS; i++) {
+            String username = "synthetic-42-" + random.nextInt(ACCOUNTS);
+            String prefix = username.substring(0, 10 + random.nextInt(username.length() - 9));
+            long started = System.nanoTime();
+            found += search.apply(prefix).size();
+
+            if (i >= 0) {
+                nanos[i] = System.nanoTime() - started;
+            }
+        }
+
+        Arrays.sort(nanos);
+        return String.format("%-5s p50 %,9.1f us  p99 %,9.1f us  (%,d matches)", name, nanos[READS / 2] / 1000.0,
+                nanos[(int) (READS * 0.99)] / 1000.0, found);
+    }
+}
@@ -0,0 +1,118 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class UsernameSearchTest {
+    ConfigurableApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with a tiny merge threshold so the index merges after
+     * every other registration, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--app.accounts.username-index.merge-threshold=2"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> register(String username) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"username\":\"" + username + "\",\"password\":\"password\"}"))
+                .header("Content-Type", "application/json")
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<String> usernames(HttpResponse<String> response) throws IOException {
+        List<String> usernames = new ArrayList<>();
+        for (Map<String, Object> match : objectMapper.readValue(response.body(),
+                new TypeReference<List<Map<String, Object>>>(){})) {
+            Assertions.assertNotNull(match.get("accountId"));
+            Assertions.assertFalse(match.containsKey("password"));
+            usernames.add((String) match.get("username"));
+        }
+        return usernames;
+    }
+
+    /**
+     * Searching for a prefix shared by the accounts from data.sql and new registrations
+     *
+     * Expected Response:
+     *  Status code 200 with every match in username order, cut down to the limit
+     */
+    @Test
+    public void searchFindsSeededAndRegisteredAccountsInOrder() throws IOException, InterruptedException {
+        for (String username : new String[] {"testuser10", "testuse", "mentionable", "testuser0", "tester"}) {
+            HttpResponse<String> response = register(username);
+            Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+        }
+
+        HttpResponse<String> response = get("/accounts/search?prefix=testuse");
+        Assertions.assertEquals(200, response.statusCode(), "Expected Status Code 200 - Actual Code was: " + response.statusCode());
+        Assertions.assertEquals(List.of("testuse", "testuser0", "testuser1", "testuser10", "testuser2", "testuser3",
+                "testuser4"), usernames(response));
+
+        response = get("/accounts/search?prefix=test&limit=3");
+        Assertions.assertEquals(List.of("tester", "testuse", "testuser0"), usernames(response));
+
+        response = get("/accounts/search?prefix=nobody");
+        Assertions.assertEquals(List.of(), usernames(response));
+    }
+
+    /**
+     * Registering a username that is taken, whether it came from data.sql or was just registered, and searching
+     * without a prefix
+     *
+     * Expected Response:
+     *  Status code 409 for the taken usernames and 400 for the empty prefix
+     */
+    @Test
+    public void takenUsernamesAndEmptyPrefixesAreRejected() throws IOException, InterruptedException {
+        Assertions.assertEquals(200, register("newuser").statusCode());
+
+        HttpResponse<String> response = register("newuser");
+        Assertions.assertEquals(409, response.statusCode(), "Expected Status Code 409 - Actual Code was: " + response.statusCode());
+        response = register("testuser1");
+        Assertions.assertEquals(409, response.statusCode(), "Expected Status Code 409 - Actual Code was: " + response.statusCode());
+
+        response = get("/accounts/search?prefix=");
+        Assertions.assertEquals(400, response.statusCode(), "Expected Status Code 400 - Actual Code was: " + response.statusCode());
+        response = get("/accounts/search?prefix=new&limit=0");
+        Assertions.assertEquals(400, response.statusCode(), "Expected Status Code 400 - Actual Code was: " + response.statusCode());
+    }
+}
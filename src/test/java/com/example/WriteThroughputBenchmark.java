@@ -0,0 +1,101 @@
+package com.example;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.entity.Account;
+import com.example.entity.Message;
+import com.example.service.AccountService;
+import com.example.service.MessageService;
+
+/**
+ * Measures sustained insert and update throughput through MessageService, for the in memory database and for the
+ * durable (file backed) profile.
+ * 
+ * Run with `mvn -Pbench test -Dtest=WriteThroughputBenchmark`, the length and number of writer threads can be 
+ * changed with -Dbench.seconds and -Dbench.threads.
+ */
+public class WriteThroughputBenchmark {
+    static final int SECONDS = Integer.getInteger("bench.seconds", 10);
+    static final int THREADS = Integer.getInteger("bench.threads", 4);
+
+    @Test
+    public void inMemoryVersusDurable() throws Exception {
+        Path databaseDir = Files.createTempDirectory("write-benchmark");
+
+        String inMemory = run("in memory", new String[] {});
+        String durable = run("durable", new String[] {"--spring.profiles.active=durable",
+                "--app.h2.path=" + databaseDir.resolve("socialmedia")});
+
+        System.out.println(inMemory);
+        System.out.println(durable);
+    }
+
+    private String run(String name, String[] args) throws Exception {
+        ConfigurableApplicationContext app = SpringApplication.run(SocialMediaApp.class, args);
+
+        try {
+            AccountService accountService = app.getBean(AccountService.class);
+            MessageService messageService = app.getBean(MessageService.class);
+            Account account = accountService.register(new Account("bench" + System.nanoTime(), "password"));
+
+            run(messageService, account, 2); // warm up
+            long[] counts = run(messageService, account, SECONDS);
+
+            return String.format("%-10s %,10.0f inserts/s %,10.0f updates/s (%d threads, %d s)", name,
+                    counts[0] / (double) SECONDS, counts[1] / (double) SECONDS, THREADS, SECONDS);
+        } finally {
+            SpringApplication.exit(app);
+        }
+    }
+
+    /**
+     * Every thread posts a message and then patches it, over and over until the time runs out.
+     * 
+     * @return The number of inserts and the number of updates that were done.
+     */
+    private long[] run(MessageService messageService, Account account, int seconds) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Future<long[]>> workers = new ArrayList<>();
+
+        for (int i = 0; i < THREADS; i++) {
+            workers.add(executor.submit(() -> {
+                long inserts = 0;
+                long updates = 0;
+
+                while (System.nanoTime() < deadline) {
+                    Message added = messageService.addMessage(
+                            new Message(account.getAccountId(), "benchmark message " + inserts, System.currentTimeMillis() / 1000));
+                    inserts++;
+                    if (messageService.patchMessage(added.getMessageId(), "patched benchmark message " + updates)) {
+                        updates++;
+                    }
+                }
+
+                return new long[] {inserts, updates};
+            }));
+        }
+
+        long[] total = new long[2];
+
+        for (Future<long[]> worker : workers) {
+            long[] counts = worker.get();
+            total[0] += counts[0];
+            total[1] += counts[1];
+        }
+
+        executor.shutdown();
+        return total;
+    }
+}